@@ -105,6 +105,18 @@ public class ResourceMetadata extends HashMap<String, Object> {
      */
     public static final String MODIFICATION_TIME = "sling.modificationTime";
 
+    /**
+     * The name of the optional property providing an opaque tag identifying
+     * the content of the resource (value is "sling.entityTag"). Two resources
+     * with the same entity tag have the same content, so the tag may be used
+     * as a strong HTTP <code>ETag</code>. The type of this property is
+     * <code>java.lang.String</code>. The property may be missing if the
+     * resource is not streamable or no tag is known for its content.
+     *
+     * @since 2.2.5
+     */
+    public static final String ENTITY_TAG = "sling.entityTag";
+
     /**
      * Sets the {@link #CHARACTER_ENCODING} property to <code>encoding</code>
      * if not <code>null</code>.
@@ -222,6 +234,33 @@ public class ResourceMetadata extends HashMap<String, Object> {
         return -1;
     }
 
+    /**
+     * Sets the {@link #ENTITY_TAG} property to <code>entityTag</code> if not
+     * <code>null</code>.
+     *
+     * @since 2.2.5
+     */
+    public void setEntityTag(String entityTag) {
+        if (entityTag != null) {
+            put(ENTITY_TAG, entityTag);
+        }
+    }
+
+    /**
+     * Returns the {@link #ENTITY_TAG} property if not <code>null</code> and a
+     * <code>String</code> instance. Otherwise <code>null</code> is returned.
+     *
+     * @since 2.2.5
+     */
+    public String getEntityTag() {
+        Object value = get(ENTITY_TAG);
+        if (value instanceof String) {
+            return (String) value;
+        }
+
+        return null;
+    }
+
     /**
      * Sets the {@link #RESOLUTION_PATH} property to <code>resolutionPath</code>
      * if not <code>null</code>.
@@ -32,6 +32,7 @@ public class HttpConstants {
     public static final String HEADER_ETAG = "ETag";
     public static final String HEADER_IF_MATCH = "If-Match";
     public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
     public static final String HEADER_LAST_MODIFIED = "Last-Modified";
 
 }
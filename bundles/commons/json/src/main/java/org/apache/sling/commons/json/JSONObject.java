@@ -29,7 +29,6 @@ import java.io.Writer;
 import java.lang.reflect.Field;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -126,9 +125,9 @@ public class JSONObject {
 
 
     /**
-     * The hash map where the JSONObject's properties are kept.
+     * The map where the JSONObject's properties are kept.
      */
-    private Map<String, Object> myHashMap;
+    private final OrderedStringMap myHashMap = new OrderedStringMap();
 
 
     /**
@@ -144,7 +143,6 @@ public class JSONObject {
      * Construct an empty JSONObject.
      */
     public JSONObject() {
-        this.myHashMap = new LinkedHashMap<String, Object>();
     }
 
 
@@ -232,9 +230,13 @@ public class JSONObject {
      *  the JSONObject.
      */
     public JSONObject(Map<String, ?> map) {
-        this.myHashMap = (map == null) ?
-        	new LinkedHashMap<String, Object>() :
-        	new LinkedHashMap<String, Object>(map);
+        if (map != null) {
+            for (Map.Entry<String, ?> entry : map.entrySet()) {
+                if (entry.getKey() != null) {
+                    this.myHashMap.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
     }
 
 
@@ -528,7 +530,7 @@ public class JSONObject {
      * @return An iterator of the keys.
      */
     public Iterator<String> keys() {
-        return this.myHashMap.keySet().iterator();
+        return this.myHashMap.keys();
     }
 
 
@@ -926,9 +928,21 @@ public class JSONObject {
         char         c = 0;
         int          i;
         int          len = string.length();
-        StringBuffer sb = new StringBuffer(len + 4);
         String       t;
 
+        // most strings need no escaping at all
+        for (i = 0; i < len; i += 1) {
+            if (needsEscape(string.charAt(i))) {
+                break;
+            }
+        }
+        if (i == len) {
+            return new StringBuilder(len + 2).append('"').append(string)
+                .append('"').toString();
+        }
+
+        StringBuilder sb = new StringBuilder(len + 4);
+
         sb.append('"');
         for (i = 0; i < len; i += 1) {
             b = c;
@@ -974,6 +988,17 @@ public class JSONObject {
         return sb.toString();
     }
 
+    /**
+     * Returns <code>true</code> if the character is escaped by
+     * {@link #quote(String)}, including the slash which is only escaped
+     * after a <code>&lt;</code>.
+     */
+    private static boolean needsEscape(char c) {
+        return c < ' ' || c == '\\' || c == '"' || c == '/'
+            || (c >= '\u0080' && c < '\u00a0')
+            || (c >= '\u2000' && c < '\u2100');
+    }
+
     /**
      * Remove a name and its value, if present.
      * @param key The name to be removed.
@@ -28,6 +28,10 @@ SOFTWARE.
  * A JSONTokener takes a source string and extracts characters and tokens from
  * it. It is used by the JSONObject and JSONArray constructors to parse
  * JSON source strings.
+ * <p>
+ * The characters of the source are scanned directly in an array. Strings
+ * without escapes and unquoted values are copied from the array in one step
+ * instead of being assembled character by character.
  * @author JSON.org
  * @version 2
  */
@@ -40,9 +44,9 @@ public class JSONTokener {
 
 
     /**
-     * The source string being tokenized.
+     * The characters of the source string being tokenized.
      */
-    private String mySource;
+    private final char[] mySource;
 
 
     /**
@@ -52,7 +56,7 @@ public class JSONTokener {
      */
     public JSONTokener(String s) {
         this.myIndex = 0;
-        this.mySource = s;
+        this.mySource = s.toCharArray();
     }
 
 
@@ -95,7 +99,7 @@ public class JSONTokener {
      * @return true if not yet at the end of the source.
      */
     public boolean more() {
-        return this.myIndex < this.mySource.length();
+        return this.myIndex < this.mySource.length;
     }
 
 
@@ -105,10 +109,8 @@ public class JSONTokener {
      * @return The next character, or 0 if past the end of the source string.
      */
     public char next() {
-        if (more()) {
-            char c = this.mySource.charAt(this.myIndex);
-            this.myIndex += 1;
-            return c;
+        if (this.myIndex < this.mySource.length) {
+            return this.mySource[this.myIndex++];
         }
         return 0;
     }
@@ -143,11 +145,11 @@ public class JSONTokener {
      public String next(int n) throws JSONException {
          int i = this.myIndex;
          int j = i + n;
-         if (j >= this.mySource.length()) {
+         if (j >= this.mySource.length) {
             throw syntaxError("Substring bounds error");
          }
          this.myIndex += n;
-         return this.mySource.substring(i, j);
+         return new String(this.mySource, i, n);
      }
 
 
@@ -208,8 +210,21 @@ public class JSONTokener {
      * @throws JSONException Unterminated string.
      */
     public String nextString(char quote) throws JSONException {
+        // copy strings without escapes in one step
+        final int start = this.myIndex;
+        for (int i = start; i < this.mySource.length; i++) {
+            final char c = this.mySource[i];
+            if (c == quote) {
+                this.myIndex = i + 1;
+                return new String(this.mySource, start, i - start);
+            }
+            if (c == '\\' || c == '\n' || c == '\r' || c == 0) {
+                break;
+            }
+        }
+
         char c;
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         for (;;) {
             c = next();
             switch (c) {
@@ -262,7 +277,7 @@ public class JSONTokener {
      * @return   A string.
      */
     public String nextTo(char d) {
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         for (;;) {
             char c = next();
             if (c == d || c == 0 || c == '\n' || c == '\r') {
@@ -284,7 +299,7 @@ public class JSONTokener {
      */
     public String nextTo(String delimiters) {
         char c;
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         for (;;) {
             c = next();
             if (delimiters.indexOf(c) >= 0 || c == 0 ||
@@ -331,19 +346,25 @@ public class JSONTokener {
          * formatting character.
          */
 
-        StringBuffer sb = new StringBuffer();
         char b = c;
-        while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
-            sb.append(c);
-            c = next();
+        if (c == 0) {
+            back();
+            throw syntaxError("Missing value.");
         }
-        back();
+        final int start = this.myIndex - 1;
+        int end = start;
+        while (end < this.mySource.length && isValueChar(this.mySource[end])) {
+            end++;
+        }
+
+        // stop at the formatting character like next() followed by back()
+        this.myIndex = (end < this.mySource.length) ? end : end - 1;
 
         /*
          * If it is true, false, or null, return the proper value.
          */
 
-        s = sb.toString().trim();
+        s = new String(this.mySource, start, end - start).trim();
         if (s.equals("")) {
             throw syntaxError("Missing value.");
         }
@@ -383,6 +404,10 @@ public class JSONTokener {
                     }
                 }
             }
+            final Number number = parseNumber(s);
+            if (number != null) {
+                return number;
+            }
             try {
                 return new Integer(s);
             } catch (Exception e) {
@@ -401,6 +426,67 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Returns <code>true</code> if the character may be part of an unquoted
+     * value, that is neither a control nor a formatting character.
+     */
+    private static boolean isValueChar(char c) {
+        switch (c) {
+        case ',': case ':': case ']': case '}': case '/': case '\\':
+        case '"': case '[': case '{': case ';': case '=': case '#':
+            return false;
+        default:
+            return c >= ' ';
+        }
+    }
+
+
+    /**
+     * Converts plain decimal integers and decimal fractions directly, which
+     * are otherwise only found after failing to parse them as other types.
+     * @return The Integer, Long or Double, or null if the string is none of
+     * these plain forms.
+     */
+    private static Number parseNumber(String s) {
+        final int length = s.length();
+        int i = (s.charAt(0) == '-') ? 1 : 0;
+        if (i == length) {
+            return null;
+        }
+        long value = 0;
+        boolean fraction = false;
+        for (int j = i; j < length; j++) {
+            final char c = s.charAt(j);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                fraction = true;
+            } else if (!(fraction && (c == '-' || c == '+'))) {
+                return null;
+            }
+        }
+        if (fraction) {
+            // neither an Integer nor a Long, as a Double or a String
+            try {
+                return new Double(s);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+        if (length - i > 18) {
+            // might overflow the long
+            return null;
+        }
+        if (i == 1) {
+            value = -value;
+        }
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return new Integer((int) value);
+        }
+        return new Long(value);
+    }
+
+
     /**
      * Skip characters until the next character is the requested character.
      * If the requested character is not found, no characters are skipped.
@@ -429,12 +515,19 @@ public class JSONTokener {
      * @param to A string to skip past.
      */
     public void skipPast(String to) {
-        this.myIndex = this.mySource.indexOf(to, this.myIndex);
-        if (this.myIndex < 0) {
-            this.myIndex = this.mySource.length();
-        } else {
-            this.myIndex += to.length();
+        final int length = to.length();
+        final int last = this.mySource.length - length;
+        for (int i = this.myIndex; i <= last; i++) {
+            int j = 0;
+            while (j < length && this.mySource[i + j] == to.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                this.myIndex = i + length;
+                return;
+            }
         }
+        this.myIndex = this.mySource.length;
     }
 
 
@@ -455,6 +548,6 @@ public class JSONTokener {
      * @return " at character [this.myIndex] of [this.mySource]"
      */
     public String toString() {
-        return " at character " + this.myIndex + " of " + this.mySource;
+        return " at character " + this.myIndex + " of " + new String(this.mySource);
     }
 }
\ No newline at end of file
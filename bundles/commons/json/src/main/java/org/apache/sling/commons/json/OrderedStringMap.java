@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.json;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The <code>OrderedStringMap</code> keeps the properties of a
+ * {@link JSONObject} in insertion order.
+ * <p>
+ * Keys and values are kept in two arrays in the order they are added, with no
+ * entry object per property. Small maps are searched linearly; larger ones
+ * are indexed by an open addressed hash table of positions in these arrays.
+ * Removed properties leave a hole in the arrays, which is dropped when the
+ * arrays are grown.
+ */
+final class OrderedStringMap {
+
+    /** Maps with up to this many properties are searched without index */
+    private static final int LINEAR_LIMIT = 8;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** The keys in insertion order, <code>null</code> for removed ones */
+    private String[] keys;
+
+    private Object[] values;
+
+    /** Number of used positions in the arrays, including removed ones */
+    private int end;
+
+    /** Number of properties */
+    private int size;
+
+    /**
+     * Position + 1 of the key hashed to each slot, 0 for free slots, or
+     * <code>null</code> while the map is small.
+     */
+    private int[] index;
+
+    /** Incremented whenever positions in the arrays change */
+    private int modCount;
+
+    OrderedStringMap() {
+        keys = new String[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(String key) {
+        return find(key) >= 0;
+    }
+
+    Object get(String key) {
+        final int pos = find(key);
+        return (pos >= 0) ? values[pos] : null;
+    }
+
+    Object put(String key, Object value) {
+        final int pos = find(key);
+        if (pos >= 0) {
+            final Object old = values[pos];
+            values[pos] = value;
+            return old;
+        }
+
+        if (end == keys.length) {
+            grow();
+        }
+        keys[end] = key;
+        values[end] = value;
+        if (index != null) {
+            insert(key, end);
+        }
+        end++;
+        size++;
+        if (index == null && end > LINEAR_LIMIT) {
+            rehash(INITIAL_CAPACITY * 4);
+        }
+        return null;
+    }
+
+    Object remove(String key) {
+        final int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+
+        // the index keeps pointing to the hole so probing continues past it
+        final Object old = values[pos];
+        keys[pos] = null;
+        values[pos] = null;
+        size--;
+        return old;
+    }
+
+    /**
+     * Returns the keys in insertion order. The iterator supports removal but
+     * fails if properties are added while iterating.
+     */
+    Iterator<String> keys() {
+        return new Iterator<String>() {
+
+            private int next = skipHoles(0);
+
+            private int last = -1;
+
+            private int expectedModCount = modCount;
+
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            public String next() {
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = skipHoles(next + 1);
+                return keys[last];
+            }
+
+            public void remove() {
+                if (last < 0 || keys[last] == null) {
+                    throw new IllegalStateException();
+                }
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                OrderedStringMap.this.remove(keys[last]);
+            }
+        };
+    }
+
+    private int skipHoles(int pos) {
+        while (pos < end && keys[pos] == null) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the position of the key in the arrays or -1 if missing.
+     */
+    private int find(String key) {
+        if (key == null) {
+            return -1;
+        }
+        if (index == null) {
+            for (int i = 0; i < end; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        final int mask = index.length - 1;
+        final int hash = key.hashCode();
+        for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+            final int pos = index[slot] - 1;
+            if (pos < 0) {
+                return -1;
+            }
+            final String candidate = keys[pos];
+            if (candidate != null && candidate.hashCode() == hash
+                && candidate.equals(key)) {
+                return pos;
+            }
+        }
+    }
+
+    private void insert(String key, int pos) {
+        final int mask = index.length - 1;
+        int slot = spread(key.hashCode()) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = pos + 1;
+    }
+
+    /**
+     * Makes room for another property, dropping the holes of removed
+     * properties and growing the arrays if that is not enough.
+     */
+    private void grow() {
+        final int capacity = (size * 2 > keys.length) ? keys.length * 2 : keys.length;
+        final String[] newKeys = new String[capacity];
+        final Object[] newValues = new Object[capacity];
+        int pos = 0;
+        for (int i = 0; i < end; i++) {
+            if (keys[i] != null) {
+                newKeys[pos] = keys[i];
+                newValues[pos] = values[i];
+                pos++;
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        end = pos;
+        modCount++;
+        if (index != null) {
+            rehash(capacity * 2);
+        }
+    }
+
+    /**
+     * Rebuilds the index with the given number of slots, at least twice the
+     * capacity of the arrays to keep the probe sequences short.
+     */
+    private void rehash(int slots) {
+        index = new int[slots];
+        for (int i = 0; i < end; i++) {
+            if (keys[i] != null) {
+                insert(keys[i], i);
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
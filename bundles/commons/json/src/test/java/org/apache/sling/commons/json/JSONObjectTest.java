@@ -16,6 +16,8 @@
  */
 package org.apache.sling.commons.json;
 
+import java.util.Iterator;
+
 import junit.framework.TestCase;
 
 /**
@@ -49,4 +51,89 @@ public class JSONObjectTest extends TestCase {
         }
     }
 
+    public void testKeyOrder() throws JSONException {
+        JSONObject obj = new JSONObject();
+        for (int i = 0; i < 100; i++) {
+            obj.put("key" + (99 - i), i);
+        }
+        assertEquals(100, obj.length());
+
+        // remove every other key and replace some values
+        for (int i = 0; i < 100; i += 2) {
+            assertEquals(99 - i, obj.remove("key" + i));
+        }
+        obj.put("key1", "replaced");
+        obj.put("key0", "appended");
+        assertEquals(51, obj.length());
+
+        Iterator<String> keys = obj.keys();
+        for (int i = 99; i > 0; i -= 2) {
+            assertEquals("key" + i, keys.next());
+        }
+        assertEquals("key0", keys.next());
+        assertFalse(keys.hasNext());
+
+        assertEquals("replaced", obj.get("key1"));
+        assertFalse(obj.has("key2"));
+        assertFalse(obj.has(null));
+        assertNull(obj.opt("key2"));
+    }
+
+    public void testRemoveWhileIterating() throws JSONException {
+        JSONObject obj = new JSONObject("{a:1,b:2,c:3}");
+        Iterator<String> keys = obj.keys();
+        keys.next();
+        keys.next();
+        keys.remove();
+        assertEquals("{\"a\":1,\"c\":3}", obj.toString());
+
+        // grow past the removed key
+        for (int i = 0; i < 20; i++) {
+            obj.put("k" + i, i);
+        }
+        assertEquals(22, obj.length());
+        assertEquals(19, obj.getInt("k19"));
+        assertFalse(obj.has("b"));
+    }
+
+    public void testParse() throws JSONException {
+        JSONObject obj = new JSONObject(
+            "{\"s\":\"plain\",\"e\":\"a\\\"b\\u0041\\n\", i: 42, l: 12345678901,"
+            + " n: -7, d: 1.5, x: 1e3, o: 017, h: 0x1F, b: true, z: null,"
+            + " a: [1, \"two\", {}], u: some text; last = 'single'}");
+        assertEquals("plain", obj.get("s"));
+        assertEquals("a\"bA\n", obj.get("e"));
+        assertEquals(new Integer(42), obj.get("i"));
+        assertEquals(new Long(12345678901L), obj.get("l"));
+        assertEquals(new Integer(-7), obj.get("n"));
+        assertEquals(new Double(1.5), obj.get("d"));
+        assertEquals(new Double(1000), obj.get("x"));
+        assertEquals(new Integer(15), obj.get("o"));
+        assertEquals(new Integer(31), obj.get("h"));
+        assertEquals(Boolean.TRUE, obj.get("b"));
+        assertEquals(JSONObject.NULL, obj.get("z"));
+        assertEquals(3, obj.getJSONArray("a").length());
+        assertEquals("some text", obj.get("u"));
+        assertEquals("single", obj.get("last"));
+    }
+
+    public void testParseErrors() {
+        final String[] invalid = { "{a:}", "{a:\"open}", "{a:1", "{a:1,,b:2}" };
+        for (String json : invalid) {
+            try {
+                new JSONObject(json);
+                fail("Accepted " + json);
+            } catch (JSONException expected) {
+                // expected
+            }
+        }
+    }
+
+    public void testQuote() {
+        assertEquals("\"\"", JSONObject.quote(""));
+        assertEquals("\"plain text\"", JSONObject.quote("plain text"));
+        assertEquals("\"a/b\"", JSONObject.quote("a/b"));
+        assertEquals("\"<\\/script>\"", JSONObject.quote("</script>"));
+        assertEquals("\"\\\"\\\\\\n\\u0001\"", JSONObject.quote("\"\\\n\u0001"));
+    }
 }
@@ -0,0 +1,609 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.contentloader.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.apache.sling.jcr.contentloader.ImportOptions;
+import org.apache.sling.jcr.contentloader.internal.readers.NaturalOrderComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>ComicBulkImport</code> imports directories of cbr and cbz files
+ * without going through HTTP. It is owned by the
+ * {@link DefaultContentImporter}, whose comic readers it uses, and is managed
+ * through JMX.
+ * <p>
+ * The archives are parsed in parallel by a number of workers, each with its
+ * own session. A worker saves its session once the issues it parsed since
+ * the last save have the configured number of pages, so small issues are
+ * saved together. Saved archives are recorded in an
+ * {@link ImportCheckpoint}, so an import which is restarted, cancelled or
+ * run again on a growing directory only imports the archives not saved yet.
+ */
+class ComicBulkImport extends StandardMBean implements ComicBulkImportMBean {
+
+    /** Number of times an archive is tried before it is counted as failed */
+    private static final int MAX_ATTEMPTS = 2;
+
+    /** Issues imported again after a crash replace the partial ones */
+    private static final ImportOptions IMPORT_OPTIONS = new ImportOptions() {
+
+        @Override
+        public boolean isOverwrite() {
+            return true;
+        }
+
+        @Override
+        public boolean isPropertyOverwrite() {
+            return true;
+        }
+
+        @Override
+        public boolean isCheckin() {
+            return false;
+        }
+
+        @Override
+        public boolean isAutoCheckout() {
+            return false;
+        }
+
+        @Override
+        public boolean isIgnoredImportProvider(String extension) {
+            return false;
+        }
+    };
+
+    /** Directories and archives in the natural order of their names */
+    private static final Comparator<File> FILE_ORDER = new Comparator<File>() {
+        public int compare(File f1, File f2) {
+            return NaturalOrderComparator.INSTANCE.compare(f1.getName(), f2.getName());
+        }
+    };
+
+    private static final String FOLDER_TYPE = "sling:Folder";
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(ComicBulkImport.class);
+
+    private final DefaultContentImporter importer;
+
+    private final SlingRepository repository;
+
+    private final ThreadPool pool;
+
+    private final int workers;
+
+    private final int savePages;
+
+    private final ImportCheckpoint checkpoint;
+
+    /** The archives waiting to be imported */
+    private final Queue<Archive> queue = new ConcurrentLinkedQueue<Archive>();
+
+    private final AtomicLong issuesImported = new AtomicLong();
+
+    private final AtomicLong pagesImported = new AtomicLong();
+
+    private final AtomicLong issuesFailed = new AtomicLong();
+
+    private final AtomicLong issuesSkipped = new AtomicLong();
+
+    private volatile boolean running;
+
+    private volatile boolean cancelled;
+
+    private volatile String directory;
+
+    /** Start of the running import */
+    private long startTime;
+
+    /** Time spent by the imports finished since resetting the statistics */
+    private long finishedMsec;
+
+    private Timer timer;
+
+    /**
+     * @param importer The importer parsing the archives
+     * @param repository The repository to log into
+     * @param pool The pool running the workers
+     * @param workers The number of archives imported at the same time
+     * @param savePages The number of pages after which a worker saves
+     * @param checkpointFile The file recording the archives saved
+     */
+    ComicBulkImport(DefaultContentImporter importer, SlingRepository repository,
+            ThreadPool pool, int workers, int savePages, File checkpointFile)
+            throws NotCompliantMBeanException {
+        super(ComicBulkImportMBean.class);
+        this.importer = importer;
+        this.repository = repository;
+        this.pool = pool;
+        this.workers = Math.max(1, workers);
+        this.savePages = Math.max(1, savePages);
+        this.checkpoint = new ImportCheckpoint(checkpointFile);
+    }
+
+    /**
+     * Imports the directory every interval milliseconds, so archives added
+     * to it are imported.
+     */
+    synchronized void watch(final String directory, final String targetPath,
+            long interval) {
+        if (timer != null) {
+            timer.cancel();
+        }
+        timer = new Timer("Apache Sling Comic Bulk Import Watcher", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    startImport(directory, targetPath);
+                } catch (IllegalArgumentException iae) {
+                    log.warn("Cannot watch comic directory: {}", iae.getMessage());
+                }
+            }
+        }, 0, interval);
+    }
+
+    /**
+     * Stops watching and cancels the running import.
+     */
+    synchronized void dispose() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        cancelImport();
+    }
+
+    // ---------- ComicBulkImportMBean ----------------------------------------
+
+    public synchronized boolean startImport(String directory, final String targetPath) {
+        if (running) {
+            return false;
+        }
+        final File dir = new File(directory);
+        if (!dir.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        if (targetPath == null || !targetPath.startsWith("/")) {
+            throw new IllegalArgumentException("Not an absolute path: " + targetPath);
+        }
+
+        this.directory = dir.getAbsolutePath();
+        this.issuesSkipped.set(0);
+        this.cancelled = false;
+        this.running = true;
+        this.startTime = System.currentTimeMillis();
+
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                runImport(dir, targetPath);
+            }
+        }, "Apache Sling Comic Bulk Import");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public void cancelImport() {
+        this.cancelled = true;
+    }
+
+    public synchronized void clearCheckpoint() {
+        if (running) {
+            throw new IllegalStateException("Cannot clear the checkpoint while importing");
+        }
+        try {
+            checkpoint.clear();
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe.getMessage());
+        }
+    }
+
+    public synchronized void resetStatistics() {
+        issuesImported.set(0);
+        pagesImported.set(0);
+        issuesFailed.set(0);
+        issuesSkipped.set(0);
+        finishedMsec = 0;
+        if (running) {
+            startTime = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public long getIssuesImported() {
+        return issuesImported.get();
+    }
+
+    public long getPagesImported() {
+        return pagesImported.get();
+    }
+
+    public long getIssuesFailed() {
+        return issuesFailed.get();
+    }
+
+    public long getIssuesSkipped() {
+        return issuesSkipped.get();
+    }
+
+    public long getIssuesQueued() {
+        return queue.size();
+    }
+
+    public synchronized long getDurationMsec() {
+        return running
+                ? finishedMsec + System.currentTimeMillis() - startTime
+                : finishedMsec;
+    }
+
+    public double getIssuesPerSecond() {
+        return perSecond(issuesImported.get());
+    }
+
+    public double getPagesPerSecond() {
+        return perSecond(pagesImported.get());
+    }
+
+    private double perSecond(long count) {
+        final long duration = getDurationMsec();
+        return (duration > 0) ? count * 1000.0 / duration : 0;
+    }
+
+    // ---------- import ------------------------------------------------------
+
+    private void runImport(File dir, String targetPath) {
+        try {
+            checkpoint.load();
+
+            // create the folders up front, workers only add issues
+            final Session session = repository.loginAdministrative(null);
+            try {
+                Node target = session.getRootNode();
+                for (String name : targetPath.substring(1).split("/")) {
+                    if (name.length() > 0) {
+                        target = getOrCreateFolder(target, name);
+                    }
+                }
+                queueArchives(dir, target);
+                session.save();
+            } finally {
+                session.logout();
+            }
+
+            log.info("Importing {} comics from {}, {} imported before",
+                new Object[] { queue.size(), dir, issuesSkipped.get() });
+            final CountDownLatch done = new CountDownLatch(workers);
+            for (int i = 0; i < workers; i++) {
+                pool.execute(new Worker(done));
+            }
+            done.await();
+        } catch (InterruptedException ie) {
+            cancelled = true;
+        } catch (Exception e) {
+            log.error("Bulk import of comics from " + dir + " failed", e);
+        } finally {
+            queue.clear();
+            try {
+                checkpoint.close();
+            } catch (IOException ioe) {
+                log.warn("Cannot close import checkpoint", ioe);
+            }
+            synchronized (this) {
+                finishedMsec += System.currentTimeMillis() - startTime;
+                running = false;
+            }
+            log.info("Bulk import of comics from {} {}: {} issues, {} pages, {} failed",
+                new Object[] { dir, cancelled ? "cancelled" : "finished",
+                    issuesImported.get(), pagesImported.get(), issuesFailed.get() });
+        }
+    }
+
+    /**
+     * Queues the archives of the directory and its subdirectories which have
+     * not been imported before, creating a folder for each subdirectory.
+     */
+    private void queueArchives(File dir, Node folder) throws RepositoryException {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, FILE_ORDER);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                queueArchives(file, getOrCreateFolder(folder, toNodeName(file.getName())));
+            } else if (getExtension(file.getName()) != null) {
+                if (checkpoint.contains(file)) {
+                    issuesSkipped.incrementAndGet();
+                } else {
+                    queue.add(new Archive(file, folder.getPath()));
+                }
+            }
+        }
+    }
+
+    private Node getOrCreateFolder(Node parent, String name) throws RepositoryException {
+        return parent.hasNode(name) ? parent.getNode(name) : parent.addNode(name, FOLDER_TYPE);
+    }
+
+    /**
+     * Returns the lower case import extension of a comic archive or
+     * <code>null</code> if the file is not a comic archive.
+     */
+    static String getExtension(String fileName) {
+        final String lower = fileName.toLowerCase();
+        if (lower.endsWith(BaseImportLoader.EXT_CBZ)) {
+            return BaseImportLoader.EXT_CBZ;
+        } else if (lower.endsWith(BaseImportLoader.EXT_CBR)) {
+            return BaseImportLoader.EXT_CBR;
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the characters not allowed in node names.
+     */
+    static String toNodeName(String fileName) {
+        final StringBuilder name = new StringBuilder(fileName.length());
+        for (int i = 0; i < fileName.length(); i++) {
+            final char c = fileName.charAt(i);
+            if ("/:[]*|'\"".indexOf(c) >= 0 || Character.isISOControl(c)) {
+                name.append('_');
+            } else {
+                name.append(c);
+            }
+        }
+        if (name.length() == 0 || ".".equals(name.toString())
+            || "..".equals(name.toString())) {
+            name.insert(0, '_');
+        }
+        return name.toString();
+    }
+
+    /**
+     * Counts the pages of an imported issue.
+     */
+    private static int countPages(Node issue) throws RepositoryException {
+        if (issue == null) {
+            return 0;
+        }
+        int pages = 0;
+        final NodeIterator children = issue.getNodes();
+        while (children.hasNext()) {
+            children.nextNode();
+            pages++;
+        }
+        return pages;
+    }
+
+    private static final class Archive {
+
+        final File file;
+
+        final String parentPath;
+
+        int attempts;
+
+        Archive(File file, String parentPath) {
+            this.file = file;
+            this.parentPath = parentPath;
+        }
+
+        /** The import name of the archive, the issue name and extension */
+        String getImportName() {
+            final String fileName = file.getName();
+            final String extension = getExtension(fileName);
+            return toNodeName(fileName.substring(0,
+                fileName.length() - extension.length())) + extension;
+        }
+    }
+
+    /** An issue parsed but not saved yet */
+    private static final class Pending {
+
+        final Archive archive;
+
+        final Node parent;
+
+        final DefaultContentCreator creator;
+
+        final int pages;
+
+        Pending(Archive archive, Node parent, DefaultContentCreator creator, int pages) {
+            this.archive = archive;
+            this.parent = parent;
+            this.creator = creator;
+            this.pages = pages;
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        private final CountDownLatch done;
+
+        private final List<Pending> pending = new ArrayList<Pending>();
+
+        private int pendingPages;
+
+        Worker(CountDownLatch done) {
+            this.done = done;
+        }
+
+        public void run() {
+            Session session = null;
+            try {
+                session = repository.loginAdministrative(null);
+                while (!cancelled) {
+                    final Archive archive = queue.poll();
+                    if (archive == null && pending.isEmpty()) {
+                        break;
+                    }
+                    if (archive != null) {
+                        try {
+                            parse(session, archive);
+                        } catch (Exception e) {
+                            failed(session, archive, e);
+                            continue;
+                        }
+                    }
+                    if (archive == null || pendingPages >= savePages) {
+                        try {
+                            save(session);
+                        } catch (Exception e) {
+                            failed(session, null, e);
+                        }
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    // cancelled, keep what has been parsed
+                    try {
+                        save(session);
+                    } catch (Exception e) {
+                        log.warn("Cannot save comics parsed before cancelling", e);
+                    }
+                }
+            } catch (RepositoryException re) {
+                log.error("Cannot log into the repository for the bulk import", re);
+            } finally {
+                if (session != null) {
+                    session.logout();
+                }
+                done.countDown();
+            }
+        }
+
+        private void parse(Session session, Archive archive)
+                throws RepositoryException, IOException {
+            final Node parent = (Node) session.getItem(archive.parentPath);
+            final DefaultContentCreator creator;
+            final InputStream ins = new FileInputStream(archive.file);
+            try {
+                // no batch saves, they would save the other pending issues
+                // of this worker's session as well
+                creator = importer.parseContent(parent, archive.getImportName(),
+                    ins, IMPORT_OPTIONS, null, false);
+            } finally {
+                ins.close();
+            }
+            final int pages = countPages(creator.getCreatedRootNode());
+            pending.add(new Pending(archive, parent, creator, pages));
+            pendingPages += pages;
+        }
+
+        /**
+         * Saves the pending issues. Once saved, an issue is counted as
+         * imported and never queued again, even if it cannot be finished or
+         * recorded in the checkpoint.
+         */
+        private void save(Session session) throws RepositoryException {
+            session.save();
+            final List<Pending> saved = new ArrayList<Pending>(pending);
+            pending.clear();
+            pendingPages = 0;
+            for (Pending issue : saved) {
+                issuesImported.incrementAndGet();
+                pagesImported.addAndGet(issue.pages);
+                try {
+                    importer.finishImport(issue.parent, issue.creator, null);
+                } catch (RepositoryException re) {
+                    log.warn("Cannot finish the import of " + issue.archive.file, re);
+                }
+                try {
+                    checkpoint.add(issue.archive.file);
+                } catch (IOException ioe) {
+                    log.warn("Cannot record the import of " + issue.archive.file
+                        + ", it is imported again by the next run", ioe);
+                }
+            }
+        }
+
+        /**
+         * Drops the unsaved changes and queues the archives which have not
+         * been saved again, each of them once.
+         *
+         * @param archive The archive which failed to parse or
+         *            <code>null</code> if the save failed
+         */
+        private void failed(Session session, Archive archive, Exception e) {
+            try {
+                session.refresh(false);
+            } catch (RepositoryException re) {
+                log.warn("Cannot drop the changes of a failed import", re);
+            }
+            if (archive != null) {
+                retry(archive, e);
+                // the other issues of the batch are not at fault
+                for (Pending issue : pending) {
+                    if (issue.archive != archive) {
+                        queue.add(issue.archive);
+                    }
+                }
+            } else {
+                for (Pending issue : pending) {
+                    retry(issue.archive, e);
+                }
+            }
+            pending.clear();
+            pendingPages = 0;
+        }
+
+        private void retry(Archive archive, Exception e) {
+            if (++archive.attempts < MAX_ATTEMPTS) {
+                log.debug("Retrying import of {}: {}", archive.file, e.toString());
+                queue.add(archive);
+            } else {
+                issuesFailed.incrementAndGet();
+                log.error("Cannot import comic " + archive.file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.contentloader.internal;
+
+/**
+ * This is the management interface of the bulk import of comic libraries.
+ * The statistics are collected over all imports since last resetting the
+ * statistics, rates refer to the time spent importing.
+ */
+public interface ComicBulkImportMBean {
+
+    /**
+     * Starts importing the comics below the directory into the repository.
+     * The import runs in the background.
+     *
+     * @param directory The directory holding the cbr and cbz files
+     * @param targetPath The repository path below which the issues are
+     *            created, subdirectories become folders
+     * @return <code>false</code> if an import is already running
+     */
+    boolean startImport(String directory, String targetPath);
+
+    /**
+     * Stops the running import once the issues being imported are done. A
+     * later import of the same directory continues where it stopped.
+     */
+    void cancelImport();
+
+    /**
+     * Forgets which archives have been imported, so that the next import
+     * imports all archives again.
+     */
+    void clearCheckpoint();
+
+    /**
+     * Resets all statistics values and restarts from zero.
+     */
+    void resetStatistics();
+
+    /**
+     * Returns <code>true</code> if an import is running.
+     */
+    boolean isRunning();
+
+    /**
+     * Returns the directory of the running or last import.
+     */
+    String getDirectory();
+
+    /**
+     * Returns the number of issues imported.
+     */
+    long getIssuesImported();
+
+    /**
+     * Returns the number of pages of the issues imported.
+     */
+    long getPagesImported();
+
+    /**
+     * Returns the number of archives which could not be imported.
+     */
+    long getIssuesFailed();
+
+    /**
+     * Returns the number of archives skipped by the running or last import
+     * because they had been imported before.
+     */
+    long getIssuesSkipped();
+
+    /**
+     * Returns the number of archives waiting to be imported.
+     */
+    long getIssuesQueued();
+
+    /**
+     * Returns the time in milliseconds the import has been running.
+     */
+    long getDurationMsec();
+
+    /**
+     * Returns the number of issues imported per second.
+     */
+    double getIssuesPerSecond();
+
+    /**
+     * Returns the number of pages imported per second.
+     */
+    double getPagesPerSecond();
+}
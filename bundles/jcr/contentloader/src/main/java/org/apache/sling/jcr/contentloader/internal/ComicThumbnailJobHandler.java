@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.contentloader.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.event.jobs.JobProcessor;
+import org.apache.sling.event.jobs.JobUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.apache.sling.jcr.contentloader.ImportOptions;
+import org.apache.sling.jcr.contentloader.internal.readers.ComicReader;
+import org.apache.sling.jcr.contentloader.internal.readers.PageManifest;
+import org.apache.sling.jcr.contentloader.internal.readers.PageSpool;
+import org.apache.sling.jcr.contentloader.internal.readers.Rendition;
+import org.apache.sling.jcr.contentloader.internal.readers.ThumbnailPipeline;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>ComicThumbnailJobHandler</code> renders the page thumbnails of
+ * comics imported with deferred thumbnails.
+ * <p>
+ * There is one job per issue. Pages are rendered in order and saved one by
+ * one, so thumbnails show up while the job runs and the
+ * {@link ComicReader#THUMBNAIL_STATUS} of each page can be polled. If the job
+ * is restarted, pages which are already done are skipped. The renditions of
+ * all rendered pages are added to the {@link ComicReader#PAGES page manifest}
+ * of the issue.
+ * <p>
+ * The issue is marked <code>done</code> only once every page has been
+ * rendered. If a page could not be rendered, or the job fails and is
+ * rescheduled, the issue is marked <code>partial</code> until a later run
+ * renders the remaining pages.
+ *
+ * @scr.component immediate="true" metatype="no"
+ * @scr.property name="service.vendor" value="The Apache Software Foundation"
+ * @scr.property name="service.description"
+ *               value="Apache Sling Comic Thumbnail Job Handler"
+ * @scr.property name="event.topics"
+ *               value="org/apache/sling/jcr/contentloader/comic/thumbnails"
+ * @scr.service interface="org.osgi.service.event.EventHandler"
+ */
+public class ComicThumbnailJobHandler implements EventHandler, JobProcessor {
+
+    /** The job topic of the thumbnail jobs. */
+    public static final String TOPIC = "org/apache/sling/jcr/contentloader/comic/thumbnails";
+
+    /** The name of the job queue running the thumbnail jobs. */
+    public static final String QUEUE_NAME = "comic-thumbnails";
+
+    /** The job property holding the path of the issue node. */
+    public static final String PROPERTY_ISSUE_PATH = "comic.issue.path";
+
+    /** The job property holding the rendition definitions. */
+    public static final String PROPERTY_RENDITIONS = "comic.renditions";
+
+    /** Maximum number of issues rendered at the same time. */
+    private static final int QUEUE_PARALLEL = 2;
+
+    private static final String BIN_CONTENT = "bin/jcr:content";
+
+    /** Options of the content creator writing the thumbnails. */
+    private static final ImportOptions OPTIONS = new ImportOptions() {
+
+        @Override
+        public boolean isOverwrite() {
+            return false;
+        }
+
+        @Override
+        public boolean isPropertyOverwrite() {
+            return true;
+        }
+
+        @Override
+        public boolean isCheckin() {
+            return false;
+        }
+
+        @Override
+        public boolean isIgnoredImportProvider(String extension) {
+            return true;
+        }
+    };
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /** @scr.reference */
+    private SlingRepository repository;
+
+    /**
+     * Creates the job event rendering the thumbnails of an issue. The job
+     * runs on its own queue so thumbnail rendering never delays other jobs.
+     *
+     * @param issuePath The path of the issue node
+     * @param renditions The definitions of the renditions to render
+     * @return The event to post
+     */
+    public static Event createJob(String issuePath, String[] renditions) {
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(JobUtil.PROPERTY_JOB_TOPIC, TOPIC);
+        props.put(JobUtil.PROPERTY_JOB_NAME, QUEUE_NAME + ":" + issuePath);
+        props.put(JobUtil.PROPERTY_JOB_QUEUE_NAME, QUEUE_NAME);
+        props.put(JobUtil.PROPERTY_JOB_PARALLEL, QUEUE_PARALLEL);
+        props.put(PROPERTY_ISSUE_PATH, issuePath);
+        props.put(PROPERTY_RENDITIONS, renditions);
+        return new Event(JobUtil.TOPIC_JOB, props);
+    }
+
+    /**
+     * @see org.osgi.service.event.EventHandler#handleEvent(org.osgi.service.event.Event)
+     */
+    public void handleEvent(Event event) {
+        if ( JobUtil.isJobEvent(event) ) {
+            JobUtil.processJob(event, this);
+        }
+    }
+
+    /**
+     * @see org.apache.sling.event.jobs.JobProcessor#process(org.osgi.service.event.Event)
+     */
+    public boolean process(Event job) {
+        final String path = (String) job.getProperty(PROPERTY_ISSUE_PATH);
+        final String[] renditions = (String[]) job.getProperty(PROPERTY_RENDITIONS);
+        Session session = null;
+        try {
+            session = repository.loginAdministrative(null);
+            if ( !session.nodeExists(path) ) {
+                log.info("Issue {} has been removed, skipping its thumbnails", path);
+                return true;
+            }
+            renderThumbnails(session.getNode(path),
+                (renditions == null) ? null : Rendition.parse(renditions));
+            return true;
+        } catch (RepositoryException re) {
+            log.error("Unable to render the thumbnails of " + path, re);
+            markPartial(session, path);
+            // reschedule
+            return false;
+        } catch (IOException ioe) {
+            log.error("Unable to render the thumbnails of " + path, ioe);
+            markPartial(session, path);
+            return false;
+        } finally {
+            if ( session != null ) {
+                session.logout();
+            }
+        }
+    }
+
+    private void renderThumbnails(final Node issue, final Rendition[] renditions)
+    throws RepositoryException, IOException {
+        final Session session = issue.getSession();
+        final DefaultContentCreator creator = new DefaultContentCreator(null);
+        creator.init(OPTIONS, Collections.<String, ImportProvider>emptyMap(), null, null);
+        creator.prepareParsing(issue, null);
+
+        // rendered inline, this job already runs on its own queue
+        final ThumbnailPipeline thumbnails = ComicReader.createThumbnailPipeline(creator, null, 1,
+            renditions);
+        final PageManifest manifest = getManifest(issue);
+        thumbnails.setManifest(manifest);
+        try {
+            final NodeIterator pages = issue.getNodes();
+            while ( pages.hasNext() ) {
+                final Node page = pages.nextNode();
+                if ( manifest != null && page.hasProperty(ComicReader.RENDITIONS) ) {
+                    // rendered by an earlier run of this job
+                    manifest.addRenditions(page.getName(), Rendition.parse(
+                        toStrings(page.getProperty(ComicReader.RENDITIONS).getValues())));
+                }
+                if ( !isPending(page) || !page.hasNode(BIN_CONTENT) ) {
+                    continue;
+                }
+                final Node content = page.getNode(BIN_CONTENT);
+                final String name = page.getName();
+                final int posExt = name.lastIndexOf('.');
+                if ( posExt <= 0 ) {
+                    creator.switchCurrentNode(name, null);
+                    creator.createProperty(ComicReader.THUMBNAIL_STATUS, PropertyType.STRING,
+                        ComicReader.THUMBNAIL_STATUS_FAILED);
+                    creator.finishNode();
+                } else {
+                    final PageSpool spool = thumbnails.nextSpool();
+                    final InputStream ins = content.getProperty("jcr:data").getStream();
+                    try {
+                        spool.spool(ins);
+                    } finally {
+                        ins.close();
+                    }
+                    thumbnails.submit(name, spool,
+                        content.getProperty("jcr:mimeType").getString(),
+                        name.substring(posExt));
+                    thumbnails.finish();
+                }
+
+                // make each thumbnail visible as soon as it is there
+                session.save();
+            }
+
+            if ( manifest != null ) {
+                creator.createProperty(ComicReader.PAGES, PropertyType.STRING, manifest.toString());
+            }
+            // pages failed by an earlier run are skipped above, check them all
+            creator.createProperty(ComicReader.THUMBNAIL_STATUS, PropertyType.STRING,
+                allPagesDone(issue) ? ComicReader.THUMBNAIL_STATUS_DONE
+                        : ComicReader.THUMBNAIL_STATUS_PARTIAL);
+            session.save();
+        } finally {
+            thumbnails.dispose();
+        }
+    }
+
+    private PageManifest getManifest(final Node issue) throws RepositoryException {
+        if ( !issue.hasProperty(ComicReader.PAGES) ) {
+            return null;
+        }
+        try {
+            return PageManifest.parse(issue.getProperty(ComicReader.PAGES).getString());
+        } catch (JSONException je) {
+            log.warn("Ignoring the invalid page manifest of " + issue.getPath(), je);
+            return null;
+        }
+    }
+
+    private static String[] toStrings(final Value[] values) throws RepositoryException {
+        final String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = values[i].getString();
+        }
+        return strings;
+    }
+
+    private boolean allPagesDone(final Node issue) throws RepositoryException {
+        final NodeIterator pages = issue.getNodes();
+        while ( pages.hasNext() ) {
+            final Node page = pages.nextNode();
+            if ( page.hasProperty(ComicReader.THUMBNAIL_STATUS)
+                    && !ComicReader.THUMBNAIL_STATUS_DONE.equals(
+                        page.getProperty(ComicReader.THUMBNAIL_STATUS).getString()) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the issue as partially rendered after the job failed. Pages
+     * saved so far are kept, the rescheduled job renders the others.
+     */
+    private void markPartial(final Session session, final String path) {
+        if ( session == null ) {
+            return;
+        }
+        try {
+            session.refresh(false);
+            if ( session.nodeExists(path) ) {
+                session.getNode(path).setProperty(ComicReader.THUMBNAIL_STATUS,
+                    ComicReader.THUMBNAIL_STATUS_PARTIAL);
+                session.save();
+            }
+        } catch (RepositoryException re) {
+            log.warn("Unable to mark the thumbnails of " + path + " as partial", re);
+        }
+    }
+
+    private boolean isPending(final Node page) throws RepositoryException {
+        return page.hasProperty(ComicReader.THUMBNAIL_STATUS)
+            && ComicReader.THUMBNAIL_STATUS_PENDING.equals(
+                page.getProperty(ComicReader.THUMBNAIL_STATUS).getString());
+    }
+}
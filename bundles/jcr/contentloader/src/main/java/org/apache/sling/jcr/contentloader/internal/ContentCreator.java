@@ -19,6 +19,7 @@
 package org.apache.sling.jcr.contentloader.internal;
 
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 
 import javax.jcr.RepositoryException;
@@ -133,6 +134,17 @@ public interface ContentCreator {
      */
     boolean switchCurrentNode(String subPath, String newNodeType)
     throws RepositoryException;
+
+    /**
+     * Orders the child nodes of the current node. The listed children are
+     * moved to the end in the given order, children which are not listed
+     * keep their position before them. Nothing is done if the current node
+     * does not have orderable child nodes.
+     * @param names The names of the child nodes in their new order
+     * @throws RepositoryException
+     */
+    void orderChildren(List<String> names)
+    throws RepositoryException;
    
    
     /**
@@ -26,11 +26,13 @@ import org.apache.jackrabbit.api.security.user.UserManager;
 import org.apache.sling.jcr.base.util.AccessControlUtil;
 import org.apache.sling.jcr.contentloader.ContentImportListener;
 import org.apache.sling.jcr.contentloader.ImportOptions;
+import org.apache.sling.jcr.resource.JcrResourceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
@@ -57,6 +59,7 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
 import javax.jcr.ValueFactory;
+import javax.jcr.nodetype.NoSuchNodeTypeException;
 
 /**
  * The <code>ContentLoader</code> creates the nodes and properties.
@@ -64,6 +67,27 @@ import javax.jcr.ValueFactory;
  */
 public class DefaultContentCreator implements ContentCreator {
 
+    /**
+     * Name of the property marking the root node of an import of which only
+     * some batches have been saved, see {@link #setBatchSize(int, long)}.
+     */
+    public static final String IMPORT_STATUS = "importStatus";
+
+    /** Value of the {@link #IMPORT_STATUS} property of incomplete imports. */
+    public static final String IMPORT_STATUS_INCOMPLETE = "incomplete";
+
+    /**
+     * Name of the mixin node type defining the {@link #ENTITY_TAG} property.
+     */
+    public static final String MIX_ENTITY_TAG = "sling:EntityTag";
+
+    /**
+     * Name of the property holding the hex encoded MD5 hash of the content of
+     * the files created by {@link #createFileAndResourceNode}, which is used
+     * to provide an HTTP entity tag without reading the content.
+     */
+    public static final String ENTITY_TAG = "sling:entityTag";
+
     /** default log */
     final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -104,6 +128,18 @@ public class DefaultContentCreator implements ContentCreator {
     /** Optional listener to get notified about changes */
     private ContentImportListener importListener;
     
+    /** Number of nodes after which the session is saved, 0 to never save. */
+    private int batchNodes;
+
+    /** Number of binary bytes after which the session is saved, 0 to never save. */
+    private long batchBytes;
+
+    /** Number of nodes added since the session was saved. */
+    private int pendingNodes;
+
+    /** Number of binary bytes set since the session was saved. */
+    private long pendingBytes;
+
     /**
      * A one time use seed to randomize the user location.
      */
@@ -159,6 +195,40 @@ public class DefaultContentCreator implements ContentCreator {
         this.defaultName = defaultName;
         isParentNodeImport = defaultName == null;
         this.createdRootNode = null;
+        this.pendingNodes = 0;
+        this.pendingBytes = 0;
+    }
+
+    /**
+     * Saves the session whenever the given number of nodes has been added or
+     * the given number of binary bytes has been set, so that the transient
+     * space does not grow with the size of the import. The session is only
+     * saved once a node is finished.
+     * <p>
+     * Once a batch has been saved, the root node of the import is marked
+     * with the {@link #IMPORT_STATUS} property until
+     * {@link #completeImport()} is called. A failed import thus leaves a
+     * marked node, which may be removed or replaced by importing again with
+     * overwrite or continued by importing again without overwrite.
+     *
+     * @param nodes The number of nodes per batch, 0 to not count nodes
+     * @param bytes The number of binary bytes per batch, 0 to not count bytes
+     */
+    public void setBatchSize(int nodes, long bytes) {
+        this.batchNodes = nodes;
+        this.batchBytes = bytes;
+    }
+
+    /**
+     * Removes the {@link #IMPORT_STATUS} marker from the root node of the
+     * import, to be called once all content has been created. The removal
+     * is saved with the remaining content.
+     */
+    public void completeImport() throws RepositoryException {
+        final Node root = this.createdRootNode;
+        if ( root != null && root.hasProperty(IMPORT_STATUS) ) {
+            root.getProperty(IMPORT_STATUS).remove();
+        }
     }
 
     /**
@@ -268,6 +338,7 @@ public class DefaultContentCreator implements ContentCreator {
             	checkoutIfNecessary(parentNode);
                 node = parentNode.addNode(name);
                 addNodeToCreatedList(node);
+                this.pendingNodes++;
                 if ( this.importListener != null ) {
                 	this.importListener.onCreate(node.getPath());
                 }
@@ -277,6 +348,7 @@ public class DefaultContentCreator implements ContentCreator {
             	checkoutIfNecessary(parentNode);
                 node = parentNode.addNode(name, primaryNodeType);
                 addNodeToCreatedList(node);
+                this.pendingNodes++;
                 if ( this.importListener != null ) {
                 	this.importListener.onCreate(node.getPath());
                 }
@@ -480,6 +552,22 @@ public class DefaultContentCreator implements ContentCreator {
         final Node node = this.parentNodeStack.pop();
         // resolve REFERENCE property values pointing to this node
         resolveReferences(node);
+
+        if ( (this.batchNodes > 0 && this.pendingNodes >= this.batchNodes)
+                || (this.batchBytes > 0 && this.pendingBytes >= this.batchBytes) ) {
+            saveBatch(node.getSession());
+        }
+    }
+
+    private void saveBatch(Session session) throws RepositoryException {
+        final Node root = this.createdRootNode;
+        if ( root != null && !root.hasProperty(IMPORT_STATUS) ) {
+            root.setProperty(IMPORT_STATUS, IMPORT_STATUS_INCOMPLETE);
+        }
+        log.debug("Saving batch of {} nodes and {} bytes", this.pendingNodes, this.pendingBytes);
+        session.save();
+        this.pendingNodes = 0;
+        this.pendingBytes = 0;
     }
 
     private void addNodeToCreatedList(Node node) throws RepositoryException {
@@ -662,6 +750,9 @@ public class DefaultContentCreator implements ContentCreator {
         	checkoutIfNecessary(node);
             final Value jcrValue = this.createValue(node.getSession().getValueFactory(), value);
             node.setProperty(name, jcrValue);
+            if ( this.batchBytes > 0 && value instanceof InputStream ) {
+                this.pendingBytes += node.getProperty(name).getLength();
+            }
             if ( this.importListener != null ) {
             	this.importListener.onModify(node.getProperty(name).getPath());
             }
@@ -748,7 +839,30 @@ public class DefaultContentCreator implements ContentCreator {
         }
         this.createProperty("jcr:mimeType", mimeType, true);
         this.createProperty("jcr:lastModified", lastModified, true);
-        this.createProperty("jcr:data", data, true);
+        final DigestInputStream digestData = new DigestInputStream(data,
+            JcrResourceUtil.createEntityTagDigest());
+        this.createProperty("jcr:data", digestData, true);
+        this.setEntityTag(JcrResourceUtil.getEntityTag(digestData.getMessageDigest()));
+    }
+
+    /**
+     * Sets the entity tag on the current node if the {@link #MIX_ENTITY_TAG}
+     * node type is available.
+     */
+    private void setEntityTag(String entityTag) throws RepositoryException {
+        final Node node = this.parentNodeStack.peek();
+        try {
+            if (!node.isNodeType(MIX_ENTITY_TAG)) {
+                if (!node.canAddMixin(MIX_ENTITY_TAG)) {
+                    return;
+                }
+                node.addMixin(MIX_ENTITY_TAG);
+            }
+        } catch (NoSuchNodeTypeException nsnte) {
+            log.debug("setEntityTag: Node type {} is not registered", MIX_ENTITY_TAG);
+            return;
+        }
+        this.createProperty(ENTITY_TAG, entityTag, true);
     }
 
     /**
@@ -770,6 +884,7 @@ public class DefaultContentCreator implements ContentCreator {
             	checkoutIfNecessary(node);
                 final Node n = node.addNode(token, newNodeType);
                 addNodeToCreatedList(n);
+                this.pendingNodes++;
                 if ( this.importListener != null ) {
                 	this.importListener.onCreate(node.getPath());
                 }
@@ -780,6 +895,23 @@ public class DefaultContentCreator implements ContentCreator {
         return true;
     }
 
+    /**
+     * @see org.apache.sling.jcr.contentloader.internal.ContentCreator#orderChildren(java.util.List)
+     */
+    public void orderChildren(List<String> names)
+    throws RepositoryException {
+        final Node node = this.parentNodeStack.peek();
+        if ( !node.getPrimaryNodeType().hasOrderableChildNodes() ) {
+            return;
+        }
+        checkoutIfNecessary(node);
+        for(final String name : names) {
+            if ( node.hasNode(name) ) {
+                node.orderBefore(name, null);
+            }
+        }
+    }
+
 
 	/* (non-Javadoc)
 	 * @see org.apache.sling.jcr.contentloader.internal.ContentCreator#createGroup(java.lang.String, java.lang.String[], java.util.Map)
@@ -20,10 +20,16 @@ package org.apache.sling.jcr.contentloader.internal;
 
 import static javax.jcr.ImportUUIDBehavior.IMPORT_UUID_CREATE_NEW;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.List;
+import java.util.Set;
 
 import javax.jcr.InvalidSerializedDataException;
 import javax.jcr.Node;
@@ -31,9 +37,20 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 
 import org.apache.sling.commons.mime.MimeTypeService;
+import org.apache.sling.commons.osgi.OsgiUtil;
+import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.ThreadPoolManager;
+import org.apache.sling.jcr.api.SlingRepository;
 import org.apache.sling.jcr.contentloader.ContentImportListener;
 import org.apache.sling.jcr.contentloader.ContentImporter;
 import org.apache.sling.jcr.contentloader.ImportOptions;
+import org.apache.sling.jcr.contentloader.internal.readers.ComicReader;
+import org.apache.sling.jcr.contentloader.internal.readers.Rendition;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.event.EventAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +73,273 @@ public class DefaultContentImporter extends BaseImportLoader implements JcrConte
     /** default log */
     private final Logger log = LoggerFactory.getLogger(DefaultContentImporter.class);
 
+    /** Default number of threads rendering comic page thumbnails. */
+    private static final int DEFAULT_THUMBNAIL_POOL_SIZE = 4;
+
+    /** Default number of pages of one comic rendered at the same time. */
+    private static final int DEFAULT_THUMBNAIL_PARALLELISM = 2;
+
+    /**
+     * @scr.property valueRef="DEFAULT_THUMBNAIL_POOL_SIZE"
+     */
+    private static final String PROP_THUMBNAIL_POOL_SIZE = "comic.thumbnail.poolSize";
+
+    /**
+     * @scr.property valueRef="DEFAULT_THUMBNAIL_PARALLELISM"
+     */
+    private static final String PROP_THUMBNAIL_PARALLELISM = "comic.thumbnail.parallelism";
+
+    /** By default thumbnails are rendered while importing. */
+    private static final boolean DEFAULT_THUMBNAIL_DEFERRED = false;
+
+    /**
+     * @scr.property valueRef="DEFAULT_THUMBNAIL_DEFERRED"
+     */
+    private static final String PROP_THUMBNAIL_DEFERRED = "comic.thumbnail.deferred";
+
+    /**
+     * The renditions rendered for each comic page, see {@link Rendition}.
+     *
+     * @scr.property values.0="thumb:150" values.1="screen:480:jpg:0.8"
+     *               values.2="retina:1080:jpg:0.85"
+     */
+    private static final String PROP_RENDITIONS = "comic.renditions";
+
+    /** Default number of nodes after which an import saves. */
+    private static final int DEFAULT_BATCH_NODES = 500;
+
+    /**
+     * @scr.property valueRef="DEFAULT_BATCH_NODES"
+     */
+    private static final String PROP_BATCH_NODES = "import.batch.nodes";
+
+    /** Default number of megabytes of binaries after which an import saves. */
+    private static final int DEFAULT_BATCH_SIZE = 32;
+
+    /**
+     * @scr.property valueRef="DEFAULT_BATCH_SIZE"
+     */
+    private static final String PROP_BATCH_SIZE = "import.batch.size";
+
+    /**
+     * The extensions of the imports which are saved in batches. Other
+     * formats may create nodes whose mandatory items are only added after
+     * their child nodes, so they are saved at once.
+     *
+     * @scr.property values.0=".cbz" values.1=".cbr"
+     */
+    private static final String PROP_BATCH_EXTENSIONS = "import.batch.extensions";
+
+    /** Default number of comic archives imported at the same time by a bulk import. */
+    private static final int DEFAULT_BULK_THREADS = 4;
+
+    /**
+     * @scr.property valueRef="DEFAULT_BULK_THREADS"
+     */
+    private static final String PROP_BULK_THREADS = "comic.bulk.threads";
+
+    /** Default number of pages after which a bulk import saves. */
+    private static final int DEFAULT_BULK_SAVE_PAGES = 500;
+
+    /**
+     * @scr.property valueRef="DEFAULT_BULK_SAVE_PAGES"
+     */
+    private static final String PROP_BULK_SAVE_PAGES = "comic.bulk.savePages";
+
+    /**
+     * The directory watched by the bulk import, none by default.
+     *
+     * @scr.property value=""
+     */
+    private static final String PROP_BULK_DIRECTORY = "comic.bulk.directory";
+
+    private static final String DEFAULT_BULK_TARGET = "/var/content/comics";
+
+    /**
+     * @scr.property valueRef="DEFAULT_BULK_TARGET"
+     */
+    private static final String PROP_BULK_TARGET = "comic.bulk.target";
+
+    /** By default the watched directory is only imported on activation. */
+    private static final int DEFAULT_BULK_INTERVAL = 0;
+
+    /**
+     * @scr.property valueRef="DEFAULT_BULK_INTERVAL"
+     */
+    private static final String PROP_BULK_INTERVAL = "comic.bulk.interval";
+
+    /**
+     * The thread pool manager providing the pool which renders the
+     * thumbnails of imported comics.
+     *
+     * @scr.reference
+     */
+    private ThreadPoolManager threadPoolManager;
+
+    /** The pool rendering the thumbnails of imported comics. */
+    private ThreadPool thumbnailPool;
+
+    /** The comic readers using the thumbnail pool. */
+    private final List<ComicReader> comicReaders = new ArrayList<ComicReader>();
+
+    /** Whether comic thumbnails are rendered by a background job. */
+    private boolean deferThumbnails;
+
+    /** The renditions rendered for each comic page. */
+    private String[] renditions;
+
+    /**
+     * The event admin used to queue the thumbnail jobs.
+     *
+     * @scr.reference
+     */
+    private EventAdmin eventAdmin;
+
+    private int batchNodes;
+
+    private long batchBytes;
+
+    /** The extensions of the imports saved in batches. */
+    private Set<String> batchExtensions;
+
+    /**
+     * The repository into which comic libraries are bulk imported.
+     *
+     * @scr.reference
+     */
+    private SlingRepository repository;
+
+    /** The pool running the workers of the bulk import. */
+    private ThreadPool bulkPool;
+
+    /** The bulk import of comic libraries, managed through JMX. */
+    private ComicBulkImport bulkImport;
+
+    private ServiceRegistration bulkImportRegistration;
+
+    /** Activates this component, called by SCR before registering as a service */
+    protected void activate(ComponentContext componentContext) {
+        final Dictionary<?, ?> props = componentContext.getProperties();
+        final int poolSize = OsgiUtil.toInteger(props.get(PROP_THUMBNAIL_POOL_SIZE),
+            DEFAULT_THUMBNAIL_POOL_SIZE);
+        final int parallelism = OsgiUtil.toInteger(props.get(PROP_THUMBNAIL_PARALLELISM),
+            DEFAULT_THUMBNAIL_PARALLELISM);
+
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(poolSize);
+        config.setMaxPoolSize(poolSize);
+        config.setQueueSize(-1); // unlimited, each import bounds its own pages
+        config.setShutdownGraceful(true);
+        config.setDaemon(true);
+        this.thumbnailPool = threadPoolManager.create(config, "Apache Sling Comic Thumbnail Pool");
+        this.deferThumbnails = OsgiUtil.toBoolean(props.get(PROP_THUMBNAIL_DEFERRED),
+            DEFAULT_THUMBNAIL_DEFERRED);
+        this.renditions = OsgiUtil.toStringArray(props.get(PROP_RENDITIONS),
+            Rendition.DEFAULT_PROFILE);
+        try {
+            Rendition.parse(this.renditions);
+        } catch (IllegalArgumentException iae) {
+            log.error("Invalid comic renditions, using the defaults", iae);
+            this.renditions = Rendition.DEFAULT_PROFILE;
+        }
+
+        this.batchNodes = OsgiUtil.toInteger(props.get(PROP_BATCH_NODES),
+            DEFAULT_BATCH_NODES);
+        this.batchBytes = OsgiUtil.toInteger(props.get(PROP_BATCH_SIZE),
+            DEFAULT_BATCH_SIZE) * 1024L * 1024L;
+        this.batchExtensions = new HashSet<String>(Arrays.asList(
+            OsgiUtil.toStringArray(props.get(PROP_BATCH_EXTENSIONS),
+                new String[] { EXT_CBZ, EXT_CBR })));
+
+        // comics imported through this service use their own readers,
+        // never let a single import occupy the whole pool
+        defaultImportProviders.put(EXT_CBZ, createComicProvider(ComicReader.CBZ_COMIC_TYPE,
+            Math.min(parallelism, poolSize)));
+        defaultImportProviders.put(EXT_CBR, createComicProvider(ComicReader.CBR_COMIC_TYPE,
+            Math.min(parallelism, poolSize)));
+
+        activateBulkImport(componentContext);
+    }
+
+    private void activateBulkImport(ComponentContext componentContext) {
+        final Dictionary<?, ?> props = componentContext.getProperties();
+        final BundleContext bundleContext = componentContext.getBundleContext();
+        final File checkpointFile = bundleContext.getDataFile("comic-bulk-import.checkpoint");
+        if (checkpointFile == null) {
+            log.warn("No bundle data area, bulk import of comics is not available");
+            return;
+        }
+        final int threads = OsgiUtil.toInteger(props.get(PROP_BULK_THREADS),
+            DEFAULT_BULK_THREADS);
+        final int savePages = OsgiUtil.toInteger(props.get(PROP_BULK_SAVE_PAGES),
+            DEFAULT_BULK_SAVE_PAGES);
+
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(threads);
+        config.setMaxPoolSize(threads);
+        config.setQueueSize(-1);
+        config.setShutdownGraceful(true);
+        config.setDaemon(true);
+        this.bulkPool = threadPoolManager.create(config, "Apache Sling Comic Bulk Import Pool");
+
+        try {
+            this.bulkImport = new ComicBulkImport(this, repository, bulkPool,
+                threads, savePages, checkpointFile);
+
+            final Dictionary<String, String> mbeanProps = new Hashtable<String, String>();
+            mbeanProps.put("jmx.objectname",
+                "org.apache.sling:type=contentloader,service=ComicBulkImport");
+            this.bulkImportRegistration = bundleContext.registerService(
+                ComicBulkImportMBean.class.getName(), bulkImport, mbeanProps);
+        } catch (Throwable t) {
+            log.debug("Unable to register comic bulk import mbean", t);
+        }
+
+        final String directory = OsgiUtil.toString(props.get(PROP_BULK_DIRECTORY), null);
+        if (this.bulkImport != null && directory != null && directory.length() > 0) {
+            final String target = OsgiUtil.toString(props.get(PROP_BULK_TARGET),
+                DEFAULT_BULK_TARGET);
+            final int interval = OsgiUtil.toInteger(props.get(PROP_BULK_INTERVAL),
+                DEFAULT_BULK_INTERVAL);
+            if (interval > 0) {
+                this.bulkImport.watch(directory, target, interval * 1000L);
+            } else {
+                try {
+                    this.bulkImport.startImport(directory, target);
+                } catch (IllegalArgumentException iae) {
+                    log.warn("Cannot import comics: {}", iae.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Deativates this component, called by SCR to take out of service */
+    protected void deactivate(ComponentContext componentContext) {
+        if ( this.bulkImportRegistration != null ) {
+            this.bulkImportRegistration.unregister();
+            this.bulkImportRegistration = null;
+        }
+        if ( this.bulkImport != null ) {
+            this.bulkImport.dispose();
+            this.bulkImport = null;
+        }
+        if ( this.bulkPool != null ) {
+            this.threadPoolManager.release(this.bulkPool);
+            this.bulkPool = null;
+        }
+        defaultImportProviders.put(EXT_CBZ, ComicReader.CBZ_PROVIDER);
+        defaultImportProviders.put(EXT_CBR, ComicReader.CBR_PROVIDER);
+        // imports still running render their remaining pages inline
+        for (final ComicReader reader : this.comicReaders) {
+            reader.setThumbnailPool(null, 1);
+        }
+        this.comicReaders.clear();
+        if ( this.thumbnailPool != null ) {
+            this.threadPoolManager.release(this.thumbnailPool);
+            this.thumbnailPool = null;
+        }
+    }
+
     /**
      * The MimeTypeService used by the initial content initialContentLoader to
      * resolve MIME types for files to be installed.
@@ -85,20 +369,66 @@ public class DefaultContentImporter extends BaseImportLoader implements JcrConte
             }
         }
 
+        final DefaultContentCreator contentCreator = parseContent(parent, name,
+            contentStream, importOptions, importListener, true);
+
+		//save changes
+        Session session = parent.getSession();
+		session.save();
+
+        finishImport(parent, contentCreator, importListener);
+    }
+
+    /**
+     * Creates the content read from the stream below the parent node without
+     * saving it. Only if <code>batchSaves</code> is set may large imports be
+     * saved in batches while they are parsed, which saves all pending
+     * changes of the session.
+     *
+     * @return The creator, to be passed to
+     *         {@link #finishImport(Node, DefaultContentCreator, ContentImportListener)}
+     *         once the content has been saved
+     */
+    DefaultContentCreator parseContent(Node parent, String name,
+            InputStream contentStream, ImportOptions importOptions,
+            ContentImportListener importListener, boolean batchSaves)
+            throws RepositoryException, IOException {
     	DefaultContentCreator contentCreator = new DefaultContentCreator(this);
         List<String> createdPaths = new ArrayList<String>();
         contentCreator.init(importOptions, this.defaultImportProviders, createdPaths, importListener);
 
-        contentCreator.prepareParsing(parent, toPlainName(contentCreator, name));
+        final String plainName = toPlainName(contentCreator, name);
+        contentCreator.prepareParsing(parent, plainName);
+
+        final String extension = contentCreator.getImportProviderExtension(name);
+        if ( batchSaves && this.batchExtensions != null && this.batchExtensions.contains(extension) ) {
+            contentCreator.setBatchSize(this.batchNodes, this.batchBytes);
+            if ( plainName != null && parent.hasNode(plainName)
+                    && parent.getNode(plainName).hasProperty(DefaultContentCreator.IMPORT_STATUS) ) {
+                log.info("{} import of {}", (importOptions != null && importOptions.isOverwrite())
+                        ? "Replacing incomplete"
+                        : "Continuing incomplete",
+                    parent.getNode(plainName).getPath());
+            }
+        }
 
         final ImportProvider ip = contentCreator.getImportProvider(name);
         ContentReader reader = ip.getReader();
 		reader.parse(contentStream, contentCreator);
+        // only reached if the reader did not fail, a failed import keeps
+        // its incomplete marker
+        contentCreator.completeImport();
+        return contentCreator;
+    }
 
-		//save changes
-        Session session = parent.getSession();
-		session.save();
-
+    /**
+     * Checks in the versionable nodes and queues the thumbnails of a comic
+     * imported without them, once the content created by
+     * {@link #parseContent(Node, String, InputStream, ImportOptions, ContentImportListener, boolean)}
+     * has been saved.
+     */
+    void finishImport(Node parent, DefaultContentCreator contentCreator,
+            ContentImportListener importListener) throws RepositoryException {
         // finally checkin versionable nodes
         for (final Node versionable : contentCreator.getVersionables()) {
             versionable.checkin();
@@ -106,6 +436,31 @@ public class DefaultContentImporter extends BaseImportLoader implements JcrConte
             	importListener.onCheckin(versionable.getPath());
             }
         }
+
+        // queue the thumbnails of a comic imported without them
+        final Node root = (contentCreator.getCreatedRootNode() != null)
+                ? contentCreator.getCreatedRootNode()
+                : parent;
+        if ( this.deferThumbnails && root.hasProperty(ComicReader.THUMBNAIL_STATUS)
+                && ComicReader.THUMBNAIL_STATUS_PENDING.equals(
+                    root.getProperty(ComicReader.THUMBNAIL_STATUS).getString()) ) {
+            log.debug("Queueing thumbnail job for {}", root.getPath());
+            eventAdmin.postEvent(ComicThumbnailJobHandler.createJob(root.getPath(),
+                this.renditions));
+        }
+    }
+
+    private ImportProvider createComicProvider(int comicType, int parallelism) {
+        final ComicReader reader = new ComicReader(comicType);
+        reader.setThumbnailPool(this.thumbnailPool, parallelism);
+        this.comicReaders.add(reader);
+        reader.setDeferThumbnails(this.deferThumbnails);
+        reader.setRenditions(Rendition.parse(this.renditions));
+        return new ImportProvider() {
+            public ContentReader getReader() {
+                return reader;
+            }
+        };
     }
 
     private String toPlainName(DefaultContentCreator contentCreator, String name) {
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.contentloader.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The <code>ImportCheckpoint</code> records the archives whose content has
+ * been saved by a bulk import, so that a restarted import skips them. An
+ * archive is identified by its path, length and modification time, so a
+ * changed archive is imported again.
+ * <p>
+ * Each archive is appended as a line to the checkpoint file as soon as it is
+ * saved, so at most the unsaved archives are imported twice after a crash.
+ */
+class ImportCheckpoint {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final File file;
+
+    private final Set<String> done = new HashSet<String>();
+
+    private Writer writer;
+
+    ImportCheckpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the archives recorded in the checkpoint file.
+     */
+    synchronized void load() throws IOException {
+        done.clear();
+        final BufferedReader reader;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), ENCODING));
+        } catch (FileNotFoundException fnfe) {
+            // no checkpoint yet
+            return;
+        }
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0) {
+                    done.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the archive has been recorded.
+     */
+    synchronized boolean contains(File archive) {
+        return done.contains(toKey(archive));
+    }
+
+    /**
+     * Records the archive.
+     */
+    synchronized void add(File archive) throws IOException {
+        final String key = toKey(archive);
+        if (done.add(key)) {
+            if (writer == null) {
+                writer = new OutputStreamWriter(new FileOutputStream(file,
+                    true), ENCODING);
+            }
+            writer.write(key);
+            writer.write('\n');
+            writer.flush();
+        }
+    }
+
+    /**
+     * Forgets all archives recorded and removes the checkpoint file.
+     */
+    synchronized void clear() throws IOException {
+        close();
+        done.clear();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete checkpoint " + file);
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (writer != null) {
+            try {
+                writer.close();
+            } finally {
+                writer = null;
+            }
+        }
+    }
+
+    static String toKey(File archive) {
+        return archive.getAbsolutePath() + '\t' + archive.length() + '\t'
+            + archive.lastModified();
+    }
+}
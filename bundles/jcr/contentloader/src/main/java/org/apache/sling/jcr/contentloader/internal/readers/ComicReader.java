@@ -19,28 +19,21 @@
 
 package org.apache.sling.jcr.contentloader.internal.readers;
 
-import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
-import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
-
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.File;
 import java.io.OutputStream;
 import java.io.FileOutputStream;
-import java.io.FileInputStream;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.net.URISyntaxException;
 import java.util.Date;
 
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.jcr.RepositoryException;
-import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.jcr.contentloader.internal.ContentCreator;
 import org.apache.sling.jcr.contentloader.internal.ContentReader;
 import org.apache.sling.jcr.contentloader.internal.ImportProvider;
@@ -72,17 +65,57 @@ public class ComicReader implements ContentReader {
 	private static final String SLING_RESOURCE_TYPE = "sling:resourceType";
 	private static final String JCR_NAME = "jcr:name";
 	private static final String BIN_FOLDER = "bin";
-	private static final String THUMB_FOLDER = "thumb";
 	private static final String COMIC_BIN_ISSUE = "comic-bin/issue";
 	private static final String COMIC_BIN_PAGE = "comic-bin/page";
-	private static final int THUMBNAIL_WITH = 150;
 	private static final Map<String, String> supportedMimeTypes = new HashMap<String, String>();
 
-	private static final int CBR_COMIC_TYPE = 0;
-	private static final int CBZ_COMIC_TYPE = 1;
+	public static final int CBR_COMIC_TYPE = 0;
+	public static final int CBZ_COMIC_TYPE = 1;
+
+	/**
+	 * Property of the issue and page nodes telling whether the page
+	 * thumbnails have been rendered.
+	 */
+	public static final String THUMBNAIL_STATUS = "thumbnailStatus";
+	public static final String THUMBNAIL_STATUS_PENDING = "pending";
+	public static final String THUMBNAIL_STATUS_DONE = "done";
+	public static final String THUMBNAIL_STATUS_FAILED = "failed";
+
+	/**
+	 * Thumbnail status of an issue some of whose pages could not be
+	 * rendered.
+	 */
+	public static final String THUMBNAIL_STATUS_PARTIAL = "partial";
+
+	/**
+	 * Multi-value property of the page nodes listing the rendered
+	 * renditions as <code>name:width</code>.
+	 */
+	public static final String RENDITIONS = "renditions";
+
+	/**
+	 * Property of the issue node holding the {@link PageManifest} as JSON.
+	 */
+	public static final String PAGES = "pages";
+
+	/** The renditions created if none are configured */
+	private static final Rendition[] DEFAULT_RENDITIONS = Rendition
+			.parse(Rendition.DEFAULT_PROFILE);
 
 	final Logger logger = LoggerFactory.getLogger(getClass());
 
+	/** Pool rendering the thumbnails, <code>null</code> to render inline */
+	private volatile ThreadPool thumbnailPool;
+
+	/** Maximum number of pages of one issue rendered at the same time */
+	private int thumbnailParallelism = 1;
+
+	/** Whether thumbnails are left to a background job */
+	private boolean deferThumbnails;
+
+	/** The renditions rendered for each page */
+	private Rendition[] renditions = DEFAULT_RENDITIONS;
+
 	public static final ImportProvider CBR_PROVIDER = new ImportProvider() {
 		private ComicReader comicReader;
 
@@ -118,12 +151,76 @@ public class ComicReader implements ContentReader {
 		supportedMimeTypes.put(".png", "image/png");
 	}
 
+	/**
+	 * Sets the thread pool used to render page thumbnails.
+	 *
+	 * @param pool The thread pool or <code>null</code> to render thumbnails
+	 *            on the importing thread
+	 * @param parallelism The maximum number of pages of a single issue
+	 *            rendered at the same time
+	 */
+	public void setThumbnailPool(ThreadPool pool, int parallelism) {
+		this.thumbnailParallelism = Math.max(1, parallelism);
+		this.thumbnailPool = pool;
+	}
+
+	/**
+	 * If set, only the page originals are imported. Pages and issue are
+	 * marked with {@link #THUMBNAIL_STATUS} <code>pending</code> and the
+	 * thumbnails are left to a background job.
+	 */
+	public void setDeferThumbnails(boolean deferThumbnails) {
+		this.deferThumbnails = deferThumbnails;
+	}
+
+	/**
+	 * Sets the renditions rendered for each page.
+	 *
+	 * @param renditions The renditions or <code>null</code> for the
+	 *            {@link Rendition#DEFAULT_PROFILE default profile}
+	 */
+	public void setRenditions(Rendition[] renditions) {
+		this.renditions = (renditions == null || renditions.length == 0)
+				? DEFAULT_RENDITIONS
+				: renditions;
+	}
+
+	/**
+	 * Creates the pipeline rendering the page thumbnails of an issue.
+	 *
+	 * @param creator The creator whose current node is the issue node
+	 * @param pool The thread pool or <code>null</code> to render inline
+	 * @param parallelism The maximum number of pages rendered at the same
+	 *            time
+	 * @param renditions The renditions or <code>null</code> for the
+	 *            {@link Rendition#DEFAULT_PROFILE default profile}
+	 */
+	public static ThumbnailPipeline createThumbnailPipeline(
+			ContentCreator creator, ThreadPool pool, int parallelism,
+			Rendition[] renditions) {
+		return new ThumbnailPipeline(creator, pool, parallelism,
+				(renditions == null || renditions.length == 0)
+						? DEFAULT_RENDITIONS
+						: renditions);
+	}
+
 	/**
 	 * @see org.apache.sling.jcr.contentloader.internal.ContentReader#parse(java.net.URL,
 	 *      org.apache.sling.jcr.contentloader.internal.ContentCreator)
 	 */
 	public void parse(java.net.URL url, ContentCreator creator)
 			throws IOException, RepositoryException {
+		// rar archives need random access, open local files in place
+		// instead of copying them to a temporary file first
+		if (this.comicReaderType == CBR_COMIC_TYPE
+				&& "file".equals(url.getProtocol())) {
+			try {
+				parseCBR(new File(url.toURI()), creator);
+				return;
+			} catch (URISyntaxException use) {
+				logger.debug("Cannot open {} in place, copying it", url);
+			}
+		}
 		parse(url.openStream(), creator);
 
 	}
@@ -150,10 +247,13 @@ public class ComicReader implements ContentReader {
 
 	private void parseCBZ(InputStream ins, ContentCreator creator)
 			throws IOException, RepositoryException {
+		final ThumbnailPipeline thumbnails = createThumbnailPipeline(creator);
+		final PageManifest manifest = new PageManifest();
+		thumbnails.setManifest(manifest);
 		try {
 			logger.debug("Parsing a cbz file");
 
-			creator.createNode(null, SLING_FOLDER, null);
+			creator.createNode(null, SLING_ORDERED_FOLDER, null);
 			creator.createProperty(SLING_RESOURCE_TYPE, COMIC_BIN_ISSUE);
 
 			final ZipInputStream zis = new ZipInputStream(ins);
@@ -187,36 +287,14 @@ public class ComicReader implements ContentReader {
 
 							if (mimeType != null) {
 
-								creator.switchCurrentNode(name, SLING_FOLDER);
-								creator.createProperty(JCR_NAME, name);
-								creator.createProperty(SLING_RESOURCE_TYPE,
-										COMIC_BIN_PAGE);
-
-								CloseShieldInputStream csi = new CloseShieldInputStream(
-										zis);
-								ByteArrayOutputStream baos = new ByteArrayOutputStream();
+								// spool the entry once, both the original and
+								// the thumbnail are read back from the spool
+								final PageSpool spool = thumbnails
+										.nextSpool();
+								spool.spool(zis);
 
-								int len;
-								byte[] buffer = new byte[1024];
-								while ((len = csi.read(buffer)) > -1) {
-									baos.write(buffer, 0, len);
-								}
-								baos.flush();
-
-								InputStream largeImages = new ByteArrayInputStream(
-										baos.toByteArray());
-								InputStream thumbImages = new ByteArrayInputStream(
-										baos.toByteArray());
-
-								creator.createFileAndResourceNode(BIN_FOLDER,
-										largeImages, mimeType, entry.getTime());
-
-								creator.finishNode();
-								creator.finishNode();
-								createThumbnail(thumbImages, THUMBNAIL_WITH,
-										mimeType, creator, extension);
-
-								creator.finishNode();
+								addPage(creator, thumbnails, manifest, spool, name,
+										mimeType, extension, entry.getTime());
 							}
 						}
 					}
@@ -227,10 +305,9 @@ public class ComicReader implements ContentReader {
 
 			logger.debug("Added all entries");
 
-			creator.finishNode();
-		} catch (Exception ex) {
-			logger.error("Exception extracting zip file", ex);
+			finishIssue(creator, thumbnails, manifest);
 		} finally {
+			thumbnails.dispose();
 			if (ins != null) {
 				try {
 					ins.close();
@@ -244,14 +321,9 @@ public class ComicReader implements ContentReader {
 	private void parseCBR(InputStream ins, ContentCreator creator)
 			throws IOException, RepositoryException {
 
-		Archive arch = null;
 		File tempFile = null;
 
 		try {
-			logger.debug("Parsing a rar file");
-			creator.createNode(null, SLING_FOLDER, null);
-			creator.createProperty(SLING_RESOURCE_TYPE, COMIC_BIN_ISSUE);
-
 			/*
 			 * Create a temporaly rar file from the inpuyStream in order to
 			 * descompres with Archive class
@@ -274,8 +346,6 @@ public class ComicReader implements ContentReader {
 
 				fout.flush();
 
-			} catch (Exception ex) {
-				logger.error("Got an error building the temporal cbr file", ex);
 			} finally {
 
 				if (fout != null) {
@@ -287,20 +357,45 @@ public class ComicReader implements ContentReader {
 				}
 
 			}
+
+			parseCBR(tempFile, creator);
+		} finally {
+			// finally delete the temp file
+			if (tempFile != null) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	private void parseCBR(File rarFile, ContentCreator creator)
+			throws IOException, RepositoryException {
+
+		Archive arch = null;
+		final ThumbnailPipeline thumbnails = createThumbnailPipeline(creator);
+		final PageManifest manifest = new PageManifest();
+		thumbnails.setManifest(manifest);
+
+		try {
+			logger.debug("Parsing a rar file");
+			creator.createNode(null, SLING_ORDERED_FOLDER, null);
+			creator.createProperty(SLING_RESOURCE_TYPE, COMIC_BIN_ISSUE);
+
 			/* Create a new junrar Archive */
 
 			try {
 				logger.debug("Opening as rar archive");
-				arch = new Archive(tempFile);
-			} catch (Exception e) {
-				logger.error("Error opening the rar file", e);
+				arch = new Archive(rarFile);
+			} catch (RarException re) {
+				throw (IOException) new IOException(
+						"Cannot open the rar file: " + re.getMessage())
+						.initCause(re);
 			}
 
 			if (arch != null) {
 
 				if (arch.isEncrypted()) {
-					logger.warn("archive is encrypted cannot extreact");
-					return;
+					throw new IOException(
+							"Archive is encrypted, cannot extract it");
 				}
 
 				FileHeader fh = null;
@@ -353,109 +448,105 @@ public class ComicReader implements ContentReader {
 
 								if (mimeType != null) {
 
-									InputStream impar = arch.getInputStream(fh);
-
-									if (impar != null) {
-										creator.switchCurrentNode(name,
-												SLING_FOLDER);
-										creator.createProperty(JCR_NAME, name);
-										creator.createProperty(
-												SLING_RESOURCE_TYPE,
-												COMIC_BIN_PAGE);
-
-										creator.createFileAndResourceNode(
-												BIN_FOLDER,
-												new CloseShieldInputStream(
-														impar), mimeType,
-												(new Date()).getTime());
-
-										creator.finishNode();
-										creator.finishNode();
-
-										createThumbnail(
-												new CloseShieldInputStream(arch
-														.getInputStream(fh)),
-												THUMBNAIL_WITH, mimeType,
-												creator, extension);
-										creator.finishNode();
+									// decompress the entry once, both the
+									// original and the thumbnail are read
+									// back from the spool
+									final PageSpool spool = thumbnails
+											.nextSpool();
+									OutputStream pageOut = spool.newPage();
+									try {
+										arch.extractFile(fh, pageOut);
+									} finally {
+										pageOut.close();
 									}
+
+									addPage(creator, thumbnails, manifest, spool, name,
+											mimeType, extension,
+											(new Date()).getTime());
 								}
 							}
 						}
-					} catch (Exception ex) {
-						logger.error("Exception extracting rar file", ex);
+					} catch (RarException re) {
+						throw (IOException) new IOException("Cannot extract "
+								+ fh.getFileNameString() + ": "
+								+ re.getMessage()).initCause(re);
 					}
 				}
 			}
-			creator.finishNode();
-		} catch (Exception mex) {
-			logger.error("Error", mex);
+			finishIssue(creator, thumbnails, manifest);
 		} finally {
-			// finally delete the temp file
-			tempFile.delete();
+			thumbnails.dispose();
+			if (arch != null) {
+				try {
+					arch.close();
+				} catch (IOException ignore) {
+				}
+			}
 		}
 	}
 
-	private void createThumbnail(InputStream imageStream, int finalWidth,
-			String mimeType, ContentCreator creator, String suffix)
-			throws Exception {
-		final File tmp = File
-				.createTempFile(getClass().getSimpleName(), suffix);
+	/**
+	 * Creates the node of a page with its original below the current issue
+	 * node, adds it to the manifest and hands the page over to the thumbnail
+	 * pipeline.
+	 */
+	private void addPage(ContentCreator creator, ThumbnailPipeline thumbnails,
+			PageManifest manifest, PageSpool spool, String name,
+			String mimeType, String extension, long lastModified)
+			throws IOException, RepositoryException {
+		creator.switchCurrentNode(name, SLING_FOLDER);
+		creator.createProperty(JCR_NAME, name);
+		creator.createProperty(SLING_RESOURCE_TYPE, COMIC_BIN_PAGE);
 
+		InputStream largeImages = spool.openStream();
 		try {
-			scale(imageStream, finalWidth, new FileOutputStream(tmp), suffix);
+			creator.createFileAndResourceNode(BIN_FOLDER, largeImages,
+					mimeType, lastModified);
+		} finally {
+			largeImages.close();
+		}
+
+		creator.finishNode();
+		creator.finishNode();
 
-			// Create thumbnail node and set the mandatory properties
+		manifest.addPage(name.startsWith("/") ? name.substring(1) : name,
+				spool, BIN_FOLDER);
 
-			creator.createFileAndResourceNode(THUMB_FOLDER,
-					new CloseShieldInputStream(new FileInputStream(tmp)),
-					mimeType, (new Date()).getTime());
+		if (deferThumbnails) {
+			creator.createProperty(THUMBNAIL_STATUS, THUMBNAIL_STATUS_PENDING);
 			creator.finishNode();
+			thumbnails.release(spool);
+		} else {
 			creator.finishNode();
-
-		} catch (Exception ex) {
-			logger.debug("error ", ex);
-		} finally {
-			if (tmp != null) {
-				tmp.delete();
-			}
+			thumbnails.submit(name, spool, mimeType, extension);
 		}
-
 	}
 
-	/*
-	 * That code was extracted from an sling example ESPBlog
+	/**
+	 * Writes the remaining thumbnails and the page manifest, puts the pages
+	 * in reading order and finishes the issue node.
 	 */
-	private void scale(InputStream inputStream, int width,
-			OutputStream outputStream, String suffix) throws IOException {
-		if (inputStream == null) {
-			throw new IOException("InputStream is null");
-		}
-
-		final BufferedImage src = ImageIO.read(inputStream);
-		if (src == null) {
-			final StringBuffer sb = new StringBuffer();
-			for (String fmt : ImageIO.getReaderFormatNames()) {
-				sb.append(fmt);
-				sb.append(' ');
-			}
-			throw new IOException("Unable to read image, registered formats: "
-					+ sb);
+	private void finishIssue(ContentCreator creator,
+			ThumbnailPipeline thumbnails, PageManifest manifest)
+			throws RepositoryException {
+		thumbnails.finish();
+		creator.orderChildren(manifest.getPageNames());
+		creator.createProperty(PAGES, manifest.toString());
+		final String status;
+		if (deferThumbnails) {
+			status = THUMBNAIL_STATUS_PENDING;
+		} else if (thumbnails.getFailedPages() > 0) {
+			status = THUMBNAIL_STATUS_PARTIAL;
+		} else {
+			status = THUMBNAIL_STATUS_DONE;
 		}
+		creator.createProperty(THUMBNAIL_STATUS, status);
+		creator.finishNode();
+	}
 
-		final double scale = (double) width / src.getWidth();
-
-		int destWidth = width;
-		int destHeight = new Double(src.getHeight() * scale).intValue();
-		logger.debug("Generating thumbnail, w={}, h={}", destWidth, destHeight);
-		BufferedImage dest = new BufferedImage(destWidth, destHeight,
-				BufferedImage.TYPE_INT_RGB);
-		Graphics2D g = dest.createGraphics();
-		AffineTransform at = AffineTransform.getScaleInstance(
-				(double) destWidth / src.getWidth(),
-				(double) destHeight / src.getHeight());
-		g.drawRenderedImage(src, at);
-		ImageIO.write(dest, suffix.substring(1), outputStream);
+	private ThumbnailPipeline createThumbnailPipeline(ContentCreator creator) {
+		return createThumbnailPipeline(creator, thumbnailPool,
+				thumbnailParallelism, renditions);
 	}
 
 }
@@ -19,9 +19,10 @@
 package org.apache.sling.jcr.contentloader.internal.readers;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -42,6 +43,11 @@ import org.apache.sling.jcr.contentloader.internal.ImportProvider;
  * The <code>JsonReader</code> Parses a Json document on content load and creates the
  * corresponding node structure with properties. Will not update protected nodes and
  * properties like rep:Policy and children.
+ * <p>
+ * The document is read as a stream and the nodes and properties are created while
+ * it is read, so the memory used does not depend on the size of the document. The
+ * node type properties of a node must therefore be given before its child nodes, as
+ * in the skeleton below.
  *
  * <pre>
  * Nodes, Properties and in fact complete subtrees may be described in JSON files
@@ -150,59 +156,114 @@ public class JsonReader implements ContentReader {
 
     public void parse(InputStream ins, ContentCreator contentCreator) throws IOException, RepositoryException {
         try {
-            String jsonString = toString(ins).trim();
-            if (!jsonString.startsWith("{")) {
-                jsonString = "{" + jsonString + "}";
-            }
+            final JsonStreamTokenizer x = new JsonStreamTokenizer(toReader(ins));
 
-            JSONObject json = new JSONObject(jsonString);
-            this.createNode(null, json, contentCreator);
+            // the outermost braces may be omitted
+            final boolean braced = (x.nextClean() == '{');
+            if (!braced) {
+                x.back();
+            }
+            this.createNode(null, x, braced ? '}' : 0, contentCreator);
         } catch (JSONException je) {
+            if (je.getCause() instanceof IOException) {
+                throw (IOException) je.getCause();
+            }
             throw (IOException) new IOException(je.getMessage()).initCause(je);
         }
     }
 
-    protected void createNode(String name, JSONObject obj, ContentCreator contentCreator)
+    /**
+     * Creates the node for the object whose opening brace has just been read,
+     * calling the content creator while the document is read. The properties
+     * of the object are only held back until the node can be created, that is
+     * until the first child node, access control list or principal list or the
+     * end of the object. The <code>jcr:primaryType</code> and
+     * <code>jcr:mixinTypes</code> properties must therefore precede these.
+     *
+     * @param close The character closing the object or 0 if the object is
+     *            closed by the end of the document.
+     */
+    private void createNode(String name, JsonStreamTokenizer x, char close, ContentCreator contentCreator)
     throws JSONException, RepositoryException {
-        Object primaryTypeObj = obj.opt("jcr:primaryType");
         String primaryType = null;
-        if (primaryTypeObj != null) {
-            primaryType = String.valueOf(primaryTypeObj);
-        }
-
         String[] mixinTypes = null;
-        Object mixinsObject = obj.opt("jcr:mixinTypes");
-        if (mixinsObject instanceof JSONArray) {
-            JSONArray mixins = (JSONArray) mixinsObject;
-            mixinTypes = new String[mixins.length()];
-            for (int i = 0; i < mixins.length(); i++) {
-                mixinTypes[i] = mixins.getString(i);
-            }
-        }
-
-        contentCreator.createNode(name, primaryType, mixinTypes);
+        Map<String, Object> pending = new LinkedHashMap<String, Object>();
+        boolean created = false;
 
-        // add properties and nodes
-        JSONArray names = obj.names();
-        for (int i = 0; names != null && i < names.length(); i++) {
-            final String n = names.getString(i);
-            // skip well known objects
-            if (!ignoredNames.contains(n)) {
-                Object o = obj.get(n);
+        for (char c = x.nextClean(); c != close; c = x.nextClean()) {
+            if (c == 0) {
+                throw x.syntaxError("A JSONObject text must end with '}'");
+            }
+            x.back();
+            final String n = x.nextKey();
+            x.nextKeySeparator();
+
+            if (ignoredNames.contains(n)) {
+                // skip well known objects, except for the node types
+                final Object o = x.nextValue();
+                final boolean isPrimaryType = "jcr:primaryType".equals(n);
+                if (isPrimaryType || "jcr:mixinTypes".equals(n)) {
+                    if (created) {
+                        throw x.syntaxError(n + " must precede child nodes and access control entries");
+                    }
+                    if (isPrimaryType) {
+                        primaryType = String.valueOf(o);
+                    } else if (o instanceof JSONArray) {
+                        JSONArray mixins = (JSONArray) o;
+                        mixinTypes = new String[mixins.length()];
+                        for (int i = 0; i < mixins.length(); i++) {
+                            mixinTypes[i] = mixins.getString(i);
+                        }
+                    }
+                }
+            } else if (SECURITY_PRINCIPLES.equals(n) || SECURITY_ACL.equals(n)) {
+                final Object o = x.nextValue();
+                if (!created) {
+                    this.createNode(name, primaryType, mixinTypes, pending, contentCreator);
+                    created = true;
+                }
                 if (SECURITY_PRINCIPLES.equals(n)) {
-                	this.createPrincipals(o, contentCreator);
-                } else if (SECURITY_ACL.equals(n)) {
-                	this.createAcl(o, contentCreator);
-                } else if (o instanceof JSONObject) {
-                    this.createNode(n, (JSONObject) o, contentCreator);
+                    this.createPrincipals(o, contentCreator);
                 } else {
+                    this.createAcl(o, contentCreator);
+                }
+            } else if (x.nextClean() == '{') {
+                if (!created) {
+                    this.createNode(name, primaryType, mixinTypes, pending, contentCreator);
+                    created = true;
+                }
+                this.createNode(n, x, '}', contentCreator);
+            } else {
+                x.back();
+                final Object o = x.nextValue();
+                if (created) {
                     this.createProperty(n, o, contentCreator);
+                } else {
+                    pending.put(n, o);
                 }
             }
+
+            if (!x.nextMember(close)) {
+                break;
+            }
+        }
+
+        if (!created) {
+            this.createNode(name, primaryType, mixinTypes, pending, contentCreator);
         }
         contentCreator.finishNode();
     }
 
+    private void createNode(String name, String primaryType, String[] mixinTypes,
+            Map<String, Object> properties, ContentCreator contentCreator)
+    throws JSONException, RepositoryException {
+        contentCreator.createNode(name, primaryType, mixinTypes);
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            this.createProperty(property.getKey(), property.getValue(), contentCreator);
+        }
+        properties.clear();
+    }
+
     protected void createProperty(String name, Object value, ContentCreator contentCreator)
     throws JSONException, RepositoryException {
         // assume simple value
@@ -254,7 +315,7 @@ public class JsonReader implements ContentReader {
         return name;
     }
 
-    private String toString(InputStream ins) throws IOException {
+    private Reader toReader(InputStream ins) throws IOException {
         if (!ins.markSupported()) {
             ins = new BufferedInputStream(ins);
         }
@@ -265,7 +326,7 @@ public class JsonReader implements ContentReader {
         if (c == '#') {
             // character encoding following
             StringBuffer buf = new StringBuffer();
-            for (c = ins.read(); !Character.isWhitespace((char) c); c = ins.read()) {
+            for (c = ins.read(); c >= 0 && !Character.isWhitespace((char) c); c = ins.read()) {
                 buf.append((char) c);
             }
             encoding = buf.toString();
@@ -274,15 +335,7 @@ public class JsonReader implements ContentReader {
             encoding = "UTF-8";
         }
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        byte[] buf = new byte[1024];
-        int rd;
-        while ( (rd = ins.read(buf)) >= 0) {
-            bos.write(buf, 0, rd);
-        }
-        bos.close(); // just to comply with the contract
-
-        return new String(bos.toByteArray(), encoding);
+        return new InputStreamReader(ins, encoding);
     }
 
 
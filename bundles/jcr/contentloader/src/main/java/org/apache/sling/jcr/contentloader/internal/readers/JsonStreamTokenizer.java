@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.contentloader.internal.readers;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.JSONTokener;
+
+/**
+ * The <code>JsonStreamTokenizer</code> reads a JSON document from a
+ * <code>Reader</code> through a fixed size buffer, accepting the same
+ * lenient syntax as the <code>JSONTokener</code> of the commons JSON bundle:
+ * comments, single quoted and unquoted strings and <code>=</code> or
+ * <code>;</code> as separators.
+ * <p>
+ * Unlike the <code>JSONTokener</code> it never holds more than the value
+ * being read, so the {@link JsonReader} can walk objects one key at a time
+ * and only arrays and explicitly requested objects are built in memory.
+ */
+class JsonStreamTokenizer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int pos;
+
+    private int limit;
+
+    /** Number of characters consumed, for error messages */
+    private long offset;
+
+    /** The last two characters returned, the latest first */
+    private final char[] history = new char[2];
+
+    /** Number of characters of the history pushed back */
+    private int pushedBack;
+
+    JsonStreamTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the next character or 0 at the end of the input.
+     */
+    char next() throws JSONException {
+        if (pushedBack > 0) {
+            return history[--pushedBack];
+        }
+        final char c;
+        if (pos == limit && !fill()) {
+            c = 0;
+        } else {
+            offset++;
+            c = buffer[pos++];
+        }
+        history[1] = history[0];
+        history[0] = c;
+        return c;
+    }
+
+    /**
+     * Pushes back the last character returned by {@link #next()} or
+     * {@link #nextClean()}. Up to two characters can be pushed back.
+     */
+    void back() {
+        if (pushedBack < history.length) {
+            pushedBack++;
+        }
+    }
+
+    /**
+     * Returns the next character, skipping whitespace and comments, or 0 at
+     * the end of the input.
+     */
+    char nextClean() throws JSONException {
+        for (;;) {
+            char c = next();
+            if (c == '/') {
+                switch (next()) {
+                case '/':
+                    skipLine();
+                    break;
+                case '*':
+                    for (;;) {
+                        c = next();
+                        if (c == 0) {
+                            throw syntaxError("Unclosed comment.");
+                        }
+                        if (c == '*') {
+                            if (next() == '/') {
+                                break;
+                            }
+                            back();
+                        }
+                    }
+                    break;
+                default:
+                    back();
+                    return '/';
+                }
+            } else if (c == '#') {
+                skipLine();
+            } else if (c == 0 || c > ' ') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Reads the separator between a key and its value: <code>:</code>,
+     * <code>=</code> or <code>=&gt;</code>.
+     */
+    void nextKeySeparator() throws JSONException {
+        final char c = nextClean();
+        if (c == '=') {
+            if (next() != '>') {
+                back();
+            }
+        } else if (c != ':') {
+            throw syntaxError("Expected a ':' after a key");
+        }
+    }
+
+    /**
+     * Reads the key of the next property of an object, the same way the
+     * <code>JSONObject</code> does.
+     */
+    String nextKey() throws JSONException {
+        return nextValue().toString();
+    }
+
+    /**
+     * Reads the next value, building arrays and objects completely.
+     *
+     * @return A Boolean, Number, String, JSONArray, JSONObject or the
+     *         JSONObject.NULL object.
+     */
+    Object nextValue() throws JSONException {
+        final char c = nextClean();
+        switch (c) {
+        case '"':
+        case '\'':
+            return nextString(c);
+        case '{':
+            return nextObject();
+        case '[':
+            return nextArray();
+        case 0:
+            throw syntaxError("Missing value.");
+        }
+
+        // unquoted text is converted exactly as the JSONTokener does
+        final StringBuilder sb = new StringBuilder();
+        for (char v = c; v != 0 && isValueChar(v); v = next()) {
+            sb.append(v);
+        }
+        back();
+        final String s = sb.toString().trim();
+        if (s.length() == 0) {
+            throw syntaxError("Missing value.");
+        }
+        return new JSONTokener(s).nextValue();
+    }
+
+    /**
+     * Returns the characters up to the closing quote, processing escapes.
+     */
+    String nextString(char quote) throws JSONException {
+        final StringBuilder sb = new StringBuilder();
+        for (;;) {
+            char c = next();
+            switch (c) {
+            case 0:
+            case '\n':
+            case '\r':
+                throw syntaxError("Unterminated string");
+            case '\\':
+                c = next();
+                switch (c) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'u':
+                    sb.append((char) hex(4));
+                    break;
+                case 'x':
+                    sb.append((char) hex(2));
+                    break;
+                default:
+                    sb.append(c);
+                }
+                break;
+            default:
+                if (c == quote) {
+                    return sb.toString();
+                }
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Reads the separator following a property of an object or an element
+     * of an array.
+     *
+     * @param close The closing character of the object or array
+     * @return <code>true</code> if another property or element follows,
+     *         <code>false</code> if the object or array is closed.
+     */
+    boolean nextMember(char close) throws JSONException {
+        final char c = nextClean();
+        if (c == ',' || c == ';') {
+            if (nextClean() == close) {
+                return false;
+            }
+            back();
+            return true;
+        } else if (c == close) {
+            return false;
+        }
+        throw syntaxError("Expected a ',' or '" + close + "'");
+    }
+
+    JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + offset);
+    }
+
+    // the opening brace has been read
+    private JSONObject nextObject() throws JSONException {
+        final JSONObject object = new JSONObject();
+        char c = nextClean();
+        if (c == '}') {
+            return object;
+        }
+        for (;;) {
+            if (c == 0) {
+                throw syntaxError("A JSONObject text must end with '}'");
+            }
+            back();
+            final String key = nextKey();
+            nextKeySeparator();
+            object.put(key, nextValue());
+            if (!nextMember('}')) {
+                return object;
+            }
+            c = nextClean();
+        }
+    }
+
+    // the opening bracket has been read
+    private JSONArray nextArray() throws JSONException {
+        final JSONArray array = new JSONArray();
+        if (nextClean() == ']') {
+            return array;
+        }
+        back();
+        do {
+            if (nextClean() == ',') {
+                back();
+                array.put((Object) null);
+            } else {
+                back();
+                array.put(nextValue());
+            }
+        } while (nextMember(']'));
+        return array;
+    }
+
+    private void skipLine() throws JSONException {
+        char c;
+        do {
+            c = next();
+        } while (c != '\n' && c != '\r' && c != 0);
+    }
+
+    private int hex(int digits) throws JSONException {
+        final StringBuilder sb = new StringBuilder(digits);
+        for (int i = 0; i < digits; i++) {
+            final char c = next();
+            if (c == 0) {
+                throw syntaxError("Substring bounds error");
+            }
+            sb.append(c);
+        }
+        try {
+            return Integer.parseInt(sb.toString(), 16);
+        } catch (NumberFormatException nfe) {
+            throw syntaxError("Illegal escape " + sb);
+        }
+    }
+
+    private boolean fill() throws JSONException {
+        try {
+            int rd;
+            do {
+                rd = reader.read(buffer, 0, buffer.length);
+            } while (rd == 0);
+            if (rd < 0) {
+                return false;
+            }
+            pos = 0;
+            limit = rd;
+            return true;
+        } catch (IOException ioe) {
+            throw new JSONException(ioe);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the character may be part of an unquoted
+     * value, that is neither a control nor a formatting character.
+     */
+    private static boolean isValueChar(char c) {
+        switch (c) {
+        case ',': case ':': case ']': case '}': case '/': case '\\':
+        case '"': case '[': case '{': case ';': case '=': case '#':
+            return false;
+        default:
+            return c >= ' ';
+        }
+    }
+}
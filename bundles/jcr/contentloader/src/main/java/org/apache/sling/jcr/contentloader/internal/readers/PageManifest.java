@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.jcr.contentloader.internal.readers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+
+/**
+ * The <code>PageManifest</code> collects the pages of a comic issue while it
+ * is imported. It is stored as JSON in the {@link ComicReader#PAGES}
+ * property of the issue, so viewers get the ordered pages with their sizes
+ * and renditions without querying the repository.
+ * <p>
+ * The manifest is an array with one object per page in reading order, which
+ * is the {@link NaturalOrderComparator natural order} of the page names:
+ *
+ * <pre>
+ * [ { "index": 1, "name": "page1.png", "width": 1200, "height": 1800, "size": 482133,
+ *     "original": "page1.png/bin",
+ *     "renditions": { "thumb": { "path": "page1.png/thumb", "width": 150 } } } ]
+ * </pre>
+ *
+ * Paths are relative to the issue node. A page only lists the renditions
+ * which have been written, so pages whose thumbnails failed or are still
+ * pending have fewer or no renditions.
+ */
+public class PageManifest {
+
+	/** Pages by name, in reading order */
+	private final Map<String, JSONObject> pages = new TreeMap<String, JSONObject>(
+			NaturalOrderComparator.INSTANCE);
+
+	/**
+	 * Reads a manifest written by {@link #toString()}, for example to add
+	 * renditions rendered after the import.
+	 *
+	 * @param json The manifest
+	 * @return The manifest
+	 * @throws JSONException If the manifest is not a JSON array of pages
+	 */
+	public static PageManifest parse(String json) throws JSONException {
+		final PageManifest manifest = new PageManifest();
+		final JSONArray array = new JSONArray(json);
+		for (int i = 0; i < array.length(); i++) {
+			final JSONObject page = array.getJSONObject(i);
+			if (!page.has("renditions")) {
+				page.put("renditions", new JSONObject());
+			}
+			manifest.pages.put(page.getString("name"), page);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Adds a page without renditions. The dimensions are read from the
+	 * header of the image held by the spool, without decoding the image.
+	 *
+	 * @param name The name of the page node
+	 * @param spool The spool holding the page
+	 * @param originalName The name of the node holding the original
+	 */
+	public void addPage(String name, PageSpool spool, String originalName) {
+		try {
+			final JSONObject page = new JSONObject();
+			page.put("index", 0); // set once all pages are known
+			page.put("name", name);
+
+			int[] size = null;
+			try {
+				size = readSize(spool);
+			} catch (IOException ioe) {
+				// unreadable header, the page is listed without dimensions
+			}
+			if (size != null) {
+				page.put("width", size[0]);
+				page.put("height", size[1]);
+			}
+			page.put("size", spool.getLength());
+			page.put("original", name + "/" + originalName);
+
+			page.put("renditions", new JSONObject());
+
+			pages.put(name, page);
+		} catch (JSONException je) {
+			// cannot happen, all keys and values are valid
+			throw new IllegalStateException(je);
+		}
+	}
+
+	/**
+	 * Lists renditions which have been written for a page. Pages which are
+	 * not in the manifest are ignored.
+	 *
+	 * @param name The name of the page node
+	 * @param written The renditions written below the page node
+	 */
+	public void addRenditions(String name, Rendition[] written) {
+		if (name.startsWith("/")) {
+			name = name.substring(1);
+		}
+		final JSONObject page = pages.get(name);
+		if (page == null) {
+			return;
+		}
+		try {
+			final JSONObject pageRenditions = page
+					.getJSONObject("renditions");
+			for (Rendition rendition : written) {
+				final JSONObject entry = new JSONObject();
+				entry.put("path", name + "/" + rendition.getName());
+				entry.put("width", rendition.getWidth());
+				pageRenditions.put(rendition.getName(), entry);
+			}
+		} catch (JSONException je) {
+			// cannot happen, all keys and values are valid
+			throw new IllegalStateException(je);
+		}
+	}
+
+	/**
+	 * Returns the number of pages added.
+	 */
+	public int size() {
+		return pages.size();
+	}
+
+	/**
+	 * Returns the names of the pages in reading order.
+	 */
+	public List<String> getPageNames() {
+		return new ArrayList<String>(pages.keySet());
+	}
+
+	/**
+	 * Returns the manifest as a JSON array.
+	 */
+	@Override
+	public String toString() {
+		final JSONArray array = new JSONArray();
+		int index = 1;
+		for (JSONObject page : pages.values()) {
+			try {
+				page.put("index", index++);
+			} catch (JSONException je) {
+				// cannot happen, the key is valid
+				throw new IllegalStateException(je);
+			}
+			array.put(page);
+		}
+		return array.toString();
+	}
+
+	/**
+	 * Returns the width and height of the image in the spool or
+	 * <code>null</code> if no reader understands it.
+	 */
+	static int[] readSize(PageSpool spool) throws IOException {
+		final InputStream ins = spool.openStream();
+		try {
+			final ImageInputStream iis = ImageIO.createImageInputStream(ins);
+			if (iis == null) {
+				return null;
+			}
+			try {
+				final Iterator<ImageReader> readers = ImageIO
+						.getImageReaders(iis);
+				if (!readers.hasNext()) {
+					return null;
+				}
+				final ImageReader reader = readers.next();
+				try {
+					reader.setInput(iis, true, true);
+					return new int[] { reader.getWidth(0),
+							reader.getHeight(0) };
+				} finally {
+					reader.dispose();
+				}
+			} finally {
+				iis.close();
+			}
+		} finally {
+			ins.close();
+		}
+	}
+}
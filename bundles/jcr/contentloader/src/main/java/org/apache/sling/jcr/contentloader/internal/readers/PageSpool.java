@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.jcr.contentloader.internal.readers;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The <code>PageSpool</code> holds the bytes of a single comic page while
+ * they are written to the repository and fed to the thumbnailer.
+ * <p>
+ * The page is copied once through a fixed size buffer into a temporary file
+ * which is reused for every page of an archive, so the heap used per page
+ * does not depend on the size of the page nor on the number of pages.
+ * {@link #openStream()} may be called any number of times to read the
+ * current page again.
+ */
+public class PageSpool {
+
+	/** Size of the copy buffer, the only heap kept per spooled page */
+	static final int BUFFER_SIZE = 8192;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private File file;
+
+	/**
+	 * Replaces the current page with the content of the given stream. The
+	 * stream is read to its end but not closed.
+	 *
+	 * @param ins The page content
+	 * @return The number of bytes spooled
+	 * @throws IOException If the stream cannot be read or the temporary file
+	 *             cannot be written
+	 */
+	public long spool(InputStream ins) throws IOException {
+		final OutputStream out = newPage();
+		try {
+			int len;
+			while ((len = ins.read(buffer)) != -1) {
+				out.write(buffer, 0, len);
+			}
+		} finally {
+			out.close();
+		}
+		return getLength();
+	}
+
+	/**
+	 * Replaces the current page with whatever is written to the returned
+	 * stream. This allows extractors which push their output, like the rar
+	 * archive, to write into the spool directly. The caller must close the
+	 * stream before reading the page.
+	 *
+	 * @return The stream to write the page to
+	 * @throws IOException If the temporary file cannot be created
+	 */
+	public OutputStream newPage() throws IOException {
+		if (file == null) {
+			file = File.createTempFile("comicPage", ".tmp");
+		}
+		return new FileOutputStream(file);
+	}
+
+	/**
+	 * Returns a new stream on the current page. The caller is responsible for
+	 * closing it.
+	 */
+	public InputStream openStream() throws IOException {
+		if (file == null) {
+			throw new IOException("No page has been spooled");
+		}
+		return new BufferedInputStream(new FileInputStream(file),
+				BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns the number of bytes of the current page.
+	 */
+	public long getLength() {
+		return (file == null) ? 0 : file.length();
+	}
+
+	/**
+	 * Returns the temporary file holding the current page.
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Removes the temporary file. The spool may be reused afterwards.
+	 */
+	public void dispose() {
+		if (file != null) {
+			file.delete();
+			file = null;
+		}
+	}
+}
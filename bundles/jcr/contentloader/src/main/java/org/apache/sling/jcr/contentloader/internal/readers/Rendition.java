@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.jcr.contentloader.internal.readers;
+
+/**
+ * The <code>Rendition</code> describes one scaled copy of a comic page.
+ * <p>
+ * A rendition is configured as <code>name:width[:format[:quality]]</code>,
+ * for example <code>screen:480:jpg:0.8</code>. Without a format the rendition
+ * uses the format of the page, the quality only applies to lossy formats and
+ * ranges from <code>0</code> to <code>1</code>.
+ */
+public class Rendition {
+
+	/** The renditions created if none are configured */
+	public static final String[] DEFAULT_PROFILE = { "thumb:150",
+			"screen:480:jpg:0.8", "retina:1080:jpg:0.85" };
+
+	private final String name;
+
+	private final int width;
+
+	private final String format;
+
+	private final float quality;
+
+	public Rendition(String name, int width, String format, float quality) {
+		this.name = name;
+		this.width = width;
+		this.format = format;
+		this.quality = quality;
+	}
+
+	/**
+	 * Parses a rendition definition.
+	 *
+	 * @param definition The definition, <code>name:width[:format[:quality]]</code>
+	 * @return The rendition
+	 * @throws IllegalArgumentException If the definition is invalid
+	 */
+	public static Rendition parse(String definition) {
+		final String[] parts = definition.trim().split(":");
+		if (parts.length < 2 || parts.length > 4 || parts[0].length() == 0) {
+			throw new IllegalArgumentException("Invalid rendition "
+					+ definition + ", expected name:width[:format[:quality]]");
+		}
+		try {
+			final int width = Integer.parseInt(parts[1]);
+			final String format = (parts.length > 2 && parts[2].length() > 0)
+					? parts[2].toLowerCase() : null;
+			final float quality = (parts.length > 3) ? Float
+					.parseFloat(parts[3]) : -1;
+			if (width <= 0 || quality > 1) {
+				throw new IllegalArgumentException("Invalid rendition "
+						+ definition);
+			}
+			return new Rendition(parts[0], width, format, quality);
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("Invalid rendition "
+					+ definition);
+		}
+	}
+
+	/**
+	 * Parses a list of rendition definitions.
+	 *
+	 * @throws IllegalArgumentException If one of the definitions is invalid
+	 */
+	public static Rendition[] parse(String[] definitions) {
+		final Rendition[] renditions = new Rendition[definitions.length];
+		for (int i = 0; i < definitions.length; i++) {
+			renditions[i] = parse(definitions[i]);
+		}
+		return renditions;
+	}
+
+	/**
+	 * The name of the rendition node below the page node.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * The width of the rendition. Pages narrower than this are not scaled
+	 * up.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * The image format written, <code>null</code> for the format of the page.
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * The compression quality, negative for the default of the format.
+	 */
+	public float getQuality() {
+		return quality;
+	}
+
+	/**
+	 * Returns the <code>name:width</code> entry listing this rendition in the
+	 * {@link ComicReader#RENDITIONS} property of a page.
+	 */
+	@Override
+	public String toString() {
+		return name + ":" + width;
+	}
+}
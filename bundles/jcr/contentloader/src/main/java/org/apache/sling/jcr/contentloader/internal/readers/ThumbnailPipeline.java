@@ -0,0 +1,461 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.jcr.contentloader.internal.readers;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.jcr.contentloader.internal.ContentCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>ThumbnailPipeline</code> renders the thumbnails of the pages of
+ * one comic issue. Each page is decoded once and scaled to every configured
+ * {@link Rendition}, the first of which is usually the <code>thumb</code>.
+ * <p>
+ * Decoding and scaling run on the given thread pool while everything written
+ * through the {@link ContentCreator} stays on the thread which parses the
+ * archive and owns the session. At most <code>parallelism</code> pages are in
+ * flight: {@link #nextSpool()} blocks and writes the oldest finished
+ * thumbnail when this limit is reached, so a single upload never occupies
+ * more pool threads than configured and thumbnails are written in page
+ * order. Without a thread pool the pages are rendered on the calling thread.
+ * <p>
+ * A page the pool refuses, or has not started within {@link #START_TIMEOUT},
+ * because it is busy, shutting down or dropped the page, is rendered on the
+ * calling thread instead. A page still rendering after
+ * {@link #RENDER_TIMEOUT} is given up and marked failed, so a lost task never
+ * blocks the import.
+ * <p>
+ * Each page gets its {@link ComicReader#THUMBNAIL_STATUS} set once its
+ * renditions are written, or set to <code>failed</code> if the page could not
+ * be rendered, and lists the written renditions in
+ * {@link ComicReader#RENDITIONS} and in the {@link PageManifest}, if one is
+ * set.
+ */
+public class ThumbnailPipeline {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ThumbnailPipeline.class);
+
+	/** Milliseconds to wait for the pool to start a page */
+	static final long START_TIMEOUT = 30 * 1000L;
+
+	/** Milliseconds to wait for a started page to be rendered */
+	static final long RENDER_TIMEOUT = 5 * 60 * 1000L;
+
+	private final ContentCreator creator;
+
+	private final ThreadPool threadPool;
+
+	private final int parallelism;
+
+	private final Rendition[] renditions;
+
+	/** Pages submitted and not yet written, in page order */
+	private final LinkedList<ThumbnailTask> pending = new LinkedList<ThumbnailTask>();
+
+	/** Spools not used by any pending page */
+	private final LinkedList<PageSpool> freeSpools = new LinkedList<PageSpool>();
+
+	private final LinkedList<PageSpool> allSpools = new LinkedList<PageSpool>();
+
+	/** Number of written pages which could not be rendered */
+	private int failedPages;
+
+	/** The manifest listing the written renditions, may be null */
+	private PageManifest manifest;
+
+	/** Milliseconds to wait for the pool to start a page */
+	private long startTimeout = START_TIMEOUT;
+
+	ThumbnailPipeline(ContentCreator creator, ThreadPool threadPool,
+			int parallelism, Rendition[] renditions) {
+		this.creator = creator;
+		this.threadPool = threadPool;
+		this.parallelism = Math.max(1, parallelism);
+		this.renditions = renditions;
+	}
+
+	/**
+	 * Sets the manifest which gets the renditions of each page once they
+	 * are written.
+	 */
+	public void setManifest(PageManifest manifest) {
+		this.manifest = manifest;
+	}
+
+	/**
+	 * Sets the milliseconds to wait for the pool to start a page before it
+	 * is rendered on the calling thread.
+	 */
+	void setStartTimeout(long startTimeout) {
+		this.startTimeout = startTimeout;
+	}
+
+	/**
+	 * Returns a spool for the next page. If <code>parallelism</code> pages are
+	 * in flight, waits for the oldest one and writes its thumbnail first.
+	 */
+	public PageSpool nextSpool() throws RepositoryException {
+		while (pending.size() >= parallelism) {
+			write(pending.removeFirst());
+		}
+		if (freeSpools.isEmpty()) {
+			final PageSpool spool = new PageSpool();
+			allSpools.add(spool);
+			return spool;
+		}
+		return freeSpools.removeFirst();
+	}
+
+	/**
+	 * Schedules the thumbnail of a page. The spool must have been obtained
+	 * from {@link #nextSpool()} and hold the page; it must not be used by
+	 * the caller afterwards.
+	 *
+	 * @param pageName The name of the page node, relative to the current
+	 *            node of the content creator
+	 * @param spool The page content
+	 * @param mimeType The mime type of the page
+	 * @param suffix The file extension of the page, including the dot
+	 */
+	public void submit(String pageName, PageSpool spool, String mimeType,
+			String suffix) {
+		final ThumbnailTask task = new ThumbnailTask(pageName, spool,
+				mimeType, suffix, renditions);
+		if (threadPool != null) {
+			try {
+				threadPool.execute(task);
+			} catch (RuntimeException re) {
+				// the pool has been shut down or is full
+				logger.warn("Cannot schedule the thumbnails of page {}, rendering inline: {}",
+						pageName, re.toString());
+				task.run();
+			}
+		} else {
+			task.run();
+		}
+		pending.add(task);
+	}
+
+	/**
+	 * Gives back a spool obtained from {@link #nextSpool()} without rendering
+	 * its page.
+	 */
+	public void release(PageSpool spool) {
+		freeSpools.add(spool);
+	}
+
+	/**
+	 * Writes the thumbnails of all pending pages.
+	 */
+	public void finish() throws RepositoryException {
+		while (!pending.isEmpty()) {
+			write(pending.removeFirst());
+		}
+	}
+
+	/**
+	 * Returns the number of pages written so far which could not be
+	 * rendered and have been marked <code>failed</code>.
+	 */
+	public int getFailedPages() {
+		return failedPages;
+	}
+
+	/**
+	 * Waits for running pages and removes the spools. Must be called once the
+	 * issue is done, even if parsing failed.
+	 */
+	public void dispose() {
+		while (!pending.isEmpty()) {
+			await(pending.removeFirst(), false);
+		}
+		for (PageSpool spool : allSpools) {
+			spool.dispose();
+		}
+		allSpools.clear();
+		freeSpools.clear();
+	}
+
+	private void write(ThumbnailTask task) throws RepositoryException {
+		final boolean done = await(task, true);
+		final byte[][] images = done ? task.images : null;
+		if (done) {
+			// a page given up may still be read by its pool thread
+			freeSpools.add(task.spool);
+		}
+
+		// the page node has already been created, go back to it
+		if (creator.switchCurrentNode(task.pageName, null)) {
+			if (images != null) {
+				final long lastModified = (new Date()).getTime();
+				final String[] written = new String[renditions.length];
+				for (int i = 0; i < renditions.length; i++) {
+					creator.createFileAndResourceNode(renditions[i].getName(),
+							new ByteArrayInputStream(images[i]),
+							getMimeType(renditions[i], task.mimeType),
+							lastModified);
+					creator.finishNode();
+					creator.finishNode();
+					written[i] = renditions[i].toString();
+				}
+				creator.createProperty(ComicReader.RENDITIONS,
+						PropertyType.STRING, written);
+				if (manifest != null) {
+					manifest.addRenditions(task.pageName, renditions);
+				}
+			}
+			if (images == null) {
+				failedPages++;
+			}
+			creator.createProperty(ComicReader.THUMBNAIL_STATUS,
+					PropertyType.STRING,
+					(images != null) ? ComicReader.THUMBNAIL_STATUS_DONE
+							: ComicReader.THUMBNAIL_STATUS_FAILED);
+			creator.finishNode();
+		}
+	}
+
+	/**
+	 * Waits for a page. A page not started within the start timeout is
+	 * rendered on the calling thread or, if <code>render</code> is
+	 * <code>false</code>, cancelled.
+	 *
+	 * @return <code>true</code> if the page is done, <code>false</code> if
+	 *         it was still rendering after {@link #RENDER_TIMEOUT}
+	 */
+	private boolean await(ThumbnailTask task, boolean render) {
+		if (task.await(startTimeout)) {
+			return true;
+		}
+		if (render) {
+			task.run();
+		} else {
+			task.cancel();
+		}
+		if (task.await(RENDER_TIMEOUT)) {
+			return true;
+		}
+		logger.warn("Thumbnails of page {} not rendered within {} seconds, giving up",
+				task.pageName, RENDER_TIMEOUT / 1000);
+		return false;
+	}
+
+	private static String getMimeType(Rendition rendition, String pageMimeType) {
+		if (rendition.getFormat() == null) {
+			return pageMimeType;
+		} else if ("jpg".equals(rendition.getFormat())) {
+			return "image/jpeg";
+		}
+		return "image/" + rendition.getFormat();
+	}
+
+	static BufferedImage read(InputStream inputStream) throws IOException {
+		if (inputStream == null) {
+			throw new IOException("InputStream is null");
+		}
+
+		final BufferedImage src = ImageIO.read(inputStream);
+		if (src == null) {
+			final StringBuffer sb = new StringBuffer();
+			for (String fmt : ImageIO.getReaderFormatNames()) {
+				sb.append(fmt);
+				sb.append(' ');
+			}
+			throw new IOException("Unable to read image, registered formats: "
+					+ sb);
+		}
+		return src;
+	}
+
+	/*
+	 * That code was extracted from an sling example ESPBlog
+	 */
+	static void scale(BufferedImage src, int width,
+			OutputStream outputStream, String format, float quality)
+			throws IOException {
+		// never scale up, that only makes the rendition larger
+		width = Math.min(width, src.getWidth());
+		final double scale = (double) width / src.getWidth();
+
+		int destWidth = width;
+		int destHeight = new Double(src.getHeight() * scale).intValue();
+		logger.debug("Generating thumbnail, w={}, h={}", destWidth, destHeight);
+		BufferedImage dest = new BufferedImage(destWidth, destHeight,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = dest.createGraphics();
+		AffineTransform at = AffineTransform.getScaleInstance(
+				(double) destWidth / src.getWidth(),
+				(double) destHeight / src.getHeight());
+		g.drawRenderedImage(src, at);
+		g.dispose();
+		write(dest, format, quality, outputStream);
+	}
+
+	private static void write(BufferedImage image, String format,
+			float quality, OutputStream outputStream) throws IOException {
+		final Iterator<ImageWriter> writers = ImageIO
+				.getImageWritersByFormatName(format);
+		if (!writers.hasNext()) {
+			throw new IOException("No image writer for " + format);
+		}
+		final ImageWriter writer = writers.next();
+		final ImageOutputStream out = ImageIO
+				.createImageOutputStream(outputStream);
+		try {
+			writer.setOutput(out);
+			final ImageWriteParam param = writer.getDefaultWriteParam();
+			if (quality >= 0 && param.canWriteCompressed()) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(quality);
+			}
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+			out.close();
+		}
+	}
+
+	/**
+	 * Decodes one page and scales it to each rendition. Runs on a pool thread
+	 * and never touches the repository. The task is rendered at most once,
+	 * by whichever thread claims it first.
+	 */
+	private static class ThumbnailTask implements Runnable {
+
+		final String pageName;
+
+		final PageSpool spool;
+
+		final String mimeType;
+
+		private final String suffix;
+
+		private final Rendition[] renditions;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		volatile byte[][] images;
+
+		ThumbnailTask(String pageName, PageSpool spool, String mimeType,
+				String suffix, Rendition[] renditions) {
+			this.pageName = pageName;
+			this.spool = spool;
+			this.mimeType = mimeType;
+			this.suffix = suffix;
+			this.renditions = renditions;
+		}
+
+		public void run() {
+			if (!claimed.compareAndSet(false, true)) {
+				return;
+			}
+			InputStream ins = null;
+			try {
+				ins = spool.openStream();
+				final BufferedImage src = read(ins);
+				final byte[][] result = new byte[renditions.length][];
+				for (int i = 0; i < renditions.length; i++) {
+					final String format = (renditions[i].getFormat() != null)
+							? renditions[i].getFormat()
+							: suffix.substring(1);
+					final ByteArrayOutputStream out = new ByteArrayOutputStream();
+					scale(src, renditions[i].getWidth(), out, format,
+							renditions[i].getQuality());
+					result[i] = out.toByteArray();
+				}
+				images = result;
+			} catch (Exception ex) {
+				logger.warn("Cannot render the thumbnails of page " + pageName,
+						ex);
+			} finally {
+				if (ins != null) {
+					try {
+						ins.close();
+					} catch (IOException ignore) {
+					}
+				}
+				done.countDown();
+			}
+		}
+
+		/**
+		 * Marks the page done without rendering it, unless it has already
+		 * been started.
+		 */
+		void cancel() {
+			if (claimed.compareAndSet(false, true)) {
+				done.countDown();
+			}
+		}
+
+		/**
+		 * Waits for the page. Its renditions are then in {@link #images},
+		 * which is <code>null</code> if it could not be rendered.
+		 *
+		 * @return <code>true</code> if the page is done
+		 */
+		boolean await(long timeout) {
+			final long end = System.currentTimeMillis() + timeout;
+			boolean interrupted = false;
+			try {
+				while (true) {
+					try {
+						return done.await(
+								Math.max(0, end - System.currentTimeMillis()),
+								TimeUnit.MILLISECONDS);
+					} catch (InterruptedException ie) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
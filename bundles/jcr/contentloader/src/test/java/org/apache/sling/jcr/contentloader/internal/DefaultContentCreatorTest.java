@@ -6,6 +6,7 @@ import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 
 import org.apache.sling.jcr.contentloader.ImportOptions;
 import org.jmock.Expectations;
@@ -106,4 +107,69 @@ public class DefaultContentCreatorTest {
         contentCreator.createProperty("foo", PropertyType.UNDEFINED, "bar");
     }
 
+    @org.junit.Test public void willSaveInBatches() throws RepositoryException {
+        contentCreator = new DefaultContentCreator(null);
+        parentNode = mockery.mock(Node.class, "parent");
+        final Node issueNode = mockery.mock(Node.class, "issue");
+        final Node pageNode = mockery.mock(Node.class, "page");
+        final Session session = mockery.mock(Session.class);
+        prop = mockery.mock(Property.class);
+        contentCreator.init(new ImportOptions(){
+
+            @Override
+            public boolean isCheckin() {
+                return false;
+            }
+
+            @Override
+            public boolean isAutoCheckout() {
+                return false;
+            }
+
+            @Override
+            public boolean isIgnoredImportProvider(String extension) {
+                return false;
+            }
+
+            @Override
+            public boolean isOverwrite() {
+                return false;
+            }
+
+            @Override
+            public boolean isPropertyOverwrite() {
+                return false;
+            } }, new HashMap<String, ImportProvider>(), null, null);
+        contentCreator.setBatchSize(2, 0);
+        contentCreator.prepareParsing(parentNode, "issue");
+
+        // the second node completes the batch, which is saved once the node is finished
+        this.mockery.checking(new Expectations() {{
+            allowing(parentNode).hasNode("issue"); will(returnValue(Boolean.FALSE));
+            oneOf (parentNode).addNode("issue", "sling:OrderedFolder"); will(returnValue(issueNode));
+            allowing(issueNode).hasNode("page1"); will(returnValue(Boolean.FALSE));
+            oneOf (issueNode).addNode("page1", "nt:unstructured"); will(returnValue(pageNode));
+            allowing(issueNode).getPath(); will(returnValue("/comics/issue"));
+            allowing(pageNode).getPath(); will(returnValue("/comics/issue/page1"));
+            allowing(issueNode).getSession(); will(returnValue(session));
+            allowing(pageNode).getSession(); will(returnValue(session));
+            oneOf (issueNode).hasProperty(DefaultContentCreator.IMPORT_STATUS); will(returnValue(Boolean.FALSE));
+            oneOf (issueNode).setProperty(DefaultContentCreator.IMPORT_STATUS,
+                DefaultContentCreator.IMPORT_STATUS_INCOMPLETE);
+            oneOf (session).save();
+        }});
+        contentCreator.createNode(null, "sling:OrderedFolder", null);
+        contentCreator.createNode("page1", "nt:unstructured", null);
+        contentCreator.finishNode();
+
+        // the marker is removed once the import is complete
+        this.mockery.checking(new Expectations() {{
+            oneOf (issueNode).hasProperty(DefaultContentCreator.IMPORT_STATUS); will(returnValue(Boolean.TRUE));
+            oneOf (issueNode).getProperty(DefaultContentCreator.IMPORT_STATUS); will(returnValue(prop));
+            oneOf (prop).remove();
+        }});
+        contentCreator.finishNode();
+        contentCreator.completeImport();
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.contentloader.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+
+public class ImportCheckpointTest extends TestCase {
+
+    private File directory;
+
+    private File checkpointFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("comics", "");
+        directory.delete();
+        directory.mkdirs();
+        checkpointFile = new File(directory, "checkpoint");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    public void testResume() throws Exception {
+        final File issue1 = archive("issue1.cbz", 10);
+        final File issue2 = archive("issue2.cbz", 10);
+
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile);
+        checkpoint.load();
+        assertFalse(checkpoint.contains(issue1));
+        checkpoint.add(issue1);
+        assertTrue(checkpoint.contains(issue1));
+        checkpoint.close();
+
+        // a restarted import only skips the archives saved before
+        final ImportCheckpoint restarted = new ImportCheckpoint(checkpointFile);
+        restarted.load();
+        assertTrue(restarted.contains(issue1));
+        assertFalse(restarted.contains(issue2));
+        restarted.close();
+    }
+
+    public void testChangedArchiveIsImportedAgain() throws Exception {
+        final File issue1 = archive("issue1.cbz", 10);
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile);
+        checkpoint.add(issue1);
+        checkpoint.close();
+
+        archive("issue1.cbz", 20);
+        assertFalse(checkpoint.contains(issue1));
+    }
+
+    public void testClear() throws Exception {
+        final File issue1 = archive("issue1.cbz", 10);
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile);
+        checkpoint.add(issue1);
+        checkpoint.clear();
+        assertFalse(checkpoint.contains(issue1));
+        assertFalse(checkpointFile.exists());
+
+        checkpoint.load();
+        assertFalse(checkpoint.contains(issue1));
+    }
+
+    public void testNames() {
+        assertEquals(".cbz", ComicBulkImport.getExtension("Issue 1.CBZ"));
+        assertEquals(".cbr", ComicBulkImport.getExtension("issue1.cbr"));
+        assertNull(ComicBulkImport.getExtension("cover.jpg"));
+
+        assertEquals("Spider-Man 001 (2011)", ComicBulkImport.toNodeName("Spider-Man 001 (2011)"));
+        assertEquals("X_ Men _1_", ComicBulkImport.toNodeName("X: Men [1]"));
+        assertEquals("_..", ComicBulkImport.toNodeName(".."));
+    }
+
+    private File archive(String name, int length) throws Exception {
+        final File file = new File(directory, name);
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
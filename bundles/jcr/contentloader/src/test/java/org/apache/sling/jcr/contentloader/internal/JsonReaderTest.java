@@ -261,6 +261,51 @@ public class JsonReaderTest {
     }
 
 
+    @org.junit.Test public void testNodesCreatedWhileReading() throws Exception {
+        // the document is cut off after the first child node
+        final byte[] json = "{ c1 : { c1p1 : \"v1\" }, c2 : {".getBytes("UTF-8");
+        InputStream ins = new ByteArrayInputStream(json) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                final int rd = super.read(b, off, len);
+                if (rd < 0) {
+                    throw new IllegalStateException("Read beyond the available content");
+                }
+                return rd;
+            }
+        };
+        this.mockery.checking(new Expectations() {{
+            one(creator).createNode(null, null, null); inSequence(mySequence);
+            one(creator).createNode("c1", null, null); inSequence(mySequence);
+            one(creator).createProperty("c1p1", PropertyType.UNDEFINED, "v1"); inSequence(mySequence);
+            one(creator).finishNode(); inSequence(mySequence);
+        }});
+        try {
+            this.jsonReader.parse(ins, this.creator);
+            org.junit.Assert.fail("Expected the stream to be read up to its end only");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @org.junit.Test public void testPrimaryTypeAfterChild() throws Exception {
+        String json = "{ " +
+        " c1 : {}," +
+        " \"jcr:primaryType\" : \"xyz:MyType\"" +
+        "}";
+        this.mockery.checking(new Expectations() {{
+            allowing(creator).createNode(null, null, null); inSequence(mySequence);
+            allowing(creator).createNode("c1", null, null); inSequence(mySequence);
+            allowing(creator).finishNode(); inSequence(mySequence);
+        }});
+        try {
+            this.parse(json);
+            org.junit.Assert.fail("Expected the node type to be rejected after a child node");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
     @org.junit.Test public void testCreateAcl() throws Exception {
     	String json = " { " +
     			"\"security:acl\" : [ " +
@@ -0,0 +1,643 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.contentloader.internal.readers;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+import javax.jcr.RepositoryException;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.ThreadPoolConfig;
+import org.apache.sling.jcr.contentloader.internal.ContentCreator;
+
+public class ComicReaderTest extends TestCase {
+
+    private ComicReader reader;
+    private MockContentCreator creator;
+
+    /**
+     * Every page of a cbz file gets its original and its thumbnail.
+     */
+    public void testParseCBZ() throws Exception {
+        final byte[] page = createPage(300, 400);
+        reader.setRenditions(Rendition.parse(new String[] { "thumb:150" }));
+        reader.parse(new ByteArrayInputStream(createCBZ(new byte[][] { page, page, page })), creator);
+
+        assertEquals("Did not create expected number of files", 6, creator.filesCreated.size());
+        for (int i = 0; i < 6; i += 2) {
+            MockContentCreator.FileDescription bin = creator.filesCreated.get(i);
+            MockContentCreator.FileDescription thumb = creator.filesCreated.get(i + 1);
+            assertEquals("bin", bin.name);
+            assertEquals("thumb", thumb.name);
+            assertEquals(bin.page, thumb.page);
+            assertEquals("image/png", thumb.mimeType);
+            assertTrue("Original page content mismatch", Arrays.equals(page, bin.content));
+            assertEquals("Thumbnail width mismatch", 150,
+                ImageIO.read(new ByteArrayInputStream(thumb.content)).getWidth());
+            assertFalse("Page must not be copied into the heap",
+                bin.data instanceof ByteArrayInputStream);
+        }
+    }
+
+    /**
+     * Each page is scaled to every rendition of the profile, never wider than
+     * the page itself, and lists the renditions it got.
+     */
+    public void testRenditions() throws Exception {
+        reader.parse(new ByteArrayInputStream(createCBZ(new byte[][] {
+            createPage(1200, 1600), createPage(300, 400) })), creator);
+
+        assertEquals("Did not create expected number of files", 8, creator.filesCreated.size());
+        final int[][] widths = { { 150, 480, 1080 }, { 150, 300, 300 } };
+        final String[] names = { "thumb", "screen", "retina" };
+        final String[] mimeTypes = { "image/png", "image/jpeg", "image/jpeg" };
+        for (int p = 0; p < 2; p++) {
+            for (int r = 0; r < names.length; r++) {
+                final MockContentCreator.FileDescription rendition = creator.getFiles(names[r]).get(p);
+                assertEquals("/page" + (p + 1) + ".png", rendition.page);
+                assertEquals(mimeTypes[r], rendition.mimeType);
+                assertEquals("Rendition width mismatch", widths[p][r],
+                    ImageIO.read(new ByteArrayInputStream(rendition.content)).getWidth());
+            }
+            assertTrue(Arrays.equals(new String[] { "thumb:150", "screen:480", "retina:1080" },
+                creator.renditions.get("/page" + (p + 1) + ".png")));
+        }
+    }
+
+    /**
+     * The issue gets the ordered list of its pages with their dimensions,
+     * sizes and renditions.
+     */
+    public void testPageManifest() throws Exception {
+        final byte[] page2 = createPage(300, 400);
+        final byte[] page1 = createPage(600, 900);
+        final ByteArrayOutputStream cbz = new ByteArrayOutputStream();
+        final ZipOutputStream zos = new ZipOutputStream(cbz);
+        zos.putNextEntry(new ZipEntry("issue/b.png"));
+        zos.write(page2);
+        zos.putNextEntry(new ZipEntry("issue/a.png"));
+        zos.write(page1);
+        zos.close();
+        reader.setRenditions(Rendition.parse(new String[] { "thumb:150" }));
+        reader.parse(new ByteArrayInputStream(cbz.toByteArray()), creator);
+
+        final JSONArray manifest = new JSONArray((String) creator.issueProperties.get(ComicReader.PAGES));
+        assertEquals(2, manifest.length());
+        final JSONObject first = manifest.getJSONObject(0);
+        assertEquals("a.png", first.getString("name"));
+        assertEquals(600, first.getInt("width"));
+        assertEquals(900, first.getInt("height"));
+        assertEquals(page1.length, first.getLong("size"));
+        assertEquals("a.png/bin", first.getString("original"));
+        assertEquals("a.png/thumb", first.getJSONObject("renditions").getJSONObject("thumb").getString("path"));
+        assertEquals("b.png", manifest.getJSONObject(1).getString("name"));
+    }
+
+    /**
+     * Pages are put in reading order, numbers in their names are compared by
+     * value.
+     */
+    public void testNaturalPageOrder() throws Exception {
+        final String[] names = { "p10.png", "P2.png", "p1.png", "p02b.png" };
+        final byte[] page = createPage(20, 20);
+        final ByteArrayOutputStream cbz = new ByteArrayOutputStream();
+        final ZipOutputStream zos = new ZipOutputStream(cbz);
+        for (String name : names) {
+            zos.putNextEntry(new ZipEntry(name));
+            zos.write(page);
+        }
+        zos.close();
+        reader.setRenditions(Rendition.parse(new String[] { "thumb:10" }));
+        reader.parse(new ByteArrayInputStream(cbz.toByteArray()), creator);
+
+        final List<String> expected = Arrays.asList("p1.png", "P2.png", "p02b.png", "p10.png");
+        assertEquals(expected, creator.order);
+        final JSONArray manifest = new JSONArray((String) creator.issueProperties.get(ComicReader.PAGES));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), manifest.getJSONObject(i).getString("name"));
+            assertEquals(i + 1, manifest.getJSONObject(i).getInt("index"));
+        }
+    }
+
+    public void testNaturalOrderComparator() {
+        final NaturalOrderComparator c = NaturalOrderComparator.INSTANCE;
+        assertTrue(c.compare("p2", "p10") < 0);
+        assertTrue(c.compare("p10", "p2") > 0);
+        assertTrue(c.compare("page 9 b", "page 10 a") < 0);
+        assertTrue(c.compare("a", "B") < 0);
+        assertTrue(c.compare("p1", "p1a") < 0);
+        assertTrue(c.compare("v2/p3", "v10/p1") < 0);
+
+        // consistent with equals
+        assertEquals(0, c.compare("p01", "p01"));
+        assertTrue(c.compare("p01", "p1") != 0);
+        assertTrue(c.compare("p01", "p1") == -c.compare("p1", "p01"));
+        assertTrue(c.compare("A1", "a1") != 0);
+    }
+
+    public void testParseRendition() {
+        final Rendition rendition = Rendition.parse("screen:480:JPG:0.8");
+        assertEquals("screen", rendition.getName());
+        assertEquals(480, rendition.getWidth());
+        assertEquals("jpg", rendition.getFormat());
+        assertEquals(0.8f, rendition.getQuality());
+        assertNull(Rendition.parse("thumb:150").getFormat());
+
+        final String[] invalid = { "thumb", ":150", "thumb:wide", "thumb:0", "thumb:150:jpg:2" };
+        for (String definition : invalid) {
+            try {
+                Rendition.parse(definition);
+                fail("Accepted invalid rendition " + definition);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Thumbnails rendered on a thread pool are written in page order by the
+     * parsing thread, with no more pages in flight than configured.
+     */
+    public void testParallelThumbnails() throws Exception {
+        final int pages = 12;
+        final byte[][] content = new byte[pages][];
+        for (int i = 0; i < pages; i++) {
+            content[i] = createPage(300, 100 + i * 20);
+        }
+
+        final MockThreadPool pool = new MockThreadPool(6, creator);
+        reader.setRenditions(Rendition.parse(new String[] { "thumb:150" }));
+        reader.setThumbnailPool(pool, 3);
+        try {
+            reader.parse(new ByteArrayInputStream(createCBZ(content)), creator);
+        } finally {
+            pool.shutdown();
+        }
+
+        final List<MockContentCreator.FileDescription> thumbs = creator.getFiles("thumb");
+        assertEquals("Did not create expected number of thumbnails", pages, thumbs.size());
+        for (int i = 0; i < pages; i++) {
+            final MockContentCreator.FileDescription thumb = thumbs.get(i);
+            assertEquals("/page" + (i + 1) + ".png", thumb.page);
+            assertEquals("Thumbnail written for the wrong page", 50 + i * 10,
+                ImageIO.read(new ByteArrayInputStream(thumb.content)).getHeight());
+            assertFalse("Repository must only be written by the parsing thread",
+                thumb.thread != Thread.currentThread());
+        }
+        assertTrue("Thumbnails were not rendered on the pool", pool.executed.get() == pages);
+        assertTrue("Too many pages in flight: " + pool.maxInFlight, pool.maxInFlight <= 3);
+        assertEquals(ComicReader.THUMBNAIL_STATUS_DONE, creator.statuses.get("/page1.png"));
+        assertEquals(ComicReader.THUMBNAIL_STATUS_DONE, creator.statuses.get(null));
+    }
+
+    /**
+     * Pages refused by a pool which has been shut down are rendered on the
+     * parsing thread.
+     */
+    public void testShutDownPoolRendersInline() throws Exception {
+        final byte[] page = createPage(300, 400);
+        reader.setRenditions(Rendition.parse(new String[] { "thumb:150" }));
+        reader.setThumbnailPool(new DroppingThreadPool(true), 2);
+        reader.parse(new ByteArrayInputStream(createCBZ(new byte[][] { page, page, page })), creator);
+
+        assertEquals(3, creator.getFiles("thumb").size());
+        assertEquals(ComicReader.THUMBNAIL_STATUS_DONE, creator.statuses.get("/page3.png"));
+        assertEquals(ComicReader.THUMBNAIL_STATUS_DONE, creator.statuses.get(null));
+    }
+
+    /**
+     * Pages the pool never starts are rendered on the calling thread once
+     * the start timeout expires, and never block disposing the pipeline.
+     */
+    public void testDroppedPagesRenderedInline() throws Exception {
+        final ThumbnailPipeline thumbnails = ComicReader.createThumbnailPipeline(creator,
+            new DroppingThreadPool(false), 2, Rendition.parse(new String[] { "thumb:150" }));
+        thumbnails.setStartTimeout(10);
+        try {
+            for (int i = 1; i <= 3; i++) {
+                final PageSpool spool = thumbnails.nextSpool();
+                spool.spool(new ByteArrayInputStream(createPage(300, 400)));
+                thumbnails.submit("page" + i + ".png", spool, "image/png", ".png");
+            }
+            thumbnails.finish();
+            assertEquals(3, creator.getFiles("thumb").size());
+            assertEquals(ComicReader.THUMBNAIL_STATUS_DONE, creator.statuses.get("page3.png"));
+            assertEquals(0, thumbnails.getFailedPages());
+
+            // a page left pending is cancelled
+            final PageSpool spool = thumbnails.nextSpool();
+            spool.spool(new ByteArrayInputStream(createPage(300, 400)));
+            thumbnails.submit("page4.png", spool, "image/png", ".png");
+        } finally {
+            thumbnails.dispose();
+        }
+        assertEquals(3, creator.getFiles("thumb").size());
+    }
+
+    /**
+     * With deferred thumbnails only the originals are written and the pages
+     * are left pending.
+     */
+    public void testDeferredThumbnails() throws Exception {
+        final byte[] page = createPage(300, 400);
+        reader.setDeferThumbnails(true);
+        reader.parse(new ByteArrayInputStream(createCBZ(new byte[][] { page, page })), creator);
+
+        assertEquals("Did not create expected number of files", 2, creator.filesCreated.size());
+        assertEquals(0, creator.getFiles("thumb").size());
+        assertEquals(ComicReader.THUMBNAIL_STATUS_PENDING, creator.statuses.get("/page1.png"));
+        assertEquals(ComicReader.THUMBNAIL_STATUS_PENDING, creator.statuses.get("/page2.png"));
+        assertEquals(ComicReader.THUMBNAIL_STATUS_PENDING, creator.statuses.get(null));
+
+        // renditions are only listed once they are written
+        final JSONArray manifest = new JSONArray((String) creator.issueProperties.get(ComicReader.PAGES));
+        assertEquals(0, manifest.getJSONObject(0).getJSONObject("renditions").length());
+
+        final PageManifest rendered = PageManifest.parse(manifest.toString());
+        rendered.addRenditions("page1.png", Rendition.parse(new String[] { "thumb:150" }));
+        final JSONArray updated = new JSONArray(rendered.toString());
+        assertEquals("page1.png/thumb", updated.getJSONObject(0).getJSONObject("renditions")
+            .getJSONObject("thumb").getString("path"));
+        assertEquals(0, updated.getJSONObject(1).getJSONObject("renditions").length());
+    }
+
+    /**
+     * A broken archive fails the import instead of leaving a partial issue
+     * which looks complete.
+     */
+    public void testTruncatedArchiveFails() throws Exception {
+        final byte[] page = createPage(300, 400);
+        final byte[] cbz = createCBZ(new byte[][] { page, page });
+        final byte[] truncated = new byte[cbz.length / 2];
+        System.arraycopy(cbz, 0, truncated, 0, truncated.length);
+        try {
+            reader.parse(new ByteArrayInputStream(truncated), creator);
+            fail("Expected IOException");
+        } catch (IOException ioe) {
+            // expected
+        }
+        assertNull(creator.issueProperties.get(ComicReader.PAGES));
+        assertNull(creator.statuses.get(null));
+    }
+
+    /**
+     * An issue with a page which cannot be rendered is not marked done.
+     */
+    public void testFailedPageMarksIssuePartial() throws Exception {
+        final byte[] page = createPage(300, 400);
+        final byte[] broken = "not an image".getBytes("UTF-8");
+        reader.parse(new ByteArrayInputStream(createCBZ(new byte[][] { page, broken })), creator);
+
+        assertEquals(1, creator.getFiles("thumb").size());
+        assertEquals(ComicReader.THUMBNAIL_STATUS_DONE, creator.statuses.get("/page1.png"));
+        assertEquals(ComicReader.THUMBNAIL_STATUS_FAILED, creator.statuses.get("/page2.png"));
+        assertEquals(ComicReader.THUMBNAIL_STATUS_PARTIAL, creator.statuses.get(null));
+
+        final JSONArray manifest = new JSONArray((String) creator.issueProperties.get(ComicReader.PAGES));
+        assertTrue(manifest.getJSONObject(0).getJSONObject("renditions").has("thumb"));
+        assertFalse("Failed rendition listed in the manifest",
+            manifest.getJSONObject(1).getJSONObject("renditions").has("thumb"));
+    }
+
+    /**
+     * Pages of any size are copied through the same fixed size buffer into
+     * one temporary file, which is reused for the next page.
+     */
+    public void testPagesSpooledToDiskThroughOneBuffer() throws Exception {
+        final PageSpool spool = new PageSpool();
+        try {
+            final Map<byte[], Boolean> buffers = new IdentityHashMap<byte[], Boolean>();
+            File file = null;
+            final long[] sizes = new long[] { 1024, 1024 * 1024, 32 * 1024 * 1024 };
+            for (long size : sizes) {
+                final GeneratedInputStream page = new GeneratedInputStream(size);
+                assertEquals(size, spool.spool(page));
+                buffers.putAll(page.buffers);
+
+                // the page is on disk, in the same file for every page
+                assertNotNull(spool.getFile());
+                assertEquals(size, spool.getFile().length());
+                if (file == null) {
+                    file = spool.getFile();
+                }
+                assertEquals(file, spool.getFile());
+
+                // the page can be read back more than once
+                for (int pass = 0; pass < 2; pass++) {
+                    final InputStream ins = spool.openStream();
+                    try {
+                        assertFalse(ins instanceof ByteArrayInputStream);
+                        assertEquals("Spooled page content mismatch", size,
+                            verify(ins));
+                    } finally {
+                        ins.close();
+                    }
+                }
+            }
+
+            // all pages, whatever their size, were read into one buffer
+            assertEquals(1, buffers.size());
+            assertEquals(PageSpool.BUFFER_SIZE, buffers.keySet().iterator().next().length);
+        } finally {
+            spool.dispose();
+        }
+        assertNull(spool.getFile());
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        reader = new ComicReader(ComicReader.CBZ_COMIC_TYPE);
+        creator = new MockContentCreator();
+    }
+
+    private static byte[] createPage(int width, int height) throws IOException {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] createCBZ(byte[][] pages) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ZipOutputStream zos = new ZipOutputStream(out);
+        for (int i = 0; i < pages.length; i++) {
+            zos.putNextEntry(new ZipEntry("issue/page" + (i + 1) + ".png"));
+            zos.write(pages[i]);
+            zos.closeEntry();
+        }
+        zos.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks the stream against {@link GeneratedInputStream} and returns the
+     * number of bytes read.
+     */
+    private static long verify(InputStream ins) throws IOException {
+        long pos = 0;
+        int b;
+        while ((b = ins.read()) != -1) {
+            if (b != GeneratedInputStream.byteAt(pos)) {
+                fail("Unexpected byte at " + pos);
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Stream of a given size which is never held in memory.
+     */
+    private static class GeneratedInputStream extends InputStream {
+
+        private final long size;
+        private long pos;
+
+        /** The buffers the stream has been read into */
+        final Map<byte[], Boolean> buffers = new IdentityHashMap<byte[], Boolean>();
+
+        GeneratedInputStream(long size) {
+            this.size = size;
+        }
+
+        static int byteAt(long pos) {
+            return (int) ((pos * 31) % 251);
+        }
+
+        @Override
+        public int read() {
+            return pos < size ? byteAt(pos++) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            buffers.put(b, Boolean.TRUE);
+            if (pos >= size) {
+                return -1;
+            }
+            final int count = (int) Math.min(len, size - pos);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) byteAt(pos++);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Thread pool counting the pages submitted and not yet written.
+     */
+    private static class MockThreadPool implements ThreadPool {
+
+        private final ExecutorService executor;
+        private final MockContentCreator creator;
+        private int submitted;
+        int maxInFlight;
+        final AtomicInteger executed = new AtomicInteger();
+
+        MockThreadPool(int size, MockContentCreator creator) {
+            this.executor = Executors.newFixedThreadPool(size);
+            this.creator = creator;
+        }
+
+        public void execute(final Runnable runnable) {
+            // called by the parsing thread, as are the writes
+            submitted++;
+            maxInFlight = Math.max(maxInFlight, submitted - creator.getFiles("thumb").size());
+            executor.execute(new Runnable() {
+                public void run() {
+                    executed.incrementAndGet();
+                    runnable.run();
+                }
+            });
+        }
+
+        public String getName() {
+            return "test";
+        }
+
+        public ThreadPoolConfig getConfiguration() {
+            return null;
+        }
+
+        void shutdown() {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Thread pool which is shut down: it either refuses every page or, like
+     * a shutting down executor, silently drops it.
+     */
+    private static class DroppingThreadPool implements ThreadPool {
+
+        private final boolean refuse;
+
+        DroppingThreadPool(boolean refuse) {
+            this.refuse = refuse;
+        }
+
+        public void execute(Runnable runnable) {
+            if (refuse) {
+                throw new IllegalStateException("Thread pool test is already shutdown.");
+            }
+        }
+
+        public String getName() {
+            return "test";
+        }
+
+        public ThreadPoolConfig getConfiguration() {
+            return null;
+        }
+    }
+
+    private static class MockContentCreator implements ContentCreator {
+
+        public static class FileDescription {
+            public String name;
+            public String page;
+            public Thread thread = Thread.currentThread();
+            public InputStream data;
+            public String mimeType;
+            public byte[] content;
+
+            public FileDescription(String name, String page, InputStream data, String mimeType) throws IOException {
+                this.name = name;
+                this.page = page;
+                this.data = data;
+                this.mimeType = mimeType;
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[1024];
+                int len;
+                while ((len = data.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+                this.content = out.toByteArray();
+            }
+        }
+
+        public List<FileDescription> filesCreated = new ArrayList<FileDescription>();
+
+        /** Thumbnail status by node name */
+        public Map<String, Object> statuses = new HashMap<String, Object>();
+
+        /** Properties of the issue node */
+        public Map<String, Object> issueProperties = new HashMap<String, Object>();
+
+        /** Children order requested for the issue */
+        public List<String> order;
+
+        /** Renditions by node name */
+        public Map<String, String[]> renditions = new HashMap<String, String[]>();
+
+        private final LinkedList<String> path = new LinkedList<String>();
+
+        public List<FileDescription> getFiles(String name) {
+            final List<FileDescription> files = new ArrayList<FileDescription>();
+            for (FileDescription file : filesCreated) {
+                if (file.name.equals(name)) {
+                    files.add(file);
+                }
+            }
+            return files;
+        }
+
+        public void createNode(String name, String primaryNodeType, String[] mixinNodeTypes) throws RepositoryException {
+            path.addLast(name);
+        }
+
+        public void finishNode() throws RepositoryException {
+            path.removeLast();
+        }
+
+        public void createProperty(String name, int propertyType, String value) throws RepositoryException {
+            createProperty(name, value);
+        }
+
+        public void createProperty(String name, int propertyType, String[] values) throws RepositoryException {
+            if (ComicReader.RENDITIONS.equals(name)) {
+                renditions.put(path.getLast(), values);
+            }
+        }
+
+        public void createProperty(String name, Object value) throws RepositoryException {
+            if (ComicReader.THUMBNAIL_STATUS.equals(name)) {
+                statuses.put(path.getLast(), value);
+            }
+            if (path.size() == 1) {
+                issueProperties.put(name, value);
+            }
+        }
+
+        public void createProperty(String name, Object[] values) throws RepositoryException {
+        }
+
+        public void createFileAndResourceNode(String name, InputStream data, String mimeType, long lastModified) throws RepositoryException {
+            try {
+                this.filesCreated.add(new FileDescription(name, path.getLast(), data, mimeType));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            path.addLast(name);
+            path.addLast("jcr:content");
+        }
+
+        public boolean switchCurrentNode(String subPath, String newNodeType) throws RepositoryException {
+            path.addLast(subPath);
+            return true;
+        }
+
+        public void orderChildren(List<String> names) throws RepositoryException {
+            order = names;
+        }
+
+        public void createAce(String principal, String[] grantedPrivileges,
+                String[] deniedPrivileges, String order) throws RepositoryException {
+        }
+
+        public void createGroup(String name, String[] members,
+                Map<String, Object> extraProperties) throws RepositoryException {
+        }
+
+        public void createUser(String name, String password,
+                Map<String, Object> extraProperties) throws RepositoryException {
+        }
+    }
+}
@@ -144,6 +144,9 @@ public class XmlReaderTest extends TestCase {
             return true;
         }
 
+        public void orderChildren(List<String> names) throws RepositoryException {
+        }
+
 		public void createAce(String principal,
 				String[] grantedPrivileges, String[] deniedPrivileges,
 				String order)
@@ -74,7 +74,6 @@ public final class JcrModifiablePropertyMap
         }
         this.changedProperties.addAll(this.cache.keySet());
         this.cache.clear();
-        this.valueCache.clear();
     }
 
     /**
@@ -95,7 +94,6 @@ public final class JcrModifiablePropertyMap
         } catch (final RepositoryException re) {
             throw new IllegalArgumentException("Value for key " + key + " can't be put into node: " + value, re);
         }
-        this.valueCache.put(key, value);
         if ( this.changedProperties == null ) {
             this.changedProperties = new HashSet<String>();
         }
@@ -125,7 +123,6 @@ public final class JcrModifiablePropertyMap
         final String key = checkKey(aKey.toString());
         readFully();
         final Object oldValue = this.cache.remove(key);
-        this.valueCache.remove(key);
         if ( this.changedProperties == null ) {
             this.changedProperties = new HashSet<String>();
         }
@@ -141,7 +138,6 @@ public final class JcrModifiablePropertyMap
             this.changedProperties = null;
         }
         this.cache.clear();
-        this.valueCache.clear();
         this.fullyRead = false;
     }
 
@@ -188,7 +184,7 @@ public final class JcrModifiablePropertyMap
             if ( this.changedProperties.contains(MIXIN_TYPES) ) {
                 if ( cache.containsKey(MIXIN_TYPES) ) {
                     final JcrPropertyMapCacheEntry entry = cache.get(MIXIN_TYPES);
-                    handleMixinTypes(node, entry.values);
+                    handleMixinTypes(node, entry.getValues());
                 } else {
                     // remove all mixin types!
                     handleMixinTypes(node, null);
@@ -200,10 +196,10 @@ public final class JcrModifiablePropertyMap
                 if ( !MIXIN_TYPES.equals(name) ) {
                     if ( cache.containsKey(key) ) {
                         final JcrPropertyMapCacheEntry entry = cache.get(key);
-                        if ( entry.isMulti ) {
-                            node.setProperty(name, entry.values);
+                        if ( entry.isMulti() ) {
+                            node.setProperty(name, entry.getValues());
                         } else {
-                            node.setProperty(name, entry.values[0]);
+                            node.setProperty(name, entry.getValues()[0]);
                         }
                     } else {
                         node.setProperty(name, (String)null);
@@ -23,11 +23,13 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +52,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * An implementation of the value map based on a JCR node.
+ * <p>
+ * The properties are read when they are accessed. Listing the properties,
+ * for example with {@link #keySet()} or {@link #entrySet()}, only reads the
+ * names of all properties; their values are converted when the value of a
+ * property is accessed. The value of a binary property is an input stream
+ * which only reads the binary when the stream is read.
  * @see JcrModifiablePropertyMap
  */
 public class JcrPropertyMap
@@ -64,9 +72,6 @@ public class JcrPropertyMap
     /** A cache for the properties. */
     final Map<String, JcrPropertyMapCacheEntry> cache;
 
-    /** A cache for the values. */
-    final Map<String, Object> valueCache;
-
     /** Has the node been read completly? */
     boolean fullyRead;
 
@@ -89,7 +94,6 @@ public class JcrPropertyMap
     public JcrPropertyMap(final Node node, final ClassLoader dynamicCL) {
         this.node = node;
         this.cache = new LinkedHashMap<String, JcrPropertyMapCacheEntry>();
-        this.valueCache = new LinkedHashMap<String, Object>();
         this.fullyRead = false;
         this.dynamicClassLoader = dynamicCL;
     }
@@ -176,7 +180,13 @@ public class JcrPropertyMap
      */
     public boolean containsValue(final Object value) {
         readFully();
-        return valueCache.containsValue(value);
+        for (final JcrPropertyMapCacheEntry entry : cache.values()) {
+            final Object entryValue = entry.getDefaultValueOrNull();
+            if (value == null ? entryValue == null : value.equals(entryValue)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -199,13 +209,32 @@ public class JcrPropertyMap
      */
     public Set<java.util.Map.Entry<String, Object>> entrySet() {
         readFully();
-        final Map<String, Object> sourceMap;
-        if (cache.size() == valueCache.size()) {
-            sourceMap = valueCache;
-        } else {
-            sourceMap = transformEntries(cache);
-        }
-        return Collections.unmodifiableSet(sourceMap.entrySet());
+        return new AbstractSet<Map.Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                final Iterator<Map.Entry<String, JcrPropertyMapCacheEntry>> entries = cache.entrySet().iterator();
+                return new Iterator<Map.Entry<String, Object>>() {
+
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    public Map.Entry<String, Object> next() {
+                        return new LazyEntry(entries.next());
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return cache.size();
+            }
+        };
     }
 
     /**
@@ -221,13 +250,32 @@ public class JcrPropertyMap
      */
     public Collection<Object> values() {
         readFully();
-        final Map<String, Object> sourceMap;
-        if (cache.size() == valueCache.size()) {
-            sourceMap = valueCache;
-        } else {
-            sourceMap = transformEntries(cache);
-        }
-        return Collections.unmodifiableCollection(sourceMap.values());
+        return new AbstractCollection<Object>() {
+
+            @Override
+            public Iterator<Object> iterator() {
+                final Iterator<JcrPropertyMapCacheEntry> entries = cache.values().iterator();
+                return new Iterator<Object>() {
+
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    public Object next() {
+                        return entries.next().getDefaultValueOrNull();
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return cache.size();
+            }
+        };
     }
 
     /**
@@ -248,7 +296,8 @@ public class JcrPropertyMap
     // ---------- Helpers to access the node's property ------------------------
 
     /**
-     * Put a single property into the cache
+     * Put a single property into the cache, its value is only read when
+     * it is accessed.
      * @param prop
      * @return
      * @throws IllegalArgumentException if a repository exception occurs
@@ -273,11 +322,6 @@ public class JcrPropertyMap
             if ( entry == null ) {
                 entry = new JcrPropertyMapCacheEntry(prop);
                 cache.put(key, entry);
-
-                final Object defaultValue = entry.getDefaultValue();
-                if (defaultValue != null) {
-                    valueCache.put(key, entry.getDefaultValue());
-                }
             }
             return entry;
         } catch (final RepositoryException re) {
@@ -358,7 +402,8 @@ public class JcrPropertyMap
     }
 
     /**
-     * Read all properties.
+     * Read all properties. Only the names of the properties are read, the
+     * values are read when they are accessed.
      * @throws IllegalArgumentException if a repository exception occurs
      */
     void readFully() {
@@ -403,16 +448,16 @@ public class JcrPropertyMap
         try {
             final boolean array = type.isArray();
 
-            if (entry.isMulti) {
+            if (entry.isMulti()) {
 
                 if (array) {
 
                     result = (T) convertToArray(entry,
                         type.getComponentType());
 
-                } else if (entry.values.length > 0) {
+                } else if (entry.getValues().length > 0) {
 
-                    result = convertToType(entry, -1, entry.values[0], type);
+                    result = convertToType(entry, -1, entry.getValues()[0], type);
 
                 }
 
@@ -425,7 +470,7 @@ public class JcrPropertyMap
 
                 } else {
 
-                    result = convertToType(entry, -1, entry.values[0], type);
+                    result = convertToType(entry, -1, entry.getValues()[0], type);
 
                 }
             }
@@ -443,9 +488,10 @@ public class JcrPropertyMap
 
     private <T> T[] convertToArray(final JcrPropertyMapCacheEntry entry, Class<T> type)
     throws ValueFormatException, RepositoryException {
+        final Value[] jcrValues = entry.getValues();
         List<T> values = new ArrayList<T>();
-        for (int i = 0; i < entry.values.length; i++) {
-            T value = convertToType(entry, i, entry.values[i], type);
+        for (int i = 0; i < jcrValues.length; i++) {
+            T value = convertToType(entry, i, jcrValues[i], type);
             if (value != null) {
                 values.add(value);
             }
@@ -554,14 +600,51 @@ public class JcrPropertyMap
         return type;
     }
 
-	private Map<String, Object> transformEntries( Map<String, JcrPropertyMapCacheEntry> map) {
+    /**
+     * A map entry whose value is only converted when it is accessed.
+     */
+    private static final class LazyEntry implements Map.Entry<String, Object> {
+
+        private final Map.Entry<String, JcrPropertyMapCacheEntry> entry;
 
-		Map<String, Object> transformedEntries = new LinkedHashMap<String, Object>(map.size());
-		for ( Map.Entry<String, JcrPropertyMapCacheEntry> entry : map.entrySet() )
-			transformedEntries.put(entry.getKey(), entry.getValue().getDefaultValueOrNull());
+        LazyEntry(final Map.Entry<String, JcrPropertyMapCacheEntry> entry) {
+            this.entry = entry;
+        }
+
+        public String getKey() {
+            return entry.getKey();
+        }
 
-		return transformedEntries;
-	}
+        public Object getValue() {
+            return entry.getValue().getDefaultValueOrNull();
+        }
+
+        public Object setValue(final Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+            final Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            final Object value = getValue();
+            return getKey().equals(other.getKey())
+                && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            final Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
 
     /**
      * This is an extended version of the object input stream which uses the
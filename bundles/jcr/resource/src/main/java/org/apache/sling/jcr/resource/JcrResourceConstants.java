@@ -53,6 +53,19 @@ public class JcrResourceConstants {
      */
     public static final String SLING_RESOURCE_SUPER_TYPE_PROPERTY = "sling:resourceSuperType";
 
+    /**
+     * The name of the JCR Property holding the hash of the binary content of
+     * an <code>nt:resource</code> node (value is "sling:entityTag"). The
+     * property is defined by the <code>sling:EntityTag</code> mixin node type
+     * and set when the content is written. The resource manager implementation
+     * of this bundle uses it to provide the
+     * {@link org.apache.sling.api.resource.ResourceMetadata#ENTITY_TAG} of the
+     * resource without reading the content.
+     *
+     * @since 2.1.2
+     */
+    public static final String SLING_ENTITY_TAG_PROPERTY = "sling:entityTag";
+
     /**
      * The name of the property providing the JCR credentials to be used by the
      * resource resolver factory method instead of the <code>user.name</code>
@@ -19,6 +19,8 @@
 package org.apache.sling.jcr.resource;
 
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
 import java.util.StringTokenizer;
 
@@ -44,6 +46,9 @@ import org.apache.sling.jcr.resource.internal.helper.LazyInputStream;
  */
 public class JcrResourceUtil {
 
+    /** Digits of the hex encoded {@link JcrResourceConstants#SLING_ENTITY_TAG_PROPERTY} */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     /** Helper method to execute a JCR query */
     public static QueryResult query(Session session, String query,
             String language) throws RepositoryException {
@@ -162,6 +167,44 @@ public class JcrResourceUtil {
         }
     }
 
+    /**
+     * Returns a new digest computing the hash of binary content stored in the
+     * {@link JcrResourceConstants#SLING_ENTITY_TAG_PROPERTY}. The content is
+     * usually hashed while it is written, for example through a
+     * <code>java.security.DigestInputStream</code>.
+     *
+     * @return The digest
+     * @throws RepositoryException If the hash algorithm is not available
+     * @since 2.1.2
+     */
+    public static MessageDigest createEntityTagDigest() throws RepositoryException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RepositoryException("Unable to hash the content.", nsae);
+        }
+    }
+
+    /**
+     * Completes the hash computed by a digest from
+     * {@link #createEntityTagDigest()} and returns it hex encoded, as stored
+     * in the {@link JcrResourceConstants#SLING_ENTITY_TAG_PROPERTY}. The
+     * digest is reset.
+     *
+     * @param digest The digest which has been fed the content
+     * @return The hash
+     * @since 2.1.2
+     */
+    public static String getEntityTag(MessageDigest digest) {
+        final byte[] hash = digest.digest();
+        final char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
     /**
      * Helper method, which returns the given resource type as returned from the
      * {@link org.apache.sling.api.resource.Resource#getResourceType()} as a
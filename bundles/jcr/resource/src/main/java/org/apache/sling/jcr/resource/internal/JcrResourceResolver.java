@@ -33,6 +33,7 @@ import java.util.regex.Pattern;
 
 import javax.jcr.Credentials;
 import javax.jcr.NamespaceException;
+import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
@@ -59,6 +60,7 @@ import org.apache.sling.jcr.resource.JcrResourceConstants;
 import org.apache.sling.jcr.resource.JcrResourceUtil;
 import org.apache.sling.jcr.resource.internal.helper.MapEntry;
 import org.apache.sling.jcr.resource.internal.helper.RedirectResource;
+import org.apache.sling.jcr.resource.internal.helper.ResolutionCache;
 import org.apache.sling.jcr.resource.internal.helper.ResourceIterator;
 import org.apache.sling.jcr.resource.internal.helper.ResourcePathIterator;
 import org.apache.sling.jcr.resource.internal.helper.URI;
@@ -699,7 +701,9 @@ public class JcrResourceResolver
         }
 
         boolean mappedPathIsUrl = false;
-        for (final MapEntry mapEntry : this.factory.getMapEntries().getMapMaps()) {
+        final Iterator<MapEntry> mapEntriesIterator = this.factory.getMapEntries().getMapMapsIterator(mappedPath);
+        while (mapEntriesIterator.hasNext()) {
+            final MapEntry mapEntry = mapEntriesIterator.next();
             final String[] mappedPaths = mapEntry.replace(mappedPath);
             if (mappedPaths != null) {
 
@@ -1095,6 +1099,10 @@ public class JcrResourceResolver
      * <p>
      * If neither mechanism (direct access and drill down) resolves to a
      * resource this method returns <code>null</code>.
+     * <p>
+     * The outcome is kept in the {@link ResolutionCache} shared by the
+     * resource resolvers, so that the same path is only resolved again once
+     * the resources involved have changed.
      *
      * @param absPath The absolute path of the resource to return.
      * @return The resource found or <code>null</code> if the resource could
@@ -1105,6 +1113,54 @@ public class JcrResourceResolver
      *         {@link ResourcePathIterator} to resolve the resource.
      */
     private Resource resolveInternal(String absPath) {
+        final ResolutionCache cache = this.factory.getResolutionCache();
+        if (cache == ResolutionCache.EMPTY) {
+            return resolveInternalUncached(absPath);
+        }
+
+        // the unsaved changes of the session are not seen by other sessions
+        final Session session = getSession();
+        boolean cacheable;
+        try {
+            cacheable = !session.hasPendingChanges();
+        } catch (RepositoryException re) {
+            cacheable = false;
+        }
+        if (!cacheable) {
+            return resolveInternalUncached(absPath);
+        }
+
+        final String workspaceName = session.getWorkspace().getName();
+        final String userId = session.getUserID();
+
+        final ResolutionCache.Entry entry = cache.get(workspaceName, userId, absPath);
+        if (entry != null) {
+            if (entry.getResourcePath() == null) {
+                LOGGER.debug("resolveInternal: Cached no resource for {}", absPath);
+                return null;
+            }
+
+            final Resource resource = getResourceInternal(entry.getResourcePath());
+            if (resource != null) {
+                resource.getResourceMetadata().setResolutionPath(entry.getResolutionPath());
+                resource.getResourceMetadata().setResolutionPathInfo(entry.getResolutionPathInfo());
+
+                LOGGER.debug(
+                    "resolveInternal: Found cached resource {} with path info {} for {}",
+                    new Object[] { resource, entry.getResolutionPathInfo(), absPath });
+                return resource;
+            }
+
+            // the resource is gone, its removal is not notified yet
+        }
+
+        final long generation = cache.getGeneration();
+        final Resource resource = resolveInternalUncached(absPath);
+        cache.put(workspaceName, userId, absPath, resource, generation);
+        return resource;
+    }
+
+    private Resource resolveInternalUncached(String absPath) {
         Resource resource = null;
         String curPath = absPath;
         try {
@@ -1205,6 +1261,26 @@ public class JcrResourceResolver
 
         // we do not have a child with the exact name, so we look for
         // a child, whose alias matches the childName
+        final Map<String, Set<String>> aliasMap = getAliasMap(parent);
+        final Set<String> names = (aliasMap != null) ? aliasMap.get(childName) : null;
+        if (aliasMap != null && (names == null || names.size() == 1)) {
+            if (names != null) {
+                child = getResource(parent, names.iterator().next());
+                if (child != null) {
+                    LOGGER.debug(
+                        "getChildInternal: Found Resource {} with alias {} to use",
+                        child, childName);
+                    return child;
+                }
+            }
+
+            LOGGER.debug("getChildInternal: Resource {} has no child {}", parent,
+                childName);
+            return null;
+        }
+
+        // siblings sharing the alias are checked in the order of the children
+
         Iterator<Resource> children = listChildren(parent);
         while (children.hasNext()) {
             child = children.next();
@@ -1229,6 +1305,20 @@ public class JcrResourceResolver
         return null;
     }
 
+    /**
+     * Returns the aliases of the children of the parent from the alias index
+     * of the {@link org.apache.sling.jcr.resource.internal.helper.MapEntries}
+     * or <code>null</code> if the children have to be checked for their
+     * aliases. Only JCR nodes of the workspace of the index are indexed.
+     */
+    private Map<String, Set<String>> getAliasMap(Resource parent) {
+        if (parent.adaptTo(Node.class) == null) {
+            return null;
+        }
+        return this.factory.getMapEntries().getAliasMap(
+            getSession().getWorkspace().getName(), parent.getPath());
+    }
+
     /**
      * Creates a JcrNodeResource with the given path if existing
      */
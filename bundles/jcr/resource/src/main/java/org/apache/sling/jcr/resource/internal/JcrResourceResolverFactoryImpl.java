@@ -55,6 +55,7 @@ import org.apache.sling.jcr.api.SlingRepository;
 import org.apache.sling.jcr.resource.JcrResourceConstants;
 import org.apache.sling.jcr.resource.JcrResourceResolverFactory;
 import org.apache.sling.jcr.resource.internal.helper.MapEntries;
+import org.apache.sling.jcr.resource.internal.helper.ResolutionCache;
 import org.apache.sling.jcr.resource.internal.helper.Mapping;
 import org.apache.sling.jcr.resource.internal.helper.ResourceProviderEntry;
 import org.apache.sling.jcr.resource.internal.helper.RootResourceProviderEntry;
@@ -162,6 +163,24 @@ public class JcrResourceResolverFactoryImpl implements
     @Property(boolValue=DEFAULT_MULTIWORKSPACE)
     private static final String PROP_MULTIWORKSPACE = "resource.resolver.multiworkspace";
 
+    private static final int DEFAULT_RESOLUTION_CACHE_SIZE = 2000;
+
+    /**
+     * The maximum number of resolved paths kept in the
+     * {@link ResolutionCache}, 0 to disable the cache.
+     */
+    @Property(intValue=DEFAULT_RESOLUTION_CACHE_SIZE)
+    private static final String PROP_RESOLUTION_CACHE_SIZE = "resource.resolver.resolutioncache.size";
+
+    private static final int DEFAULT_RESOLUTION_CACHE_NEGATIVE_TTL = 60;
+
+    /**
+     * The seconds for which the {@link ResolutionCache} keeps that a path
+     * does not resolve, 0 to only cache the paths which resolve.
+     */
+    @Property(intValue=DEFAULT_RESOLUTION_CACHE_NEGATIVE_TTL)
+    private static final String PROP_RESOLUTION_CACHE_NEGATIVE_TTL = "resource.resolver.resolutioncache.negativettl";
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -174,6 +193,9 @@ public class JcrResourceResolverFactoryImpl implements
     // helper for the new JcrResourceResolver
     private MapEntries mapEntries = MapEntries.EMPTY;
 
+    // the resolved paths shared by the JcrResourceResolvers
+    private ResolutionCache resolutionCache = ResolutionCache.EMPTY;
+
     /** all mappings */
     private Mapping[] mappings;
 
@@ -377,6 +399,10 @@ public class JcrResourceResolverFactoryImpl implements
         return mapEntries;
     }
 
+    public ResolutionCache getResolutionCache() {
+        return resolutionCache;
+    }
+
     String getDefaultWorkspaceName() {
         return this.repository.getDefaultWorkspace();
     }
@@ -456,7 +482,18 @@ public class JcrResourceResolverFactoryImpl implements
         mapRoot = OsgiUtil.toString(properties.get(PROP_MAP_LOCATION),
             MapEntries.DEFAULT_MAP_ROOT);
 
-        // set up the map entries from configuration
+        // set up the cache of resolved paths
+        final int resolutionCacheSize = OsgiUtil.toInteger(
+            properties.get(PROP_RESOLUTION_CACHE_SIZE), DEFAULT_RESOLUTION_CACHE_SIZE);
+        final int resolutionCacheNegativeTtl = OsgiUtil.toInteger(
+            properties.get(PROP_RESOLUTION_CACHE_NEGATIVE_TTL), DEFAULT_RESOLUTION_CACHE_NEGATIVE_TTL);
+        if (resolutionCacheSize > 0) {
+            resolutionCache = new ResolutionCache(componentContext.getBundleContext(),
+                resolutionCacheSize, Math.max(0, resolutionCacheNegativeTtl) * 1000L);
+        }
+
+        // set up the map entries from configuration, which invalidate the
+        // cached paths resolved with changed aliases
         try {
             mapEntries = new MapEntries(this, componentContext.getBundleContext(), this.eventAdminTracker);
         } catch (Exception e) {
@@ -465,7 +502,6 @@ public class JcrResourceResolverFactoryImpl implements
                 e);
         }
 
-
         // start observation listener
         try {
             this.resourceListeners = new HashSet<JcrResourceListener>();
@@ -519,6 +555,10 @@ public class JcrResourceResolverFactoryImpl implements
             mapEntries.dispose();
             mapEntries = MapEntries.EMPTY;
         }
+        if (resolutionCache != null) {
+            resolutionCache.dispose();
+            resolutionCache = ResolutionCache.EMPTY;
+        }
         if ( this.eventAdminTracker != null ) {
             this.eventAdminTracker.close();
             this.eventAdminTracker = null;
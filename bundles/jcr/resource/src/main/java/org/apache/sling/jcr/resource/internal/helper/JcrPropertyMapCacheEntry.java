@@ -30,12 +30,21 @@ import javax.jcr.Value;
 
 import org.apache.sling.jcr.resource.JcrResourceUtil;
 
+/**
+ * The <code>JcrPropertyMapCacheEntry</code> holds a property of a
+ * {@link org.apache.sling.jcr.resource.JcrPropertyMap}. An entry created from
+ * a property only reads the values of the property and converts them to
+ * their Java type when they are first requested, so that properties which
+ * are listed but never used are not converted.
+ */
 public class JcrPropertyMapCacheEntry {
     public final Property property;
-    public final boolean isMulti;
-    public final Value[] values;
 
-    private final Object defaultValue;
+    private Boolean isMulti;
+
+    private Value[] values;
+
+    private Object defaultValue;
 
     /**
      * Create a value for the object.
@@ -64,22 +73,8 @@ public class JcrPropertyMapCacheEntry {
     /**
      * Create a new cache entry from a property.
      */
-    public JcrPropertyMapCacheEntry(final Property prop)
-    throws RepositoryException {
+    public JcrPropertyMapCacheEntry(final Property prop) {
         this.property = prop;
-        if ( prop.getDefinition().isMultiple() ) {
-            isMulti = true;
-            values = prop.getValues();
-        } else {
-            isMulti = false;
-            values = new Value[] {prop.getValue()};
-        }
-        Object tmp = JcrResourceUtil.toJavaObject(prop);
-        if (isDefaultValueCacheable()) {
-            this.defaultValue = tmp;
-        } else {
-            this.defaultValue = null;
-        }
     }
 
     /**
@@ -90,7 +85,7 @@ public class JcrPropertyMapCacheEntry {
         this.property = null;
         this.defaultValue = value;
         if ( value.getClass().isArray() ) {
-            this.isMulti = true;
+            this.isMulti = Boolean.TRUE;
             final Object[] values = (Object[])value;
             this.values = new Value[values.length];
             for(int i=0; i<values.length; i++) {
@@ -100,7 +95,7 @@ public class JcrPropertyMapCacheEntry {
                 }
             }
         } else {
-            this.isMulti = false;
+            this.isMulti = Boolean.FALSE;
             this.values = new Value[] {this.createValue(value, session)};
             if ( this.values[0] == null ) {
                 throw new IllegalArgumentException("Value can't be stored in the repository: " + value);
@@ -108,8 +103,57 @@ public class JcrPropertyMapCacheEntry {
         }
     }
 
+    /**
+     * Returns <code>true</code> if the property has multiple values.
+     */
+    public boolean isMulti() throws RepositoryException {
+        if ( this.isMulti == null ) {
+            this.isMulti = Boolean.valueOf(property.isMultiple());
+        }
+        return this.isMulti.booleanValue();
+    }
+
+    /**
+     * Returns the values of the property, a single value property has one
+     * value.
+     */
+    public Value[] getValues() throws RepositoryException {
+        if ( this.values == null ) {
+            if ( isMulti() ) {
+                this.values = property.getValues();
+            } else {
+                this.values = new Value[] {property.getValue()};
+            }
+        }
+        return this.values;
+    }
+
+    /**
+     * Returns the value converted to its Java type. The value of a binary
+     * property is not kept but returned as a new stream which only reads
+     * the binary when it is read itself.
+     */
     public Object getDefaultValue() throws RepositoryException {
-        return this.defaultValue != null ? this.defaultValue : JcrResourceUtil.toJavaObject(property);
+        if ( this.defaultValue != null ) {
+            return this.defaultValue;
+        }
+        if ( !isDefaultValueCacheable() ) {
+            return JcrResourceUtil.toJavaObject(property);
+        }
+
+        final Value[] values = getValues();
+        if ( isMulti() ) {
+            final Object[] result = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                if ( values[i] != null ) {
+                    result[i] = JcrResourceUtil.toJavaObject(values[i]);
+                }
+            }
+            this.defaultValue = result;
+        } else {
+            this.defaultValue = JcrResourceUtil.toJavaObject(values[0]);
+        }
+        return this.defaultValue;
     }
 
     public Object getDefaultValueOrNull() {
@@ -123,6 +167,4 @@ public class JcrPropertyMapCacheEntry {
     private boolean isDefaultValueCacheable() throws RepositoryException {
         return property.getType() != PropertyType.BINARY;
     }
-    
-    
 }
\ No newline at end of file
@@ -25,9 +25,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -36,10 +36,16 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.sling.api.SlingConstants;
@@ -72,6 +78,28 @@ public class MapEntries implements EventHandler {
 
     private static final String JCR_SYSTEM_PREFIX = "/jcr:system/";
 
+    private static final String JCR_CONTENT = "jcr:content";
+
+    private static final String JCR_CONTENT_LEAF = "/" + JCR_CONTENT;
+
+    /** The properties of the mappings and vanity paths */
+    private static final String[] MAPPING_PROPS = {
+        "sling:vanityPath", "sling:vanityOrder", JcrResourceResolver.PROP_REDIRECT_EXTERNAL_REDIRECT_STATUS,
+        JcrResourceResolver.PROP_REDIRECT_EXTERNAL, JcrResourceResolver.PROP_REDIRECT_INTERNAL,
+        JcrResourceResolver.PROP_REDIRECT_EXTERNAL_STATUS, JcrResourceResolver.PROP_REG_EXP
+    };
+
+    /** The properties of the vanity paths */
+    private static final String[] VANITY_PATH_PROPS = {
+        "sling:vanityPath", "sling:vanityOrder", JcrResourceResolver.PROP_REDIRECT_EXTERNAL,
+        JcrResourceResolver.PROP_REDIRECT_EXTERNAL_REDIRECT_STATUS
+    };
+
+    /** The event properties listing the modified properties */
+    private static final String[] EVENT_PROPS = {
+        "resourceAddedAttributes", "resourceChangedAttributes", "resourceRemovedAttributes"
+    };
+
     static final String ANY_SCHEME_HOST = "[^/]+/[^/]+";
 
     /** default log */
@@ -83,11 +111,37 @@ public class MapEntries implements EventHandler {
 
     private final String mapRoot;
 
-    private Map<String, List<MapEntry>> resolveMapsMap;
+    /**
+     * The resolve entries by path, the lists of entries are replaced rather
+     * than modified when the vanity paths are updated.
+     */
+    private volatile Map<String, List<MapEntry>> resolveMapsMap;
 
     private Collection<MapEntry> mapMaps;
 
-    private Collection<String> vanityTargets;
+    /** The index of the mapMaps by their literal prefixes */
+    private MapEntryIndex mapMapsIndex;
+
+    /**
+     * The resolve entries of the vanity paths by the path of the resource
+     * defining them.
+     */
+    private volatile Map<String, Map<String, List<MapEntry>>> vanityPathEntries;
+
+    /** The paths of the resources whose vanity paths have to be updated */
+    private final ConcurrentLinkedQueue<String> vanityPathUpdates = new ConcurrentLinkedQueue<String>();
+
+    /** The paths of the resources moved, whose trees have to be searched for vanity paths */
+    private final ConcurrentLinkedQueue<String> vanityPathMoves = new ConcurrentLinkedQueue<String>();
+
+    /** The sling:alias index, null if not loaded */
+    private volatile AliasIndex aliasIndex;
+
+    /** The workspace of the indexed aliases */
+    private final String aliasWorkspaceName;
+
+    /** The paths of the resources whose aliases have to be updated */
+    private final ConcurrentLinkedQueue<String> aliasUpdates = new ConcurrentLinkedQueue<String>();
 
     private ServiceRegistration registration;
 
@@ -95,6 +149,9 @@ public class MapEntries implements EventHandler {
 
     private final Semaphore initTrigger = new Semaphore(0);
 
+    /** Whether the update thread has to reload everything */
+    private final AtomicBoolean initRequested = new AtomicBoolean();
+
     private final ReentrantLock initializing = new ReentrantLock();
 
     private MapEntries() {
@@ -104,7 +161,10 @@ public class MapEntries implements EventHandler {
 
         this.resolveMapsMap = Collections.emptyMap();
         this.mapMaps = Collections.<MapEntry> emptyList();
-        this.vanityTargets = Collections.<String> emptySet();
+        this.mapMapsIndex = new MapEntryIndex(this.mapMaps);
+        this.vanityPathEntries = Collections.emptyMap();
+        this.aliasIndex = null;
+        this.aliasWorkspaceName = null;
         this.registration = null;
         this.eventAdminTracker = null;
     }
@@ -120,7 +180,11 @@ public class MapEntries implements EventHandler {
 
         this.resolveMapsMap = Collections.emptyMap();
         this.mapMaps = Collections.<MapEntry> emptyList();
-        this.vanityTargets = Collections.<String> emptySet();
+        this.mapMapsIndex = new MapEntryIndex(this.mapMaps);
+        this.vanityPathEntries = Collections.emptyMap();
+
+        final Session session = this.resolver.adaptTo(Session.class);
+        this.aliasWorkspaceName = (session != null) ? session.getWorkspace().getName() : null;
 
         doInit();
 
@@ -145,6 +209,39 @@ public class MapEntries implements EventHandler {
      * called.
      */
     private void triggerInit() {
+        initRequested.set(true);
+        triggerUpdate();
+    }
+
+    /**
+     * Signals the init method that the vanity paths of the resource at the
+     * given path have to be updated.
+     */
+    private void triggerVanityPathUpdate(final String path) {
+        vanityPathUpdates.offer(path);
+        triggerUpdate();
+    }
+
+    /**
+     * Signals the init method that a resource has been moved to the given
+     * path and that the resources below it have to be searched for vanity
+     * paths.
+     */
+    private void triggerVanityPathMove(final String path) {
+        vanityPathMoves.offer(path);
+        triggerUpdate();
+    }
+
+    /**
+     * Signals the init method that the aliases of the resource at the given
+     * path have to be updated.
+     */
+    private void triggerAliasUpdate(final String path) {
+        aliasUpdates.offer(path);
+        triggerUpdate();
+    }
+
+    private void triggerUpdate() {
         // only release if there is not one in the queue already
         if (initTrigger.availablePermits() < 1) {
             initTrigger.release();
@@ -153,14 +250,19 @@ public class MapEntries implements EventHandler {
 
     /**
      * Runs as the method of the update thread. Waits for the triggerInit
-     * method to trigger a call to doInit. Terminates when the resolver
-     * has been null-ed after having been triggered.
+     * method to trigger a call to doInit or the triggerVanityPathUpdate and
+     * triggerAliasUpdate methods to trigger a call to doUpdate. Terminates
+     * when the resolver has been null-ed after having been triggered.
      */
     void init() {
         while (this.resolver != null) {
             try {
                 this.initTrigger.acquire();
-                this.doInit();
+                if (this.initRequested.getAndSet(false)) {
+                    this.doInit();
+                } else {
+                    this.doUpdate();
+                }
             } catch (final InterruptedException ie) {
                 // just continue acquisition
             }
@@ -183,7 +285,13 @@ public class MapEntries implements EventHandler {
                 return;
             }
 
-            final Map<String, List<MapEntry>> newResolveMapsMap = new HashMap<String, List<MapEntry>>();
+            // the vanity paths and aliases are reloaded completely
+            this.vanityPathUpdates.clear();
+            this.vanityPathMoves.clear();
+            this.aliasUpdates.clear();
+
+            final Map<String, List<MapEntry>> newResolveMapsMap = new ConcurrentHashMap<String, List<MapEntry>>();
+            final Map<String, Map<String, List<MapEntry>>> newVanityPathEntries = new ConcurrentHashMap<String, Map<String, List<MapEntry>>>();
             final List<MapEntry> globalResolveMap = new ArrayList<MapEntry>();
             final SortedMap<String, MapEntry> newMapMaps = new TreeMap<String, MapEntry>();
 
@@ -191,7 +299,7 @@ public class MapEntries implements EventHandler {
             loadResolverMap(resolver, globalResolveMap, newMapMaps);
 
             // load the configuration into the resolver map
-            final Collection<String> vanityTargets = this.loadVanityPaths(resolver, newResolveMapsMap);
+            this.loadVanityPaths(resolver, newResolveMapsMap, newVanityPathEntries, null);
             loadConfiguration(factory, globalResolveMap);
 
             // load the configuration into the mapper map
@@ -199,11 +307,18 @@ public class MapEntries implements EventHandler {
 
             // sort global list and add to map
             Collections.sort(globalResolveMap);
-            newResolveMapsMap.put(GLOBAL_LIST_KEY, globalResolveMap);
+            newResolveMapsMap.put(GLOBAL_LIST_KEY, Collections.unmodifiableList(globalResolveMap));
+
+            this.vanityPathEntries = newVanityPathEntries;
+            this.resolveMapsMap = newResolveMapsMap;
+            final Collection<MapEntry> mapMaps = Collections.unmodifiableSet(new TreeSet<MapEntry>(newMapMaps.values()));
+            this.mapMapsIndex = new MapEntryIndex(mapMaps);
+            this.mapMaps = mapMaps;
 
-            this.vanityTargets = Collections.unmodifiableCollection(vanityTargets);
-            this.resolveMapsMap = Collections.unmodifiableMap(newResolveMapsMap);
-            this.mapMaps = Collections.unmodifiableSet(new TreeSet<MapEntry>(newMapMaps.values()));
+            // load the sling:alias index, paths might have been resolved
+            // with the previous aliases
+            this.aliasIndex = this.loadAliases(resolver);
+            factory.getResolutionCache().clear();
 
             sendChangeEvent();
 
@@ -218,6 +333,143 @@ public class MapEntries implements EventHandler {
         }
     }
 
+    /**
+     * Updates the vanity paths and the alias index with the current
+     * properties of the resources queued by the event handler. Guards itself
+     * against concurrent use by using the same ReentrantLock as the doInit
+     * method.
+     */
+    private void doUpdate() {
+
+        this.initializing.lock();
+        try {
+            final ResourceResolver resolver = this.resolver;
+            if (resolver == null) {
+                return;
+            }
+
+            boolean updated = this.updateVanityPaths(resolver);
+            updated |= this.updateAliases(resolver);
+
+            // the vanity paths and aliases change the mapping and
+            // resolution of paths
+            if (updated) {
+                sendChangeEvent();
+            }
+
+        } catch (final Exception e) {
+
+            log.warn("doUpdate: Unexpected problem updating the mappings", e);
+
+        } finally {
+
+            this.initializing.unlock();
+
+        }
+    }
+
+    /**
+     * Replaces the resolve entries of the vanity paths of the resources
+     * queued by the event handler. Only the lists of entries for the paths
+     * of the changed vanity paths are replaced.
+     * <p>
+     * A move is notified as the removal of the moved resource followed by
+     * its addition at the new location, without events for the resources
+     * below it. The vanity paths of the removed tree are dropped and those
+     * found below the new location are added, so neither a delete nor a move
+     * reloads all mappings.
+     *
+     * @return <code>true</code> if any entry has been updated
+     */
+    private boolean updateVanityPaths(final ResourceResolver resolver) {
+        final Map<String, List<MapEntry>> resolveMapsMap = this.resolveMapsMap;
+        final Map<String, Map<String, List<MapEntry>>> vanityPathEntries = this.vanityPathEntries;
+
+        boolean updated = false;
+        String path;
+        while ((path = this.vanityPathUpdates.poll()) != null) {
+            final Resource resource = resolver.getResource(path);
+            if (resource == null) {
+                if (removeVanityPathTree(resolveMapsMap, vanityPathEntries, path)) {
+                    log.debug("updateVanityPaths: Vanity paths removed with {}", path);
+                    updated = true;
+                }
+                continue;
+            }
+
+            if (removeVanityPathEntries(resolveMapsMap, vanityPathEntries, path)) {
+                updated = true;
+            }
+            if (isVanityPathResource(resource)) {
+                final Map<String, List<MapEntry>> entries = getVanityPathEntries(resource);
+                if (!entries.isEmpty()) {
+                    addVanityPathEntries(resolveMapsMap, vanityPathEntries, path, entries);
+                    updated = true;
+                }
+            }
+        }
+
+        while ((path = this.vanityPathMoves.poll()) != null) {
+            if (resolver.getResource(path) == null) {
+                // moved again or removed, notified separately
+                continue;
+            }
+            // the entries of resources updated before the move was
+            // processed are replaced by those found now
+            updated |= removeVanityPathTree(resolveMapsMap, vanityPathEntries, path);
+            if (loadVanityPaths(resolver, resolveMapsMap, vanityPathEntries, path)) {
+                log.debug("updateVanityPaths: Vanity paths moved to {}", path);
+                updated = true;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Updates the alias index with the current aliases of the resources
+     * queued by the event handler.
+     *
+     * @return <code>true</code> if any alias has been updated
+     */
+    private boolean updateAliases(final ResourceResolver resolver) {
+        final AliasIndex aliasIndex = this.aliasIndex;
+        final JcrResourceResolverFactoryImpl factory = this.factory;
+        if (aliasIndex == null || factory == null) {
+            return false;
+        }
+
+        boolean updated = false;
+        String path;
+        while ((path = this.aliasUpdates.poll()) != null) {
+            updated = true;
+            Resource resource = resolver.getResource(path);
+            if (resource == null && aliasIndex.removeTree(path)) {
+                // the resource might have been moved, which is only
+                // notified for the moved resource, not the aliased
+                // resources below it: reload all aliases
+                log.debug("updateAliases: Aliases removed with {}, reloading", path);
+                triggerInit();
+            }
+
+            // the alias of a jcr:content node is the alias of its parent
+            if (path.endsWith(JCR_CONTENT_LEAF)) {
+                path = ResourceUtil.getParent(path);
+                resource = resolver.getResource(path);
+            }
+
+            if (resource != null) {
+                aliasIndex.put(path, getAliases(resource));
+            } else {
+                aliasIndex.removeTree(path);
+            }
+
+            // paths might have been resolved with the previous aliases
+            // after the resource event invalidated them
+            factory.getResolutionCache().invalidate(path);
+        }
+        return updated;
+    }
+
     /**
      * Cleans up this class.
      */
@@ -308,11 +560,44 @@ public class MapEntries implements EventHandler {
         return mapMaps;
     }
 
+    /**
+     * Returns the entries of the {@link #getMapMaps()} which may match the
+     * given path, in the same order. The entries with a literal pattern are
+     * only returned if they match the path.
+     */
+    public Iterator<MapEntry> getMapMapsIterator(final String path) {
+        return mapMapsIndex.getCandidates(path);
+    }
+
+    /**
+     * Returns the aliases of the children of the resource at the given path
+     * as a map of alias to the names of the children having the alias. The
+     * map is empty if no child has an alias.
+     *
+     * @param workspaceName The workspace of the resource
+     * @param parentPath The path of the resource
+     * @return The aliases or <code>null</code> if the aliases of the
+     *         workspace are not indexed, in which case the children have to
+     *         be checked for their aliases
+     */
+    public Map<String, Set<String>> getAliasMap(final String workspaceName, final String parentPath) {
+        final AliasIndex aliasIndex = this.aliasIndex;
+        if (aliasIndex == null || this.aliasWorkspaceName == null
+            || !this.aliasWorkspaceName.equals(workspaceName)) {
+            return null;
+        }
+        final Map<String, Set<String>> aliases = aliasIndex.get(parentPath);
+        if (aliases == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(aliases);
+    }
+
     // ---------- EventListener interface
 
     /**
      * Handles the change to any of the node properties relevant for vanity URL
-     * mappings. The
+     * mappings or aliases. The
      * {@link #MapEntries(JcrResourceResolverFactoryImpl, BundleContext, ServiceTracker)}
      * constructor makes sure the event listener is registered to only get
      * appropriate events.
@@ -334,26 +619,89 @@ public class MapEntries implements EventHandler {
             return;
         }
 
-        // check whether a remove event has an influence on vanity paths
-        boolean doInit = true;
-        if (SlingConstants.TOPIC_RESOURCE_REMOVED.equals(event.getTopic()) && !path.startsWith(this.mapRoot)) {
-            doInit = false;
-            for (String target : this.vanityTargets) {
-                if (target.startsWith(path)) {
-                    doInit = true;
-                    break;
+        final boolean removed = SlingConstants.TOPIC_RESOURCE_REMOVED.equals(event.getTopic());
+
+        // update the aliases of the resource, aliases are only indexed for
+        // the default workspace whose paths are not prefixed
+        if (path.startsWith("/")) {
+            final AliasIndex aliasIndex = this.aliasIndex;
+            if (removed) {
+                if (aliasIndex != null && (aliasIndex.containsTree(path)
+                    || (path.endsWith(JCR_CONTENT_LEAF) && aliasIndex.containsTree(ResourceUtil.getParent(path))))) {
+                    triggerAliasUpdate(path);
                 }
+            } else if (hasAttribute(event, JcrResourceResolver.PROP_ALIAS)) {
+                triggerAliasUpdate(path);
             }
         }
 
-        // trigger an update
-        if (doInit) {
-            triggerInit();
+        // a resource added without properties has been moved there
+        final boolean moved = SlingConstants.TOPIC_RESOURCE_ADDED.equals(event.getTopic())
+            && event.getProperty(EVENT_PROPS[0]) == null;
+
+        // changes of the map entries reload everything
+        if (path.startsWith(this.mapRoot)) {
+            if (removed || moved || hasAttribute(event, MAPPING_PROPS)) {
+                triggerInit();
+            }
+            return;
+        }
+
+        // update the vanity paths of the resource, vanity paths are only
+        // loaded from the default workspace whose paths are not prefixed
+        if (path.startsWith("/")) {
+            if (removed) {
+                if (containsVanityPathTree(path)) {
+                    triggerVanityPathUpdate(path);
+                }
+            } else if (hasAttribute(event, VANITY_PATH_PROPS)) {
+                triggerVanityPathUpdate(path);
+            } else if (moved && !this.vanityPathEntries.isEmpty()) {
+                // without vanity paths no moved resource can have any
+                triggerVanityPathMove(path);
+            }
         }
     }
 
     // ---------- internal
 
+    /**
+     * Returns <code>true</code> if the event lists any of the properties as
+     * added, changed or removed.
+     */
+    private static boolean hasAttribute(final Event event, final String... propNames) {
+        for (final String eventProp : EVENT_PROPS) {
+            final Object attributes = event.getProperty(eventProp);
+            if (attributes instanceof String[]) {
+                for (final String attribute : (String[]) attributes) {
+                    for (final String propName : propNames) {
+                        if (propName.equals(attribute)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the resource at the given path or any
+     * resource below it defines vanity paths.
+     */
+    private boolean containsVanityPathTree(final String path) {
+        for (final String resourcePath : this.vanityPathEntries.keySet()) {
+            if (isInTree(resourcePath, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInTree(final String path, final String root) {
+        return path.equals(root) || path.startsWith(root.endsWith("/") ? root : root + "/");
+    }
+
     /**
      * Send an OSGi event
      */
@@ -430,32 +778,113 @@ public class MapEntries implements EventHandler {
     }
 
     /**
-     * Add an entry to the resolve map.
+     * Add entries to the resolve map. The list of entries for the key is
+     * replaced and not modified, as it may be in use by a resolver.
      */
-    private void addEntry(final Map<String, List<MapEntry>> entryMap,
-            final String key, final MapEntry entry) {
-        List<MapEntry> entries = entryMap.get(key);
-        if ( entries == null ) {
-            entries = new ArrayList<MapEntry>();
-            entryMap.put(key, entries);
-        }
-        entries.add(entry);
+    private void addEntries(final Map<String, List<MapEntry>> entryMap,
+            final String key, final List<MapEntry> newEntries) {
+        final List<MapEntry> current = entryMap.get(key);
+        final List<MapEntry> entries = (current == null)
+                ? new ArrayList<MapEntry>(newEntries.size())
+                : new ArrayList<MapEntry>(current);
+        entries.addAll(newEntries);
         // and finally sort list
         Collections.sort(entries);
+        entryMap.put(key, Collections.unmodifiableList(entries));
+    }
+
+    /**
+     * Remove entries from the resolve map. The list of entries for the key
+     * is replaced and not modified, as it may be in use by a resolver.
+     */
+    private void removeEntries(final Map<String, List<MapEntry>> entryMap,
+            final String key, final List<MapEntry> oldEntries) {
+        final List<MapEntry> current = entryMap.get(key);
+        if (current == null) {
+            return;
+        }
+        final List<MapEntry> entries = new ArrayList<MapEntry>(current);
+        entries.removeAll(oldEntries);
+        if (entries.isEmpty()) {
+            entryMap.remove(key);
+        } else {
+            entryMap.put(key, Collections.unmodifiableList(entries));
+        }
+    }
+
+    /**
+     * Adds the resolve entries of the vanity paths of a resource.
+     */
+    private void addVanityPathEntries(final Map<String, List<MapEntry>> entryMap,
+            final Map<String, Map<String, List<MapEntry>>> vanityPathEntries,
+            final String resourcePath, final Map<String, List<MapEntry>> entries) {
+        for (final Entry<String, List<MapEntry>> entry : entries.entrySet()) {
+            this.addEntries(entryMap, entry.getKey(), entry.getValue());
+        }
+        vanityPathEntries.put(resourcePath, entries);
+    }
+
+    /**
+     * Removes the resolve entries of the vanity paths of a resource.
+     *
+     * @return <code>true</code> if the resource had vanity paths
+     */
+    private boolean removeVanityPathEntries(final Map<String, List<MapEntry>> entryMap,
+            final Map<String, Map<String, List<MapEntry>>> vanityPathEntries,
+            final String resourcePath) {
+        final Map<String, List<MapEntry>> entries = vanityPathEntries.remove(resourcePath);
+        if (entries == null) {
+            return false;
+        }
+        for (final Entry<String, List<MapEntry>> entry : entries.entrySet()) {
+            this.removeEntries(entryMap, entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Removes the resolve entries of the vanity paths of a resource and of
+     * all resources below it.
+     *
+     * @return <code>true</code> if any resource had vanity paths
+     */
+    private boolean removeVanityPathTree(final Map<String, List<MapEntry>> entryMap,
+            final Map<String, Map<String, List<MapEntry>>> vanityPathEntries,
+            final String path) {
+        boolean removed = false;
+        for (final String resourcePath : new ArrayList<String>(vanityPathEntries.keySet())) {
+            if (isInTree(resourcePath, path)) {
+                removed |= this.removeVanityPathEntries(entryMap, vanityPathEntries, resourcePath);
+            }
+        }
+        return removed;
     }
 
     /**
      * Load vanity paths
      * Search for all nodes inheriting the sling:VanityPath mixin
+     *
+     * @param root The path of the resource whose tree is searched or
+     *            <code>null</code> to search the whole repository
+     * @return <code>true</code> if any vanity path has been loaded
      */
-    private Collection<String> loadVanityPaths(final ResourceResolver resolver,
-            final Map<String, List<MapEntry>> entryMap) {
+    private boolean loadVanityPaths(final ResourceResolver resolver,
+            final Map<String, List<MapEntry>> entryMap,
+            final Map<String, Map<String, List<MapEntry>>> vanityPathEntries,
+            final String root) {
         // sling:VanityPath (uppercase V) is the mixin name
         // sling:vanityPath (lowercase) is the property name
-        final Set<String> targetPaths = new HashSet<String>();
-        final String queryString = "SELECT sling:vanityPath, sling:redirect, sling:redirectStatus FROM sling:VanityPath WHERE sling:vanityPath IS NOT NULL ORDER BY sling:vanityOrder DESC";
-        final Iterator<Resource> i = resolver.findResources(queryString, "sql");
+        final StringBuilder queryString = new StringBuilder(
+            "SELECT sling:vanityPath, sling:redirect, sling:redirectStatus FROM sling:VanityPath WHERE sling:vanityPath IS NOT NULL");
+        if (root != null) {
+            final String escaped = root.replace("'", "''");
+            queryString.append(" AND (jcr:path = '").append(escaped);
+            queryString.append("' OR jcr:path LIKE '").append(escaped).append("/%')");
+        }
+        queryString.append(" ORDER BY sling:vanityOrder DESC");
+        final Iterator<Resource> i = resolver.findResources(queryString.toString(), "sql");
 
+        boolean loaded = false;
         while (i.hasNext()) {
             final Resource resource = i.next();
 
@@ -465,51 +894,150 @@ public class MapEntries implements EventHandler {
                 continue;
             }
 
-            // require properties
-            final ValueMap props = resource.adaptTo(ValueMap.class);
-            if (props == null) {
-                log.debug("loadVanityPaths: Ignoring {} without properties", resource);
+            // LIKE also matches siblings whose names contain wildcards
+            if (root != null && !isInTree(resource.getPath(), root)) {
                 continue;
             }
 
-            // url is ignoring scheme and host.port and the path is
-            // what is stored in the sling:vanityPath property
-            final String[] pVanityPaths = props.get("sling:vanityPath", new String[0]);
-            for (final String pVanityPath : pVanityPaths) {
-                final String[] result = this.getVanityPathDefinition(pVanityPath);
-                if ( result != null ) {
-                    final String url = result[0] + result[1];
+            final Map<String, List<MapEntry>> entries = this.getVanityPathEntries(resource);
+            if (!entries.isEmpty()) {
+                this.addVanityPathEntries(entryMap, vanityPathEntries, resource.getPath(), entries);
+                loaded = true;
+            }
+        }
+        return loaded;
+    }
 
-                    // redirect target is the node providing the sling:vanityPath
-                    // property (or its parent if the node is called jcr:content)
-                    final String redirect;
-                    if (resource.getName().equals("jcr:content")) {
-                        redirect = resource.getParent().getPath();
-                    } else {
-                        redirect = resource.getPath();
-                    }
+    /**
+     * Returns <code>true</code> if the resource has the sling:VanityPath
+     * mixin, like the resources found by the query of the loadVanityPaths
+     * method.
+     */
+    private boolean isVanityPathResource(final Resource resource) {
+        if (resource.getPath().startsWith(JCR_SYSTEM_PREFIX)) {
+            return false;
+        }
+        final Node node = resource.adaptTo(Node.class);
+        if (node == null) {
+            return true;
+        }
+        try {
+            return node.isNodeType("sling:VanityPath");
+        } catch (final RepositoryException re) {
+            log.debug("isVanityPathResource: Cannot check the node type of " + resource, re);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the resolve entries for the vanity paths of the resource by
+     * the path they are kept for in the resolve map.
+     */
+    private Map<String, List<MapEntry>> getVanityPathEntries(final Resource resource) {
+        final Map<String, List<MapEntry>> entries = new LinkedHashMap<String, List<MapEntry>>();
+
+        // require properties
+        final ValueMap props = resource.adaptTo(ValueMap.class);
+        if (props == null) {
+            log.debug("getVanityPathEntries: Ignoring {} without properties", resource);
+            return entries;
+        }
 
-                    // whether the target is attained by a 302/FOUND or by an
-                    // internal redirect is defined by the sling:redirect property
-                    final int status = props.get("sling:redirect", false)
-                            ? props.get(JcrResourceResolver.PROP_REDIRECT_EXTERNAL_REDIRECT_STATUS, HttpServletResponse.SC_FOUND)
-                            : -1;
+        // the order of entries for the same path
+        final long order = props.get("sling:vanityOrder", 0L);
+
+        // url is ignoring scheme and host.port and the path is
+        // what is stored in the sling:vanityPath property
+        final String[] pVanityPaths = props.get("sling:vanityPath", new String[0]);
+        for (final String pVanityPath : pVanityPaths) {
+            final String[] result = this.getVanityPathDefinition(pVanityPath);
+            if ( result != null ) {
+                final String url = result[0] + result[1];
+
+                // redirect target is the node providing the sling:vanityPath
+                // property (or its parent if the node is called jcr:content)
+                final String redirect;
+                if (resource.getName().equals(JCR_CONTENT)) {
+                    redirect = resource.getParent().getPath();
+                } else {
+                    redirect = resource.getPath();
+                }
 
-                    final String checkPath = result[1];
-                    // 1. entry with exact match
-                    this.addEntry(entryMap, checkPath, new MapEntry(url + "$", status, false, redirect
-                            + ".html"));
+                // whether the target is attained by a 302/FOUND or by an
+                // internal redirect is defined by the sling:redirect property
+                final int status = props.get("sling:redirect", false)
+                        ? props.get(JcrResourceResolver.PROP_REDIRECT_EXTERNAL_REDIRECT_STATUS, HttpServletResponse.SC_FOUND)
+                        : -1;
+
+                final String checkPath = result[1];
+                List<MapEntry> checkPathEntries = entries.get(checkPath);
+                if (checkPathEntries == null) {
+                    checkPathEntries = new ArrayList<MapEntry>(2);
+                    entries.put(checkPath, checkPathEntries);
+                }
 
-                    // 2. entry with match supporting selectors and extension
-                    this.addEntry(entryMap, checkPath, new MapEntry(url + "(\\..*)", status, false,
-                            redirect + "$1"));
+                // 1. entry with exact match
+                checkPathEntries.add(new MapEntry(url + "$", status, false, order,
+                        redirect + ".html"));
 
-                    // 3. keep the path to return
-                    targetPaths.add(redirect);
+                // 2. entry with match supporting selectors and extension
+                checkPathEntries.add(new MapEntry(url + "(\\..*)", status, false, order,
+                        redirect + "$1"));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Load the sling:alias index
+     * Search for all nodes with a sling:alias property. Returns
+     * <code>null</code> if the query fails, the aliases are then looked up
+     * in the children of a resource.
+     */
+    private AliasIndex loadAliases(final ResourceResolver resolver) {
+        final AliasIndex aliasIndex = new AliasIndex();
+        try {
+            final String queryString = "SELECT sling:alias FROM nt:base WHERE sling:alias IS NOT NULL";
+            final Iterator<Resource> i = resolver.findResources(queryString, "sql");
+
+            while (i.hasNext()) {
+                Resource resource = i.next();
+
+                // ignore system tree
+                if (resource.getPath().startsWith(JCR_SYSTEM_PREFIX)) {
+                    log.debug("loadAliases: Ignoring {}", resource);
+                    continue;
                 }
+
+                // the alias of a jcr:content node is the alias of its parent
+                if (resource.getName().equals(JCR_CONTENT)) {
+                    resource = resource.getParent();
+                    if (resource == null) {
+                        continue;
+                    }
+                }
+
+                aliasIndex.put(resource.getPath(), getAliases(resource));
             }
+        } catch (final Exception e) {
+            log.warn("loadAliases: Cannot index the aliases", e);
+            return null;
         }
-        return targetPaths;
+        return aliasIndex;
+    }
+
+    /**
+     * Returns the aliases of the resource like the resource resolver reads
+     * them: the sling:alias property of the resource or else the one of its
+     * jcr:content child.
+     */
+    private String[] getAliases(final Resource resource) {
+        final ValueMap props = ResourceUtil.getValueMap(resource);
+        String[] aliases = props.get(JcrResourceResolver.PROP_ALIAS, String[].class);
+        if (aliases == null) {
+            aliases = props.get(JCR_CONTENT + "/" + JcrResourceResolver.PROP_ALIAS, String[].class);
+        }
+        return aliases;
     }
 
     /**
@@ -653,32 +1181,152 @@ public class MapEntries implements EventHandler {
      * Returns a filter which matches if any of the nodeProps (JCR properties
      * modified) is listed in any of the eventProps (event properties listing
      * modified JCR properties) this allows to only get events interesting for
-     * updating the internal structure
+     * updating the internal structure. Removed resources and resources added
+     * without properties, which have been moved, also match.
      */
     private static String createFilter() {
-        final String[] nodeProps = {
-            "sling:vanityPath", "sling:vanityOrder", JcrResourceResolver.PROP_REDIRECT_EXTERNAL_REDIRECT_STATUS,
-            JcrResourceResolver.PROP_REDIRECT_EXTERNAL, JcrResourceResolver.PROP_REDIRECT_INTERNAL,
-            JcrResourceResolver.PROP_REDIRECT_EXTERNAL_STATUS, JcrResourceResolver.PROP_REG_EXP
-        };
-        final String[] eventProps = {
-            "resourceAddedAttributes", "resourceChangedAttributes", "resourceRemovedAttributes"
-        };
         StringBuilder filter = new StringBuilder();
         filter.append("(|");
-        for (String eventProp : eventProps) {
+        for (String eventProp : EVENT_PROPS) {
             filter.append("(|");
-            for (String nodeProp : nodeProps) {
+            for (String nodeProp : MAPPING_PROPS) {
                 filter.append('(').append(eventProp).append('=').append(nodeProp).append(')');
             }
+            filter.append('(').append(eventProp).append('=').append(JcrResourceResolver.PROP_ALIAS).append(')');
             filter.append(")");
         }
         filter.append("(" + EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_REMOVED + ")");
+        // moved resources are added without properties
+        filter.append("(&(" + EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_ADDED + ")");
+        filter.append("(!(" + EVENT_PROPS[0] + "=*)))");
         filter.append(")");
 
         return filter.toString();
     }
 
+    /**
+     * The <code>AliasIndex</code> maps the aliases of the children of a
+     * resource to the names of the children having the alias, as siblings
+     * may share an alias. It is only modified while holding the
+     * initialization lock but may be read concurrently: the sets of names
+     * are replaced rather than modified.
+     */
+    private static final class AliasIndex {
+
+        /** The alias to child names maps by parent path */
+        private final Map<String, Map<String, Set<String>>> aliasesByParent = new ConcurrentHashMap<String, Map<String, Set<String>>>();
+
+        /** The aliases by the path of the aliased resource */
+        private final Map<String, String[]> aliasesByPath = new ConcurrentHashMap<String, String[]>();
+
+        public Map<String, Set<String>> get(final String parentPath) {
+            return this.aliasesByParent.get(parentPath);
+        }
+
+        /**
+         * Sets the aliases of the resource at the given path, replacing the
+         * aliases it had before.
+         */
+        public void put(final String path, final String[] aliases) {
+            this.remove(path);
+
+            final String parentPath = ResourceUtil.getParent(path);
+            if (parentPath == null || aliases == null || aliases.length == 0) {
+                return;
+            }
+
+            Map<String, Set<String>> aliasMap = this.aliasesByParent.get(parentPath);
+            if (aliasMap == null) {
+                aliasMap = new ConcurrentHashMap<String, Set<String>>();
+                this.aliasesByParent.put(parentPath, aliasMap);
+            }
+            final String name = ResourceUtil.getName(path);
+            for (final String alias : aliases) {
+                final Set<String> names = aliasMap.get(alias);
+                final Set<String> newNames = (names == null)
+                        ? new TreeSet<String>()
+                        : new TreeSet<String>(names);
+                newNames.add(name);
+                aliasMap.put(alias, Collections.unmodifiableSet(newNames));
+            }
+            this.aliasesByPath.put(path, aliases);
+        }
+
+        /**
+         * Returns <code>true</code> if the resource at the given path or
+         * any resource below it has an alias.
+         */
+        public boolean containsTree(final String path) {
+            if (this.aliasesByPath.containsKey(path)) {
+                return true;
+            }
+            final String prefix = path.endsWith("/") ? path : path + "/";
+            for (final String parentPath : this.aliasesByParent.keySet()) {
+                if (parentPath.equals(path) || parentPath.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Removes the aliases of the resource at the given path and of all
+         * resources below it.
+         *
+         * @return <code>true</code> if any alias has been removed
+         */
+        public boolean removeTree(final String path) {
+            boolean removed = this.remove(path);
+            final String prefix = path.endsWith("/") ? path : path + "/";
+            final Iterator<Entry<String, Map<String, Set<String>>>> i = this.aliasesByParent.entrySet().iterator();
+            while (i.hasNext()) {
+                final Entry<String, Map<String, Set<String>>> entry = i.next();
+                final String parentPath = entry.getKey();
+                if (parentPath.equals(path) || parentPath.startsWith(prefix)) {
+                    final String childPrefix = parentPath.endsWith("/") ? parentPath : parentPath + "/";
+                    for (final Set<String> names : entry.getValue().values()) {
+                        for (final String name : names) {
+                            this.aliasesByPath.remove(childPrefix + name);
+                        }
+                    }
+                    i.remove();
+                    removed = true;
+                }
+            }
+            return removed;
+        }
+
+        private boolean remove(final String path) {
+            final String[] aliases = this.aliasesByPath.remove(path);
+            if (aliases == null) {
+                return false;
+            }
+            final String parentPath = ResourceUtil.getParent(path);
+            final Map<String, Set<String>> aliasMap = this.aliasesByParent.get(parentPath);
+            if (aliasMap != null) {
+                final String name = ResourceUtil.getName(path);
+                for (final String alias : aliases) {
+                    final Set<String> names = aliasMap.get(alias);
+                    if (names == null || !names.contains(name)) {
+                        continue;
+                    }
+                    if (names.size() == 1) {
+                        aliasMap.remove(alias);
+                    } else {
+                        // keep the siblings sharing the alias
+                        final Set<String> newNames = new TreeSet<String>(names);
+                        newNames.remove(name);
+                        aliasMap.put(alias, Collections.unmodifiableSet(newNames));
+                    }
+                }
+                if (aliasMap.isEmpty()) {
+                    this.aliasesByParent.remove(parentPath);
+                }
+            }
+            return true;
+        }
+    }
+
     private static final class MapEntryIterator implements Iterator<MapEntry> {
 
         private final Map<String, List<MapEntry>> resolveMapsMap;
@@ -62,6 +62,8 @@ public class MapEntry implements Comparable<MapEntry> {
 
     private final int status;
 
+    private final long order;
+
     public static String appendSlash(String path) {
         if (!path.endsWith("/")) {
             path = path.concat("/");
@@ -216,6 +218,16 @@ public class MapEntry implements Comparable<MapEntry> {
 
     public MapEntry(String url, int status, boolean trailingSlash,
             String... redirect) {
+        this(url, status, trailingSlash, 0, redirect);
+    }
+
+    /**
+     * Creates an entry with an order, entries with the same pattern length
+     * are sorted by descending order, such as the sling:vanityOrder of
+     * vanity paths.
+     */
+    public MapEntry(String url, int status, boolean trailingSlash,
+            long order, String... redirect) {
 
         // ensure trailing slashes on redirects if the url
         // ends with a trailing slash
@@ -234,6 +246,7 @@ public class MapEntry implements Comparable<MapEntry> {
         this.urlPattern = Pattern.compile(url);
         this.redirect = redirect;
         this.status = status;
+        this.order = order;
     }
 
     // Returns the replacement or null if the value does not match
@@ -267,6 +280,10 @@ public class MapEntry implements Comparable<MapEntry> {
         return status;
     }
 
+    public long getOrder() {
+        return order;
+    }
+
     // ---------- Comparable
 
     public int compareTo(MapEntry m) {
@@ -282,6 +299,12 @@ public class MapEntry implements Comparable<MapEntry> {
             return -1;
         }
 
+        if (order < m.order) {
+            return 1;
+        } else if (order > m.order) {
+            return -1;
+        }
+
         // lentghs are equal, but the entries are not
         // so order m after this
         return 1;
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal.helper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The <code>MapEntryIndex</code> finds the map entries which may match a
+ * path without matching the regular expression of each entry.
+ * <p>
+ * Most map entries match a literal prefix of the path, such as the
+ * <code>^/content/site/</code> of a <code>sling:internalRedirect</code> or
+ * the <code>^/content/page$</code> of a virtual URL. These are kept in a
+ * radix tree of their prefixes, so that the entries matching a path are
+ * found by walking the path once. Only the entries using regular expression
+ * features are matched one after the other.
+ * <p>
+ * The {@link #getCandidates(String) candidates} are returned in the order of
+ * the entries given to the index, so the first entry actually matching the
+ * path is the same as when matching all entries in order.
+ */
+final class MapEntryIndex {
+
+    /** Characters with a meaning in a regular expression */
+    private static final String SPECIAL_CHARS = "\\.[]{}()*+?^$|";
+
+    private final Node root = new Node("");
+
+    /** The entries which are not literal, in order */
+    private final Indexed[] regExpEntries;
+
+    MapEntryIndex(final Collection<MapEntry> entries) {
+        final List<Indexed> regExp = new ArrayList<Indexed>();
+        int order = 0;
+        for (final MapEntry entry : entries) {
+            final Indexed indexed = new Indexed(entry, order++);
+
+            String literal = entry.getPattern();
+            if (literal.startsWith("^")) {
+                literal = literal.substring(1);
+            } else {
+                // unanchored patterns are not created by MapEntry
+                regExp.add(indexed);
+                continue;
+            }
+
+            final boolean exact = literal.endsWith("$") && !literal.endsWith("\\$");
+            if (exact) {
+                literal = literal.substring(0, literal.length() - 1);
+            }
+
+            if (isLiteral(literal)) {
+                insert(literal, indexed, exact);
+            } else {
+                regExp.add(indexed);
+            }
+        }
+        this.regExpEntries = regExp.toArray(new Indexed[regExp.size()]);
+    }
+
+    /**
+     * Returns the entries which may match the path in order: the entries
+     * with a literal pattern matching the path and all entries with a regular
+     * expression pattern.
+     */
+    Iterator<MapEntry> getCandidates(final String path) {
+        final List<Indexed> literal = new ArrayList<Indexed>();
+        Node node = this.root;
+        int pos = 0;
+        for (;;) {
+            node.addPrefixEntries(literal);
+            if (pos == path.length()) {
+                node.addExactEntries(literal);
+                break;
+            }
+
+            final Node child = node.getChild(path.charAt(pos));
+            if (child == null || !path.startsWith(child.label, pos)) {
+                break;
+            }
+            node = child;
+            pos += child.label.length();
+        }
+        if (literal.size() > 1) {
+            Collections.sort(literal);
+        }
+        return new CandidateIterator(literal, this.regExpEntries);
+    }
+
+    private void insert(final String literal, final Indexed entry, final boolean exact) {
+        Node node = this.root;
+        int pos = 0;
+        while (pos < literal.length()) {
+            final Node child = node.getChild(literal.charAt(pos));
+            if (child == null) {
+                final Node leaf = new Node(literal.substring(pos));
+                node.addChild(leaf);
+                node = leaf;
+                break;
+            }
+
+            // length of the common prefix of the label and the rest
+            final String label = child.label;
+            int common = 1;
+            while (common < label.length() && pos + common < literal.length()
+                && label.charAt(common) == literal.charAt(pos + common)) {
+                common++;
+            }
+
+            if (common < label.length()) {
+                // split the edge
+                final Node middle = new Node(label.substring(0, common));
+                child.label = label.substring(common);
+                node.replaceChild(middle);
+                middle.addChild(child);
+                node = middle;
+            } else {
+                node = child;
+            }
+            pos += common;
+        }
+        node.add(entry, exact);
+    }
+
+    private static boolean isLiteral(final String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (SPECIAL_CHARS.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A map entry with its position in the order of the entries.
+     */
+    private static final class Indexed implements Comparable<Indexed> {
+
+        final MapEntry entry;
+
+        final int order;
+
+        Indexed(final MapEntry entry, final int order) {
+            this.entry = entry;
+            this.order = order;
+        }
+
+        public int compareTo(final Indexed o) {
+            return (order < o.order) ? -1 : ((order == o.order) ? 0 : 1);
+        }
+    }
+
+    /**
+     * A node of the radix tree, the label of the edge from the parent is kept
+     * in the node. Children are kept by the first character of their label.
+     */
+    private static final class Node {
+
+        String label;
+
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        /** Entries matching any path starting with the prefix of the node */
+        private List<Indexed> prefixEntries;
+
+        /** Entries only matching the prefix of the node */
+        private List<Indexed> exactEntries;
+
+        Node(final String label) {
+            this.label = label;
+        }
+
+        Node getChild(final char c) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (keys[mid] < c) {
+                    low = mid + 1;
+                } else if (keys[mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        void addChild(final Node child) {
+            final char c = child.label.charAt(0);
+            int pos = 0;
+            while (pos < keys.length && keys[pos] < c) {
+                pos++;
+            }
+
+            final char[] newKeys = new char[keys.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            newKeys[pos] = c;
+            newChildren[pos] = child;
+            System.arraycopy(keys, pos, newKeys, pos + 1, keys.length - pos);
+            System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+            keys = newKeys;
+            children = newChildren;
+        }
+
+        /** Replaces the child with the same first character */
+        void replaceChild(final Node child) {
+            final char c = child.label.charAt(0);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    children[i] = child;
+                    return;
+                }
+            }
+        }
+
+        void add(final Indexed entry, final boolean exact) {
+            if (exact) {
+                if (exactEntries == null) {
+                    exactEntries = new ArrayList<Indexed>(1);
+                }
+                exactEntries.add(entry);
+            } else {
+                if (prefixEntries == null) {
+                    prefixEntries = new ArrayList<Indexed>(1);
+                }
+                prefixEntries.add(entry);
+            }
+        }
+
+        void addPrefixEntries(final List<Indexed> list) {
+            if (prefixEntries != null) {
+                list.addAll(prefixEntries);
+            }
+        }
+
+        void addExactEntries(final List<Indexed> list) {
+            if (exactEntries != null) {
+                list.addAll(exactEntries);
+            }
+        }
+    }
+
+    /**
+     * Merges the literal and regular expression entries in their order.
+     */
+    private static final class CandidateIterator implements Iterator<MapEntry> {
+
+        private final List<Indexed> literal;
+
+        private final Indexed[] regExp;
+
+        private int literalPos;
+
+        private int regExpPos;
+
+        CandidateIterator(final List<Indexed> literal, final Indexed[] regExp) {
+            this.literal = literal;
+            this.regExp = regExp;
+        }
+
+        public boolean hasNext() {
+            return literalPos < literal.size() || regExpPos < regExp.length;
+        }
+
+        public MapEntry next() {
+            if (literalPos < literal.size()) {
+                final Indexed nextLiteral = literal.get(literalPos);
+                if (regExpPos < regExp.length && regExp[regExpPos].order < nextLiteral.order) {
+                    return regExp[regExpPos++].entry;
+                }
+                literalPos++;
+                return nextLiteral.entry;
+            } else if (regExpPos < regExp.length) {
+                return regExp[regExpPos++].entry;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
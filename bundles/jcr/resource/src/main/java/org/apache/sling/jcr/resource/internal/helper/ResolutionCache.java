@@ -0,0 +1,489 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal.helper;
+
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * The <code>ResolutionCache</code> keeps the outcome of resolving an
+ * absolute path to a resource, that is the path of the resource and the
+ * resolution path and path info, or that the path does not resolve to any
+ * resource. It is shared by all resource resolvers; as a user might not be
+ * able to read all resources, the entries are kept by workspace and user.
+ * <p>
+ * The cache holds up to a maximum number of entries. Once it is full, the
+ * least recently used entries beyond the maximum and a tenth of the maximum
+ * are evicted at once. That a path does not resolve is only kept for a
+ * limited time, as not all resource providers notify their changes.
+ * <p>
+ * Resource events remove the entries whose resolution may have been affected
+ * by the change, found by their path in an index of the entries, changes to
+ * the resource providers clear the cache. The
+ * {@link MapEntries} invalidate the paths of changed aliases themselves once
+ * their alias index has been updated.
+ */
+public class ResolutionCache implements EventHandler {
+
+    public static final ResolutionCache EMPTY = new ResolutionCache();
+
+    /** The fraction of the maximum size evicted in addition once full */
+    private static final int EVICTION_FRACTION = 10;
+
+    private static final String JCR_CONTENT_LEAF = "/jcr:content";
+
+    private static final String REP_POLICY_SEGMENT = "/rep:policy";
+
+    /** The authorizables of Jackrabbit 2.0, whose group memberships grant access */
+    private static final String AUTHORIZABLES_PREFIX = "/rep:security/";
+
+    private static final String REP_MEMBERS = "rep:members";
+
+    /** The topic of the mapping change events sent by the {@link MapEntries} */
+    private static final String TOPIC_MAPPING_CHANGED = "org/apache/sling/api/resource/ResourceResolverMapping/CHANGED";
+
+    /** The event properties listing the modified properties */
+    private static final String[] EVENT_PROPS = {
+        "resourceAddedAttributes", "resourceChangedAttributes", "resourceRemovedAttributes"
+    };
+
+    private final ConcurrentHashMap<Key, Entry> entries;
+
+    /**
+     * The keys of the entries by the resolved path. The entries are only
+     * added and removed while holding the lock of this map.
+     */
+    private final TreeMap<String, Set<Key>> keysByPath = new TreeMap<String, Set<Key>>();
+
+    private final int maxSize;
+
+    /** The milliseconds to keep that a path does not resolve, 0 for not at all */
+    private final long negativeTtl;
+
+    /** Orders the uses of the entries */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Incremented on each invalidation, a resolution which happens while an
+     * invalidation happens is not cached as it might be outdated.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private ServiceRegistration registration;
+
+    private ResolutionCache() {
+        this.maxSize = 0;
+        this.negativeTtl = 0;
+        this.entries = new ConcurrentHashMap<Key, Entry>();
+        this.registration = null;
+    }
+
+    /**
+     * @param maxSize The maximum number of entries
+     * @param negativeTtl The milliseconds to keep that a path does not
+     *            resolve, 0 to only cache the paths which resolve
+     */
+    public ResolutionCache(final BundleContext bundleContext, final int maxSize,
+            final long negativeTtl) {
+        this.maxSize = maxSize;
+        this.negativeTtl = negativeTtl;
+        this.entries = new ConcurrentHashMap<Key, Entry>(maxSize);
+
+        final Dictionary<String, String> props = new Hashtable<String, String>();
+        props.put(EventConstants.EVENT_TOPIC, "org/apache/sling/api/resource/*");
+        props.put(Constants.SERVICE_DESCRIPTION, "Resolution Cache Observation");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        this.registration = bundleContext.registerService(EventHandler.class.getName(), this, props);
+    }
+
+    /**
+     * Cleans up this class.
+     */
+    public void dispose() {
+        if (this.registration != null) {
+            this.registration.unregister();
+            this.registration = null;
+        }
+        this.clear();
+    }
+
+    /**
+     * Returns the cached resolution of the path or <code>null</code> if
+     * none is cached. The {@link Entry#getResourcePath() resource path} of
+     * the entry is <code>null</code> if the path does not resolve.
+     */
+    public Entry get(final String workspaceName, final String userId, final String absPath) {
+        if (this.maxSize <= 0) {
+            return null;
+        }
+        final Key key = new Key(workspaceName, userId, absPath);
+        final Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires > 0 && entry.expires <= currentTime()) {
+            remove(key, entry);
+            return null;
+        }
+        entry.lastUsed = this.clock.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Returns the current generation, to be passed to
+     * {@link #put(String, String, String, Resource, long)} for a path
+     * resolved afterwards.
+     */
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Caches the resolution of the path, evicting the least recently used
+     * entries if the cache is full. The resolution is not cached if the cache
+     * has been invalidated since the given generation.
+     *
+     * @param resource The resource the path resolves to or <code>null</code>
+     *            if the path does not resolve
+     * @param generation The generation before the path was resolved
+     */
+    public void put(final String workspaceName, final String userId, final String absPath,
+            final Resource resource, final long generation) {
+        if (this.maxSize <= 0 || (resource == null && this.negativeTtl <= 0)) {
+            return;
+        }
+
+        final Key key = new Key(workspaceName, userId, absPath);
+        final Entry entry;
+        if (resource == null) {
+            entry = new Entry(null, null, null, currentTime() + this.negativeTtl);
+        } else {
+            entry = new Entry(resource.getPath(),
+                resource.getResourceMetadata().getResolutionPath(),
+                resource.getResourceMetadata().getResolutionPathInfo(), 0);
+        }
+        entry.lastUsed = this.clock.incrementAndGet();
+        final boolean full;
+        synchronized (this.keysByPath) {
+            if (this.entries.put(key, entry) == null) {
+                Set<Key> keys = this.keysByPath.get(absPath);
+                if (keys == null) {
+                    keys = new HashSet<Key>();
+                    this.keysByPath.put(absPath, keys);
+                }
+                keys.add(key);
+            }
+            full = this.entries.size() > this.maxSize;
+        }
+
+        // drop the entry again if it might already be outdated
+        if (generation != this.generation.get()) {
+            remove(key, entry);
+            return;
+        }
+
+        if (full) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the entries whose resolution may be affected by a change of the
+     * resource at the given path: a path resolves by looking up the resources
+     * along the path and, for their aliases, the children of these resources.
+     * Hence all entries for paths at or below the parent of the changed
+     * resource are removed.
+     * <p>
+     * An access control change counts as a change of the resource holding
+     * the policy, which includes the resources below it inheriting the
+     * policy. A change of the policy of the root, or of the authorizables,
+     * whose group memberships grant access, clears the cache.
+     */
+    public void invalidate(String path) {
+        final int policyPos = path.indexOf(REP_POLICY_SEGMENT);
+        if (policyPos == 0 || path.startsWith(AUTHORIZABLES_PREFIX)) {
+            clear();
+            return;
+        } else if (policyPos > 0) {
+            path = path.substring(0, policyPos);
+        }
+
+        // the alias of a jcr:content resource is the alias of its parent
+        if (path.endsWith(JCR_CONTENT_LEAF)) {
+            path = ResourceUtil.getParent(path);
+        }
+
+        final String parentPath = (path == null) ? null : ResourceUtil.getParent(path);
+        if (parentPath == null || parentPath.equals("/")) {
+            clear();
+            return;
+        }
+
+        this.generation.incrementAndGet();
+        synchronized (this.keysByPath) {
+            removeKeys(this.keysByPath.remove(parentPath));
+
+            // the paths below the parent, '0' follows '/'
+            final SortedMap<String, Set<Key>> descendants = this.keysByPath.subMap(
+                parentPath.concat("/"), parentPath.concat("0"));
+            for (final Set<Key> keys : descendants.values()) {
+                removeKeys(keys);
+            }
+            descendants.clear();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        this.generation.incrementAndGet();
+        synchronized (this.keysByPath) {
+            this.entries.clear();
+            this.keysByPath.clear();
+        }
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the current time in milliseconds, to expire the entries of the
+     * paths which do not resolve.
+     */
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private void remove(final Key key, final Entry entry) {
+        synchronized (this.keysByPath) {
+            if (this.entries.remove(key, entry)) {
+                unindex(key);
+            }
+        }
+    }
+
+    private void removeKeys(final Set<Key> keys) {
+        if (keys != null) {
+            for (final Key key : keys) {
+                this.entries.remove(key);
+            }
+        }
+    }
+
+    private void unindex(final Key key) {
+        final Set<Key> keys = this.keysByPath.get(key.absPath);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            this.keysByPath.remove(key.absPath);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries beyond the maximum size and a
+     * batch of further entries in a single scan.
+     */
+    private void evict() {
+        synchronized (this.keysByPath) {
+            final int size = this.entries.size();
+            if (size <= this.maxSize) {
+                // evicted by a concurrent put
+                return;
+            }
+
+            // find the time of last use up to which entries are evicted
+            final long[] uses = new long[size];
+            int count = 0;
+            for (final Entry entry : this.entries.values()) {
+                if (count == uses.length) {
+                    break;
+                }
+                uses[count++] = entry.lastUsed;
+            }
+            Arrays.sort(uses, 0, count);
+            final int toEvict = Math.min(count, size - this.maxSize + this.maxSize / EVICTION_FRACTION);
+            if (toEvict == 0) {
+                return;
+            }
+            final long threshold = uses[toEvict - 1];
+
+            final Iterator<Map.Entry<Key, Entry>> i = this.entries.entrySet().iterator();
+            while (i.hasNext()) {
+                final Map.Entry<Key, Entry> current = i.next();
+                if (current.getValue().lastUsed <= threshold) {
+                    i.remove();
+                    unindex(current.getKey());
+                }
+            }
+        }
+    }
+
+    // ---------- EventHandler interface
+
+    /**
+     * Invalidates the entries affected by a resource event and clears the
+     * cache on any other event, such as the change of a resource provider.
+     * The mapping change events are ignored, the {@link MapEntries}
+     * invalidate the paths of changed aliases themselves.
+     */
+    public void handleEvent(final Event event) {
+        final String topic = event.getTopic();
+        if (SlingConstants.TOPIC_RESOURCE_ADDED.equals(topic)
+            || SlingConstants.TOPIC_RESOURCE_CHANGED.equals(topic)
+            || SlingConstants.TOPIC_RESOURCE_REMOVED.equals(topic)) {
+
+            final Object p = event.getProperty(SlingConstants.PROPERTY_PATH);
+            if (p instanceof String && !hasAttribute(event, REP_MEMBERS)) {
+                // paths of other workspaces than the default one are
+                // prefixed with the workspace name, entries of all
+                // workspaces are invalidated
+                String path = (String) p;
+                final int wsSepPos = path.indexOf(":/");
+                if (wsSepPos != -1 && path.indexOf('/') > wsSepPos) {
+                    path = path.substring(wsSepPos + 1);
+                }
+                invalidate(path);
+            } else {
+                clear();
+            }
+
+        } else if (!TOPIC_MAPPING_CHANGED.equals(topic)) {
+            clear();
+        }
+    }
+
+    private static boolean hasAttribute(final Event event, final String propName) {
+        for (final String eventProp : EVENT_PROPS) {
+            final Object attributes = event.getProperty(eventProp);
+            if (attributes instanceof String[]) {
+                for (final String attribute : (String[]) attributes) {
+                    if (propName.equals(attribute)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The cached resolution of a path.
+     */
+    public static final class Entry {
+
+        private final String resourcePath;
+
+        private final String resolutionPath;
+
+        private final String resolutionPathInfo;
+
+        /** The time the entry expires at, 0 for never */
+        final long expires;
+
+        volatile long lastUsed;
+
+        Entry(final String resourcePath, final String resolutionPath,
+                final String resolutionPathInfo, final long expires) {
+            this.resourcePath = resourcePath;
+            this.resolutionPath = resolutionPath;
+            this.resolutionPathInfo = resolutionPathInfo;
+            this.expires = expires;
+        }
+
+        /**
+         * The path of the resource or <code>null</code> if the path does not
+         * resolve.
+         */
+        public String getResourcePath() {
+            return resourcePath;
+        }
+
+        public String getResolutionPath() {
+            return resolutionPath;
+        }
+
+        public String getResolutionPathInfo() {
+            return resolutionPathInfo;
+        }
+    }
+
+    private static final class Key {
+
+        private final String workspaceName;
+
+        private final String userId;
+
+        private final String absPath;
+
+        private final int hashCode;
+
+        Key(final String workspaceName, final String userId, final String absPath) {
+            this.workspaceName = workspaceName;
+            this.userId = userId;
+            this.absPath = absPath;
+
+            int hash = absPath.hashCode();
+            hash = 31 * hash + (workspaceName == null ? 0 : workspaceName.hashCode());
+            hash = 31 * hash + (userId == null ? 0 : userId.hashCode());
+            this.hashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return absPath.equals(other.absPath)
+                && equals(workspaceName, other.workspaceName)
+                && equals(userId, other.userId);
+        }
+
+        private static boolean equals(final String s1, final String s2) {
+            return (s1 == null) ? s2 == null : s1.equals(s2);
+        }
+    }
+}
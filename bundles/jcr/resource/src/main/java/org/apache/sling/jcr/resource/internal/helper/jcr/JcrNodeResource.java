@@ -277,6 +277,18 @@ public class JcrNodeResource extends JcrItemResource {
                 }
             }
 
+            // the entity tag is the content hash stored on write, qualified
+            // with the modification time in case the content has been
+            // replaced without updating the hash
+            if (node.hasProperty(JcrResourceConstants.SLING_ENTITY_TAG_PROPERTY)) {
+                final String hash = node.getProperty(
+                    JcrResourceConstants.SLING_ENTITY_TAG_PROPERTY).getString();
+                final long modifTime = metadata.getModificationTime();
+                metadata.setEntityTag((modifTime > 0)
+                        ? hash + "-" + Long.toHexString(modifTime)
+                        : hash);
+            }
+
             if (node.hasProperty(JCR_DATA)) {
                 final Property prop = node.getProperty(JCR_DATA);
                 try {
@@ -21,9 +21,11 @@ package org.apache.sling.jcr.resource.internal;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.Map;
 
 import javax.jcr.Node;
 import javax.jcr.Property;
@@ -188,6 +190,43 @@ public class JcrPropertyMapTest extends RepositoryTestBase {
         assertEquals("Stream read successfully a second time", "this too shall pass", read);
     }
 
+    public void testEntrySetValues() throws Exception {
+        InputStream instream = new ByteArrayInputStream("this too shall pass".getBytes());
+
+        ValueFactory valueFactory = rootNode.getSession().getValueFactory();
+
+        rootNode.setProperty("bin", valueFactory.createBinary(instream));
+        rootNode.setProperty("long", 5L);
+        rootNode.setProperty("multi", new String[] { "a", "b" });
+        rootNode.getSession().save();
+
+        ValueMap map = createPropertyMap(rootNode);
+        assertTrue(map.containsKey("bin"));
+        assertTrue(map.containsValue(5L));
+        assertFalse(map.containsValue(6L));
+
+        // the values are converted when the entries are iterated
+        for (int i = 0; i < 2; i++) {
+            int found = 0;
+            for (final Map.Entry<String, Object> entry : map.entrySet()) {
+                if ("bin".equals(entry.getKey())) {
+                    assertEquals("this too shall pass",
+                        IOUtils.toString((InputStream) entry.getValue()));
+                    found++;
+                } else if ("long".equals(entry.getKey())) {
+                    assertEquals(5L, entry.getValue());
+                    found++;
+                } else if ("multi".equals(entry.getKey())) {
+                    assertTrue(Arrays.equals(new Object[] { "a", "b" },
+                        (Object[]) entry.getValue()));
+                    found++;
+                }
+            }
+            assertEquals(3, found);
+        }
+        assertEquals(map.size(), map.values().size());
+    }
+
     // ---------- internal
 
     private void testValue(Node node, Object value, Object defaultValue) throws RepositoryException {
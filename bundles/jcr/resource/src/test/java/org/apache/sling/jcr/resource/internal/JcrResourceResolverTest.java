@@ -31,6 +31,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import javax.jcr.Credentials;
 import javax.jcr.NamespaceRegistry;
@@ -62,6 +63,7 @@ import org.apache.sling.jcr.resource.JcrResourceConstants;
 import org.apache.sling.jcr.resource.internal.helper.MapEntries;
 import org.apache.sling.jcr.resource.internal.helper.Mapping;
 import org.apache.sling.jcr.resource.internal.helper.RedirectResource;
+import org.apache.sling.jcr.resource.internal.helper.ResolutionCache;
 import org.apache.sling.jcr.resource.internal.helper.starresource.StarResource;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
@@ -91,6 +93,14 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
 
     private JcrResourceListener listener;
 
+    /** Notified when the map entries have been updated */
+    private final Object mappingChanged = new Object();
+
+    /** The node whose alias marks the progress of the map entries updates */
+    private Node markerNode;
+
+    private int markerCount;
+
     String vanity;
 
     protected void setUp() throws Exception {
@@ -126,6 +136,9 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         rootNode.setProperty("sling:vanityPath", vanity);
         rootNode.addMixin("sling:VanityPath");
 
+        markerNode = getSession().getRootNode().addNode(
+            rootPath.substring(1) + "-marker", "nt:unstructured");
+
         session.save();
 
         resFac = new JcrResourceResolverFactoryImpl();
@@ -154,7 +167,10 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         final EventAdmin mockVoidEA = new EventAdmin() {
 
             public void postEvent(Event event) {
-                // nothing to do
+                // the map entries have been updated
+                synchronized (mappingChanged) {
+                    mappingChanged.notifyAll();
+                }
             }
 
             public void sendEvent(Event event) {
@@ -253,6 +269,10 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
             mapRoot.remove();
         }
 
+        if (markerNode != null) {
+            markerNode.remove();
+        }
+
         if ( this.listener != null ) {
             this.listener.dispose();
         }
@@ -1287,6 +1307,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         rootNode.setProperty(JcrResourceResolver.PROP_ALIAS, alias);
         session.save();
 
+        waitForMapEntries();
+
         String path = ResourceUtil.normalize(ResourceUtil.getParent(rootPath)
             + "/" + alias + ".print.html");
 
@@ -1327,6 +1349,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         content.setProperty(JcrResourceResolver.PROP_ALIAS, alias);
         session.save();
 
+        waitForMapEntries();
+
         String path = ResourceUtil.normalize(ResourceUtil.getParent(rootPath)
             + "/" + alias + ".print.html");
 
@@ -1369,10 +1393,140 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         child.setProperty(JcrResourceResolver.PROP_ALIAS, alias);
         session.save();
 
+        waitForMapEntries();
+
         res = resResolver.resolve(request, path);
         assertEquals(child.getPath(), res.getPath());
     }
 
+    public void testResolveResourceAliasUpdate() throws Exception {
+        Node child = rootNode.addNode("child", "nt:unstructured");
+        child.setProperty(JcrResourceResolver.PROP_ALIAS, "first");
+        session.save();
+
+        waitForMapEntries();
+
+        Resource res = resResolver.resolve(null, rootPath + "/first.html");
+        assertEquals(child.getPath(), res.getPath());
+
+        // the changed alias replaces the previous one
+        child.setProperty(JcrResourceResolver.PROP_ALIAS, "second");
+        session.save();
+
+        waitForMapEntries();
+
+        res = resResolver.resolve(null, rootPath + "/second.html");
+        assertEquals(child.getPath(), res.getPath());
+        res = resResolver.resolve(null, rootPath + "/first.html");
+        assertEquals(Resource.RESOURCE_TYPE_NON_EXISTING, res.getResourceType());
+
+        // the moved node keeps its alias
+        Node other = rootNode.addNode("other", "nt:unstructured");
+        session.save();
+        session.move(child.getPath(), other.getPath() + "/child");
+        session.save();
+
+        waitForMapEntries();
+
+        res = resResolver.resolve(null, rootPath + "/second.html");
+        assertEquals(Resource.RESOURCE_TYPE_NON_EXISTING, res.getResourceType());
+        res = resResolver.resolve(null, rootPath + "/other/second.html");
+        assertEquals(other.getPath() + "/child", res.getPath());
+    }
+
+    public void testResolveResourceAliasSharedBySiblings() throws Exception {
+        Node first = rootNode.addNode("first", "nt:unstructured");
+        first.setProperty(JcrResourceResolver.PROP_ALIAS, "shared");
+        Node second = rootNode.addNode("second", "nt:unstructured");
+        second.setProperty(JcrResourceResolver.PROP_ALIAS, "shared");
+        session.save();
+
+        waitForMapEntries();
+
+        // the first child having the alias is used
+        Resource res = resResolver.resolve(null, rootPath + "/shared.html");
+        assertEquals(first.getPath(), res.getPath());
+
+        // the sibling keeps the alias removed from the first child
+        first.getProperty(JcrResourceResolver.PROP_ALIAS).remove();
+        session.save();
+
+        waitForMapEntries();
+
+        res = resResolver.resolve(null, rootPath + "/shared.html");
+        assertEquals(second.getPath(), res.getPath());
+
+        // and the alias of a removed sibling
+        first.setProperty(JcrResourceResolver.PROP_ALIAS, "shared");
+        session.save();
+
+        waitForMapEntries();
+
+        first.remove();
+        session.save();
+
+        waitForMapEntries();
+
+        res = resResolver.resolve(null, rootPath + "/shared.html");
+        assertEquals(second.getPath(), res.getPath());
+    }
+
+    public void testResolveResourceCached() throws Exception {
+        // the cache gets no resource events here, it keeps the resolutions
+        // until they are invalidated explicitly
+        final ResolutionCache cache = new ResolutionCache(
+            mock(BundleContext.class), 10, 60000L);
+        PrivateAccessor.setField(resFac, "resolutionCache", cache);
+
+        Node child = rootNode.addNode("child", "nt:unstructured");
+        session.save();
+
+        final String path = rootPath + "/child.print.html";
+        Resource res = resResolver.resolve(null, path);
+        assertEquals(child.getPath(), res.getPath());
+        assertNotNull(cache.get(session.getWorkspace().getName(),
+            session.getUserID(), path));
+
+        // the unsaved changes of the session bypass the cache
+        Node print = rootNode.addNode("child.print", "nt:unstructured");
+        res = resResolver.resolve(null, path);
+        assertEquals(print.getPath(), res.getPath());
+        assertEquals(".html", res.getResourceMetadata().getResolutionPathInfo());
+
+        // the cached resolution with the resolution path and path info
+        session.save();
+        res = resResolver.resolve(null, path);
+        assertEquals(child.getPath(), res.getPath());
+        assertEquals(child.getPath(), res.getResourceMetadata().getResolutionPath());
+        assertEquals(".print.html", res.getResourceMetadata().getResolutionPathInfo());
+        assertNotNull(res.adaptTo(Node.class));
+
+        // resolved again once invalidated
+        cache.invalidate(print.getPath());
+        res = resResolver.resolve(null, path);
+        assertEquals(print.getPath(), res.getPath());
+        assertEquals(".html", res.getResourceMetadata().getResolutionPathInfo());
+    }
+
+    public void testResolveNonExistingResourceCached() throws Exception {
+        final ResolutionCache cache = new ResolutionCache(
+            mock(BundleContext.class), 10, 60000L);
+        PrivateAccessor.setField(resFac, "resolutionCache", cache);
+
+        final String path = rootPath + "/missing.html";
+        Resource res = resResolver.resolve(null, path);
+        assertTrue(res instanceof NonExistingResource);
+
+        Node missing = rootNode.addNode("missing", "nt:unstructured");
+        session.save();
+        res = resResolver.resolve(null, path);
+        assertTrue(res instanceof NonExistingResource);
+
+        cache.invalidate(missing.getPath());
+        res = resResolver.resolve(null, path);
+        assertEquals(missing.getPath(), res.getPath());
+    }
+
     public void testResolveVanityPath() throws Exception {
         String path = ResourceUtil.normalize(ResourceUtil.getParent(rootPath)
                 + "/" + vanity + ".print.html");
@@ -2074,12 +2228,93 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         assertEquals("Path does not match", child2.getPath(), rsrc.getPath());
     }
 
+    /**
+     * Test the update of changed and moved vanity paths
+     */
+    public void test_resolve_with_sling_vanity_path_update() throws Exception {
+        Node child = rootNode.addNode("child");
+        child.addMixin("sling:VanityPath");
+        child.setProperty("sling:vanityPath", "/first");
+        session.save();
+
+        waitForMapEntries();
+
+        Resource rsrc = resResolver.resolve("/first");
+        assertEquals("Path does not match", child.getPath(), rsrc.getPath());
+
+        // the changed vanity path replaces the previous one
+        child.setProperty("sling:vanityPath", "/second");
+        session.save();
+
+        waitForMapEntries();
+
+        rsrc = resResolver.resolve("/second.html");
+        assertEquals("Path does not match", child.getPath(), rsrc.getPath());
+        rsrc = resResolver.resolve("/first");
+        assertTrue("Resource should not exist", ResourceUtil.isNonExistingResource(rsrc));
+
+        // the moved node keeps its vanity path
+        Node other = rootNode.addNode("other", "nt:unstructured");
+        session.save();
+        session.move(child.getPath(), other.getPath() + "/child");
+        session.save();
+
+        waitForMapEntries();
+
+        rsrc = resResolver.resolve("/second");
+        assertEquals("Path does not match", other.getPath() + "/child", rsrc.getPath());
+
+        // the removed vanity path does not resolve any more
+        other.getNode("child").getProperty("sling:vanityPath").remove();
+        session.save();
+
+        waitForMapEntries();
+
+        rsrc = resResolver.resolve("/second");
+        assertTrue("Resource should not exist", ResourceUtil.isNonExistingResource(rsrc));
+    }
+
+    public void test_resolve_with_sling_vanity_path_tree_moved_and_removed() throws Exception {
+        Node parent = rootNode.addNode("parent", "nt:unstructured");
+        Node child = parent.addNode("child");
+        child.addMixin("sling:VanityPath");
+        child.setProperty("sling:vanityPath", "/moved");
+        session.save();
+
+        waitForMapEntries();
+
+        Resource rsrc = resResolver.resolve("/moved");
+        assertEquals("Path does not match", child.getPath(), rsrc.getPath());
+
+        // only the parent is notified, the child is found below it
+        Node other = rootNode.addNode("other", "nt:unstructured");
+        session.save();
+        session.move(parent.getPath(), other.getPath() + "/renamed");
+        session.save();
+
+        waitForMapEntries();
+
+        rsrc = resResolver.resolve("/moved");
+        assertEquals("Path does not match", other.getPath() + "/renamed/child", rsrc.getPath());
+
+        // removing the tree drops its vanity paths
+        other.getNode("renamed").remove();
+        session.save();
+
+        waitForMapEntries();
+
+        rsrc = resResolver.resolve("/moved");
+        assertTrue("Resource should not exist", ResourceUtil.isNonExistingResource(rsrc));
+    }
+
     public void test_resolve_with_sling_alias() throws Exception {
 
         Node child = rootNode.addNode("child");
         child.setProperty(JcrResourceResolver.PROP_ALIAS, "kind");
         session.save();
 
+        waitForMapEntries();
+
         // expect kind due to alias and no parent due to mapping
         // the rootPath onto root
         String path = "/kind";
@@ -2102,6 +2337,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         grandchild.setProperty(JcrResourceResolver.PROP_ALIAS, "enkel");
         session.save();
 
+        waitForMapEntries();
+
         // expect kind/enkel due to alias and no parent due to mapping
         // the rootPath onto root
         String pathEnkel = "/kind/enkel";
@@ -2127,6 +2364,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         AccessControlUtil.replaceAccessControlEntry(session, child.getPath(), testUserPrincipal, null, new String[] {"jcr:all"}, null, "last");
         session.save();
 
+        waitForMapEntries();
+
         Session testUserSession = getRepository().login(new SimpleCredentials("testuser", "test".toCharArray()));
         ResourceResolver testUserResolver = resFac.getResourceResolver(testUserSession);
 
@@ -2151,6 +2390,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
             AccessControlUtil.replaceAccessControlEntry(session, grandchild.getPath(), testUserPrincipal, new String[] { "jcr:all" }, null, null, "first");
             session.save();
 
+            waitForMapEntries();
+
             // expect /child/enkel due to parent node not being
             // visible to the test user and no parent due to mapping
             // the rootPath onto root
@@ -2228,6 +2469,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
             "kind", "enfant" });
         session.save();
 
+        waitForMapEntries();
+
         // expect kind due to alias and no parent due to mapping
         // the rootPath onto root
         String path = "/kind";
@@ -2267,6 +2510,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         grandchild.setProperty(JcrResourceResolver.PROP_ALIAS, "enkel");
         session.save();
 
+        waitForMapEntries();
+
         // expect kind/enkel due to alias and no parent due to mapping
         // the rootPath onto root
         String pathEnkel = "/kind/enkel";
@@ -2308,6 +2553,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         child.setProperty(JcrResourceResolver.PROP_ALIAS, "kind");
         session.save();
 
+        waitForMapEntries();
+
         // expect kind due to alias and no parent due to mapping
         // the rootPath onto root
         String path = "/kind" + selExt;
@@ -2329,6 +2576,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         grandchild.setProperty(JcrResourceResolver.PROP_ALIAS, "enkel");
         session.save();
 
+        waitForMapEntries();
+
         // expect kind/enkel due to alias and no parent due to mapping
         // the rootPath onto root
         String pathEnkel = "/kind/enkel" + selExt;
@@ -2356,6 +2605,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         child.setProperty(JcrResourceResolver.PROP_ALIAS, "kind");
         session.save();
 
+        waitForMapEntries();
+
         // expect kind due to alias and no parent due to mapping
         // the rootPath onto root
         String path = "/kind" + selExt;
@@ -2377,6 +2628,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         grandchild.setProperty(JcrResourceResolver.PROP_ALIAS, "enkel");
         session.save();
 
+        waitForMapEntries();
+
         // expect kind/enkel due to alias and no parent due to mapping
         // the rootPath onto root
         String pathEnkel = "/kind/enkel" + selExt;
@@ -2404,6 +2657,8 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
         child.setProperty(JcrResourceResolver.PROP_ALIAS, "kind");
         session.save();
 
+        waitForMapEntries();
+
         // expect kind due to alias and no parent due to mapping
         // the rootPath onto root
         String path = "/kind" + selExt;
@@ -2419,6 +2674,37 @@ public class JcrResourceResolverTest extends RepositoryTestBase {
 
     // ---------- internal
 
+    /**
+     * Waits for the map entries to be updated with the changes saved before.
+     * The events are processed in order, so the alias of the marker node is
+     * updated after the changes saved before it. A second marker waits for
+     * a reload triggered while updating for the first one.
+     */
+    private void waitForMapEntries() throws Exception {
+        final String workspaceName = session.getWorkspace().getName();
+        for (int i = 0; i < 2; i++) {
+            final String alias = "marker" + (++markerCount);
+            markerNode.setProperty(JcrResourceResolver.PROP_ALIAS, alias);
+            session.save();
+
+            final long end = System.currentTimeMillis() + 10000L;
+            synchronized (mappingChanged) {
+                while (true) {
+                    final Map<String, Set<String>> aliases = mapEntries.getAliasMap(
+                        workspaceName, markerNode.getParent().getPath());
+                    if (aliases != null && aliases.containsKey(alias)) {
+                        break;
+                    }
+                    final long timeout = end - System.currentTimeMillis();
+                    if (timeout <= 0) {
+                        fail("Map entries not updated with alias " + alias);
+                    }
+                    mappingChanged.wait(timeout);
+                }
+            }
+        }
+    }
+
     private void testStarResourceHelper(final String path, final String method) {
         final Resource res = resResolver.resolve(
             new ResourceResolverTestRequest(path, method), path);
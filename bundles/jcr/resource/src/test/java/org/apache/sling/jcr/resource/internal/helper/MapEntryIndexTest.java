@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class MapEntryIndexTest extends TestCase {
+
+    public void testLiteralPrefix() {
+        final MapEntryIndex index = index(
+            new MapEntry("/content/site/", -1, false, "/"),
+            new MapEntry("/content/site/en/", -1, false, "/en/"),
+            new MapEntry("/content/other/", -1, false, "/other/"));
+
+        assertEquals(Arrays.asList("^/content/site/en/", "^/content/site/"),
+            patterns(index.getCandidates("/content/site/en/page")));
+        assertEquals(Arrays.asList("^/content/site/"),
+            patterns(index.getCandidates("/content/site/fr/page")));
+        assertTrue(patterns(index.getCandidates("/content/sit")).isEmpty());
+        assertTrue(patterns(index.getCandidates("/libs")).isEmpty());
+    }
+
+    public void testExactMatch() {
+        final MapEntryIndex index = index(
+            new MapEntry("^/content/page$", -1, false, "/page"));
+
+        assertEquals(Arrays.asList("^/content/page$"),
+            patterns(index.getCandidates("/content/page")));
+        assertTrue(patterns(index.getCandidates("/content/page/child")).isEmpty());
+        assertTrue(patterns(index.getCandidates("/content/pag")).isEmpty());
+    }
+
+    public void testRegExpEntriesInOrder() {
+        final MapEntryIndex index = index(
+            new MapEntry("^/content/(site|other)/long/", -1, false, "/$1/"),
+            new MapEntry("/content/", -1, false, "/"),
+            new MapEntry("^/c.+", -1, false, "/x"));
+
+        // the regular expressions are candidates for any path
+        assertEquals(Arrays.asList("^/content/(site|other)/long/", "^/content/", "^/c.+"),
+            patterns(index.getCandidates("/content/page")));
+        assertEquals(Arrays.asList("^/content/(site|other)/long/", "^/c.+"),
+            patterns(index.getCandidates("/libs/page")));
+    }
+
+    public void testSameFirstMatchAsLinearScan() {
+        final List<MapEntry> entries = new ArrayList<MapEntry>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new MapEntry("/content/comics/series" + i + "/", -1, false,
+                "/series" + i + "/"));
+            entries.add(new MapEntry("^/content/comics/series" + i + "/cover$", -1, false,
+                "/cover" + i));
+        }
+        entries.add(new MapEntry("/content/", -1, false, "/"));
+        entries.add(new MapEntry("^/content/comics/series1[0-9]/", -1, false, "/teens/"));
+        entries.add(new MapEntry("/content/comics/series1", -1, false, "/s1"));
+
+        final Collection<MapEntry> sorted = new TreeSet<MapEntry>(entries);
+        final MapEntryIndex index = new MapEntryIndex(sorted);
+
+        final String[] paths = { "/content/comics/series1/page",
+            "/content/comics/series15/page", "/content/comics/series15/cover",
+            "/content/comics/series99/cover", "/content/comics/series99/cover.html",
+            "/content/comics/series100/page", "/content/page", "/libs/page", "/" };
+        for (final String path : paths) {
+            assertEquals(path, firstMatch(sorted.iterator(), path),
+                firstMatch(index.getCandidates(path), path));
+        }
+    }
+
+    // the entries in the order of the MapEntries
+    private static MapEntryIndex index(MapEntry... entries) {
+        return new MapEntryIndex(new TreeSet<MapEntry>(Arrays.asList(entries)));
+    }
+
+    private static List<String> patterns(Iterator<MapEntry> candidates) {
+        final List<String> patterns = new ArrayList<String>();
+        while (candidates.hasNext()) {
+            patterns.add(candidates.next().getPattern());
+        }
+        return patterns;
+    }
+
+    private static String firstMatch(Iterator<MapEntry> entries, String path) {
+        while (entries.hasNext()) {
+            final String[] mapped = entries.next().replace(path);
+            if (mapped != null) {
+                return mapped[0];
+            }
+        }
+        return null;
+    }
+}
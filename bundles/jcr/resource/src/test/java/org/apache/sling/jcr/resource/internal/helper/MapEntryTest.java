@@ -20,6 +20,9 @@ package org.apache.sling.jcr.resource.internal.helper;
 
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -142,6 +145,23 @@ public class MapEntryTest extends TestCase {
         TestCase.assertTrue(isRegExp("http/[^.]+.www.example.com.8080/bla"));
     }
 
+    public void test_compareTo_order() {
+        final MapEntry low = new MapEntry("/vanity$", -1, false, 100, "/content/low.html");
+        final MapEntry high = new MapEntry("/vanity$", -1, false, 200, "/content/high.html");
+        final MapEntry longer = new MapEntry("/vanity(\\..*)", -1, false, 0, "/content/low$1");
+
+        final List<MapEntry> entries = new ArrayList<MapEntry>();
+        entries.add(low);
+        entries.add(high);
+        entries.add(longer);
+        Collections.sort(entries);
+
+        // longer patterns first, then the higher order
+        assertSame(longer, entries.get(0));
+        assertSame(high, entries.get(1));
+        assertSame(low, entries.get(2));
+    }
+
     private void assertEqualUri(String expected, String uriPath) {
         URI uri = MapEntry.toURI(uriPath);
         assertNotNull("Failed converting " + uriPath, uri);
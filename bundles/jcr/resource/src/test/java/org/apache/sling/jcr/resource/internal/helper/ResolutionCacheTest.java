@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal.helper;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.event.Event;
+
+public class ResolutionCacheTest extends TestCase {
+
+    private static final String WS = "default";
+
+    private static final String USER = "anonymous";
+
+    private static final long NEGATIVE_TTL = 60000L;
+
+    private long time = 1000L;
+
+    private ResolutionCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = createCache(3, NEGATIVE_TTL);
+    }
+
+    public void testResolvedAndNotResolved() {
+        put("/content/page.w480.thumb.jpg", resource("/content/page", "/content/page", ".w480.thumb.jpg"));
+        put("/content/nothing.html", null);
+
+        final ResolutionCache.Entry resolved = cache.get(WS, USER, "/content/page.w480.thumb.jpg");
+        assertNotNull(resolved);
+        assertEquals("/content/page", resolved.getResourcePath());
+        assertEquals("/content/page", resolved.getResolutionPath());
+        assertEquals(".w480.thumb.jpg", resolved.getResolutionPathInfo());
+
+        final ResolutionCache.Entry notResolved = cache.get(WS, USER, "/content/nothing.html");
+        assertNotNull(notResolved);
+        assertNull(notResolved.getResourcePath());
+
+        assertNull(cache.get(WS, USER, "/content/other.html"));
+    }
+
+    public void testKeptByWorkspaceAndUser() {
+        put("/content/page.html", resource("/content/page", "/content/page", ".html"));
+        assertNull(cache.get(WS, "admin", "/content/page.html"));
+        assertNull(cache.get("ws2", USER, "/content/page.html"));
+        assertNotNull(cache.get(WS, USER, "/content/page.html"));
+    }
+
+    public void testLeastRecentlyUsedEvicted() {
+        put("/a", null);
+        put("/b", null);
+        put("/c", null);
+
+        // use a so that b is the least recently used
+        assertNotNull(cache.get(WS, USER, "/a"));
+        put("/d", null);
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(WS, USER, "/b"));
+        assertNotNull(cache.get(WS, USER, "/a"));
+        assertNotNull(cache.get(WS, USER, "/c"));
+        assertNotNull(cache.get(WS, USER, "/d"));
+    }
+
+    public void testEvictionInBatches() {
+        cache = createCache(20, NEGATIVE_TTL);
+        for (int i = 0; i < 20; i++) {
+            put("/p" + i, null);
+        }
+        // use p0 so that p1, p2 and p3 are the least recently used
+        assertNotNull(cache.get(WS, USER, "/p0"));
+
+        // the entry beyond the maximum and a tenth of the maximum are evicted
+        put("/x", null);
+        assertEquals(18, cache.size());
+        assertNull(cache.get(WS, USER, "/p1"));
+        assertNull(cache.get(WS, USER, "/p3"));
+        assertNotNull(cache.get(WS, USER, "/p0"));
+        assertNotNull(cache.get(WS, USER, "/p4"));
+        assertNotNull(cache.get(WS, USER, "/x"));
+    }
+
+    public void testNotResolvedExpires() {
+        put("/content/nothing.html", null);
+        put("/content/page.html", resource("/content/page", "/content/page", ".html"));
+
+        time += NEGATIVE_TTL - 1;
+        assertNotNull(cache.get(WS, USER, "/content/nothing.html"));
+
+        time += 1;
+        assertNull(cache.get(WS, USER, "/content/nothing.html"));
+        assertNotNull(cache.get(WS, USER, "/content/page.html"));
+        assertEquals(1, cache.size());
+    }
+
+    public void testNotResolvedNotCachedWithoutTtl() {
+        cache = createCache(3, 0);
+        put("/content/nothing.html", null);
+        put("/content/page.html", resource("/content/page", "/content/page", ".html"));
+        assertNull(cache.get(WS, USER, "/content/nothing.html"));
+        assertNotNull(cache.get(WS, USER, "/content/page.html"));
+    }
+
+    public void testInvalidateSiblingsAndDescendants() {
+        put("/content/comics/issue1.html", null);
+        put("/content/comics/issue1/cover.jpg", null);
+        put("/content/other.html", null);
+
+        // adding issue1 changes the resolution of the paths below comics
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_ADDED, "/content/comics/issue1"));
+        assertNull(cache.get(WS, USER, "/content/comics/issue1.html"));
+        assertNull(cache.get(WS, USER, "/content/comics/issue1/cover.jpg"));
+        assertNotNull(cache.get(WS, USER, "/content/other.html"));
+    }
+
+    public void testInvalidateAliasOfJcrContent() {
+        put("/content/comics/first.html", null);
+        put("/content/other.html", null);
+
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_CHANGED,
+            "/content/comics/issue1/jcr:content"));
+        assertNull(cache.get(WS, USER, "/content/comics/first.html"));
+        assertNotNull(cache.get(WS, USER, "/content/other.html"));
+    }
+
+    public void testInvalidateAccessControl() {
+        put("/content/comics/issue1.html", null);
+        put("/content/other.html", null);
+
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_ADDED,
+            "/content/comics/issue1/rep:policy/allow"));
+        assertNull(cache.get(WS, USER, "/content/comics/issue1.html"));
+        assertNotNull(cache.get(WS, USER, "/content/other.html"));
+
+        // the policy of the root applies to all paths
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/rep:policy/allow"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testInvalidateAccessControlBelow() {
+        put("/content/comics/issue1/cover.jpg", null);
+        put("/content/comics/issue1/pages/1.jpg", null);
+        put("/content/comics/issue2.html", null);
+        put("/content/other.html", null);
+
+        // the policy applies to the resources below issue1, a sibling may
+        // have an alias resolving a path of issue2
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_CHANGED,
+            "/content/comics/issue1/rep:policy/deny0"));
+        assertNull(cache.get(WS, USER, "/content/comics/issue1/cover.jpg"));
+        assertNull(cache.get(WS, USER, "/content/comics/issue1/pages/1.jpg"));
+        assertNull(cache.get(WS, USER, "/content/comics/issue2.html"));
+        assertNotNull(cache.get(WS, USER, "/content/other.html"));
+    }
+
+    public void testClearedOnMembershipChange() {
+        put("/content/page.html", null);
+
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(SlingConstants.PROPERTY_PATH, "/home/groups/editors");
+        props.put("resourceChangedAttributes", new String[] { "rep:members" });
+        cache.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_CHANGED, props));
+        assertEquals(0, cache.size());
+
+        put("/content/page.html", null);
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_REMOVED,
+            "/rep:security/rep:authorizables/rep:groups/editors"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testClearedOnOtherEvents() {
+        put("/content/page.html", null);
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_PROVIDER_ADDED, null));
+        assertEquals(0, cache.size());
+    }
+
+    public void testKeptOnMappingChange() {
+        // the map entries invalidate the paths of changed aliases
+        put("/content/page.html", null);
+        cache.handleEvent(event("org/apache/sling/api/resource/ResourceResolverMapping/CHANGED", null));
+        assertEquals(1, cache.size());
+    }
+
+    public void testOutdatedResolutionNotCached() {
+        final long generation = cache.getGeneration();
+        cache.invalidate("/content/comics/issue1");
+        cache.put(WS, USER, "/content/comics/issue1.html", null, generation);
+        assertNull(cache.get(WS, USER, "/content/comics/issue1.html"));
+    }
+
+    public void testEmptyCacheKeepsNothing() {
+        ResolutionCache.EMPTY.put(WS, USER, "/a", null, ResolutionCache.EMPTY.getGeneration());
+        assertNull(ResolutionCache.EMPTY.get(WS, USER, "/a"));
+    }
+
+    private ResolutionCache createCache(int maxSize, long negativeTtl) {
+        return new ResolutionCache(mock(BundleContext.class), maxSize, negativeTtl) {
+            @Override
+            protected long currentTime() {
+                return time;
+            }
+        };
+    }
+
+    private void put(String absPath, Resource resource) {
+        cache.put(WS, USER, absPath, resource, cache.getGeneration());
+    }
+
+    private static Resource resource(String path, String resolutionPath, String resolutionPathInfo) {
+        final Resource resource = new SyntheticResource(null, path, null);
+        resource.getResourceMetadata().setResolutionPath(resolutionPath);
+        resource.getResourceMetadata().setResolutionPathInfo(resolutionPathInfo);
+        return resource;
+    }
+
+    private static Event event(String topic, String path) {
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        if (path != null) {
+            props.put(SlingConstants.PROPERTY_PATH, path);
+        }
+        return new Event(topic, props);
+    }
+}
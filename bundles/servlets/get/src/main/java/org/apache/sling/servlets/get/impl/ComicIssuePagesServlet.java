@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.osgi.OsgiUtil;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * The <code>ComicIssuePagesServlet</code> renders the page manifest of a
+ * comic issue for <code>issue.pages.json</code> requests.
+ * <p>
+ * The manifest is written to the <code>pages</code> property of the issue
+ * when the comic is imported. Manifests are kept in memory, the least
+ * recently used are dropped when the configured number is exceeded and a
+ * manifest is dropped as soon as a resource event reports a change below its
+ * issue. The cached issue paths are kept sorted, so an event only looks at
+ * the ancestors and descendants of the changed resource.
+ * <p>
+ * Issues imported before manifests existed get a manifest built from their
+ * page resources, in the same natural order and with the same fields as an
+ * imported one. It lists the pages the requesting user can read and is
+ * therefore not cached.
+ * <p>
+ * A manifest read while an event is handled is returned but not cached, as
+ * it may have been read before the change.
+ */
+@SuppressWarnings("serial")
+@Component(immediate=true, metatype=true)
+@Service(value={Servlet.class, EventHandler.class})
+@Properties({
+    @Property(name="service.description", value="Comic Issue Page Manifest Servlet"),
+    @Property(name="service.vendor", value="The Apache Software Foundation"),
+    @Property(name="sling.servlet.resourceTypes", value="comic-bin/issue", propertyPrivate=true),
+    @Property(name="sling.servlet.methods", value="GET", propertyPrivate=true),
+    @Property(name="sling.servlet.selectors", value="pages", propertyPrivate=true),
+    @Property(name="sling.servlet.extensions", value="json", propertyPrivate=true),
+    @Property(name="event.topics", value={SlingConstants.TOPIC_RESOURCE_ADDED,
+        SlingConstants.TOPIC_RESOURCE_CHANGED, SlingConstants.TOPIC_RESOURCE_REMOVED},
+        propertyPrivate=true)
+})
+public class ComicIssuePagesServlet extends SlingSafeMethodsServlet implements EventHandler {
+
+    /** The property of the issue holding the manifest. */
+    private static final String PAGES = "pages";
+
+    private static final String PAGE_RESOURCE_TYPE = "comic-bin/page";
+
+    /** The property of a page listing its renditions as name:width. */
+    private static final String RENDITIONS = "renditions";
+
+    /** The name of the node holding the original of a page. */
+    private static final String ORIGINAL = "bin";
+
+    private static final int DEFAULT_CACHE_ENTRIES = 1000;
+
+    /** Maximum number of manifests kept in memory. */
+    @Property(intValue=DEFAULT_CACHE_ENTRIES)
+    private static final String PROP_CACHE_ENTRIES = "cache.entries";
+
+    /** Manifests by issue path, in access order */
+    private Map<String, String> cache;
+
+    /** The paths of the cached manifests, guarded by the cache */
+    private TreeSet<String> paths;
+
+    /** Incremented whenever manifests are dropped, guarded by the cache */
+    private long generation;
+
+    protected void activate(ComponentContext ctx) {
+        final Dictionary<?, ?> props = ctx.getProperties();
+        final int maxEntries = OsgiUtil.toInteger(props.get(PROP_CACHE_ENTRIES),
+            DEFAULT_CACHE_ENTRIES);
+        final TreeSet<String> paths = new TreeSet<String>();
+        this.paths = paths;
+        this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() > maxEntries) {
+                    paths.remove(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    protected void deactivate(ComponentContext ctx) {
+        this.cache = null;
+        this.paths = null;
+    }
+
+    /**
+     * Drops the manifests of issues changed or removed.
+     */
+    public void handleEvent(Event event) {
+        final Map<String, String> cache = this.cache;
+        final TreeSet<String> paths = this.paths;
+        final String path = (String) event.getProperty(SlingConstants.PROPERTY_PATH);
+        if (cache == null || path == null) {
+            return;
+        }
+        synchronized (cache) {
+            generation++;
+            if (paths.isEmpty()) {
+                return;
+            }
+            remove(cache, paths, path);
+
+            // descendants sort between "path/" and "path0", '0' follows '/'
+            final String prefix = path.endsWith("/") ? path : path + "/";
+            for (String descendant : new ArrayList<String>(paths.subSet(prefix,
+                prefix.substring(0, prefix.length() - 1) + '0'))) {
+                remove(cache, paths, descendant);
+            }
+
+            for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+                remove(cache, paths, path.substring(0, i));
+            }
+        }
+    }
+
+    private static void remove(Map<String, String> cache, TreeSet<String> paths,
+            String path) {
+        if (paths.remove(path)) {
+            cache.remove(path);
+        }
+    }
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request,
+            SlingHttpServletResponse response) throws ServletException,
+            IOException {
+        final Resource issue = request.getResource();
+        final Map<String, String> cache = this.cache;
+        final TreeSet<String> paths = this.paths;
+
+        String manifest = null;
+        long readGeneration = 0;
+        if (cache != null) {
+            synchronized (cache) {
+                manifest = cache.get(issue.getPath());
+                readGeneration = generation;
+            }
+        }
+        if (manifest == null) {
+            final ValueMap props = issue.adaptTo(ValueMap.class);
+            manifest = (props == null) ? null : props.get(PAGES, String.class);
+            if (manifest == null) {
+                // listed for this user only, never cached
+                manifest = listPages(issue);
+            } else if (cache != null) {
+                synchronized (cache) {
+                    // an event since the miss may have dropped what was read
+                    if (readGeneration == generation) {
+                        cache.put(issue.getPath(), manifest);
+                        paths.add(issue.getPath());
+                    }
+                }
+            }
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(manifest);
+    }
+
+    /**
+     * Builds the manifest of an issue imported before manifests existed from
+     * its page resources.
+     */
+    private String listPages(Resource issue) throws ServletException {
+        try {
+            final Map<String, JSONObject> pages = new TreeMap<String, JSONObject>(
+                NaturalOrderComparator.INSTANCE);
+            final Iterator<Resource> children = ResourceUtil.listChildren(issue);
+            while (children.hasNext()) {
+                final Resource child = children.next();
+                if (!PAGE_RESOURCE_TYPE.equals(child.getResourceType())) {
+                    continue;
+                }
+                final String name = ResourceUtil.getName(child);
+                final JSONObject page = new JSONObject();
+                page.put("name", name);
+                final Resource original = child.getResourceResolver().getResource(child, ORIGINAL);
+                if (original != null) {
+                    final int[] size = readSize(original);
+                    if (size != null) {
+                        page.put("width", size[0]);
+                        page.put("height", size[1]);
+                    }
+                    page.put("size", original.getResourceMetadata().getContentLength());
+                    page.put("original", name + "/" + ORIGINAL);
+                }
+                final JSONObject renditions = new JSONObject();
+                final ValueMap props = child.adaptTo(ValueMap.class);
+                final String[] written = (props == null) ? null : props.get(RENDITIONS, String[].class);
+                if (written != null) {
+                    for (String rendition : written) {
+                        final String[] parts = rendition.split(":");
+                        if (parts.length != 2) {
+                            continue;
+                        }
+                        final JSONObject entry = new JSONObject();
+                        entry.put("path", name + "/" + parts[0]);
+                        try {
+                            entry.put("width", Integer.parseInt(parts[1]));
+                        } catch (NumberFormatException nfe) {
+                            continue;
+                        }
+                        renditions.put(parts[0], entry);
+                    }
+                }
+                page.put("renditions", renditions);
+                pages.put(name, page);
+            }
+            final JSONArray array = new JSONArray();
+            int index = 1;
+            for (JSONObject page : pages.values()) {
+                page.put("index", index++);
+                array.put(page);
+            }
+            return array.toString();
+        } catch (JSONException je) {
+            throw new ServletException("Cannot list the pages of " + issue.getPath(), je);
+        }
+    }
+
+    /**
+     * Returns the width and height of an image read from its header, or
+     * <code>null</code> if it cannot be read.
+     */
+    private static int[] readSize(Resource original) {
+        final InputStream ins = original.adaptTo(InputStream.class);
+        if (ins == null) {
+            return null;
+        }
+        try {
+            final ImageInputStream iis = ImageIO.createImageInputStream(ins);
+            if (iis == null) {
+                return null;
+            }
+            try {
+                final Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+                if (!readers.hasNext()) {
+                    return null;
+                }
+                final ImageReader reader = readers.next();
+                try {
+                    reader.setInput(iis, true, true);
+                    return new int[] { reader.getWidth(0), reader.getHeight(0) };
+                } finally {
+                    reader.dispose();
+                }
+            } finally {
+                iis.close();
+            }
+        } catch (IOException ioe) {
+            // unreadable header, the page is listed without dimensions
+            return null;
+        } finally {
+            try {
+                ins.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl;
+
+import static org.apache.sling.api.servlets.HttpConstants.HEADER_IF_MODIFIED_SINCE;
+import static org.apache.sling.api.servlets.HttpConstants.HEADER_LAST_MODIFIED;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Dictionary;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.commons.osgi.OsgiUtil;
+import org.apache.sling.servlets.get.impl.helpers.StreamCopier;
+import org.apache.sling.servlets.get.impl.helpers.StreamRendererServlet;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>ComicPageServlet</code> scales the original of a comic page to
+ * the width requested with a <code>w&lt;width&gt;</code> selector, for example
+ * <code>page.png.w720.jpg</code>. An optional <code>q&lt;quality&gt;</code>
+ * selector sets the JPEG quality in percent.
+ * <p>
+ * Scaled pages are kept in a {@link RenditionCache} on disk. The key of a
+ * rendition contains the modification time of the original, and the
+ * renditions of a page are dropped as soon as a resource event reports a
+ * change of the page. Requested widths are rounded up and qualities to the
+ * nearest configurable step so that arbitrary requests share a small number
+ * of renditions.
+ * <p>
+ * Each rendition not in the cache decodes the whole original, so only a
+ * configurable number of renditions are rendered at the same time. A request
+ * which cannot start rendering within {@link #RENDER_WAIT} seconds gets a
+ * <code>503</code> status.
+ */
+@SuppressWarnings("serial")
+@Component(immediate=true, metatype=true)
+@Service(value={Servlet.class, EventHandler.class})
+@Properties({
+    @Property(name="service.description", value="Comic Page Rendition Servlet"),
+    @Property(name="service.vendor", value="The Apache Software Foundation"),
+    @Property(name="sling.servlet.resourceTypes", value="comic-bin/page", propertyPrivate=true),
+    @Property(name="sling.servlet.methods", value="GET", propertyPrivate=true),
+    @Property(name="sling.servlet.extensions", value={"jpg", "png"}, propertyPrivate=true),
+    @Property(name="event.topics", value={SlingConstants.TOPIC_RESOURCE_CHANGED,
+        SlingConstants.TOPIC_RESOURCE_REMOVED}, propertyPrivate=true)
+})
+public class ComicPageServlet extends SlingSafeMethodsServlet implements EventHandler {
+
+    /** The name of the child resource holding the original page. */
+    private static final String ORIGINAL = "bin";
+
+    private static final int DEFAULT_CACHE_SIZE = 256;
+
+    /** Size of the rendition cache in megabytes. */
+    @Property(intValue=DEFAULT_CACHE_SIZE)
+    private static final String PROP_CACHE_SIZE = "cache.size";
+
+    private static final int DEFAULT_MAX_WIDTH = 2048;
+
+    @Property(intValue=DEFAULT_MAX_WIDTH)
+    private static final String PROP_MAX_WIDTH = "width.max";
+
+    private static final int DEFAULT_WIDTH_STEP = 120;
+
+    @Property(intValue=DEFAULT_WIDTH_STEP)
+    private static final String PROP_WIDTH_STEP = "width.step";
+
+    private static final int DEFAULT_QUALITY = 80;
+
+    @Property(intValue=DEFAULT_QUALITY)
+    private static final String PROP_QUALITY = "quality.default";
+
+    private static final int DEFAULT_QUALITY_STEP = 10;
+
+    @Property(intValue=DEFAULT_QUALITY_STEP)
+    private static final String PROP_QUALITY_STEP = "quality.step";
+
+    private static final int DEFAULT_MAX_RENDERS = 2;
+
+    /** Maximum number of renditions rendered at the same time. */
+    @Property(intValue=DEFAULT_MAX_RENDERS)
+    private static final String PROP_MAX_RENDERS = "render.max";
+
+    /** Seconds a request waits to start rendering. */
+    private static final int RENDER_WAIT = 10;
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private RenditionCache cache;
+
+    private int maxWidth;
+
+    private int widthStep;
+
+    private int defaultQuality;
+
+    private int qualityStep;
+
+    /** Permits to render a rendition */
+    private Semaphore renders;
+
+    protected void activate(ComponentContext ctx) {
+        final Dictionary<?, ?> props = ctx.getProperties();
+        final long cacheSize = OsgiUtil.toInteger(props.get(PROP_CACHE_SIZE),
+            DEFAULT_CACHE_SIZE) * 1024L * 1024L;
+        this.maxWidth = OsgiUtil.toInteger(props.get(PROP_MAX_WIDTH),
+            DEFAULT_MAX_WIDTH);
+        this.widthStep = Math.max(1, OsgiUtil.toInteger(
+            props.get(PROP_WIDTH_STEP), DEFAULT_WIDTH_STEP));
+        this.defaultQuality = OsgiUtil.toInteger(props.get(PROP_QUALITY),
+            DEFAULT_QUALITY);
+        this.qualityStep = Math.max(1, OsgiUtil.toInteger(
+            props.get(PROP_QUALITY_STEP), DEFAULT_QUALITY_STEP));
+        this.renders = new Semaphore(Math.max(1, OsgiUtil.toInteger(
+            props.get(PROP_MAX_RENDERS), DEFAULT_MAX_RENDERS)));
+        this.cache = new RenditionCache(
+            ctx.getBundleContext().getDataFile("comic-renditions"), cacheSize);
+    }
+
+    protected void deactivate(ComponentContext ctx) {
+        if (this.cache != null) {
+            this.cache.clear();
+            this.cache = null;
+        }
+    }
+
+    /**
+     * Drops the cached renditions of changed and removed pages.
+     */
+    public void handleEvent(Event event) {
+        final RenditionCache cache = this.cache;
+        final String path = (String) event.getProperty(SlingConstants.PROPERTY_PATH);
+        if (cache != null && path != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request,
+            SlingHttpServletResponse response) throws ServletException,
+            IOException {
+
+        final RenditionCache cache = this.cache;
+        final Semaphore renders = this.renders;
+        if (cache == null) {
+            // deactivated while the request was dispatched
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        final int requested = StreamRendererServlet.getRequestedWidth(request);
+        final Resource page = request.getResource();
+        final Resource original = page.getResourceResolver().getResource(page,
+            ORIGINAL);
+        if (requested <= 0 || original == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final int width = roundWidth(requested, widthStep, maxWidth);
+        final String format = request.getRequestPathInfo().getExtension();
+        final int quality = getQuality(request, defaultQuality, qualityStep);
+        final long modifTime = original.getResourceMetadata().getModificationTime();
+
+        if (modifTime > 0) {
+            if (modifTime / 1000 <= request.getDateHeader(HEADER_IF_MODIFIED_SINCE) / 1000) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            response.setDateHeader(HEADER_LAST_MODIFIED, modifTime);
+        }
+        response.setContentType("png".equals(format) ? "image/png" : "image/jpeg");
+
+        final String key = page.getPath() + ':' + modifTime + ':' + width + ':'
+            + format + ':' + ("png".equals(format) ? 0 : quality);
+        final File cached = cache.get(key);
+        if (cached != null && send(cached, response)) {
+            return;
+        }
+
+        final byte[] data;
+        try {
+            if (!renders.tryAcquire(RENDER_WAIT, TimeUnit.SECONDS)) {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        try {
+            // another request may have rendered it while this one waited
+            final File rendered = cache.get(key);
+            if (rendered != null && send(rendered, response)) {
+                return;
+            }
+            data = render(original, width, format, quality);
+        } finally {
+            renders.release();
+        }
+        if (data == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final File file = cache.put(page.getPath(), key, data);
+        if (file == null || !send(file, response)) {
+            // larger than the cache or already evicted, send it as is
+            response.setContentLength(data.length);
+            response.getOutputStream().write(data);
+        }
+    }
+
+    /**
+     * Rounds the width up to the next multiple of the step, but not above
+     * the maximum width.
+     */
+    static int roundWidth(int width, int step, int maxWidth) {
+        final int rounded = ((width + step - 1) / step) * step;
+        return Math.min(rounded, maxWidth);
+    }
+
+    /**
+     * Rounds the quality to the nearest multiple of the step, at least the
+     * step and at most <code>100</code>.
+     */
+    static int roundQuality(int quality, int step) {
+        final int rounded = ((quality + step / 2) / step) * step;
+        return Math.max(Math.min(step, 100), Math.min(rounded, 100));
+    }
+
+    /**
+     * Returns the quality of a <code>q&lt;quality&gt;</code> selector rounded
+     * to the step, or the default quality.
+     */
+    static int getQuality(SlingHttpServletRequest request, int defaultQuality,
+            int step) {
+        for (String selector : request.getRequestPathInfo().getSelectors()) {
+            if (selector.length() > 1 && selector.charAt(0) == 'q') {
+                try {
+                    final int quality = Integer.parseInt(selector.substring(1));
+                    return roundQuality(quality, step);
+                } catch (NumberFormatException nfe) {
+                    // not a quality selector
+                }
+            }
+        }
+        return defaultQuality;
+    }
+
+    private byte[] render(Resource original, int width, String format,
+            int quality) throws IOException {
+        final InputStream ins = original.adaptTo(InputStream.class);
+        if (ins == null) {
+            return null;
+        }
+        final BufferedImage src;
+        try {
+            src = ImageIO.read(ins);
+        } finally {
+            ins.close();
+        }
+        if (src == null) {
+            log.warn("Cannot read the image of {}", original.getPath());
+            return null;
+        }
+
+        // never scale up
+        final int destWidth = Math.min(width, src.getWidth());
+        final int destHeight = (int) Math.round((double) src.getHeight()
+            * destWidth / src.getWidth());
+        final BufferedImage dest = new BufferedImage(destWidth, destHeight,
+            BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = dest.createGraphics();
+        try {
+            g.drawRenderedImage(src, AffineTransform.getScaleInstance(
+                (double) destWidth / src.getWidth(),
+                (double) destHeight / src.getHeight()));
+        } finally {
+            g.dispose();
+        }
+
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(format);
+        if (!writers.hasNext()) {
+            return null;
+        }
+        final ImageWriter writer = writers.next();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ImageOutputStream ios = ImageIO.createImageOutputStream(out);
+        try {
+            writer.setOutput(ios);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && !"png".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality / 100f);
+            }
+            writer.write(null, new IIOImage(dest, null, null), param);
+        } finally {
+            writer.dispose();
+            ios.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Sends a cached rendition, letting the channel transfer the file
+     * without copying it through a heap buffer.
+     *
+     * @return <code>false</code> if the rendition has been evicted meanwhile
+     *         and nothing has been sent
+     */
+    private boolean send(File file, HttpServletResponse response)
+            throws IOException {
+        final FileInputStream fis;
+        try {
+            fis = new FileInputStream(file);
+        } catch (FileNotFoundException fnfe) {
+            return false;
+        }
+        try {
+            final FileChannel channel = fis.getChannel();
+            final long length = channel.size();
+            response.setContentLength((int) length);
+            StreamCopier.copy(channel, 0, length, response.getOutputStream());
+        } finally {
+            fis.close();
+        }
+        return true;
+    }
+}
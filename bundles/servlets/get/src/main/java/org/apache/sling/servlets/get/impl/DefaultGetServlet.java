@@ -108,6 +108,14 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
     public static final String JSON_RENDERER_MAXIMUM_RESULTS_PROPERTY = "json.maximumresults";
     
     private int jsonMaximumResults;
+
+    /** Default value for the maximum number of nodes rendered by the XMLRendererServlet */
+    public static final int DEFAULT_XML_RENDERER_MAXIMUM_RESULTS = 200;
+
+    @Property(intValue=DEFAULT_XML_RENDERER_MAXIMUM_RESULTS)
+    public static final String XML_RENDERER_MAXIMUM_RESULTS_PROPERTY = "xml.maximumresults";
+
+    private int xmlMaximumResults;
     
     /** Additional aliases. */
     private String[] aliases;
@@ -144,6 +152,8 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
             DEFAULT_RENDERER_PROPERTY);
         this.jsonMaximumResults = OsgiUtil.toInteger(props.get(JSON_RENDERER_MAXIMUM_RESULTS_PROPERTY), 
             DEFAULT_JSON_RENDERER_MAXIMUM_RESULTS);
+        this.xmlMaximumResults = OsgiUtil.toInteger(props.get(XML_RENDERER_MAXIMUM_RESULTS_PROPERTY),
+            DEFAULT_XML_RENDERER_MAXIMUM_RESULTS);
     }
 
     protected void deactivate(ComponentContext ctx) {
@@ -177,7 +187,7 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
 
         if (enableXml) {
             setupServlet(rendererMap, XMLRendererServlet.EXT_XML,
-                new XMLRendererServlet());
+                new XMLRendererServlet(xmlMaximumResults));
         }
 
         // use the servlet for rendering StreamRendererServlet.EXT_RES as the
@@ -226,6 +236,12 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
             rendererServlet = streamerServlet;
         } else {
             rendererServlet = rendererMap.get(ext);
+
+            // image extensions with a width selector ask for a rendition
+            if (rendererServlet == null
+                && StreamRendererServlet.getRequestedWidth(request) > 0) {
+                rendererServlet = streamerServlet;
+            }
         }
 
         // fail if we should not just stream or we cannot support the ext.
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.servlets.get.impl;
+
+import java.util.Comparator;
+
+/**
+ * The <code>NaturalOrderComparator</code> orders page names the way a reader
+ * expects: runs of digits are compared by their numeric value, so
+ * <code>p2</code> comes before <code>p10</code>, and letters are compared
+ * ignoring case. Names which only differ in leading zeros or case are
+ * ordered lexically so that the order is consistent with equals.
+ * <p>
+ * This is the order in which the content loader lists the pages of an
+ * imported comic issue.
+ */
+class NaturalOrderComparator implements Comparator<String> {
+
+    static final NaturalOrderComparator INSTANCE = new NaturalOrderComparator();
+
+    public int compare(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            final char ca = a.charAt(i);
+            final char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                // skip leading zeros, the longer run of digits is larger
+                int startA = i;
+                int startB = j;
+                while (startA < a.length() - 1 && a.charAt(startA) == '0'
+                        && Character.isDigit(a.charAt(startA + 1))) {
+                    startA++;
+                }
+                while (startB < b.length() - 1 && b.charAt(startB) == '0'
+                        && Character.isDigit(b.charAt(startB + 1))) {
+                    startB++;
+                }
+                int endA = startA;
+                int endB = startB;
+                while (endA < a.length() && Character.isDigit(a.charAt(endA))) {
+                    endA++;
+                }
+                while (endB < b.length() && Character.isDigit(b.charAt(endB))) {
+                    endB++;
+                }
+                final int lengthA = endA - startA;
+                final int lengthB = endB - startB;
+                if (lengthA != lengthB) {
+                    return lengthA - lengthB;
+                }
+                for (int k = 0; k < lengthA; k++) {
+                    final int diff = a.charAt(startA + k) - b.charAt(startB + k);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                i = endA;
+                j = endB;
+            } else {
+                final int diff = Character.toLowerCase(ca)
+                        - Character.toLowerCase(cb);
+                if (diff != 0) {
+                    return diff;
+                }
+                i++;
+                j++;
+            }
+        }
+        if (i < a.length() || j < b.length()) {
+            // the shorter name is a prefix of the longer one
+            return (a.length() - i) - (b.length() - j);
+        }
+        return a.compareTo(b);
+    }
+}
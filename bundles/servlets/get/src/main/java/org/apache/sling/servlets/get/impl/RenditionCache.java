@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>RenditionCache</code> keeps rendered images in files of a
+ * directory, up to a maximum total size. When the size is exceeded the least
+ * recently used renditions are removed.
+ * <p>
+ * Entries are keyed by a string which must change whenever the rendition
+ * would change, for example by including the modification time of the
+ * source. Each entry also records the path of the resource it was rendered
+ * from so that all renditions of a resource can be dropped when it changes.
+ * The keys are indexed by that path, so dropping them only looks at the
+ * ancestors and descendants of the changed resource.
+ * The cache does not survive restarts, the directory is emptied when the
+ * cache is created.
+ */
+class RenditionCache {
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+
+    private final long maxSize;
+
+    /** Entries in access order, the eldest is evicted first */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+        16, 0.75f, true);
+
+    /** Keys of the entries by the path of their resource */
+    private final TreeMap<String, Set<String>> keysByPath = new TreeMap<String, Set<String>>();
+
+    /** Total length of the cached files */
+    private long size;
+
+    RenditionCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.directory.mkdirs();
+        deleteFiles();
+    }
+
+    /**
+     * Returns the file of the rendition with the given key or
+     * <code>null</code> if it is not cached. The file may be removed once
+     * evicted, but streams opened on it remain readable.
+     */
+    synchronized File get(String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.file.isFile()) {
+            remove(key);
+            return null;
+        }
+        return entry.file;
+    }
+
+    /**
+     * Stores a rendition and evicts the least recently used renditions if
+     * the cache grows too large.
+     *
+     * @param path The path of the resource the rendition was rendered from
+     * @param key The key of the rendition
+     * @param data The rendition
+     * @return The cached file or <code>null</code> if the rendition is larger
+     *         than the cache
+     * @throws IOException If the file cannot be written
+     */
+    File put(String path, String key, byte[] data) throws IOException {
+        if (data.length > maxSize) {
+            return null;
+        }
+
+        // write outside of the lock, concurrent renderings of the same key
+        // each write their own temporary file
+        final File tmp = File.createTempFile("rendition", ".tmp", directory);
+        final OutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+
+        synchronized (this) {
+            final File file = new File(directory, toFileName(key));
+            remove(key);
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Cannot move rendition to " + file);
+            }
+            entries.put(key, new Entry(path, key, file, data.length));
+            Set<String> keys = keysByPath.get(path);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                keysByPath.put(path, keys);
+            }
+            keys.add(key);
+            size += data.length;
+            evict();
+            return file;
+        }
+    }
+
+    /**
+     * Removes all renditions of the resource at the given path, of its
+     * ancestors and of its descendants.
+     */
+    synchronized void invalidate(String path) {
+        removePath(path);
+
+        // descendants sort between "path/" and "path0", '0' follows '/'
+        final String prefix = path.endsWith("/") ? path : path + "/";
+        final SortedMap<String, Set<String>> descendants = keysByPath.subMap(
+            prefix, prefix.substring(0, prefix.length() - 1) + '0');
+        for (String descendant : new ArrayList<String>(descendants.keySet())) {
+            removePath(descendant);
+        }
+
+        for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+            removePath(path.substring(0, i));
+        }
+    }
+
+    /**
+     * Removes all renditions.
+     */
+    synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            delete(entry);
+        }
+        entries.clear();
+        keysByPath.clear();
+        deleteFiles();
+    }
+
+    synchronized int getCount() {
+        return entries.size();
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    private void evict() {
+        final Iterator<Entry> i = entries.values().iterator();
+        while (size > maxSize && i.hasNext()) {
+            final Entry entry = i.next();
+            i.remove();
+            delete(entry);
+        }
+    }
+
+    private void remove(String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            delete(entry);
+        }
+    }
+
+    private void removePath(String path) {
+        final Set<String> keys = keysByPath.get(path);
+        if (keys != null) {
+            for (String key : new ArrayList<String>(keys)) {
+                remove(key);
+            }
+        }
+    }
+
+    private void delete(Entry entry) {
+        final Set<String> keys = keysByPath.get(entry.path);
+        if (keys != null && keys.remove(entry.key) && keys.isEmpty()) {
+            keysByPath.remove(entry.path);
+        }
+        size -= entry.length;
+        if (!entry.file.delete() && entry.file.exists()) {
+            log.warn("Cannot delete cached rendition {}", entry.file);
+        }
+    }
+
+    private void deleteFiles() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static String toFileName(String key) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("MD5");
+            final byte[] digest = md.digest(key.getBytes("UTF-8"));
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            // MD5 is always available
+            throw new IllegalStateException(nsae);
+        } catch (UnsupportedEncodingException uee) {
+            // UTF-8 is always available
+            throw new IllegalStateException(uee);
+        }
+    }
+
+    private static class Entry {
+
+        final String path;
+
+        final String key;
+
+        final File file;
+
+        final long length;
+
+        Entry(String path, String key, File file, long length) {
+            this.path = path;
+            this.key = key;
+            this.file = file;
+            this.length = length;
+        }
+    }
+}
@@ -18,7 +18,6 @@ package org.apache.sling.servlets.get.impl.helpers;
 
 import java.io.IOException;
 
-import javax.jcr.RepositoryException;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
@@ -100,26 +99,18 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
         boolean allowDump = true;
         long allowedLevel = 0;
         boolean tidy = isTidy(req);
-        ResourceTraversor traversor = null;
         try {
-            traversor = new ResourceTraversor(maxRecursionLevels, maximumResults, r, tidy);
-			traversor.collectResources();
+            new ResourceTraversor(maxRecursionLevels, maximumResults, r).countResources();
         } catch (RecursionTooDeepException e) {
             allowDump = false;
             allowedLevel = Integer.parseInt(e.getMessage()); // this is to avoid depending on a SNAPSHOT version of the SLing API.
-        } catch (RepositoryException e) {
-            reportException(e);
-        } catch (JSONException e) {
-            reportException(e);
         }
         try {
             // Check if we can dump the resource.
             if (allowDump) {
-                if (tidy) {
-                    resp.getWriter().write(traversor.getJSONObject().toString(2));
-                } else {
-                    resp.getWriter().write(traversor.getJSONObject().toString());
-                }
+                // write the resources while visiting them
+                new JsonResourceWriter(null).dump(r, resp.getWriter(),
+                    maxRecursionLevels, tidy);
 
             } else {
                 // We are not allowed to do the dump.
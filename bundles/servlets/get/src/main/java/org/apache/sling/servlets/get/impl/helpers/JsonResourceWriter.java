@@ -19,8 +19,7 @@ package org.apache.sling.servlets.get.impl.helpers;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.text.DateFormatSymbols;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Iterator;
@@ -44,8 +43,6 @@ import org.apache.sling.commons.json.io.JSONWriter;
  */
 public class JsonResourceWriter {
 
-    private static DateFormat calendarFormat;
-
     private final Set<String> propertyNamesToIgnore;
 
     /** Used to format date values */
@@ -54,6 +51,23 @@ public class JsonResourceWriter {
     /** Used to format date values */
     public static final Locale DATE_FORMAT_LOCALE = Locale.US;
 
+    /**
+     * Calendar of each thread in the default time zone, used to get the
+     * fields of the dates to format without locking.
+     */
+    private static final ThreadLocal<Calendar> calendars = new ThreadLocal<Calendar>() {
+        @Override
+        protected Calendar initialValue() {
+            return Calendar.getInstance(DATE_FORMAT_LOCALE);
+        }
+    };
+
+    private static final String[] DAYS = new DateFormatSymbols(
+        DATE_FORMAT_LOCALE).getShortWeekdays();
+
+    private static final String[] MONTHS = new DateFormatSymbols(
+        DATE_FORMAT_LOCALE).getShortMonths();
+
 
     /**
      * Create a JsonItemWriter
@@ -305,10 +319,42 @@ public class JsonResourceWriter {
     }
 
 
-    public static synchronized String format(Calendar date) {
-        if (calendarFormat == null) {
-            calendarFormat = new SimpleDateFormat(ECMA_DATE_FORMAT, DATE_FORMAT_LOCALE);
+    /**
+     * Formats the date like a <code>SimpleDateFormat</code> with the
+     * {@link #ECMA_DATE_FORMAT} in the default time zone would. This method
+     * neither locks nor creates a formatter per call.
+     */
+    public static String format(Calendar date) {
+        final Calendar cal = calendars.get();
+        cal.setTimeInMillis(date.getTimeInMillis());
+
+        final StringBuilder sb = new StringBuilder(33);
+        sb.append(DAYS[cal.get(Calendar.DAY_OF_WEEK)]).append(' ');
+        sb.append(MONTHS[cal.get(Calendar.MONTH)]).append(' ');
+        appendPadded(sb, cal.get(Calendar.DAY_OF_MONTH), 2).append(' ');
+        appendPadded(sb, cal.get(Calendar.YEAR), 4).append(' ');
+        appendPadded(sb, cal.get(Calendar.HOUR_OF_DAY), 2).append(':');
+        appendPadded(sb, cal.get(Calendar.MINUTE), 2).append(':');
+        appendPadded(sb, cal.get(Calendar.SECOND), 2).append(" GMT");
+
+        int offset = (cal.get(Calendar.ZONE_OFFSET) + cal.get(Calendar.DST_OFFSET)) / 60000;
+        if (offset < 0) {
+            sb.append('-');
+            offset = -offset;
+        } else {
+            sb.append('+');
+        }
+        appendPadded(sb, offset / 60, 2);
+        appendPadded(sb, offset % 60, 2);
+        return sb.toString();
+    }
+
+    private static StringBuilder appendPadded(StringBuilder sb, int value, int digits) {
+        for (int limit = 10; digits > 1; digits--, limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
         }
-        return calendarFormat.format(date.getTime());
+        return sb.append(value);
     }
 }
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * The <code>NodeViewExporter</code> exports a node and its descendants up to
+ * a given depth in the JCR document or system view.
+ * <p>
+ * The repository only exports either a single node or its complete subtree.
+ * To limit the depth, each node is exported on its own and the events are
+ * stitched together: the element of a node is only closed after its child
+ * nodes have been exported, and the document and namespace events of all
+ * but the first node are dropped. Only the ancestors of the current node are
+ * held while exporting, so the export runs in constant memory with respect to
+ * the number of nodes.
+ */
+public class NodeViewExporter {
+
+    private final boolean systemView;
+
+    private final int maxRecursionLevels;
+
+    /**
+     * @param systemView <code>true</code> to export the system view,
+     *            <code>false</code> for the document view
+     * @param maxRecursionLevels The number of levels of child nodes to
+     *            export, -1 for all levels
+     */
+    public NodeViewExporter(boolean systemView, int maxRecursionLevels) {
+        this.systemView = systemView;
+        this.maxRecursionLevels = maxRecursionLevels;
+    }
+
+    public void export(Node node, ContentHandler handler)
+    throws RepositoryException, SAXException {
+        final NodeHandler nodeHandler = new NodeHandler(handler);
+        handler.startDocument();
+        export(node, nodeHandler, 0);
+
+        // the namespaces of the outermost element go out of scope with it
+        for (String prefix : nodeHandler.getPrefixes()) {
+            handler.endPrefixMapping(prefix);
+        }
+        handler.endDocument();
+    }
+
+    private void export(Node node, NodeHandler handler, int currentLevel)
+    throws RepositoryException, SAXException {
+        handler.reset(currentLevel == 0);
+        if (systemView) {
+            node.getSession().exportSystemView(node.getPath(), handler, false, true);
+        } else {
+            node.getSession().exportDocumentView(node.getPath(), handler, false, true);
+        }
+
+        // nodes exported as text instead of an element have no children
+        final String[] end = handler.getEndElement();
+        if (end == null) {
+            return;
+        }
+
+        if (maxRecursionLevels == -1 || currentLevel < maxRecursionLevels) {
+            final NodeIterator children = node.getNodes();
+            while (children.hasNext()) {
+                export(children.nextNode(), handler, currentLevel + 1);
+            }
+        }
+        handler.getTarget().endElement(end[0], end[1], end[2]);
+    }
+
+    /**
+     * Passes the events of the export of a single node on, except for the
+     * end of the element of the node which is kept to be written after the
+     * child nodes. The namespace declarations of the first node are passed on
+     * and remembered to be ended after all nodes.
+     */
+    private static class NodeHandler implements ContentHandler {
+
+        private final ContentHandler target;
+
+        private boolean first;
+
+        private int depth;
+
+        private String[] endElement;
+
+        private final List<String> prefixes = new ArrayList<String>();
+
+        NodeHandler(ContentHandler target) {
+            this.target = target;
+        }
+
+        ContentHandler getTarget() {
+            return target;
+        }
+
+        void reset(boolean first) {
+            this.first = first;
+            this.depth = 0;
+            this.endElement = null;
+        }
+
+        String[] getEndElement() {
+            return endElement;
+        }
+
+        List<String> getPrefixes() {
+            return prefixes;
+        }
+
+        public void startElement(String uri, String localName, String qName,
+                Attributes atts) throws SAXException {
+            depth++;
+            target.startElement(uri, localName, qName, atts);
+        }
+
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            depth--;
+            if (depth == 0) {
+                endElement = new String[] { uri, localName, qName };
+            } else {
+                target.endElement(uri, localName, qName);
+            }
+        }
+
+        public void startPrefixMapping(String prefix, String uri)
+                throws SAXException {
+            // the namespaces are declared on the outermost element only
+            if (first) {
+                target.startPrefixMapping(prefix, uri);
+                prefixes.add(prefix);
+            }
+        }
+
+        public void endPrefixMapping(String prefix) {
+            // the declarations stay in scope up to the end of the outermost
+            // element, which is only written after all nodes
+        }
+
+        public void characters(char[] ch, int start, int length)
+                throws SAXException {
+            target.characters(ch, start, length);
+        }
+
+        public void ignorableWhitespace(char[] ch, int start, int length)
+                throws SAXException {
+            target.ignorableWhitespace(ch, start, length);
+        }
+
+        public void processingInstruction(String target, String data)
+                throws SAXException {
+            this.target.processingInstruction(target, data);
+        }
+
+        public void skippedEntity(String name) throws SAXException {
+            target.skippedEntity(name);
+        }
+
+        public void setDocumentLocator(Locator locator) {
+            // not applicable to exports
+        }
+
+        public void startDocument() {
+            // written once for all nodes
+        }
+
+        public void endDocument() {
+            // written once for all nodes
+        }
+    }
+}
@@ -14,21 +14,23 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.apache.sling.servlets.get.impl.helpers;
 
-import org.apache.sling.api.request.RecursionTooDeepException;
-import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ResourceUtil;
-import org.apache.sling.commons.json.JSONException;
-import org.apache.sling.commons.json.JSONObject;
-
-import java.io.StringWriter;
 import java.util.Iterator;
 import java.util.LinkedList;
 
-import javax.jcr.RepositoryException;
+import org.apache.sling.api.request.RecursionTooDeepException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceUtil;
 
+/**
+ * The <code>ResourceTraversor</code> checks whether a resource tree may be
+ * rendered within the maximum number of resources before it is written.
+ * <p>
+ * The tree is counted breadth first and counting stops as soon as the maximum
+ * is exceeded, so at most the maximum number of resources is held while
+ * checking, regardless of the size of the tree.
+ */
 public class ResourceTraversor {
 
     private long count;
@@ -37,146 +39,54 @@ public class ResourceTraversor {
 
     private int maxRecursionLevels;
 
-    private JSONObject startObject;
-
-    private String startingPath;
-
-    private LinkedList<Resource> currentQueue;
-
-    private LinkedList<Resource> nextQueue;
-
     private Resource startResource;
 
-    private JsonResourceWriter jsResourceWriter;
-
-    private boolean tidy;
-
-    public ResourceTraversor(int levels, long maxNodes, Resource resource, boolean tidy) throws RepositoryException,
-            JSONException {
+    public ResourceTraversor(int levels, long maxNodes, Resource resource) {
         this.setMaxNodes(maxNodes);
         this.maxRecursionLevels = levels;
         this.startResource = resource;
-        this.tidy = tidy;
-        startingPath = resource.getPath();
-        jsResourceWriter = new JsonResourceWriter(null);
-        currentQueue = new LinkedList<Resource>();
-        nextQueue = new LinkedList<Resource>();
-        startObject = adapt(resource);
     }
 
     /**
-     * Recursive descent from startResource, collecting JSONObjects into
-     * startObject. Throws a RecursionTooDeepException if the maximum number of
-     * nodes is reached on a "deep" traversal (where "deep" === level greateer
-     * than 1).
+     * Counts the resources below startResource up to the maximum recursion
+     * level. Throws a RecursionTooDeepException if the maximum number of
+     * resources is reached on a "deep" traversal (where "deep" === level
+     * greater than 1).
      *
-     * @throws RepositoryException
-     * @throws RecursionTooDeepException When the resource has more child nodes
-     *             then allowed.
-     * @throws JSONException
-     */
-    public void collectResources() throws RepositoryException, RecursionTooDeepException, JSONException {
-        collectChildren(startResource, 0);
-    }
-
-    /**
-     * @param resource
-     * @param currentLevel
-     * @throws RecursionTooDeepException
-     * @throws JSONException
-     * @throws RepositoryException
+     * @throws RecursionTooDeepException When the resource has more child
+     *             resources then allowed. The message of the exception is the
+     *             level whose children exceeded the maximum.
      */
-    private void collectChildren(Resource resource, int currentLevel) throws RecursionTooDeepException, JSONException,
-            RepositoryException {
-
-        if (maxRecursionLevels == -1 || currentLevel < maxRecursionLevels) {
-            final Iterator<Resource> children = ResourceUtil.listChildren(resource);
-            while (children.hasNext()) {
-                count++;
-                Resource res = children.next();
-                // SLING-2320: always allow enumeration of one's children;
-                // DOS-limitation is for deeper traversals.
-                if (count > maxResources && maxRecursionLevels != 1) {
-                    throw new RecursionTooDeepException(String.valueOf(currentLevel));
-                }
-                collectResource(res, currentLevel);
-                nextQueue.addLast(res);
-            }
+    public void countResources() throws RecursionTooDeepException {
+        // SLING-2320: always allow enumeration of one's children;
+        // DOS-limitation is for deeper traversals.
+        if (maxRecursionLevels == 1) {
+            return;
         }
 
-        while (!currentQueue.isEmpty() || !nextQueue.isEmpty()) {
-            if (currentQueue.isEmpty()) {
-                currentLevel++;
-                currentQueue = nextQueue;
-                nextQueue = new LinkedList<Resource>();
-            }
-            Resource nextResource = currentQueue.removeFirst();
-            collectChildren(nextResource, currentLevel);
-        }
-    }
-
-    /**
-     * Adds a resource in the JSON tree.
-     *
-     * @param resource The resource to add
-     * @param level The level where this resource is located.
-     * @throws RepositoryException
-     * @throws JSONException
-     */
-    protected void collectResource(Resource resource, int level) throws RepositoryException, JSONException {
-
-        if (!resource.getPath().equals(startingPath)) {
-            JSONObject o = adapt(resource);
-            getParentJSONObject(resource, level).put(ResourceUtil.getName(resource), o);
-        }
-    }
-
-    /**
-     * Adapt a Resource to a JSON Object.
-     *
-     * @param resource The resource to adapt.
-     * @return The JSON representation of the Resource
-     * @throws JSONException
-     */
-    private JSONObject adapt(Resource resource) throws JSONException {
-        // TODO Find a better way to adapt a Resource to a JSONObject.
-        StringWriter writer = new StringWriter();
-        jsResourceWriter.dump(resource, writer, 0, tidy);
-        return new JSONObject(writer.getBuffer().toString());
-    }
-
-    /**
-     * Get the JSON Object where this resource should be added in.
-     *
-     * @param resource
-     * @param level
-     * @return
-     * @throws RepositoryException
-     * @throws JSONException
-     */
-    private JSONObject getParentJSONObject(Resource resource, int level) throws RepositoryException, JSONException {
-        String path = resource.getPath();
-        // The root node.
-        if (path.equals(startingPath)) {
-            return startObject;
-        }
-
-        // Some level deeper
-        String pathDiff = path.substring(startingPath.length());
-        String[] names = pathDiff.split("/");
-        JSONObject o = startObject;
-        for (String name : names) {
-            try {
-                o = o.getJSONObject(name);
-            } catch (JSONException e) {
+        LinkedList<Resource> currentQueue = new LinkedList<Resource>();
+        currentQueue.add(startResource);
+        int currentLevel = 0;
+        while (!currentQueue.isEmpty()
+            && (maxRecursionLevels == -1 || currentLevel < maxRecursionLevels)) {
+            final LinkedList<Resource> nextQueue = new LinkedList<Resource>();
+            for (Resource resource : currentQueue) {
+                final Iterator<Resource> children = ResourceUtil.listChildren(resource);
+                while (children.hasNext()) {
+                    count++;
+                    if (count > maxResources) {
+                        throw new RecursionTooDeepException(String.valueOf(currentLevel));
+                    }
+                    nextQueue.addLast(children.next());
+                }
             }
+            currentQueue = nextQueue;
+            currentLevel++;
         }
-        return o;
-
     }
 
     /**
-     * @return The number of nodes this visitor found.
+     * @return The number of resources this visitor found.
      */
     public long getCount() {
         return count;
@@ -196,8 +106,4 @@ public class ResourceTraversor {
         return maxResources;
     }
 
-    public JSONObject getJSONObject() {
-        return startObject;
-    }
-
 }
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * The <code>StreamCopier</code> copies the content of resources to the
+ * response.
+ * <p>
+ * Content held in a file, like that of file system resources, is transferred
+ * from the channel of the file. If the output stream of the container is a
+ * channel itself, the operating system may send the file without copying it
+ * into the JVM at all. Other content is copied through buffers taken from a
+ * small pool, so streaming does not allocate a buffer per request.
+ */
+public class StreamCopier {
+
+    /** Size of the pooled buffers */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Maximum number of idle buffers kept in the pool */
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private static final Queue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+
+    private static final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    private StreamCopier() {
+    }
+
+    /**
+     * Returns the channel of the file holding the content of the resource or
+     * <code>null</code> if the content is not held in a file. The channel
+     * must be closed by the caller.
+     *
+     * @param resource The resource
+     * @param stream The stream of the resource
+     */
+    public static FileChannel getFileChannel(Resource resource,
+            InputStream stream) throws IOException {
+        if (stream instanceof FileInputStream) {
+            return ((FileInputStream) stream).getChannel();
+        }
+        final File file = resource.adaptTo(File.class);
+        if (file != null && file.isFile()) {
+            return new FileInputStream(file).getChannel();
+        }
+        return null;
+    }
+
+    /**
+     * Transfers a range of the file to the output stream.
+     *
+     * @param channel The channel of the file
+     * @param start The position of the first byte to transfer
+     * @param length The number of bytes to transfer
+     * @param out The output stream, not closed by this method
+     * @throws IOException If the file ends before the range or the content
+     *             cannot be written
+     */
+    public static void copy(FileChannel channel, long start, long length,
+            OutputStream out) throws IOException {
+        final WritableByteChannel target = (out instanceof WritableByteChannel)
+                ? (WritableByteChannel) out
+                : Channels.newChannel(out);
+        final long end = start + length;
+        long position = start;
+        while (position < end) {
+            final long transferred = channel.transferTo(position, end
+                - position, target);
+            if (transferred <= 0 && position >= channel.size()) {
+                throw new EOFException("File ended at " + position
+                    + " before the end of the range at " + end);
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * Copies the stream to the output stream.
+     *
+     * @param in The stream to copy, not closed by this method
+     * @param out The output stream, not closed by this method
+     * @param length The number of bytes to copy or a negative value to copy
+     *            up to the end of the stream
+     * @return The number of bytes copied, which is less than the length if
+     *         the stream ended before
+     * @throws IOException If the content cannot be read or written
+     */
+    public static long copy(InputStream in, OutputStream out, long length)
+            throws IOException {
+        final byte[] buffer = acquireBuffer();
+        try {
+            long copied = 0;
+            while (length < 0 || copied < length) {
+                final int max = (length < 0)
+                        ? buffer.length
+                        : (int) Math.min(buffer.length, length - copied);
+                final int read = in.read(buffer, 0, max);
+                if (read < 0) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                copied += read;
+            }
+            return copied;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Skips bytes of the stream. Unlike <code>InputStream.skip</code> this
+     * method only skips less than requested if the stream ends.
+     *
+     * @param in The stream
+     * @param length The number of bytes to skip
+     * @return The number of bytes skipped
+     * @throws IOException If the stream cannot be read
+     */
+    public static long skip(InputStream in, long length) throws IOException {
+        long skipped = 0;
+        while (skipped < length) {
+            final long n = in.skip(length - skipped);
+            if (n > 0) {
+                skipped += n;
+            } else if (in.read() >= 0) {
+                // skip may return 0 before the end, check by reading
+                skipped++;
+            } else {
+                break;
+            }
+        }
+        return skipped;
+    }
+
+    static byte[] acquireBuffer() {
+        final byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        pooledBuffers.decrementAndGet();
+        return buffer;
+    }
+
+    static void releaseBuffer(byte[] buffer) {
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffers.offer(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+}
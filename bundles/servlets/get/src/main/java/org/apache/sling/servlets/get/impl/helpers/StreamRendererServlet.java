@@ -17,15 +17,17 @@
 package org.apache.sling.servlets.get.impl.helpers;
 
 import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static org.apache.sling.api.servlets.HttpConstants.HEADER_ETAG;
 import static org.apache.sling.api.servlets.HttpConstants.HEADER_IF_MODIFIED_SINCE;
+import static org.apache.sling.api.servlets.HttpConstants.HEADER_IF_NONE_MATCH;
 import static org.apache.sling.api.servlets.HttpConstants.HEADER_LAST_MODIFIED;
 
-import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -46,6 +48,7 @@ import org.apache.sling.api.resource.ResourceMetadata;
 import org.apache.sling.api.resource.ResourceNotFoundException;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,11 +59,23 @@ import org.slf4j.LoggerFactory;
  * {@link org.apache.sling.servlets.get.impl.DefaultGetServlet}. If the current
  * resource cannot be streamed it is rendered using the
  * {@link PlainTextRendererServlet}.
+ * <p>
+ * A resource may list scaled copies of itself in its
+ * {@link #RENDITIONS_PROPERTY} property. A <code>w&lt;width&gt;</code>
+ * selector, for example <code>page.w480.jpg</code>, streams the closest of
+ * these renditions instead of the resource, whatever the extension.
  */
 public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
     public static final String EXT_RES = "res";
 
+    /**
+     * Multi-value property listing the renditions of a resource as
+     * <code>name:width</code>, where name is the child resource holding the
+     * rendition.
+     */
+    public static final String RENDITIONS_PROPERTY = "renditions";
+
     private static final long serialVersionUID = -1L;
 
     /**
@@ -73,8 +88,6 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
      */
     private static ArrayList<Range> FULL = new ArrayList<Range>(0);
 
-    private static final int IO_BUFFER_SIZE = 2048;
-
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -95,9 +108,15 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         // whether this servlet is called as of a request include
         final boolean included = request.getAttribute(SlingConstants.ATTR_REQUEST_SERVLET) != null;
 
-        // ensure no extension or "res"
+        // a width selector streams the closest rendition
+        final int width = getRequestedWidth(request);
+        final Resource rendition = (width > 0)
+                ? getRendition(request.getResource(), width)
+                : null;
+
+        // ensure no extension or "res", unless streaming a rendition
         String ext = request.getRequestPathInfo().getExtension();
-        if (ext != null && !ext.equals(EXT_RES)) {
+        if (rendition == null && ext != null && !ext.equals(EXT_RES)) {
             request.getRequestProgressTracker().log(
                 "StreamRendererServlet does not support for extension " + ext);
             if (included || response.isCommitted()) {
@@ -110,7 +129,9 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             return;
         }
 
-        final Resource resource = request.getResource();
+        final Resource resource = (rendition != null)
+                ? rendition
+                : request.getResource();
         if (ResourceUtil.isNonExistingResource(resource)) {
             throw new ResourceNotFoundException("No data to render.");
         }
@@ -121,11 +142,20 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             return;
         }
 
-        // check the last modification time and If-Modified-Since header
+        // check the entity tag and last modification time against the
+        // If-None-Match and If-Modified-Since headers before the content
+        // stream is opened
         if (!included) {
             ResourceMetadata meta = resource.getResourceMetadata();
-            long modifTime = meta.getModificationTime();
-            if (unmodified(request, modifTime)) {
+            final String etag = getEntityTag(meta);
+            final String ifNoneMatch = request.getHeader(HEADER_IF_NONE_MATCH);
+            final boolean notModified = (ifNoneMatch != null)
+                    ? matchesEntityTag(ifNoneMatch, etag)
+                    : unmodified(request, meta.getModificationTime());
+            if (notModified) {
+                if (etag != null) {
+                    response.setHeader(HEADER_ETAG, etag);
+                }
                 response.setStatus(SC_NOT_MODIFIED);
                 return;
             }
@@ -163,6 +193,86 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         }
     }
 
+    /**
+     * Returns the width requested with a <code>w&lt;width&gt;</code> selector
+     * or <code>-1</code> if the request has no such selector.
+     */
+    public static int getRequestedWidth(SlingHttpServletRequest request) {
+        for (String selector : request.getRequestPathInfo().getSelectors()) {
+            if (selector.length() > 1 && selector.charAt(0) == 'w') {
+                try {
+                    final int width = Integer.parseInt(selector.substring(1));
+                    if (width > 0) {
+                        return width;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // not a width selector
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the rendition of the resource closest to the requested width
+     * or <code>null</code> if the resource has no renditions.
+     */
+    private Resource getRendition(Resource resource, int width) {
+        final ValueMap props = resource.adaptTo(ValueMap.class);
+        if (props == null) {
+            return null;
+        }
+        final String name = selectRendition(
+            props.get(RENDITIONS_PROPERTY, String[].class), width);
+        if (name == null) {
+            return null;
+        }
+        return resource.getResourceResolver().getResource(resource, name);
+    }
+
+    /**
+     * Selects the narrowest rendition at least as wide as requested, or the
+     * widest one if all are narrower.
+     *
+     * @param renditions The renditions as <code>name:width</code>, may be
+     *            <code>null</code>
+     * @param width The requested width
+     * @return The name of the selected rendition or <code>null</code> if
+     *         there is none.
+     */
+    static String selectRendition(String[] renditions, int width) {
+        if (renditions == null) {
+            return null;
+        }
+        String best = null;
+        int bestWidth = 0;
+        for (String rendition : renditions) {
+            final int pos = rendition.lastIndexOf(':');
+            if (pos <= 0) {
+                continue;
+            }
+            final int renditionWidth;
+            try {
+                renditionWidth = Integer.parseInt(rendition.substring(pos + 1));
+            } catch (NumberFormatException nfe) {
+                continue;
+            }
+            final boolean better;
+            if (best == null) {
+                better = true;
+            } else if (bestWidth < width) {
+                better = renditionWidth > bestWidth;
+            } else {
+                better = renditionWidth >= width && renditionWidth < bestWidth;
+            }
+            if (better) {
+                best = rendition.substring(0, pos);
+                bestWidth = renditionWidth;
+            }
+        }
+        return best;
+    }
+
     private boolean isRootResourceRequest(Resource resource) {
         return ("/".equals(resource.getPath())) ||
             ("/".equals(resource.getResourceResolver().map(resource.getPath())));
@@ -190,6 +300,39 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         return false;
     }
 
+    /**
+     * Returns the quoted strong entity tag of the resource or
+     * <code>null</code> if the resource metadata provides none.
+     */
+    static String getEntityTag(ResourceMetadata meta) {
+        final String tag = meta.getEntityTag();
+        return (tag != null) ? "\"" + tag + "\"" : null;
+    }
+
+    /**
+     * Returns <code>true</code> if the value of an <code>If-None-Match</code>
+     * header lists the entity tag or is <code>*</code>. As defined for this
+     * header, weak tags in the list match the tag as well.
+     *
+     * @param header The value of the header
+     * @param etag The quoted entity tag, may be <code>null</code>
+     */
+    static boolean matchesEntityTag(String header, String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void streamResource(final Resource resource,
             final InputStream stream, final boolean included,
             final SlingHttpServletRequest request,
@@ -225,10 +368,16 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
                 // return full resource
                 setContentLength(response,
                     resource.getResourceMetadata().getContentLength());
-                byte[] buf = new byte[IO_BUFFER_SIZE];
-                int rd;
-                while ((rd = stream.read(buf)) >= 0) {
-                    out.write(buf, 0, rd);
+                final FileChannel channel = StreamCopier.getFileChannel(
+                    resource, stream);
+                if (channel != null) {
+                    try {
+                        StreamCopier.copy(channel, 0, channel.size(), out);
+                    } finally {
+                        closeSilently(channel);
+                    }
+                } else {
+                    StreamCopier.copy(stream, out, -1);
                 }
 
             } else {
@@ -243,14 +392,25 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
                         + "-" + range.end + "/" + range.length);
                     setContentLength(response, range.end - range.start + 1);
 
-                    copy(stream, out, range);
+                    final FileChannel channel = StreamCopier.getFileChannel(
+                        resource, stream);
+                    if (channel != null) {
+                        try {
+                            StreamCopier.copy(channel, range.start,
+                                range.end - range.start + 1, out);
+                        } finally {
+                            closeSilently(channel);
+                        }
+                    } else {
+                        copy(stream, out, range);
+                    }
 
                 } else {
 
                     response.setContentType("multipart/byteranges; boundary="
                         + mimeSeparation);
 
-                    copy(resource, out, ranges.iterator());
+                    copy(resource, stream, out, ranges.iterator());
                 }
 
             }
@@ -322,6 +482,11 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             response.setDateHeader(HEADER_LAST_MODIFIED, modifTime);
         }
 
+        final String etag = getEntityTag(meta);
+        if (etag != null) {
+            response.setHeader(HEADER_ETAG, etag);
+        }
+
         final String defaultContentType = "application/octet-stream";
         String contentType = meta.getContentType();
         if (contentType == null || defaultContentType.equals(contentType)) {
@@ -446,29 +611,34 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
     /**
      * Copies a number of ranges from the given resource to the output stream.
-     * Copy the contents of the specified input stream to the specified output
-     * stream, and ensure that both streams are closed before returning (even in
-     * the face of an exception).
+     * <p>
+     * Content held in a file is transferred from the position of each range.
+     * Other content is read from a single stream skipping forward from range
+     * to range, so ascending ranges cost no more than reading up to the last
+     * range once. The stream is only reopened for a range starting before the
+     * end of the previous one.
      *
      * @param resource The resource from which to send ranges
+     * @param stream The stream of the resource, not closed by this method
      * @param ostream The output stream to write to
      * @param ranges Iterator of the ranges the client wanted to retrieve
-     * @param contentType Content type of the resource
      * @exception IOException if an input/output error occurs
      */
-    private void copy(Resource resource, ServletOutputStream ostream,
-            Iterator<Range> ranges) throws IOException {
+    private void copy(Resource resource, InputStream stream,
+            ServletOutputStream ostream, Iterator<Range> ranges)
+            throws IOException {
 
         String contentType = resource.getResourceMetadata().getContentType();
         IOException exception = null;
 
-        while ((exception == null) && (ranges.hasNext())) {
+        final FileChannel channel = StreamCopier.getFileChannel(resource,
+            stream);
+        InputStream istream = stream;
+        long position = 0;
 
-            InputStream resourceInputStream = resource.adaptTo(InputStream.class);
-            InputStream istream = new BufferedInputStream(resourceInputStream,
-                IO_BUFFER_SIZE);
+        try {
+            while ((exception == null) && (ranges.hasNext())) {
 
-            try {
                 Range currentRange = ranges.next();
 
                 // Writing MIME header.
@@ -482,12 +652,40 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
                 ostream.println();
 
                 // Printing content
-                exception = copyRange(istream, ostream, currentRange.start,
-                    currentRange.end);
-            } finally {
+                if (channel != null) {
+                    try {
+                        StreamCopier.copy(channel, currentRange.start,
+                            currentRange.end - currentRange.start + 1, ostream);
+                    } catch (IOException ioe) {
+                        exception = ioe;
+                    }
+                    continue;
+                }
+
+                if (currentRange.start < position) {
+                    // the stream is past the range, start over
+                    if (istream != stream) {
+                        closeSilently(istream);
+                    }
+                    istream = resource.adaptTo(InputStream.class);
+                    position = 0;
+                    if (istream == null) {
+                        exception = new IOException("Cannot reopen the stream of "
+                            + resource.getPath());
+                        break;
+                    }
+                }
+                exception = copyRange(istream, ostream, currentRange.start
+                    - position, currentRange.end - position);
+                position = currentRange.end + 1;
+            }
+        } finally {
+            if (channel != null) {
+                closeSilently(channel);
+            }
+            if (istream != stream) {
                 closeSilently(istream);
             }
-
         }
 
         ostream.println();
@@ -510,8 +708,8 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
     private void copy(InputStream resourceInputStream, OutputStream ostream,
             Range range) throws IOException {
 
-        InputStream istream = new BufferedInputStream(resourceInputStream, IO_BUFFER_SIZE);
-        IOException exception = copyRange(istream, ostream, range.start, range.end);
+        IOException exception = copyRange(resourceInputStream, ostream,
+            range.start, range.end);
 
         // Rethrow any exception that has occurred
         if (exception != null) {
@@ -535,7 +733,7 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         log.debug("copyRange: Serving bytes: {}-{}", start, end);
 
         try {
-            long skipped = istream.skip(start);
+            long skipped = StreamCopier.skip(istream, start);
             if (skipped < start) {
                 return new IOException("Failed to skip " + start
                     + " bytes; only skipped " + skipped + " bytes");
@@ -544,31 +742,18 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             return e;
         }
 
-        IOException exception = null;
-        long bytesToRead = end - start + 1;
-
-        byte buffer[] = new byte[IO_BUFFER_SIZE];
-        int len = buffer.length;
-        while ((bytesToRead > 0) && (len >= buffer.length)) {
-            try {
-                len = istream.read(buffer);
-                if (bytesToRead >= len) {
-                    ostream.write(buffer, 0, len);
-                    bytesToRead -= len;
-                } else {
-                    ostream.write(buffer, 0, (int) bytesToRead);
-                    bytesToRead = 0;
-                }
-            } catch (IOException e) {
-                exception = e;
-                len = -1;
-            }
-            if (len < buffer.length) {
-                break;
+        try {
+            final long bytesToRead = end - start + 1;
+            final long copied = StreamCopier.copy(istream, ostream, bytesToRead);
+            if (copied < bytesToRead) {
+                return new IOException("Stream ended after " + copied
+                    + " of " + bytesToRead + " bytes of the range");
             }
+        } catch (IOException e) {
+            return e;
         }
 
-        return exception;
+        return null;
     }
 
     /**
@@ -600,8 +785,9 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
                 // If the ETag the client gave does not match the entity
                 // etag, then the entire entity is returned.
-                // Sling: no etag support yet, return full range
-                return FULL;
+                if (!headerValue.trim().equals(getEntityTag(metadata))) {
+                    return FULL;
+                }
 
             } else if (metadata.getModificationTime() > (headerValueTime + 1000)) {
 
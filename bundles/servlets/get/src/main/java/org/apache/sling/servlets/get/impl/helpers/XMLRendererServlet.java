@@ -22,22 +22,38 @@ import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.sling.api.SlingConstants;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RecursionTooDeepException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceNotFoundException;
 import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
 /**
  * The <code>XMLRendererServlet</code> renders the current resource in XML
  * on behalf of the {@link org.apache.sling.servlets.get.impl.DefaultGetServlet}.
  *
  * At the moment only JCR nodes can be rendered as XML.
+ * <p>
+ * The <code>docview</code> (default) or <code>sysview</code> selector chooses
+ * the view, a number or <code>infinity</code> (default) as the last selector
+ * the number of levels of child nodes to render. Like for the
+ * {@link JsonRendererServlet} a tree with more nodes than the maximum number of
+ * results is not rendered, a list of the levels which may be requested is
+ * returned with a 300 status instead.
  */
 public class XMLRendererServlet extends SlingSafeMethodsServlet {
 
@@ -46,6 +62,15 @@ public class XMLRendererServlet extends SlingSafeMethodsServlet {
     private static final String SYSVIEW = "sysview";
     private static final String DOCVIEW = "docview";
 
+    /** Recursion level selector that means "all levels" */
+    private static final String INFINITY = "infinity";
+
+    private final long maximumResults;
+
+    public XMLRendererServlet(long maximumResults) {
+        this.maximumResults = maximumResults;
+    }
+
     @Override
     protected void doGet(SlingHttpServletRequest req,
                          SlingHttpServletResponse resp)
@@ -56,6 +81,32 @@ public class XMLRendererServlet extends SlingSafeMethodsServlet {
             throw new ResourceNotFoundException("No data to render.");
         }
 
+        // the view and the recursion level, in this order
+        boolean systemView = false;
+        String viewSelector = null;
+        int maxRecursionLevels = -1;
+        final String[] selectors = req.getRequestPathInfo().getSelectors();
+        for (int i = 0; selectors != null && i < selectors.length; i++) {
+            final String selector = selectors[i];
+            if (i == 0 && (DOCVIEW.equals(selector) || SYSVIEW.equals(selector))) {
+                systemView = SYSVIEW.equals(selector);
+                viewSelector = selector;
+            } else if (i == selectors.length - 1 && INFINITY.equals(selector)) {
+                maxRecursionLevels = -1;
+            } else if (i == selectors.length - 1 && selector.length() > 0
+                && StringUtils.isNumeric(selector)) {
+                try {
+                    maxRecursionLevels = Integer.parseInt(selector);
+                } catch (NumberFormatException nfe) {
+                    // SLING-2324: levels too large for an int mean all levels
+                    maxRecursionLevels = -1;
+                }
+            } else {
+                resp.sendError(HttpServletResponse.SC_NO_CONTENT); // NO Content
+                return;
+            }
+        }
+
         resp.setContentType(req.getResponseContentType());
         resp.setCharacterEncoding("UTF-8");
 
@@ -65,26 +116,21 @@ public class XMLRendererServlet extends SlingSafeMethodsServlet {
         final Node node = r.adaptTo(Node.class);
         if ( node != null ) {
             try {
-                if ( req.getRequestPathInfo().getSelectorString() == null
-                     || req.getRequestPathInfo().getSelectorString().equals(DOCVIEW) ) {
-                    // check if response is adaptable to a content handler
-                    final ContentHandler ch = resp.adaptTo(ContentHandler.class);
-                    if ( ch == null ) {
-                        node.getSession().exportDocumentView(node.getPath(), resp.getOutputStream(), false, false);
-                    } else {
-                        node.getSession().exportDocumentView(node.getPath(), ch, false, false);
-                    }
-                } else if ( req.getRequestPathInfo().getSelectorString().equals(SYSVIEW) ) {
-                    // check if response is adaptable to a content handler
-                    final ContentHandler ch = resp.adaptTo(ContentHandler.class);
-                    if ( ch == null ) {
-                        node.getSession().exportSystemView(node.getPath(), resp.getOutputStream(), false, false);
-                    } else {
-                        node.getSession().exportSystemView(node.getPath(), ch, false, false);
-                    }
-                } else {
-                    resp.sendError(HttpServletResponse.SC_NO_CONTENT); // NO Content
+                new ResourceTraversor(maxRecursionLevels, maximumResults, r).countResources();
+            } catch (RecursionTooDeepException e) {
+                resp.setStatus(HttpServletResponse.SC_MULTIPLE_CHOICES);
+                try {
+                    writeAlternatives(getContentHandler(resp), r, viewSelector,
+                        Integer.parseInt(e.getMessage()));
+                } catch (SAXException se) {
+                    throw new ServletException("Unable to list the levels of resource: " + r, se);
                 }
+                return;
+            }
+
+            try {
+                new NodeViewExporter(systemView, maxRecursionLevels).export(
+                    node, getContentHandler(resp));
             } catch (RepositoryException e) {
                 throw new ServletException("Unable to export resource as xml: " + r, e);
             } catch (SAXException e) {
@@ -96,4 +142,46 @@ public class XMLRendererServlet extends SlingSafeMethodsServlet {
             }
         }
     }
+
+    /**
+     * Returns the content handler of the response if the response is
+     * adaptable to one, otherwise a handler serializing to the response.
+     */
+    private ContentHandler getContentHandler(SlingHttpServletResponse resp)
+    throws ServletException, IOException {
+        final ContentHandler ch = resp.adaptTo(ContentHandler.class);
+        if ( ch != null ) {
+            return ch;
+        }
+
+        try {
+            final TransformerHandler th = ((SAXTransformerFactory) TransformerFactory.newInstance()).newTransformerHandler();
+            th.getTransformer().setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            th.setResult(new StreamResult(resp.getOutputStream()));
+            return th;
+        } catch (TransformerConfigurationException e) {
+            throw new ServletException("Unable to create an xml serializer", e);
+        }
+    }
+
+    /**
+     * Writes the URLs of the levels which may be rendered, deepest first.
+     */
+    private void writeAlternatives(ContentHandler ch, Resource r,
+            String viewSelector, int allowedLevel) throws SAXException {
+        final String prefix = r.getResourceMetadata().getResolutionPath() + "."
+            + ((viewSelector != null) ? viewSelector + "." : "");
+        final AttributesImpl noAttributes = new AttributesImpl();
+
+        ch.startDocument();
+        ch.startElement("", "alternatives", "alternatives", noAttributes);
+        for (int level = allowedLevel; level >= 0; level--) {
+            final char[] url = (prefix + level + "." + EXT_XML).toCharArray();
+            ch.startElement("", "alternative", "alternative", noAttributes);
+            ch.characters(url, 0, url.length);
+            ch.endElement("", "alternative", "alternative");
+        }
+        ch.endElement("", "alternatives", "alternatives");
+        ch.endDocument();
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class RenditionCacheTest extends TestCase {
+
+    private File directory;
+
+    private RenditionCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("renditions", "");
+        directory.delete();
+        cache = new RenditionCache(directory, 100);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cache.clear();
+        directory.delete();
+        super.tearDown();
+    }
+
+    public void testPutAndGet() throws Exception {
+        assertNull(cache.get("/page1:w480"));
+        final File file = cache.put("/page1", "/page1:w480", new byte[40]);
+        assertEquals(file, cache.get("/page1:w480"));
+        assertEquals(40, file.length());
+        assertEquals(40, cache.getSize());
+
+        // replacing an entry does not count twice
+        cache.put("/page1", "/page1:w480", new byte[30]);
+        assertEquals(1, cache.getCount());
+        assertEquals(30, cache.getSize());
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        cache.put("/page1", "a", new byte[40]);
+        cache.put("/page2", "b", new byte[40]);
+        cache.get("a");
+        cache.put("/page3", "c", new byte[40]);
+
+        assertNotNull(cache.get("a"));
+        assertNull("Least recently used entry not evicted", cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getSize());
+        assertEquals("Evicted files must be deleted", 2, directory.listFiles().length);
+    }
+
+    public void testTooLarge() throws Exception {
+        assertNull(cache.put("/page1", "a", new byte[101]));
+        assertEquals(0, cache.getCount());
+    }
+
+    public void testInvalidate() throws Exception {
+        cache.put("/issue/page1", "a", new byte[10]);
+        cache.put("/issue/page10", "b", new byte[10]);
+        cache.put("/issue/page2", "c", new byte[10]);
+
+        // a change of the original of page1
+        cache.invalidate("/issue/page1/bin/jcr:content");
+        assertNull(cache.get("a"));
+        assertNotNull("Sibling with the same prefix invalidated", cache.get("b"));
+
+        // removal of the issue
+        cache.invalidate("/issue");
+        assertNull(cache.get("b"));
+        assertNull(cache.get("c"));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    public void testInvalidateAncestorsAndDescendants() throws Exception {
+        cache.put("/comics", "a", new byte[10]);
+        cache.put("/comics/issue", "b", new byte[10]);
+        cache.put("/comics/issue/page1", "c", new byte[10]);
+        cache.put("/comics/issue-2/page1", "d", new byte[10]);
+        cache.put("/comics/issue/page1", "e", new byte[10]);
+
+        // moving a rendition to another resource drops it from the old one
+        cache.put("/comics/issue-2/page1", "e", new byte[10]);
+
+        cache.invalidate("/comics/issue");
+        assertNull("Ancestor not invalidated", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNull("Descendant not invalidated", cache.get("c"));
+        assertNotNull("Sibling with the same prefix invalidated", cache.get("d"));
+        assertNotNull(cache.get("e"));
+        assertEquals(20, cache.getSize());
+
+        cache.invalidate("/comics/issue-2/page1/thumb");
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testRoundWidth() {
+        assertEquals(120, ComicPageServlet.roundWidth(1, 120, 2048));
+        assertEquals(480, ComicPageServlet.roundWidth(480, 120, 2048));
+        assertEquals(600, ComicPageServlet.roundWidth(481, 120, 2048));
+        assertEquals(2048, ComicPageServlet.roundWidth(5000, 120, 2048));
+    }
+
+    public void testRoundQuality() {
+        assertEquals(10, ComicPageServlet.roundQuality(1, 10));
+        assertEquals(10, ComicPageServlet.roundQuality(-5, 10));
+        assertEquals(60, ComicPageServlet.roundQuality(64, 10));
+        assertEquals(70, ComicPageServlet.roundQuality(65, 10));
+        assertEquals(100, ComicPageServlet.roundQuality(100, 10));
+        assertEquals(90, ComicPageServlet.roundQuality(100, 30));
+        assertEquals(100, ComicPageServlet.roundQuality(250, 10));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+public class JsonResourceWriterTest extends TestCase {
+
+    private final SimpleDateFormat expected = new SimpleDateFormat(
+        JsonResourceWriter.ECMA_DATE_FORMAT,
+        JsonResourceWriter.DATE_FORMAT_LOCALE);
+
+    public void testFormat() {
+        final Calendar date = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        date.clear();
+        date.set(2011, Calendar.MARCH, 7, 4, 5, 6);
+        assertFormat(date);
+
+        // years before 1000 are padded
+        date.set(Calendar.YEAR, 812);
+        assertFormat(date);
+    }
+
+    public void testFormatRandomDates() {
+        final Random random = new Random(4711);
+        final Calendar date = Calendar.getInstance();
+        for (int i = 0; i < 10000; i++) {
+            // dates between 1970 and 2100 in both DST periods
+            date.setTimeInMillis((random.nextLong() >>> 1) % 4102444800000L);
+            assertFormat(date);
+        }
+    }
+
+    public void testFormatConcurrently() throws Exception {
+        final Calendar date = Calendar.getInstance();
+        final String formatted = expected.format(date.getTime());
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 1000; j++) {
+                            assertEquals(formatted, JsonResourceWriter.format(date));
+                        }
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure[0]);
+    }
+
+    private void assertFormat(Calendar date) {
+        assertEquals(expected.format(date.getTime()),
+            JsonResourceWriter.format(date));
+    }
+}
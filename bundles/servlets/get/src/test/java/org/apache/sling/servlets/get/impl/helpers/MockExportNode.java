@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Session;
+
+import org.apache.sling.commons.testing.jcr.MockNode;
+import org.apache.sling.commons.testing.jcr.MockNodeIterator;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * A node whose session exports a single node like the repository does with
+ * <code>noRecurse</code>: each export is a complete document declaring the
+ * namespaces. In the document view a text node is exported as characters.
+ */
+class MockExportNode extends MockNode {
+
+    static final String JCR_URI = "http://www.jcp.org/jcr/1.0";
+
+    static final String SV_URI = "http://www.jcp.org/jcr/sv/1.0";
+
+    private final Map<String, MockExportNode> nodes;
+
+    private final String text;
+
+    private final List<Node> children = new ArrayList<Node>();
+
+    MockExportNode(String path) {
+        this(path, null, new HashMap<String, MockExportNode>());
+    }
+
+    private MockExportNode(String path, String text,
+            Map<String, MockExportNode> nodes) {
+        super(path);
+        this.text = text;
+        this.nodes = nodes;
+        nodes.put(path, this);
+        setSession((Session) Proxy.newProxyInstance(
+            Session.class.getClassLoader(), new Class[] { Session.class },
+            new ExportingSession(nodes)));
+    }
+
+    MockExportNode addChild(String name) {
+        return addChild(name, null);
+    }
+
+    MockExportNode addText(String name, String text) {
+        return addChild(name, text);
+    }
+
+    private MockExportNode addChild(String name, String text) {
+        final MockExportNode child = new MockExportNode(getPath() + "/" + name,
+            text, nodes);
+        children.add(child);
+        return child;
+    }
+
+    @Override
+    public NodeIterator getNodes() {
+        return new MockNodeIterator(children.toArray(new Node[children.size()]));
+    }
+
+    private void export(ContentHandler handler, boolean systemView)
+            throws SAXException {
+        final String prefix = systemView ? "sv" : "jcr";
+        handler.startDocument();
+        handler.startPrefixMapping(prefix, systemView ? SV_URI : JCR_URI);
+        if (systemView) {
+            final AttributesImpl atts = new AttributesImpl();
+            atts.addAttribute(SV_URI, "name", "sv:name", "CDATA", getName());
+            handler.startElement(SV_URI, "node", "sv:node", atts);
+            handler.startElement(SV_URI, "property", "sv:property",
+                new AttributesImpl());
+            handler.endElement(SV_URI, "property", "sv:property");
+            handler.endElement(SV_URI, "node", "sv:node");
+        } else if (text != null) {
+            handler.characters(text.toCharArray(), 0, text.length());
+        } else {
+            handler.startElement("", getName(), getName(), new AttributesImpl());
+            handler.endElement("", getName(), getName());
+        }
+        handler.endPrefixMapping(prefix);
+        handler.endDocument();
+    }
+
+    private static class ExportingSession implements InvocationHandler {
+
+        private final Map<String, MockExportNode> nodes;
+
+        ExportingSession(Map<String, MockExportNode> nodes) {
+            this.nodes = nodes;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            final String name = method.getName();
+            if (("exportDocumentView".equals(name) || "exportSystemView".equals(name))
+                && args.length == 4 && args[1] instanceof ContentHandler) {
+                if (!Boolean.TRUE.equals(args[3])) {
+                    throw new UnsupportedOperationException("Only noRecurse exports");
+                }
+                nodes.get(args[0]).export((ContentHandler) args[1],
+                    "exportSystemView".equals(name));
+                return null;
+            }
+            throw new UnsupportedOperationException("Not implemented: Session." + name);
+        }
+    }
+
+    /**
+     * Records SAX events in a compact form: <code>[</code> and <code>]</code>
+     * for the document, <code>{p</code> and <code>}p</code> for prefix
+     * mappings and tags with the attribute values for the elements.
+     */
+    static class EventRecorder implements ContentHandler {
+
+        private final StringBuilder events = new StringBuilder();
+
+        @Override
+        public String toString() {
+            return events.toString();
+        }
+
+        public void startDocument() {
+            events.append('[');
+        }
+
+        public void endDocument() {
+            events.append(']');
+        }
+
+        public void startPrefixMapping(String prefix, String uri) {
+            events.append('{').append(prefix);
+        }
+
+        public void endPrefixMapping(String prefix) {
+            events.append('}').append(prefix);
+        }
+
+        public void startElement(String uri, String localName, String qName,
+                Attributes atts) {
+            events.append('<').append(qName);
+            for (int i = 0; i < atts.getLength(); i++) {
+                events.append(' ').append(atts.getValue(i));
+            }
+            events.append('>');
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            events.append("</").append(qName).append('>');
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            events.append(ch, start, length);
+        }
+
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+        }
+
+        public void processingInstruction(String target, String data) {
+        }
+
+        public void skippedEntity(String name) {
+        }
+
+        public void setDocumentLocator(Locator locator) {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import junit.framework.TestCase;
+
+public class NodeViewExporterTest extends TestCase {
+
+    private MockExportNode page;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // /page with the children one (with a child), a text node and two
+        page = new MockExportNode("/page");
+        page.addChild("one").addChild("nested");
+        page.addText("text", "hello");
+        page.addChild("two");
+    }
+
+    public void testDocumentView() throws Exception {
+        assertEquals("[{jcr<page></page>}jcr]", export(false, 0));
+        assertEquals("[{jcr<page><one></one>hello<two></two></page>}jcr]",
+            export(false, 1));
+        assertEquals("[{jcr<page><one><nested></nested></one>hello<two></two></page>}jcr]",
+            export(false, -1));
+    }
+
+    public void testSystemView() throws Exception {
+        assertEquals("[{sv<sv:node page><sv:property></sv:property></sv:node>}sv]",
+            export(true, 0));
+        assertEquals("[{sv<sv:node page><sv:property></sv:property>"
+            + "<sv:node one><sv:property></sv:property></sv:node>"
+            + "<sv:node text><sv:property></sv:property></sv:node>"
+            + "<sv:node two><sv:property></sv:property></sv:node>"
+            + "</sv:node>}sv]", export(true, 1));
+        assertEquals("[{sv<sv:node page><sv:property></sv:property>"
+            + "<sv:node one><sv:property></sv:property>"
+            + "<sv:node nested><sv:property></sv:property></sv:node></sv:node>"
+            + "<sv:node text><sv:property></sv:property></sv:node>"
+            + "<sv:node two><sv:property></sv:property></sv:node>"
+            + "</sv:node>}sv]", export(true, -1));
+    }
+
+    public void testTextNodeOnly() throws Exception {
+        // a node exported as text has no element to close
+        final MockExportNode text = page.addText("more", "world");
+        final MockExportNode.EventRecorder recorder = new MockExportNode.EventRecorder();
+        new NodeViewExporter(false, -1).export(text, recorder);
+        assertEquals("[{jcrworld}jcr]", recorder.toString());
+    }
+
+    private String export(boolean systemView, int levels) throws Exception {
+        final MockExportNode.EventRecorder recorder = new MockExportNode.EventRecorder();
+        new NodeViewExporter(systemView, levels).export(page, recorder);
+        return recorder.toString();
+    }
+}
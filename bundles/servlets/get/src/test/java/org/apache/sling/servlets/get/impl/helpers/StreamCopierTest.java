@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class StreamCopierTest extends TestCase {
+
+    // larger than a buffer to copy in several steps
+    private static final byte[] CONTENT = new byte[StreamCopier.BUFFER_SIZE * 2 + 17];
+
+    static {
+        for (int i = 0; i < CONTENT.length; i++) {
+            CONTENT[i] = (byte) i;
+        }
+    }
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("content", ".bin");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(CONTENT);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testCopyFile() throws Exception {
+        final FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamCopier.copy(channel, 0, channel.size(), out);
+            assertTrue(Arrays.equals(CONTENT, out.toByteArray()));
+        } finally {
+            channel.close();
+        }
+    }
+
+    public void testCopyFileRange() throws Exception {
+        final FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamCopier.copy(channel, 100, 70000, out);
+            assertTrue(Arrays.equals(range(100, 70000), out.toByteArray()));
+        } finally {
+            channel.close();
+        }
+    }
+
+    public void testCopyFileBeyondEnd() throws Exception {
+        final FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            StreamCopier.copy(channel, CONTENT.length - 10, 20,
+                new ByteArrayOutputStream());
+            fail("Expected the range to exceed the file");
+        } catch (EOFException expected) {
+            // expected
+        } finally {
+            channel.close();
+        }
+    }
+
+    public void testCopyStream() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(CONTENT.length, StreamCopier.copy(
+            new ByteArrayInputStream(CONTENT), out, -1));
+        assertTrue(Arrays.equals(CONTENT, out.toByteArray()));
+    }
+
+    public void testCopyStreamLength() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(70000, StreamCopier.copy(
+            new ByteArrayInputStream(CONTENT), out, 70000));
+        assertTrue(Arrays.equals(range(0, 70000), out.toByteArray()));
+
+        // the stream ends before the length
+        out.reset();
+        assertEquals(CONTENT.length, StreamCopier.copy(
+            new ByteArrayInputStream(CONTENT), out, CONTENT.length + 10));
+    }
+
+    public void testSkip() throws Exception {
+        // a stream skipping at most 100 bytes at a time
+        final ByteArrayInputStream in = new ByteArrayInputStream(CONTENT) {
+            @Override
+            public synchronized long skip(long n) {
+                return super.skip(Math.min(n, 100));
+            }
+        };
+        assertEquals(70000, StreamCopier.skip(in, 70000));
+        assertEquals(CONTENT[70000], (byte) in.read());
+
+        final long remaining = CONTENT.length - 70001;
+        assertEquals(remaining, StreamCopier.skip(in, remaining + 10));
+        assertEquals(-1, in.read());
+    }
+
+    public void testBuffersAreReused() {
+        final byte[] buffer = StreamCopier.acquireBuffer();
+        assertEquals(StreamCopier.BUFFER_SIZE, buffer.length);
+        StreamCopier.releaseBuffer(buffer);
+        assertSame(buffer, StreamCopier.acquireBuffer());
+    }
+
+    private static byte[] range(int start, int length) {
+        final byte[] range = new byte[length];
+        System.arraycopy(CONTENT, start, range, 0, length);
+        return range;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.commons.testing.sling.MockSlingHttpServletRequest;
+
+public class StreamRendererServletTest extends TestCase {
+
+    private static final String[] RENDITIONS = { "thumb:150", "screen:480",
+        "retina:1080" };
+
+    public void testRequestedWidth() {
+        assertEquals(480, StreamRendererServlet.getRequestedWidth(
+            new MockSlingHttpServletRequest("/page", "w480", "jpg", null, null)));
+        assertEquals(1080, StreamRendererServlet.getRequestedWidth(
+            new MockSlingHttpServletRequest("/page", "print.w1080", "jpg", null, null)));
+        assertEquals(-1, StreamRendererServlet.getRequestedWidth(
+            new MockSlingHttpServletRequest("/page", null, "jpg", null, null)));
+        assertEquals(-1, StreamRendererServlet.getRequestedWidth(
+            new MockSlingHttpServletRequest("/page", "wide.w0", "jpg", null, null)));
+    }
+
+    public void testSelectRendition() {
+        // the narrowest rendition which is wide enough
+        assertEquals("thumb", StreamRendererServlet.selectRendition(RENDITIONS, 100));
+        assertEquals("thumb", StreamRendererServlet.selectRendition(RENDITIONS, 150));
+        assertEquals("screen", StreamRendererServlet.selectRendition(RENDITIONS, 151));
+        assertEquals("screen", StreamRendererServlet.selectRendition(RENDITIONS, 480));
+        assertEquals("retina", StreamRendererServlet.selectRendition(RENDITIONS, 800));
+
+        // the widest if none is wide enough
+        assertEquals("retina", StreamRendererServlet.selectRendition(RENDITIONS, 2000));
+
+        // the order of the renditions does not matter
+        assertEquals("screen", StreamRendererServlet.selectRendition(new String[] {
+            "retina:1080", "thumb:150", "screen:480" }, 300));
+    }
+
+    public void testSelectInvalidRendition() {
+        assertNull(StreamRendererServlet.selectRendition(null, 480));
+        assertNull(StreamRendererServlet.selectRendition(new String[0], 480));
+        assertEquals("thumb", StreamRendererServlet.selectRendition(new String[] {
+            "broken", ":480", "wide:x", "thumb:150" }, 480));
+    }
+
+    public void testEntityTag() {
+        final ResourceMetadata meta = new ResourceMetadata();
+        assertNull(StreamRendererServlet.getEntityTag(meta));
+        meta.setEntityTag("0cc175b9-12f");
+        assertEquals("\"0cc175b9-12f\"", StreamRendererServlet.getEntityTag(meta));
+    }
+
+    public void testMatchesEntityTag() {
+        final String etag = "\"0cc175b9-12f\"";
+        assertTrue(StreamRendererServlet.matchesEntityTag(etag, etag));
+        assertTrue(StreamRendererServlet.matchesEntityTag("*", etag));
+        assertTrue(StreamRendererServlet.matchesEntityTag("*", null));
+        assertTrue(StreamRendererServlet.matchesEntityTag(
+            "\"other\", " + etag, etag));
+        assertTrue(StreamRendererServlet.matchesEntityTag("W/" + etag, etag));
+
+        assertFalse(StreamRendererServlet.matchesEntityTag("\"other\"", etag));
+        assertFalse(StreamRendererServlet.matchesEntityTag("0cc175b9-12f", etag));
+        assertFalse(StreamRendererServlet.matchesEntityTag(etag, null));
+    }
+}
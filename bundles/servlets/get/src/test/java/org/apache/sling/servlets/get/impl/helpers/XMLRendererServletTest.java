@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import javax.jcr.Node;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+import junitx.util.PrivateAccessor;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.testing.sling.MockResource;
+import org.apache.sling.commons.testing.sling.MockResourceResolver;
+import org.apache.sling.commons.testing.sling.MockSlingHttpServletRequest;
+import org.apache.sling.commons.testing.sling.MockSlingHttpServletResponse;
+import org.apache.sling.servlets.get.impl.DefaultGetServlet;
+import org.xml.sax.ContentHandler;
+
+public class XMLRendererServletTest extends TestCase {
+
+    private MockResourceResolver resolver;
+
+    private MockSlingHttpServletResponse response;
+
+    private MockExportNode.EventRecorder recorder;
+
+    private int status;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        resolver = new MockResourceResolver();
+        final MockExportNode page = addNode(null, "/content/page");
+        addNode(page, "one");
+        addNode(page, "two");
+
+        final MockExportNode tags = addNode(null, "/etc/tags");
+        for (int i = 0; i < 300; i++) {
+            addNode(tags, String.valueOf(i));
+        }
+
+        response = new MockSlingHttpServletResponse() {
+            @Override
+            public void setStatus(int i) {
+                status = i;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+                return (type == ContentHandler.class) ? (AdapterType) recorder : null;
+            }
+        };
+    }
+
+    public void testExport() throws Throwable {
+        render("/content/page", null);
+        assertEquals(HttpServletResponse.SC_OK, status);
+        assertEquals("[{jcr<page><one></one><two></two></page>}jcr]", recorder.toString());
+    }
+
+    public void testDefaultMaximumResults() throws Throwable {
+        // node.xml renders all levels, so with the default limit of 200 a
+        // node with 300 children only lists the levels which may be requested
+        render("/etc/tags", null);
+        assertEquals(HttpServletResponse.SC_MULTIPLE_CHOICES, status);
+        assertEquals("[<alternatives><alternative>/etc/tags.0.xml</alternative>"
+            + "</alternatives>]", recorder.toString());
+
+        // the children may always be listed
+        render("/etc/tags", "1");
+        assertEquals(HttpServletResponse.SC_OK, status);
+        assertTrue(recorder.toString().startsWith("[{jcr<tags><0></0><1></1>"));
+        assertTrue(recorder.toString().endsWith("<299></299></tags>}jcr]"));
+    }
+
+    private void render(String path, String selectors) throws Throwable {
+        recorder = new MockExportNode.EventRecorder();
+        status = HttpServletResponse.SC_OK;
+
+        final MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(
+            path, selectors, XMLRendererServlet.EXT_XML, null, null);
+        request.setMethod("GET");
+        request.setResourceResolver(resolver);
+        request.setResource(resolver.getResource(path));
+
+        final XMLRendererServlet servlet = new XMLRendererServlet(
+            DefaultGetServlet.DEFAULT_XML_RENDERER_MAXIMUM_RESULTS);
+        PrivateAccessor.invoke(servlet, "doGet",
+            new Class[] { SlingHttpServletRequest.class, SlingHttpServletResponse.class },
+            new Object[] { request, response });
+    }
+
+    private MockExportNode addNode(MockExportNode parent, String name) {
+        final MockExportNode node = (parent == null)
+                ? new MockExportNode(name)
+                : parent.addChild(name);
+        resolver.addResource(new NodeResource(resolver, node));
+        return node;
+    }
+
+    private static class NodeResource extends MockResource {
+
+        private final Node node;
+
+        NodeResource(ResourceResolver resolver, MockExportNode node) {
+            super(resolver, node.getPath(), "nt:unstructured");
+            this.node = node;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+            return (type == Node.class) ? (AdapterType) node : super.adaptTo(type);
+        }
+    }
+}
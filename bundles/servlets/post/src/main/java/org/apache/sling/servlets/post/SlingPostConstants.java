@@ -473,6 +473,40 @@ public interface SlingPostConstants {
      */
     public static final String RP_AUTO_CHECKOUT = RP_PREFIX + "autoCheckout";
 
+    /**
+     * Name of the request parameter identifying a chunked upload for the
+     * {@link SlingPostConstants#OPERATION_IMPORT} operation (value is
+     * ":uploadId").
+     * <p>
+     * If this parameter is set, the {@link #RP_CONTENT_FILE} or
+     * {@link #RP_CONTENT} parameter only holds the chunk of the content
+     * starting at {@link #RP_UPLOAD_OFFSET}. The chunks are assembled on the
+     * server and the content is imported once all of the
+     * {@link #RP_UPLOAD_LENGTH} bytes have been received. A request without
+     * content returns the number of bytes received so far, from which an
+     * interrupted upload may be resumed.
+     *
+     * @since 2.1.2
+     */
+    public static final String RP_UPLOAD_ID = RP_PREFIX + "uploadId";
+
+    /**
+     * Name of the request parameter holding the offset of the chunk sent
+     * with an upload identified by {@link #RP_UPLOAD_ID} (value is
+     * ":uploadOffset").
+     *
+     * @since 2.1.2
+     */
+    public static final String RP_UPLOAD_OFFSET = RP_PREFIX + "uploadOffset";
+
+    /**
+     * Name of the request parameter holding the total number of bytes of an
+     * upload identified by {@link #RP_UPLOAD_ID} (value is ":uploadLength").
+     *
+     * @since 2.1.2
+     */
+    public static final String RP_UPLOAD_LENGTH = RP_PREFIX + "uploadLength";
+
     /**
      * Name of the request attribute (not parameter) indicating that a post operation
      * should not invoke session.save() upon completion.
@@ -16,6 +16,7 @@
  */
 package org.apache.sling.servlets.post.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -57,6 +58,7 @@ import org.apache.sling.servlets.post.VersioningConfiguration;
 import org.apache.sling.servlets.post.impl.helper.DateParser;
 import org.apache.sling.servlets.post.impl.helper.DefaultNodeNameGenerator;
 import org.apache.sling.servlets.post.impl.helper.MediaRangeList;
+import org.apache.sling.servlets.post.impl.helper.UploadStaging;
 import org.apache.sling.servlets.post.impl.operations.CheckinOperation;
 import org.apache.sling.servlets.post.impl.operations.CheckoutOperation;
 import org.apache.sling.servlets.post.impl.operations.CopyOperation;
@@ -137,6 +139,16 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
     @Property(value = DEFAULT_IGNORED_PARAMETER_NAME_PATTERN)
     private static final String PROP_IGNORED_PARAMETER_NAME_PATTERN = "servlet.post.ignorePattern";
 
+    private static final int DEFAULT_UPLOAD_MAX_AGE = 24;
+
+    @Property(intValue = DEFAULT_UPLOAD_MAX_AGE)
+    private static final String PROP_UPLOAD_MAX_AGE = "servlet.post.uploadMaxAge";
+
+    private static final int DEFAULT_UPLOAD_MAX_SIZE = 1024;
+
+    @Property(intValue = DEFAULT_UPLOAD_MAX_SIZE)
+    private static final String PROP_UPLOAD_MAX_SIZE = "servlet.post.uploadMaxSize";
+
     private ModifyOperation modifyOperation;
 
     private ServiceRegistration[] internalOperations;
@@ -444,6 +456,19 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
         this.importOperation.setDefaultNodeNameGenerator(nodeNameGenerator);
         this.modifyOperation.setIgnoredParameterNamePattern(paramMatchPattern);
         this.importOperation.setIgnoredParameterNamePattern(paramMatchPattern);
+
+        final File uploadDirectory = componentContext.getBundleContext().getDataFile("uploads");
+        if (uploadDirectory != null) {
+            final long uploadMaxAge = OsgiUtil.toInteger(
+                configuration.get(PROP_UPLOAD_MAX_AGE), DEFAULT_UPLOAD_MAX_AGE) * 60L * 60L * 1000L;
+            final long uploadMaxSize = OsgiUtil.toInteger(
+                configuration.get(PROP_UPLOAD_MAX_SIZE), DEFAULT_UPLOAD_MAX_SIZE) * 1024L * 1024L;
+            this.importOperation.setUploadStaging(new UploadStaging(
+                uploadDirectory, uploadMaxAge, uploadMaxSize));
+        } else {
+            log.warn("configure: No bundle data area, chunked uploads are not supported");
+            this.importOperation.setUploadStaging(null);
+        }
     }
 
     @Override
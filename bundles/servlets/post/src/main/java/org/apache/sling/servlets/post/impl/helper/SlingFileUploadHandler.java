@@ -17,17 +17,21 @@
 package org.apache.sling.servlets.post.impl.helper;
 
 import java.io.IOException;
+import java.security.DigestInputStream;
 import java.util.Calendar;
 import java.util.List;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
+import javax.jcr.nodetype.NoSuchNodeTypeException;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.NodeTypeManager;
 import javax.servlet.ServletContext;
 
 import org.apache.jackrabbit.util.Text;
 import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.jcr.resource.JcrResourceConstants;
+import org.apache.sling.jcr.resource.JcrResourceUtil;
 import org.apache.sling.servlets.post.Modification;
 
 /**
@@ -83,6 +87,10 @@ public class SlingFileUploadHandler {
     public static final String JCR_ENCODING = "jcr:encoding";
     public static final String JCR_DATA = "jcr:data";
 
+    // the content hash
+    public static final String MIX_ENTITY_TAG = "sling:EntityTag";
+    public static final String SLING_ENTITY_TAG = JcrResourceConstants.SLING_ENTITY_TAG_PROPERTY;
+
     /**
      * The servlet context.
      */
@@ -192,15 +200,40 @@ public class SlingFileUploadHandler {
                 res.setProperty(JCR_MIMETYPE, contentType).getPath()
             ));
             try {
+                final DigestInputStream data = new DigestInputStream(
+                    value.getInputStream(), JcrResourceUtil.createEntityTagDigest());
                 changes.add(Modification.onModified(
-                    res.setProperty(JCR_DATA, value.getInputStream()).getPath()
+                    res.setProperty(JCR_DATA, data).getPath()
                 ));
+                setEntityTag(res, JcrResourceUtil.getEntityTag(data.getMessageDigest()), changes);
             } catch (IOException e) {
                 throw new RepositoryException("Error while retrieving inputstream from parameter value.", e);
             }
 		}
     }
 
+    /**
+     * Stores the hash of the uploaded content, from which the entity tag of
+     * the resource is derived, if the sling:EntityTag mixin is available.
+     */
+    private void setEntityTag(Node res, String hash, List<Modification> changes)
+            throws RepositoryException {
+        try {
+            if (!res.isNodeType(MIX_ENTITY_TAG)) {
+                if (!res.canAddMixin(MIX_ENTITY_TAG)) {
+                    return;
+                }
+                res.addMixin(MIX_ENTITY_TAG);
+            }
+        } catch (NoSuchNodeTypeException e) {
+            // node type not registered, no entity tag
+            return;
+        }
+        changes.add(Modification.onModified(
+            res.setProperty(SLING_ENTITY_TAG, hash).getPath()
+        ));
+    }
+
     private Node getOrCreateChildNode(Node parent, String name, String typeHint,
             List<Modification> changes) throws RepositoryException {
         Node result;
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>UploadStaging</code> assembles uploads sent in chunks. Each
+ * upload is identified by a client chosen id and staged in a file of the
+ * staging directory, to which the chunks are written at their offset. Ids
+ * are scoped by the user sending the upload, so users cannot read or
+ * overwrite the uploads of others by guessing their ids.
+ * <p>
+ * Chunks are copied with a fixed size buffer, so memory use does not depend
+ * on the size of the upload. A chunk may be sent again, for example if the
+ * response to it got lost, but it may not leave a gap after the bytes
+ * received so far. The chunks of one upload must be sent one after another.
+ * An upload may not grow beyond the maximum size, bytes beyond it are never
+ * written to disk.
+ * <p>
+ * Uploads which have not received a chunk within the maximum age are
+ * considered abandoned and are removed the next time an upload starts.
+ */
+public class UploadStaging {
+
+    /** Upload ids are used as file names, so only allow safe characters */
+    private static final Pattern UPLOAD_ID = Pattern.compile("[A-Za-z0-9_\\-]{1,64}");
+
+    private static final String SUFFIX = ".upload";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+
+    private final long maxAge;
+
+    private final long maxSize;
+
+    /**
+     * @param directory The directory holding the staged uploads
+     * @param maxAge The time in milliseconds after which an upload without
+     *            new chunks is removed
+     * @param maxSize The maximum number of bytes of an upload
+     */
+    public UploadStaging(File directory, long maxAge, long maxSize) {
+        this.directory = directory;
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes of an upload.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns <code>true</code> if the upload id may be used.
+     */
+    public static boolean isValidId(String uploadId) {
+        return uploadId != null && UPLOAD_ID.matcher(uploadId).matches();
+    }
+
+    /**
+     * Returns the number of bytes received for the upload, which is the
+     * offset of the next chunk expected.
+     */
+    public long getOffset(String userId, String uploadId) {
+        return getFile(userId, uploadId).length();
+    }
+
+    /**
+     * Returns the file holding the bytes received for the upload of the
+     * given user.
+     */
+    public File getFile(String userId, String uploadId) {
+        if (!isValidId(uploadId)) {
+            throw new IllegalArgumentException("Invalid upload id " + uploadId);
+        }
+        return new File(getUserDirectory(userId), uploadId + SUFFIX);
+    }
+
+    /**
+     * Writes a chunk of the upload at the given offset. Bytes received after
+     * the offset are dropped before the chunk is written.
+     * <p>
+     * At most <code>limit</code> bytes, and never more than the maximum
+     * size, are written for the upload. If the chunk holds more, the bytes
+     * beyond the limit are not written and a number larger than the limit
+     * is returned.
+     *
+     * @param userId The id of the user sending the upload
+     * @param uploadId The id of the upload
+     * @param offset The offset of the chunk in the upload
+     * @param chunk The bytes of the chunk, not closed by this method
+     * @param limit The number of bytes expected for the upload
+     * @return The number of bytes received for the upload, including the
+     *         chunk, or <code>-1</code> if the offset is beyond the bytes
+     *         received so far and the chunk has not been written
+     * @throws IOException If the chunk cannot be read or written
+     */
+    public long append(String userId, String uploadId, long offset,
+            InputStream chunk, long limit) throws IOException {
+        final File file = getFile(userId, uploadId);
+        if (offset < 0 || offset > file.length()) {
+            return -1;
+        }
+        limit = Math.min(limit, maxSize);
+        if (offset > limit) {
+            return offset;
+        }
+        if (offset == 0) {
+            purge();
+            final File userDirectory = file.getParentFile();
+            if (!userDirectory.isDirectory() && !userDirectory.mkdirs()) {
+                throw new IOException("Cannot create upload staging directory "
+                    + userDirectory);
+            }
+        }
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(offset);
+            raf.seek(offset);
+            long remaining = limit - offset;
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = chunk.read(buffer)) >= 0) {
+                if (read > remaining) {
+                    raf.write(buffer, 0, (int) remaining);
+                    return limit + 1;
+                }
+                raf.write(buffer, 0, read);
+                remaining -= read;
+            }
+            return raf.length();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Removes the staged upload.
+     */
+    public void remove(String userId, String uploadId) {
+        final File file = getFile(userId, uploadId);
+        if (file.exists() && !file.delete()) {
+            log.warn("remove: Cannot delete staged upload {}", file);
+        }
+    }
+
+    /**
+     * Removes the uploads which did not receive a chunk within the maximum
+     * age.
+     *
+     * @return The number of uploads removed
+     */
+    public int purge() {
+        final File[] userDirectories = directory.listFiles();
+        if (userDirectories == null) {
+            return 0;
+        }
+        final long oldest = System.currentTimeMillis() - maxAge;
+        int removed = 0;
+        for (File userDirectory : userDirectories) {
+            final File[] files = userDirectory.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.getName().endsWith(SUFFIX)
+                    && file.lastModified() < oldest) {
+                    if (file.delete()) {
+                        removed++;
+                    } else {
+                        log.warn("purge: Cannot delete abandoned upload {}", file);
+                    }
+                }
+            }
+            // only succeeds once the user has no uploads left
+            userDirectory.delete();
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the directory holding the uploads of a user. User ids may hold
+     * any character, those not allowed in upload ids are escaped as a dot
+     * followed by their four digit hex code.
+     */
+    private File getUserDirectory(String userId) {
+        final StringBuilder name = new StringBuilder(userId.length());
+        for (int i = 0; i < userId.length(); i++) {
+            final char c = userId.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')
+                || (c >= '0' && c <= '9') || c == '_' || c == '-') {
+                name.append(c);
+            } else {
+                name.append('.');
+                final String hex = Integer.toHexString(c);
+                for (int j = hex.length(); j < 4; j++) {
+                    name.append('0');
+                }
+                name.append(hex);
+            }
+        }
+        // an empty user id must not resolve to the staging directory
+        return new File(directory, "~" + name);
+    }
+}
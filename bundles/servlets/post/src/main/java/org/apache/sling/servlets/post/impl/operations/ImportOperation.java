@@ -16,6 +16,8 @@
  */
 package org.apache.sling.servlets.post.impl.operations;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -31,17 +33,26 @@ import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.jcr.contentloader.ContentImportListener;
 import org.apache.sling.jcr.contentloader.ContentImporter;
 import org.apache.sling.jcr.contentloader.ImportOptions;
+import org.apache.sling.servlets.post.JSONResponse;
 import org.apache.sling.servlets.post.Modification;
 import org.apache.sling.servlets.post.ModificationType;
 import org.apache.sling.servlets.post.PostResponse;
 import org.apache.sling.servlets.post.SlingPostConstants;
 import org.apache.sling.servlets.post.VersioningConfiguration;
 import org.apache.sling.servlets.post.impl.helper.RequestProperty;
+import org.apache.sling.servlets.post.impl.helper.UploadStaging;
 
 /**
  * The <code>ImportOperation</code> class implements the
  * {@link org.apache.sling.servlets.post.SlingPostConstants#OPERATION_IMPORT}
  * import operation for the Sling default POST servlet.
+ * <p>
+ * Large content may be sent in chunks identified by the
+ * {@link SlingPostConstants#RP_UPLOAD_ID} parameter. The chunks are assembled
+ * in the {@link UploadStaging} and the content is only imported from the
+ * assembled file once all bytes have been received. Chunks are only staged
+ * if the user may add nodes below the target of the import and the upload
+ * does not exceed the maximum size of the staging.
  */
 public class ImportOperation extends AbstractCreateOperation {
 
@@ -54,10 +65,25 @@ public class ImportOperation extends AbstractCreateOperation {
         this.contentImporter = contentImporter;
     }
 
+    /**
+     * Name of the property of JSON responses to chunked uploads holding the
+     * number of bytes received so far.
+     */
+    public static final String PN_UPLOAD_OFFSET = "upload.offset";
+
+    /**
+     * Staging of chunked uploads, <code>null</code> if not supported
+     */
+    private UploadStaging uploadStaging;
+
     public void setContentImporter(ContentImporter importer) {
         this.contentImporter = importer;
     }
 
+    public void setUploadStaging(UploadStaging uploadStaging) {
+        this.uploadStaging = uploadStaging;
+    }
+
     private String getRequestParamAsString(SlingHttpServletRequest request, String key) {
     	RequestParameter requestParameter = request.getRequestParameter(key);
     	if (requestParameter == null) {
@@ -75,6 +101,18 @@ public class ImportOperation extends AbstractCreateOperation {
                     "Missing content importer for import");
             return;
         }
+
+        // chunks of an upload are staged until all of them have arrived
+        final String uploadId = getRequestParamAsString(request, SlingPostConstants.RP_UPLOAD_ID);
+        final String userId = request.getResourceResolver().adaptTo(Session.class).getUserID();
+        File upload = null;
+        if (uploadId != null) {
+            upload = receiveChunk(request, response, userId, uploadId);
+            if (upload == null) {
+                return;
+            }
+        }
+
         Map<String, RequestProperty> reqProperties = collectContent(request,
              response);
 
@@ -152,15 +190,14 @@ public class ImportOperation extends AbstractCreateOperation {
         }
         final String contentRootName = targetName + "." + contentType;
 
+        InputStream contentStream = null;
         try {
-            InputStream contentStream = null;
-        	RequestParameter contentParameter = request.getRequestParameter(SlingPostConstants.RP_CONTENT);
-            if (contentParameter != null) {
-                contentStream = contentParameter.getInputStream();
+            if (upload != null) {
+                contentStream = new FileInputStream(upload);
             } else {
-                RequestParameter contentFile = request.getRequestParameter(SlingPostConstants.RP_CONTENT_FILE);
-                if (contentFile != null) {
-                    contentStream = contentFile.getInputStream();
+                RequestParameter contentParameter = getContentParameter(request);
+                if (contentParameter != null) {
+                    contentStream = contentParameter.getInputStream();
                 }
             }
 
@@ -237,6 +274,11 @@ public class ImportOperation extends AbstractCreateOperation {
                         });
             }
 
+            if (upload != null) {
+                contentStream.close();
+                uploadStaging.remove(userId, uploadId);
+            }
+
             if (!changes.isEmpty()) {
                 //fill in the data for the response report
                 Modification modification = changes.get(0);
@@ -253,6 +295,135 @@ public class ImportOperation extends AbstractCreateOperation {
             }
         } catch (IOException e) {
             throw new RepositoryException(e);
+        } finally {
+            // the staged upload is kept if the import fails, so that it
+            // may be retried without sending the content again
+            if (upload != null && contentStream != null) {
+                try {
+                    contentStream.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private RequestParameter getContentParameter(SlingHttpServletRequest request) {
+        RequestParameter contentParameter = request.getRequestParameter(SlingPostConstants.RP_CONTENT);
+        if (contentParameter == null) {
+            contentParameter = request.getRequestParameter(SlingPostConstants.RP_CONTENT_FILE);
+        }
+        return contentParameter;
+    }
+
+    /**
+     * Stages the chunk sent with the request.
+     *
+     * @return The file holding the complete content or <code>null</code> if
+     *         more chunks are expected or the chunk has been rejected, in
+     *         which case the status has been set on the response
+     */
+    private File receiveChunk(SlingHttpServletRequest request,
+            PostResponse response, String userId, String uploadId)
+            throws RepositoryException {
+        final UploadStaging staging = uploadStaging;
+        if (staging == null) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                "Chunked uploads are not supported");
+            return null;
+        }
+        if (!UploadStaging.isValidId(uploadId)) {
+            response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED,
+                "Invalid upload id " + uploadId);
+            return null;
+        }
+        final long length = getRequestParamAsLong(request, SlingPostConstants.RP_UPLOAD_LENGTH);
+        if (length < 0) {
+            response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED,
+                "Required :uploadLength parameter is missing");
+            return null;
+        }
+        if (length > staging.getMaxSize()) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                "Upload " + uploadId + " of " + length
+                    + " bytes exceeds the maximum of " + staging.getMaxSize()
+                    + " bytes");
+            return null;
+        }
+
+        // nothing is written to disk for users who could not import it
+        final Session session = request.getResourceResolver().adaptTo(Session.class);
+        final String target = response.getPath();
+        final String child = (target.endsWith("/") ? target : target + "/") + uploadId;
+        if (!session.hasPermission(child, Session.ACTION_ADD_NODE)) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN,
+                "Not allowed to import below " + target);
+            return null;
+        }
+
+        long received;
+        try {
+            final RequestParameter chunk = getContentParameter(request);
+            if (chunk == null) {
+                // no content, just report the bytes received so far
+                received = staging.getOffset(userId, uploadId);
+            } else {
+                final long offset = getRequestParamAsLong(request, SlingPostConstants.RP_UPLOAD_OFFSET);
+                if (offset < 0) {
+                    response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED,
+                        "Required :uploadOffset parameter is missing");
+                    return null;
+                }
+                final InputStream ins = chunk.getInputStream();
+                try {
+                    received = staging.append(userId, uploadId, offset, ins, length);
+                } finally {
+                    ins.close();
+                }
+                if (received < 0) {
+                    received = staging.getOffset(userId, uploadId);
+                    setUploadOffset(response, received);
+                    response.setStatus(HttpServletResponse.SC_CONFLICT,
+                        "Chunk at offset " + offset + " of upload " + uploadId
+                            + " does not follow the " + received
+                            + " bytes received");
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+
+        setUploadOffset(response, received);
+        if (received > length) {
+            staging.remove(userId, uploadId);
+            response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED,
+                "Received " + received + " bytes for upload " + uploadId
+                    + " of " + length + " bytes");
+            return null;
+        }
+        if (received < length) {
+            response.setStatus(HttpServletResponse.SC_ACCEPTED, "Received "
+                + received + " of " + length + " bytes of upload " + uploadId);
+            return null;
+        }
+        return staging.getFile(userId, uploadId);
+    }
+
+    private long getRequestParamAsLong(SlingHttpServletRequest request, String key) {
+        final String value = getRequestParamAsString(request, key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException nfe) {
+                // not a number
+            }
+        }
+        return -1;
+    }
+
+    private void setUploadOffset(PostResponse response, long offset) {
+        if (response instanceof JSONResponse) {
+            ((JSONResponse) response).setProperty(PN_UPLOAD_OFFSET, offset);
         }
     }
 }
\ No newline at end of file
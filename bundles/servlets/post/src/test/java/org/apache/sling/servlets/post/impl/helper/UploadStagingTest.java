@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import junit.framework.TestCase;
+
+public class UploadStagingTest extends TestCase {
+
+    private File directory;
+
+    private UploadStaging staging;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("uploads", "");
+        directory.delete();
+        staging = new UploadStaging(directory, 60 * 60 * 1000L, 10);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+        super.tearDown();
+    }
+
+    public void testAppendChunks() throws Exception {
+        assertEquals(0, staging.getOffset("user", "issue1"));
+        assertEquals(3, staging.append("user", "issue1", 0, chunk("abc"), 10));
+        assertEquals(5, staging.append("user", "issue1", 3, chunk("de"), 10));
+        assertEquals(5, staging.getOffset("user", "issue1"));
+        assertEquals("abcde", read(staging.getFile("user", "issue1")));
+    }
+
+    public void testResendChunk() throws Exception {
+        staging.append("user", "issue1", 0, chunk("abc"), 10);
+        staging.append("user", "issue1", 3, chunk("dX"), 10);
+
+        // the second chunk is sent again after a failure
+        assertEquals(5, staging.append("user", "issue1", 3, chunk("de"), 10));
+        assertEquals("abcde", read(staging.getFile("user", "issue1")));
+    }
+
+    public void testGapIsRejected() throws Exception {
+        staging.append("user", "issue1", 0, chunk("abc"), 10);
+        assertEquals(-1, staging.append("user", "issue1", 4, chunk("e"), 10));
+        assertEquals(-1, staging.append("user", "issue2", 1, chunk("b"), 10));
+        assertEquals(3, staging.getOffset("user", "issue1"));
+    }
+
+    public void testRemove() throws Exception {
+        staging.append("user", "issue1", 0, chunk("abc"), 10);
+        staging.remove("user", "issue1");
+        assertFalse(staging.getFile("user", "issue1").exists());
+        assertEquals(0, staging.getOffset("user", "issue1"));
+    }
+
+    public void testPurgeAbandoned() throws Exception {
+        staging.append("user", "old", 0, chunk("abc"), 10);
+        staging.append("user", "new", 0, chunk("abc"), 10);
+        staging.getFile("user", "old").setLastModified(
+            System.currentTimeMillis() - 2 * 60 * 60 * 1000L);
+
+        assertEquals(1, staging.purge());
+        assertFalse(staging.getFile("user", "old").exists());
+        assertTrue(staging.getFile("user", "new").exists());
+    }
+
+    public void testUploadsAreScopedByUser() throws Exception {
+        staging.append("user", "issue1", 0, chunk("abc"), 10);
+        assertEquals(0, staging.getOffset("other", "issue1"));
+        assertEquals(2, staging.append("other", "issue1", 0, chunk("xy"), 10));
+        assertEquals("abc", read(staging.getFile("user", "issue1")));
+
+        // user ids are escaped, not used as file names
+        final File file = staging.getFile("../user", "issue1");
+        assertEquals(directory, file.getParentFile().getParentFile());
+        assertFalse(file.equals(staging.getFile("user", "issue1")));
+    }
+
+    public void testMaximumSize() throws Exception {
+        assertEquals(10, staging.getMaxSize());
+        assertEquals(5, staging.append("user", "issue1", 0, chunk("abcde"), 100));
+
+        // the chunk exceeds the maximum size, only what fits is written
+        assertTrue(staging.append("user", "issue1", 5, chunk("fghijkl"), 100) > 10);
+        assertEquals(10, staging.getOffset("user", "issue1"));
+
+        // the declared length of the upload is a limit as well
+        assertTrue(staging.append("user", "issue2", 0, chunk("abcd"), 3) > 3);
+        assertEquals("abc", read(staging.getFile("user", "issue2")));
+    }
+
+    public void testInvalidId() {
+        assertTrue(UploadStaging.isValidId("a1-B_2"));
+        assertFalse(UploadStaging.isValidId(null));
+        assertFalse(UploadStaging.isValidId(""));
+        assertFalse(UploadStaging.isValidId("../etc"));
+        try {
+            staging.getFile("user", "a/b");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    private void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private ByteArrayInputStream chunk(String data) throws Exception {
+        return new ByteArrayInputStream(data.getBytes("US-ASCII"));
+    }
+
+    private String read(File file) throws Exception {
+        final FileInputStream ins = new FileInputStream(file);
+        try {
+            final byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                offset += ins.read(data, offset, data.length - offset);
+            }
+            return new String(data, "US-ASCII");
+        } finally {
+            ins.close();
+        }
+    }
+}
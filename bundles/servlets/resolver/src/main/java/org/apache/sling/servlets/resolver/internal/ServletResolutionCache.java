@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.servlet.Servlet;
+
+import org.apache.sling.servlets.resolver.internal.helper.AbstractResourceCollector;
+import org.apache.sling.servlets.resolver.jmx.ServletResolverCacheMBean;
+
+/**
+ * The <code>ServletResolutionCache</code> keeps the servlets resolved for
+ * a {@link AbstractResourceCollector} up to a maximum number of entries.
+ * <p>
+ * Lookups do not lock: each entry records when it was last used and, once
+ * the cache is full, the least recently used entries are evicted to make room
+ * for new ones. A tenth of the entries is evicted at once, so that the
+ * entries are only scanned for every few servlets cached. Each entry also
+ * records the locations searched to resolve the servlet, so that a changed
+ * script or servlet only removes the entries it may have an effect on.
+ */
+class ServletResolutionCache extends StandardMBean implements ServletResolverCacheMBean {
+
+    /** The fraction of the maximum size evicted in addition once full */
+    private static final int EVICTION_FRACTION = 10;
+
+    private final ConcurrentHashMap<AbstractResourceCollector, Entry> entries;
+
+    private final int maxSize;
+
+    /** Orders the uses of the entries */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Incremented on each invalidation, a servlet resolved while an
+     * invalidation happens is not cached as it might be outdated.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    ServletResolutionCache(final int maxSize) throws NotCompliantMBeanException {
+        super(ServletResolverCacheMBean.class);
+        this.maxSize = maxSize;
+        this.entries = new ConcurrentHashMap<AbstractResourceCollector, Entry>(maxSize);
+    }
+
+    /**
+     * Returns the cached servlet for the collector or <code>null</code> if
+     * none is cached.
+     */
+    Servlet get(final AbstractResourceCollector key) {
+        final Entry entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        entry.lastUsed = this.clock.incrementAndGet();
+        this.hits.incrementAndGet();
+        return entry.servlet;
+    }
+
+    /**
+     * Returns the current generation, to be passed to
+     * {@link #put(AbstractResourceCollector, Servlet, List, long)} for a
+     * servlet resolved afterwards.
+     */
+    long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Caches the servlet resolved for the collector, evicting the least
+     * recently used servlets if the cache is full. The servlet is not cached
+     * if the cache has been invalidated since the given generation.
+     *
+     * @param locationPaths The paths of the locations searched to resolve
+     *            the servlet
+     * @param generation The generation before the servlet was resolved
+     */
+    void put(final AbstractResourceCollector key, final Servlet servlet,
+            final List<String> locationPaths, final long generation) {
+        final Entry entry = new Entry(servlet,
+            locationPaths.toArray(new String[locationPaths.size()]));
+        entry.lastUsed = this.clock.incrementAndGet();
+        this.entries.put(key, entry);
+
+        // drop the entry again if it might already be outdated
+        if (generation != this.generation.get()) {
+            this.entries.remove(key, entry);
+            return;
+        }
+
+        if (this.entries.size() > this.maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the servlets which were resolved by searching a location at,
+     * below or above the given path.
+     */
+    void invalidate(final String path) {
+        this.generation.incrementAndGet();
+        final Iterator<Map.Entry<AbstractResourceCollector, Entry>> i = this.entries.entrySet().iterator();
+        while (i.hasNext()) {
+            final Map.Entry<AbstractResourceCollector, Entry> current = i.next();
+            if (current.getValue().isAffectedBy(path)
+                && this.entries.remove(current.getKey(), current.getValue())) {
+                this.invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all servlets.
+     */
+    void clear() {
+        this.generation.incrementAndGet();
+        final Iterator<AbstractResourceCollector> i = this.entries.keySet().iterator();
+        while (i.hasNext()) {
+            i.next();
+            i.remove();
+            this.invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries beyond the maximum size and a
+     * batch of further entries in a single scan.
+     */
+    private synchronized void evict() {
+        final int size = this.entries.size();
+        if (size <= this.maxSize) {
+            // evicted by a concurrent put
+            return;
+        }
+
+        // find the time of last use up to which entries are evicted
+        final long[] uses = new long[size];
+        int count = 0;
+        for (final Entry entry : this.entries.values()) {
+            if (count == uses.length) {
+                break;
+            }
+            uses[count++] = entry.lastUsed;
+        }
+        Arrays.sort(uses, 0, count);
+        final int toEvict = Math.min(count, size - this.maxSize + this.maxSize / EVICTION_FRACTION);
+        if (toEvict == 0) {
+            return;
+        }
+        final long threshold = uses[toEvict - 1];
+
+        final Iterator<Map.Entry<AbstractResourceCollector, Entry>> i = this.entries.entrySet().iterator();
+        while (i.hasNext()) {
+            final Map.Entry<AbstractResourceCollector, Entry> current = i.next();
+            if (current.getValue().lastUsed <= threshold
+                && this.entries.remove(current.getKey(), current.getValue())) {
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // ---------- ServletResolverCacheMBean -----------------------------------
+
+    public int getCacheSize() {
+        return this.entries.size();
+    }
+
+    public int getMaxCacheSize() {
+        return this.maxSize;
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    public double getHitRate() {
+        final long hits = this.hits.get();
+        final long total = hits + this.misses.get();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    public long getInvalidationCount() {
+        return this.invalidations.get();
+    }
+
+    public void flushCache() {
+        clear();
+    }
+
+    public void resetStatistics() {
+        this.hits.set(0);
+        this.misses.set(0);
+        this.evictions.set(0);
+        this.invalidations.set(0);
+    }
+
+    private static final class Entry {
+
+        final Servlet servlet;
+
+        final String[] locationPaths;
+
+        volatile long lastUsed;
+
+        Entry(final Servlet servlet, final String[] locationPaths) {
+            this.servlet = servlet;
+            this.locationPaths = locationPaths;
+        }
+
+        /**
+         * A change at a location or below may add, change or remove a
+         * script, a change above may remove the location or change the
+         * resource super type of the resource type at the location.
+         */
+        boolean isAffectedBy(final String path) {
+            for (final String location : this.locationPaths) {
+                if (isAncestorOrSelf(location, path) || isAncestorOrSelf(path, location)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isAncestorOrSelf(final String ancestor, final String path) {
+            if (ancestor.length() == 0 || ancestor.equals("/")) {
+                return true;
+            }
+            return path.startsWith(ancestor)
+                && (path.length() == ancestor.length() || path.charAt(ancestor.length()) == '/');
+        }
+    }
+}
@@ -36,8 +36,8 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+import javax.management.NotCompliantMBeanException;
 import javax.servlet.Servlet;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -70,6 +70,7 @@ import org.apache.sling.servlets.resolver.internal.helper.ResourceCollector;
 import org.apache.sling.servlets.resolver.internal.helper.SlingServletConfig;
 import org.apache.sling.servlets.resolver.internal.resource.ServletResourceProvider;
 import org.apache.sling.servlets.resolver.internal.resource.ServletResourceProviderFactory;
+import org.apache.sling.servlets.resolver.jmx.ServletResolverCacheMBean;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
@@ -193,13 +194,10 @@ public class SlingServletResolver implements ServletResolver, SlingScriptResolve
     private Servlet fallbackErrorServlet;
 
     /** The script resolution cache. */
-    private Map<AbstractResourceCollector, Servlet> cache;
+    private ServletResolutionCache cache;
 
-    /** The cache size. */
-    private int cacheSize;
-
-    /** Flag to log warning if cache size exceed only once. */
-    private volatile boolean logCacheSizeWarning;
+    /** Registration of the cache as management bean. */
+    private ServiceRegistration cacheMBeanRegistration;
 
     /** Registration as event handler. */
     private ServiceRegistration eventHandlerReg;
@@ -625,7 +623,8 @@ public class SlingServletResolver implements ServletResolver, SlingScriptResolve
     private Servlet getServlet(final AbstractResourceCollector locationUtil,
             final SlingHttpServletRequest request,
             final ResourceResolver scriptResolver) {
-        final Servlet scriptServlet = (this.cache != null ? this.cache.get(locationUtil) : null);
+        final ServletResolutionCache cache = this.cache;
+        final Servlet scriptServlet = (cache != null ? cache.get(locationUtil) : null);
         if (scriptServlet != null) {
             if ( LOGGER.isDebugEnabled() ) {
                 LOGGER.debug("Using cached servlet {}", RequestUtil.getServletName(scriptServlet));
@@ -633,7 +632,9 @@ public class SlingServletResolver implements ServletResolver, SlingScriptResolve
             return scriptServlet;
         }
 
-        final Collection<Resource> candidates = locationUtil.getServlets(scriptResolver);
+        final long cacheGeneration = (cache != null ? cache.getGeneration() : 0);
+        final List<String> locationPaths = new ArrayList<String>();
+        final Collection<Resource> candidates = locationUtil.getServlets(scriptResolver, locationPaths);
 
         if (LOGGER.isDebugEnabled()) {
             if (candidates.isEmpty()) {
@@ -657,14 +658,8 @@ public class SlingServletResolver implements ServletResolver, SlingScriptResolve
                 final boolean isOptingServlet = candidate instanceof OptingServlet;
                 boolean servletAcceptsRequest = !isOptingServlet || (request != null && ((OptingServlet) candidate).accepts(request));
                 if (servletAcceptsRequest) {
-                    if (!hasOptingServlet && !isOptingServlet && this.cache != null) {
-                        if ( this.cache.size() < this.cacheSize ) {
-                            this.cache.put(locationUtil, candidate);
-                        } else if ( this.logCacheSizeWarning ) {
-                            this.logCacheSizeWarning = false;
-                            LOGGER.warn("Script cache has reached its limit of {}. You might want to increase the cache size for the servlet resolver.",
-                                    this.cacheSize);
-                        }
+                    if (!hasOptingServlet && !isOptingServlet && cache != null) {
+                        cache.put(locationUtil, candidate, locationPaths, cacheGeneration);
                     }
                     LOGGER.debug("Using servlet provided by candidate resource {}", candidateResource.getPath());
                     return candidate;
@@ -867,12 +862,23 @@ public class SlingServletResolver implements ServletResolver, SlingScriptResolve
         this.defaultExtensions = OsgiUtil.toStringArray(properties.get(PROP_DEFAULT_EXTENSIONS), DEFAULT_DEFAULT_EXTENSIONS);
 
         // create cache - if a cache size is configured
-        this.cacheSize = OsgiUtil.toInteger(properties.get(PROP_CACHE_SIZE), DEFAULT_CACHE_SIZE);
-        if (this.cacheSize > 5) {
-            this.cache = new ConcurrentHashMap<AbstractResourceCollector, Servlet>(cacheSize);
-            this.logCacheSizeWarning = true;
-        } else {
-            this.cacheSize = 0;
+        final int cacheSize = OsgiUtil.toInteger(properties.get(PROP_CACHE_SIZE), DEFAULT_CACHE_SIZE);
+        if (cacheSize > 5) {
+            try {
+                this.cache = new ServletResolutionCache(cacheSize);
+            } catch (NotCompliantMBeanException e) {
+                LOGGER.error("Unable to create the script resolution cache", e);
+            }
+        }
+        if (this.cache != null) {
+            try {
+                final Dictionary<String, String> mbeanProps = new Hashtable<String, String>();
+                mbeanProps.put("jmx.objectname", "org.apache.sling:type=servletResolver,service=Cache");
+                this.cacheMBeanRegistration = context.getBundleContext().registerService(
+                    ServletResolverCacheMBean.class.getName(), this.cache, mbeanProps);
+            } catch (Throwable t) {
+                LOGGER.debug("Unable to register mbean");
+            }
         }
 
         // and finally register as event listener
@@ -893,6 +899,12 @@ public class SlingServletResolver implements ServletResolver, SlingScriptResolve
             this.eventHandlerReg = null;
         }
 
+        // unregister the cache management bean
+        if (this.cacheMBeanRegistration != null) {
+            this.cacheMBeanRegistration.unregister();
+            this.cacheMBeanRegistration = null;
+        }
+
         // Copy the list of servlets first, to minimize the need for
         // synchronization
         final Collection<ServiceReference> refs;
@@ -1045,8 +1057,10 @@ public class SlingServletResolver implements ServletResolver, SlingScriptResolve
      * @see org.osgi.service.event.EventHandler#handleEvent(org.osgi.service.event.Event)
      */
     public void handleEvent(Event event) {
-        if (this.cache != null) {
+        final ServletResolutionCache cache = this.cache;
+        if (cache != null) {
             boolean flushCache = false;
+            String invalidatePath = null;
 
             // we may receive different events
             final String topic = event.getTopic();
@@ -1061,23 +1075,25 @@ public class SlingServletResolver implements ServletResolver, SlingScriptResolve
                 // this is a resource event
 
                 // if the path of the event is a sub path of a search path
-                // we flush the whole cache
+                // we remove the servlets resolved from locations at, below
+                // or above this path
                 String path = (String) event.getProperty(SlingConstants.PROPERTY_PATH);
                 if (path.contains(":")) {
                     path = path.substring(path.indexOf(":") + 1);
                 }
                 final String[] searchPaths = this.scriptResolver.getSearchPath();
                 int index = 0;
-                while (!flushCache && index < searchPaths.length) {
+                while (invalidatePath == null && index < searchPaths.length) {
                     if (path.startsWith(searchPaths[index])) {
-                        flushCache = true;
+                        invalidatePath = path;
                     }
                     index++;
                 }
             }
             if (flushCache) {
-                this.cache.clear();
-                this.logCacheSizeWarning = true;
+                cache.clear();
+            } else if (invalidatePath != null) {
+                cache.invalidate(invalidatePath);
             }
         }
     }
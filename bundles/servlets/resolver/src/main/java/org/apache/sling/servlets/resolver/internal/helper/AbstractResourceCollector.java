@@ -20,6 +20,7 @@ package org.apache.sling.servlets.resolver.internal.helper;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -70,6 +71,22 @@ public abstract class AbstractResourceCollector {
     }
 
     public final Collection<Resource> getServlets(ResourceResolver resolver) {
+        return getServlets(resolver, null);
+    }
+
+    /**
+     * Returns the ordered collection of resources which may be used to find
+     * a servlet or script and adds the paths of the locations searched to the
+     * given list. A servlet found at these locations must be resolved again
+     * if any resource at, below or above one of these paths changes.
+     *
+     * @param resolver The <code>ResourceResolver</code> used to access the
+     *            locations.
+     * @param locationPaths The list to which the paths are added, may be
+     *            <code>null</code>.
+     */
+    public final Collection<Resource> getServlets(ResourceResolver resolver,
+            List<String> locationPaths) {
 
         final SortedSet<Resource> resources = new TreeSet<Resource>();
         final Iterator<String> locations = new LocationIterator(resourceType, resourceSuperType,
@@ -86,6 +103,9 @@ public abstract class AbstractResourceCollector {
             } else {
                 path = location;
             }
+            if ( locationPaths != null ) {
+                locationPaths.add(path);
+            }
             final Resource locationRes = getResource(resolver, path);
             getWeightedResources(resources, locationRes);
         }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.jmx;
+
+/**
+ * This is the management interface for the script resolution cache of the
+ * SlingServletResolver.
+ */
+public interface ServletResolverCacheMBean {
+
+    /**
+     * Returns the number of servlets currently cached.
+     */
+    int getCacheSize();
+
+    /**
+     * Returns the maximum number of servlets cached.
+     */
+    int getMaxCacheSize();
+
+    /**
+     * Returns the number of resolutions answered from the cache since last
+     * resetting the statistics.
+     *
+     * @see #resetStatistics()
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of resolutions not found in the cache since last
+     * resetting the statistics.
+     *
+     * @see #resetStatistics()
+     */
+    long getMissCount();
+
+    /**
+     * Returns the ratio of hits to all resolutions since last resetting the
+     * statistics, zero if there were no resolutions.
+     *
+     * @see #resetStatistics()
+     */
+    double getHitRate();
+
+    /**
+     * Returns the number of least recently used servlets removed to make
+     * room for others since last resetting the statistics.
+     *
+     * @see #resetStatistics()
+     */
+    long getEvictionCount();
+
+    /**
+     * Returns the number of servlets removed because a script or servlet
+     * they were resolved from changed since last resetting the statistics.
+     *
+     * @see #resetStatistics()
+     */
+    long getInvalidationCount();
+
+    /**
+     * Removes all servlets from the cache.
+     */
+    void flushCache();
+
+    /**
+     * Resets all statistics values and restarts from zero.
+     */
+    void resetStatistics();
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.GenericServlet;
+import javax.servlet.Servlet;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.commons.testing.sling.MockResource;
+import org.apache.sling.servlets.resolver.internal.helper.AbstractResourceCollector;
+import org.apache.sling.servlets.resolver.internal.helper.ResourceCollector;
+
+public class ServletResolutionCacheTest extends TestCase {
+
+    private ServletResolutionCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new ServletResolutionCache(3);
+    }
+
+    public void testHitsAndMisses() {
+        final Servlet servlet = new TestServlet();
+        assertNull(cache.get(key("a")));
+        cache.put(key("a"), servlet, locations("/apps/a"), cache.getGeneration());
+        assertSame(servlet, cache.get(key("a")));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.001);
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0.0, cache.getHitRate(), 0.001);
+    }
+
+    public void testLeastRecentlyUsedEvicted() {
+        cache.put(key("a"), new TestServlet(), locations("/apps/a"), cache.getGeneration());
+        cache.put(key("b"), new TestServlet(), locations("/apps/b"), cache.getGeneration());
+        cache.put(key("c"), new TestServlet(), locations("/apps/c"), cache.getGeneration());
+
+        // use a so that b is the least recently used
+        assertNotNull(cache.get(key("a")));
+        cache.put(key("d"), new TestServlet(), locations("/apps/d"), cache.getGeneration());
+
+        assertEquals(3, cache.getCacheSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(key("b")));
+        assertNotNull(cache.get(key("a")));
+        assertNotNull(cache.get(key("c")));
+        assertNotNull(cache.get(key("d")));
+    }
+
+    public void testEvictionInBatches() throws Exception {
+        cache = new ServletResolutionCache(20);
+        for (int i = 0; i < 20; i++) {
+            cache.put(key("r" + i), new TestServlet(), locations("/apps/r" + i),
+                cache.getGeneration());
+        }
+        // use r0 so that r1, r2 and r3 are the least recently used
+        assertNotNull(cache.get(key("r0")));
+
+        // the entry beyond the maximum and a tenth of the maximum are evicted
+        cache.put(key("x"), new TestServlet(), locations("/apps/x"), cache.getGeneration());
+        assertEquals(18, cache.getCacheSize());
+        assertEquals(3, cache.getEvictionCount());
+        assertNull(cache.get(key("r1")));
+        assertNull(cache.get(key("r2")));
+        assertNull(cache.get(key("r3")));
+        assertNotNull(cache.get(key("r0")));
+        assertNotNull(cache.get(key("r4")));
+        assertNotNull(cache.get(key("x")));
+
+        // no further evictions until the cache is full again
+        for (int i = 0; i < 2; i++) {
+            cache.put(key("y" + i), new TestServlet(), locations("/apps/y" + i),
+                cache.getGeneration());
+        }
+        assertEquals(20, cache.getCacheSize());
+        assertEquals(3, cache.getEvictionCount());
+    }
+
+    public void testInvalidatePath() {
+        cache.put(key("a"), new TestServlet(),
+            locations("/apps/a", "/libs/a", "/apps/sling/servlet/default"),
+            cache.getGeneration());
+        cache.put(key("b"), new TestServlet(), locations("/apps/b", "/libs/b"),
+            cache.getGeneration());
+        cache.put(key("ab"), new TestServlet(), locations("/apps/ab"),
+            cache.getGeneration());
+
+        // a script below a location of a
+        cache.invalidate("/apps/a/html.jsp");
+        assertNull(cache.get(key("a")));
+        assertNotNull(cache.get(key("b")));
+        assertNotNull(cache.get(key("ab")));
+
+        // a folder above the locations of b
+        cache.invalidate("/libs");
+        assertNull(cache.get(key("b")));
+        assertNotNull(cache.get(key("ab")));
+
+        assertEquals(2, cache.getInvalidationCount());
+    }
+
+    public void testOutdatedServletNotCached() {
+        final long generation = cache.getGeneration();
+        cache.invalidate("/apps/x");
+        cache.put(key("a"), new TestServlet(), locations("/apps/a"), generation);
+        assertNull(cache.get(key("a")));
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    public void testFlush() {
+        cache.put(key("a"), new TestServlet(), locations("/apps/a"), cache.getGeneration());
+        cache.put(key("b"), new TestServlet(), locations("/apps/b"), cache.getGeneration());
+        cache.flushCache();
+        assertEquals(0, cache.getCacheSize());
+        assertEquals(2, cache.getInvalidationCount());
+    }
+
+    private static AbstractResourceCollector key(String resourceType) {
+        return new ResourceCollector("GET", null, new MockResource(null,
+            "/content/" + resourceType, resourceType), null, null);
+    }
+
+    private static List<String> locations(String... paths) {
+        return Arrays.asList(paths);
+    }
+
+    private static class TestServlet extends GenericServlet {
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+        }
+    }
+}